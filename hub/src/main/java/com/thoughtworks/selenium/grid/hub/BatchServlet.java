@@ -0,0 +1,42 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.BatchCommand;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Run a batch of Selenese commands for one session in a single request, e.g.
+ * <code>sessionId=1234&1.cmd=type&1.1=q&1.2=grid&2.cmd=click&2.1=btnG</code>.
+ * <p/>
+ * Replies with the form encoded results (see {@link BatchCommand}), or with a plain
+ * Selenese error when the batch cannot be parsed.
+ */
+public class BatchServlet extends HubServlet {
+
+    private final static Log LOGGER = LogFactory.getLog(BatchServlet.class);
+
+    protected void process(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        final HttpParameters parameters;
+        final HubRegistry registry;
+        final BatchCommand command;
+
+        registry = HubRegistry.registry();
+        parameters = requestParameters(request);
+        LOGGER.info("Processing batch '" + parameters.toString() + "'");
+        try {
+            command = new HttpCommandParser(parameters).parseBatch(registry.environmentManager());
+        } catch (CommandParsingException e) {
+            LOGGER.error("Failed to parse batch '" + parameters.toString() + "' : " + e.getMessage());
+            reply(request, response, new Response(e.getMessage()));
+            return;
+        }
+        reply(request, response, execute(command, registry.remoteControlPool(), null));
+    }
+
+}
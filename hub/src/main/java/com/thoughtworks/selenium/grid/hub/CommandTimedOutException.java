@@ -0,0 +1,27 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.Response;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Signals a command whose remote control stopped sending its reply half way, once the
+ * time out has been recorded against the command and the remote control.
+ */
+public class CommandTimedOutException extends SocketTimeoutException {
+
+    private final Response reply;
+
+    public CommandTimedOutException(Response reply) {
+        super(reply.body());
+        this.reply = reply;
+    }
+
+    /**
+     * @return Selenese error to reply with, if nothing was sent to the client yet.
+     */
+    public Response reply() {
+        return reply;
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Raw <code>application/x-www-form-urlencoded</code> request body, as sent by Selenium clients.
+ * <p/>
+ * Individual parameters can be looked up without decoding the whole body, so that a command
+ * can be routed on its <code>cmd</code> and <code>sessionId</code> alone and the original
+ * bytes forwarded untouched to the remote control.
+ */
+public class FormBody {
+
+    private final byte[] bytes;
+    private final String contentType;
+    private final String charset;
+
+    /**
+     * @param bytes       Raw body. Cannot be null.
+     * @param contentType Content type of the request, forwarded with the body.
+     * @param charset     Character encoding of the parameter values. Null means UTF-8.
+     */
+    public FormBody(byte[] bytes, String contentType, String charset) {
+        this.bytes = bytes;
+        this.contentType = contentType;
+        this.charset = (null == charset) ? "UTF-8" : charset;
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Scan the body for a parameter, decoding only its value.
+     *
+     * @param name Parameter name, as it appears (undecoded) in the body.
+     * @return Decoded value of the first parameter with this name. Null if there is none.
+     */
+    public String value(String name) {
+        final int nameLength;
+        int fieldStart;
+        int fieldEnd;
+
+        nameLength = name.length();
+        fieldStart = 0;
+        while (fieldStart < bytes.length) {
+            fieldEnd = indexOf('&', fieldStart);
+            if (fieldEnd - fieldStart > nameLength
+                    && '=' == bytes[fieldStart + nameLength]
+                    && startsWith(name, fieldStart)) {
+                return decode(fieldStart + nameLength + 1, fieldEnd);
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * @return All parameters, fully decoded. First value wins for repeated names.
+     */
+    public HttpParameters parameters() {
+        final Map<String, String[]> parameterMap;
+        int fieldStart;
+        int fieldEnd;
+        int separator;
+        String name;
+
+        parameterMap = new HashMap<String, String[]>();
+        fieldStart = 0;
+        while (fieldStart < bytes.length) {
+            fieldEnd = indexOf('&', fieldStart);
+            if (fieldEnd > fieldStart) {
+                separator = indexOf('=', fieldStart);
+                if (separator > fieldEnd) {
+                    separator = fieldEnd;
+                }
+                name = decode(fieldStart, separator);
+                if (!parameterMap.containsKey(name)) {
+                    parameterMap.put(name, new String[]{ decode(Math.min(separator + 1, fieldEnd), fieldEnd) });
+                }
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        return new HttpParameters(parameterMap);
+    }
+
+    protected int indexOf(char character, int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (character == bytes[i]) {
+                return i;
+            }
+        }
+        return bytes.length;
+    }
+
+    protected boolean startsWith(String name, int offset) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lenient decoding: malformed escape sequences are kept as is.
+     */
+    protected String decode(int start, int end) {
+        final String encoded;
+
+        try {
+            encoded = new String(bytes, start, end - start, charset);
+            try {
+                return URLDecoder.decode(encoded, charset);
+            } catch (IllegalArgumentException e) {
+                return encoded;
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("Unsupported request encoding '" + charset + "'", e);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.StreamingResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reply body gzip compressed only once it is large enough to be worth it.
+ * <p/>
+ * The first bytes are held back until the threshold is reached: from then on the reply is sent
+ * gzip compressed, with its <code>Content-Encoding</code> header. A reply that ends before reaching
+ * the threshold is sent as is by {@link #finish()}. Meant for replies whose length is not known
+ * up front, e.g. streamed or chunked remote control replies.
+ */
+public class GzipAboveThresholdOutputStream extends OutputStream {
+
+    private final HttpServletResponse response;
+    private final int thresholdInBytes;
+    private final ByteArrayOutputStream heldBack;
+    private GZIPOutputStream compressed;
+
+    /**
+     * @param response         Servlet response to write to. Nothing is written to it before the threshold
+     *                         is reached or {@link #finish()} is called.
+     * @param thresholdInBytes Size from which the reply is gzip compressed.
+     */
+    public GzipAboveThresholdOutputStream(HttpServletResponse response, int thresholdInBytes) {
+        this.response = response;
+        this.thresholdInBytes = thresholdInBytes;
+        this.heldBack = new ByteArrayOutputStream(Math.max(0, Math.min(thresholdInBytes, 8192)));
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (null == compressed) {
+            if (heldBack.size() + length < thresholdInBytes) {
+                heldBack.write(bytes, offset, length);
+                return;
+            }
+            startCompressing();
+        }
+        compressed.write(bytes, offset, length);
+    }
+
+    /**
+     * Nothing is flushed while the reply is held back: whether it gets compressed is not known yet.
+     */
+    public void flush() throws IOException {
+        if (null != compressed) {
+            compressed.flush();
+        }
+    }
+
+    /**
+     * Complete the reply, sending it as is if it never reached the threshold. Does not close the
+     * servlet output stream.
+     */
+    public void finish() throws IOException {
+        if (null == compressed) {
+            heldBack.writeTo(response.getOutputStream());
+            return;
+        }
+        compressed.finish();
+    }
+
+    /**
+     * @return Whether the reply is sent gzip compressed.
+     */
+    public boolean compressing() {
+        return null != compressed;
+    }
+
+    protected void startCompressing() throws IOException {
+        response.setHeader("Content-Encoding", StreamingResponse.GZIP);
+        compressed = new GZIPOutputStream(response.getOutputStream());
+        heldBack.writeTo(compressed);
+        heldBack.reset();
+    }
+
+}
@@ -1,9 +1,19 @@
 package com.thoughtworks.selenium.grid.hub;
 
 import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.configuration.HubConfiguration;
+import com.thoughtworks.selenium.grid.configuration.TenantConfiguration;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.PendingReservation;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.BatchCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.NewBrowserSessionCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.NewBrowserSessionGroupCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.PassThroughSeleneseCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.SeleneseCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.TestCompleteCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.WaitForCommand;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Parse HTTP commands targeting a Remote Control
@@ -12,6 +22,10 @@ public class HttpCommandParser {
 
     public static final String NEW_BROWSER_SESSION = "getNewBrowserSession";
     private static final String TEST_COMPLETE = "testComplete";
+    public static final String WAIT_FOR = "gridWaitFor";
+    public static final String NEW_BROWSER_SESSION_GROUP = "gridGetNewBrowserSessions";
+    private static final long DEFAULT_WAIT_TIMEOUT_IN_MILLISECONDS = 30000;
+    private static final long DEFAULT_POLLING_INTERVAL_IN_MILLISECONDS = 500;
     private final HttpParameters parameters;
 
     public HttpCommandParser(HttpParameters parameters) {
@@ -30,14 +44,293 @@ public class HttpCommandParser {
                 throw new CommandParsingException("ERROR: Unknown environment '" + environmentName + "'");
             }
             parameters.put("1", environment.browser());
-            return new NewBrowserSessionCommand(environment, parameters);
+            return new NewBrowserSessionCommand(environment, parameters, parsePriority(), parseDeadline(),
+                                                parseTenant());
         } else if (command.equals(TEST_COMPLETE)) {
             return new TestCompleteCommand(retrieveSessionId(parameters), parameters);
+        } else if (command.equals(WAIT_FOR)) {
+            return parseWaitFor(retrieveSessionId(parameters));
+        } else if (command.equals(NEW_BROWSER_SESSION_GROUP)) {
+            return parseNewBrowserSessionGroup(environmentManager);
         } else {
             return new SeleneseCommand(retrieveSessionId(parameters), parameters);
         }
     }
 
+    /**
+     * Fast path for plain commands: only <code>cmd</code> and <code>sessionId</code> are decoded and
+     * the original body is forwarded as is.
+     *
+     * @param body Raw form request body. Cannot be null.
+     * @return Pass-through command. Null when the command needs to be fully parsed (new session,
+     *         test complete, wait for, missing <code>cmd</code> or <code>sessionId</code>).
+     */
+    public static PassThroughSeleneseCommand parsePassThrough(FormBody body) {
+        final HttpParameters routingParameters;
+        final String command;
+        final String sessionId;
+
+        command = body.value("cmd");
+        if (null == command || NEW_BROWSER_SESSION.equals(command) || TEST_COMPLETE.equals(command)
+            || WAIT_FOR.equals(command) || NEW_BROWSER_SESSION_GROUP.equals(command)) {
+            return null;
+        }
+        sessionId = body.value("sessionId");
+        if (null == sessionId) {
+            return null;
+        }
+        routingParameters = new HttpParameters();
+        routingParameters.put("cmd", command);
+        routingParameters.put("sessionId", sessionId);
+        return new PassThroughSeleneseCommand(sessionId, routingParameters, body);
+    }
+
+    /**
+     * Parse a batch of commands for one session, e.g.
+     * <code>sessionId=1234&1.cmd=type&1.1=q&1.2=grid&2.cmd=click&2.1=btnG</code>.
+     * Commands are numbered from 1, without gaps. Starting new sessions (<code>getNewBrowserSession</code>,
+     * <code>gridGetNewBrowserSessions</code>) and hub-side polling (<code>gridWaitFor</code>) are not allowed
+     * in a batch.
+     */
+    public BatchCommand parseBatch(EnvironmentManager environmentManager) {
+        final List<SeleneseCommand> commands;
+        final String sessionId;
+
+        sessionId = retrieveSessionId(parameters);
+        commands = new ArrayList<SeleneseCommand>();
+        for (int i = 1; null != parameters.get(i + ".cmd"); i++) {
+            final HttpParameters commandParameters;
+
+            commandParameters = new HttpParameters();
+            for (String name : parameters.names()) {
+                if (name.startsWith(i + ".")) {
+                    commandParameters.put(name.substring((i + ".").length()), parameters.get(name));
+                }
+            }
+            if (NEW_BROWSER_SESSION.equals(commandParameters.get("cmd"))
+                    || NEW_BROWSER_SESSION_GROUP.equals(commandParameters.get("cmd"))) {
+                throw new CommandParsingException("ERROR: Cannot start a new session in a batch");
+            }
+            if (WAIT_FOR.equals(commandParameters.get("cmd"))) {
+                throw new CommandParsingException("ERROR: Cannot run " + WAIT_FOR + " in a batch");
+            }
+            commandParameters.put("sessionId", sessionId);
+            commands.add(new HttpCommandParser(commandParameters).parse(environmentManager));
+        }
+        if (commands.isEmpty()) {
+            throw new CommandParsingException("ERROR: No command in batch. Expected '1.cmd', '2.cmd'...");
+        }
+        return new BatchCommand(sessionId, parameters, commands);
+    }
+
+    /**
+     * Hub-side polling loop, e.g. <code>cmd=gridWaitFor&predicate=isElementPresent&1=id=submit&timeout=30000</code>.
+     * <p/>
+     * <code>1</code> and <code>2</code> are passed on to the predicate. Optional <code>expected</code>
+     * (predicate value to wait for, <code>true</code> by default) and <code>interval</code>
+     * (polling interval in milliseconds, 500 by default).
+     */
+    protected WaitForCommand parseWaitFor(String sessionId) {
+        final HttpParameters predicateParameters;
+        final String predicate;
+        final String expected;
+
+        predicate = parameters.get("predicate");
+        if (null == predicate || "".equals(predicate.trim())) {
+            throw new CommandParsingException("ERROR: No predicate provided for " + WAIT_FOR);
+        }
+        predicateParameters = new HttpParameters();
+        predicateParameters.put("cmd", predicate);
+        predicateParameters.put("sessionId", sessionId);
+        for (String argument : new String[] {"1", "2"}) {
+            if (null != parameters.get(argument)) {
+                predicateParameters.put(argument, parameters.get(argument));
+            }
+        }
+        expected = (null == parameters.get("expected")) ? "true" : parameters.get("expected");
+
+        return new WaitForCommand(sessionId, parameters, predicateParameters, expected,
+                                  parseMilliseconds("timeout", DEFAULT_WAIT_TIMEOUT_IN_MILLISECONDS),
+                                  parseMilliseconds("interval", DEFAULT_POLLING_INTERVAL_IN_MILLISECONDS));
+    }
+
+    /**
+     * Sessions in several environments at once, e.g.
+     * <code>cmd=gridGetNewBrowserSessions&1=Firefox on Windows,IE on Windows&2=http://chat.example.com</code>.
+     * <p/>
+     * <code>1</code> lists the environments, one per session, as a Selenese array (commas separate
+     * environments, a backslash escapes a comma that is part of a name). <code>2</code> is the browser
+     * URL of all the sessions. Optional <code>deadline</code>, <code>tenant</code> and <code>apiKey</code>
+     * as for {@link #NEW_BROWSER_SESSION}.
+     */
+    protected NewBrowserSessionGroupCommand parseNewBrowserSessionGroup(EnvironmentManager environmentManager) {
+        final List<NewBrowserSessionCommand> sessionCommands;
+        final List<String> environmentNames;
+        final long deadline;
+        final String tenant;
+
+        if (null == parameters.get("1") || "".equals(parameters.get("1").trim())) {
+            throw new CommandParsingException("ERROR: No environment provided for " + NEW_BROWSER_SESSION_GROUP);
+        }
+        environmentNames = parseArray(parameters.get("1"));
+        deadline = parseDeadline();
+        tenant = parseTenant();
+        sessionCommands = new ArrayList<NewBrowserSessionCommand>(environmentNames.size());
+        for (String environmentName : environmentNames) {
+            final HttpParameters sessionParameters;
+            final Environment environment;
+
+            environment = environmentManager.environment(environmentName.trim());
+            if (null == environment) {
+                throw new CommandParsingException("ERROR: Unknown environment '" + environmentName.trim() + "'");
+            }
+            sessionParameters = new HttpParameters();
+            sessionParameters.put("cmd", NEW_BROWSER_SESSION);
+            sessionParameters.put("1", environment.browser());
+            if (null != parameters.get("2")) {
+                sessionParameters.put("2", parameters.get("2"));
+            }
+            sessionCommands.add(new NewBrowserSessionCommand(environment, sessionParameters,
+                                                             PendingReservation.DEFAULT_PRIORITY, deadline, tenant));
+        }
+        return new NewBrowserSessionGroupCommand(parameters, sessionCommands, deadline, tenant);
+    }
+
+    /**
+     * @return Elements of a Selenese array: comma separated, with <code>\,</code> for a comma and
+     *         <code>\\</code> for a backslash.
+     */
+    protected static List<String> parseArray(String value) {
+        final List<String> elements;
+        final StringBuilder element;
+
+        elements = new ArrayList<String>();
+        element = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            final char c;
+
+            c = value.charAt(i);
+            if ('\\' == c && i + 1 < value.length()) {
+                element.append(value.charAt(++i));
+            } else if (',' == c) {
+                elements.add(element.toString());
+                element.setLength(0);
+            } else {
+                element.append(c);
+            }
+        }
+        elements.add(element.toString());
+        return elements;
+    }
+
+    /**
+     * The priority is not forwarded to the remote control.
+     *
+     * @return Value of the optional <code>priority</code> parameter of a new session request. The higher,
+     *         the sooner the request is served.
+     */
+    protected int parsePriority() {
+        final String value;
+
+        value = parameters.get("priority");
+        parameters.remove("priority");
+        if (null == value || "".equals(value.trim())) {
+            return PendingReservation.DEFAULT_PRIORITY;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new CommandParsingException("ERROR: Invalid 'priority' for " + NEW_BROWSER_SESSION + ": " + value);
+        }
+    }
+
+    /**
+     * The deadline is not forwarded to the remote control.
+     *
+     * @return Deadline of a new session request: now plus the optional <code>deadline</code> parameter,
+     *         in milliseconds. {@link PendingReservation#NO_DEADLINE} when missing, or too far away to
+     *         be told apart from no deadline.
+     */
+    protected long parseDeadline() {
+        final long now;
+        final long timeLeft;
+
+        if (null == parameters.get("deadline") || "".equals(parameters.get("deadline").trim())) {
+            parameters.remove("deadline");
+            return PendingReservation.NO_DEADLINE;
+        }
+        timeLeft = parseMilliseconds("deadline", NEW_BROWSER_SESSION, 0);
+        parameters.remove("deadline");
+        now = System.currentTimeMillis();
+        if (timeLeft >= PendingReservation.NO_DEADLINE - now) {
+            return PendingReservation.NO_DEADLINE;
+        }
+        return now + timeLeft;
+    }
+
+    /**
+     * Identify the tenant of a new session request: the configured tenant holding the API key given as
+     * <code>apiKey</code>, or the configured tenant named by <code>tenant</code> if it has no API key.
+     * Neither is forwarded to the remote control.
+     *
+     * @return Tenant name. Null when the request does not name any tenant.
+     */
+    protected String parseTenant() {
+        final TenantConfiguration tenant;
+        final String apiKey;
+        final String tenantName;
+
+        apiKey = parameters.get("apiKey");
+        tenantName = parameters.get("tenant");
+        parameters.remove("tenant");
+        if (null != apiKey) {
+            parameters.remove("apiKey");
+            tenant = hubConfiguration().tenantWithApiKey(apiKey);
+            if (null == tenant) {
+                throw new CommandParsingException("ERROR: Invalid 'apiKey' for " + NEW_BROWSER_SESSION);
+            }
+            return tenant.getName();
+        }
+        if (null == tenantName || "".equals(tenantName.trim())) {
+            return null;
+        }
+        tenant = hubConfiguration().tenantNamed(tenantName.trim());
+        if (null == tenant) {
+            throw new CommandParsingException("ERROR: Unknown tenant '" + tenantName + "'");
+        }
+        if (null != tenant.getApiKey()) {
+            throw new CommandParsingException("ERROR: Tenant '" + tenantName + "' must be identified by its 'apiKey'");
+        }
+        return tenant.getName();
+    }
+
+    protected HubConfiguration hubConfiguration() {
+        return HubRegistry.registry().gridConfiguration().getHub();
+    }
+
+    protected long parseMilliseconds(String name, long defaultValue) {
+        return parseMilliseconds(name, WAIT_FOR, defaultValue);
+    }
+
+    protected long parseMilliseconds(String name, String command, long defaultValue) {
+        final String value;
+        final long milliseconds;
+
+        value = parameters.get(name);
+        if (null == value || "".equals(value.trim())) {
+            return defaultValue;
+        }
+        try {
+            milliseconds = Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new CommandParsingException("ERROR: Invalid '" + name + "' for " + command + ": " + value);
+        }
+        if (milliseconds < 0) {
+            throw new CommandParsingException("ERROR: '" + name + "' cannot be negative for " + command);
+        }
+        return milliseconds;
+    }
+
     public HttpParameters parameters() {
         return parameters;
     }
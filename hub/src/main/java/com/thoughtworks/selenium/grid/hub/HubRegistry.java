@@ -1,5 +1,7 @@
 package com.thoughtworks.selenium.grid.hub;
 
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
+import com.thoughtworks.selenium.grid.HttpConnectionPool;
 import com.thoughtworks.selenium.grid.configuration.EnvironmentConfiguration;
 import com.thoughtworks.selenium.grid.configuration.GridConfiguration;
 import com.thoughtworks.selenium.grid.configuration.HubConfiguration;
@@ -8,23 +10,31 @@ import com.thoughtworks.selenium.grid.hub.management.LifecycleManager;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.DynamicRemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.GlobalRemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPoller;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.CommandMetrics;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.IOException;
+
 /**
  * Hub application registry.
  * <p/>
- * Provides access to global remote control pool and global environment manager.
+ * Provides access to global remote control pool, global environment manager and
+ * the clients (connection pool, asynchronous client) used to talk to remote controls.
  */
 public class HubRegistry {
 
     private static final Log LOGGER = LogFactory.getLog(HubRegistry.class);
+    private static final int DEFAULT_MAX_CONNECTIONS_PER_REMOTE_CONTROL = 2;
     private static HubRegistry singleton;
     private final DynamicRemoteControlPool pool = new GlobalRemoteControlPool();
     private final LifecycleManager lifecycleManager = new LifecycleManager();
+    private final CommandMetrics commandMetrics = new CommandMetrics();
     private EnvironmentManager environmentManager;
     private GridConfiguration gridConfiguration;
     private RemoteControlPoller poller;
+    private HttpConnectionPool remoteControlConnectionPool;
+    private AsyncHttpClient asyncHttpClient;
 
     public static synchronized HubRegistry registry() {
         if (null == singleton) {
@@ -58,6 +68,52 @@ public class HubRegistry {
         return gridConfiguration;
     }
 
+    /**
+     * @return Keep-alive connections shared by all the Hub to remote control traffic.
+     */
+    public synchronized HttpConnectionPool remoteControlConnectionPool() {
+        final HubConfiguration hubConfiguration;
+
+        if (null == remoteControlConnectionPool) {
+            hubConfiguration = gridConfiguration().getHub();
+            remoteControlConnectionPool = new HttpConnectionPool(
+                    inMilliseconds(hubConfiguration.getRemoteControlConnectTimeoutInSeconds()),
+                    inMilliseconds(hubConfiguration.getRemoteControlReadTimeoutInSeconds()),
+                    inMilliseconds(hubConfiguration.getRemoteControlConnectionAcquireTimeoutInSeconds()),
+                    hubConfiguration.getMaxRemoteControlConnections(),
+                    DEFAULT_MAX_CONNECTIONS_PER_REMOTE_CONTROL);
+            remoteControlConnectionPool.startReapingIdleConnections(
+                    inMilliseconds(hubConfiguration.getRemoteControlConnectionIdleTimeoutInSeconds()));
+        }
+        return remoteControlConnectionPool;
+    }
+
+    /**
+     * @return Started non-blocking client forwarding commands when asynchronous command forwarding is enabled.
+     * @throws IllegalStateException if the client cannot be started.
+     */
+    public synchronized AsyncHttpClient asyncHttpClient() {
+        final HubConfiguration hubConfiguration;
+
+        if (null == asyncHttpClient) {
+            hubConfiguration = gridConfiguration().getHub();
+            asyncHttpClient = new AsyncHttpClient(
+                    inMilliseconds(hubConfiguration.getRemoteControlConnectTimeoutInSeconds()),
+                    inMilliseconds(hubConfiguration.getRemoteControlReadTimeoutInSeconds()));
+            try {
+                asyncHttpClient.start();
+            } catch (IOException e) {
+                asyncHttpClient = null;
+                throw new IllegalStateException("Cannot start asynchronous HTTP client: " + e.getMessage());
+            }
+        }
+        return asyncHttpClient;
+    }
+
+    public CommandMetrics commandMetrics() {
+        return commandMetrics;
+    }
+
     public LifecycleManager lifecycleManager() {
         return lifecycleManager;
     }
@@ -69,11 +125,14 @@ public class HubRegistry {
             hubConfiguration = gridConfiguration().getHub();
             poller = new RemoteControlPoller(
                     remoteControlPool(),
-                    hubConfiguration.getRemoteControlPollingIntervalInSeconds(),
-                    hubConfiguration.getSessionMaxIdleTimeInSeconds()
+                    hubConfiguration.getRemoteControlPollingIntervalInSeconds()
             );
         }
         return poller;
     }
 
+    protected static int inMilliseconds(double seconds) {
+        return (int) (seconds * 1000);
+    }
+
 }
@@ -29,6 +29,7 @@ public class HubServer {
 
         root = new Context(contexts, "/", Context.SESSIONS);
         root.addServlet(new ServletHolder(new HubServlet()), "/selenium-server/driver/*");
+        root.addServlet(new ServletHolder(new BatchServlet()), "/selenium-server/batch");
         root.addServlet(new ServletHolder(new ConsoleServlet()), "/console");
         root.addServlet(new ServletHolder(new RegistrationServlet()), "/registration-manager/register");
         root.addServlet(new ServletHolder(new UnregistrationServlet()), "/registration-manager/unregister");
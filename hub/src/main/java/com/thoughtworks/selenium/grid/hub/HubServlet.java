@@ -1,11 +1,20 @@
 package com.thoughtworks.selenium.grid.hub;
 
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
 import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.IOHelper;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.StreamingResponse;
+import com.thoughtworks.selenium.grid.configuration.HubConfiguration;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.DynamicRemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.NewBrowserSessionCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.PassThroughSeleneseCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.SeleneseCommand;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mortbay.util.ajax.Continuation;
+import org.mortbay.util.ajax.ContinuationSupport;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -16,10 +25,34 @@ import java.io.IOException;
 /**
  * Main entry point for the Hub and the Selenium Farm.
  * Load balance selense requests accross a farm of remote control.
+ * <p/>
+ * New session requests waiting for a remote control are suspended (Jetty continuations)
+ * instead of holding on to a servlet thread, so that a long queue of pending requests does not
+ * starve the commands of running sessions.
+ * <p/>
+ * Remote control responses are streamed back to the client as raw UTF-8 bytes, without
+ * decoding them. Likewise, plain commands (anything but new session and test complete) are
+ * routed on their <code>cmd</code> and <code>sessionId</code> only and their original
+ * request body is forwarded to the remote control untouched.
+ * <p/>
+ * With asynchronous command forwarding enabled, plain commands are sent off with a non-blocking
+ * client and their request is suspended until the remote control replies, so that the commands
+ * in flight do not each hold a thread.
+ * <p/>
+ * With gzip compression enabled, replies to clients accepting gzip are compressed on the fly
+ * once over the configured size. Replies the remote control already compressed are relayed as
+ * they are, and decompressed on the fly for clients which do not accept gzip.
+ * <p/>
+ * Replies asking the client to come back later (new session queue full...) carry a
+ * <code>Retry-After</code> header.
  */
 public class HubServlet extends HttpServlet {
 
     private final static Log LOGGER = LogFactory.getLog(HubServer.class);
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    private static final String FORM_BODY_ATTRIBUTE = FormBody.class.getName();
+    private static final long COMMAND_REPLY_GRACE_PERIOD_IN_MILLISECONDS = 5 * 1000;
+    private static final long MAX_COMMAND_WAIT_TIME_IN_MILLISECONDS = 30 * 60 * 1000;
 
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
@@ -35,24 +68,68 @@ public class HubServlet extends HttpServlet {
         final Response remoteControlResponse;
         final HubRegistry registry;
         final HttpParameters parameters;
+        final Continuation continuation;
+        final PassThroughSeleneseCommand passThroughCommand;
+        final FormBody body;
 
         registry = HubRegistry.registry();
-        parameters = requestParameters(request);
-        remoteControlResponse = forward(parameters, registry.remoteControlPool(), registry.environmentManager());
-        reply(response, remoteControlResponse);
+        body = formBody(request);
+        if (null != body) {
+            passThroughCommand = HttpCommandParser.parsePassThrough(body);
+            if (null != passThroughCommand) {
+                LOGGER.info("Processing '" + passThroughCommand.parameters().toString() + "' (pass-through)");
+                if (registry.gridConfiguration().getHub().getAsyncCommandForwarding()) {
+                    continuation = ContinuationSupport.getContinuation(request, null);
+                    reply(request, response, forwardWithoutHoldingAThread(passThroughCommand, registry.remoteControlPool(),
+                                                                 registry.asyncHttpClient(), continuation));
+                } else {
+                    reply(request, response, execute(passThroughCommand, registry.remoteControlPool(), null));
+                }
+                return;
+            }
+            parameters = body.parameters();
+        } else {
+            parameters = requestParameters(request);
+        }
+        continuation = ContinuationSupport.getContinuation(request, null);
+        remoteControlResponse = forward(parameters, registry.remoteControlPool(), registry.environmentManager(), continuation);
+        reply(request, response, remoteControlResponse);
     }
 
     protected Response forward(HttpParameters parameters, DynamicRemoteControlPool pool, EnvironmentManager environmentManager) throws IOException {
+        return forward(parameters, pool, environmentManager, null);
+    }
+
+    /**
+     * @param continuation Continuation used to suspend new session requests while waiting for a remote control.
+     *                     Null to block the current thread instead.
+     */
+    protected Response forward(HttpParameters parameters, DynamicRemoteControlPool pool,
+                               EnvironmentManager environmentManager, Continuation continuation) throws IOException {
         final SeleneseCommand command;
-        final Response response;
 
         LOGGER.info("Processing '" + parameters.toString() + "'");
         try {
             command = new HttpCommandParser(parameters).parse(environmentManager);
-            response = command.execute(pool);
         } catch (CommandParsingException e) {
             LOGGER.error("Failed to parse '" + parameters.toString() + "' : " + e.getMessage());
             return new Response(e.getMessage());
+        }
+        return execute(command, pool, continuation);
+    }
+
+    protected Response execute(SeleneseCommand command, DynamicRemoteControlPool pool, Continuation continuation) throws IOException {
+        final Response response;
+
+        try {
+            if (null != continuation && command instanceof NewBrowserSessionCommand) {
+                response = startSessionWithoutHoldingAThread((NewBrowserSessionCommand) command, pool, continuation);
+            } else {
+                response = command.execute(pool);
+            }
+        } catch (CommandParsingException e) {
+            LOGGER.error("Failed to process '" + command.parameters().toString() + "' : " + e.getMessage());
+            return new Response(e.getMessage());
         } catch (NoSuchEnvironmentException e) {
             LOGGER.error("Could not find any remote control providing the '" + e.environment() +
                          "' environment. Please make sure you started some remote controls which registered as offering this environment.");
@@ -62,23 +139,257 @@ public class HubServlet extends HttpServlet {
             return new Response(e.getMessage());
         }
 
-        final String responseBody = response.body();
-        if (responseBody.length() > 128) {
-            final int truncated = responseBody.length() - 128;
-            LOGGER.info(String.format("Responding with %d / %s...[%d characters truncated]", response.statusCode(), responseBody.substring(0, 128), truncated));
+        LOGGER.info(String.format("Responding with %d / %s", response.statusCode(), response.preview(128)));
+
+        return response;
+    }
+
+    /**
+     * Reserve a remote control for a new session, suspending the request while no remote control is available.
+     * Requests are served according to their priority and deadline (see {@link NewBrowserSessionCommand}).
+     * The first time the request needs to wait, the continuation throws a Jetty <code>RetryRequest</code> which
+     * must not be caught: the servlet is invoked again with the same continuation once a remote control is
+     * handed over or the request times out.
+     */
+    protected Response startSessionWithoutHoldingAThread(NewBrowserSessionCommand command,
+                                                         DynamicRemoteControlPool pool,
+                                                         Continuation continuation) {
+        SuspendedNewSessionRequest pendingRequest;
+        RemoteControlProxy remoteControl;
+        final long deadline;
+
+        pendingRequest = (SuspendedNewSessionRequest) continuation.getObject();
+        if (null == pendingRequest) {
+            final Response warmSessionResponse;
+
+            warmSessionResponse = command.startOnWarmSession(pool);
+            if (null != warmSessionResponse) {
+                return warmSessionResponse;
+            }
+        }
+        /* A resumed request is parsed again: stick to the deadline it was first queued with */
+        deadline = (null == pendingRequest) ? command.deadline() : pendingRequest.deadline();
+        while (true) {
+            if (null == pendingRequest) {
+                pendingRequest = new SuspendedNewSessionRequest(continuation, command.priority(), deadline,
+                                                                command.tenant());
+                continuation.setObject(pendingRequest);
+                if (!pool.reserve(command.environment(), pendingRequest)) {
+                    continuation.setObject(null);
+                    return command.noAvailableRemoteControl();
+                }
+            }
+            pendingRequest.suspendUntilAssigned(newSessionMaxWaitTimeInMilliseconds());
+
+            remoteControl = pool.cancel(command.environment(), pendingRequest);
+            continuation.setObject(null);
+            if (null == remoteControl) {
+                if (pendingRequest.rejected()) {
+                    return command.queueFull(pendingRequest.retryAfterInMilliseconds());
+                }
+                if (pendingRequest.expired() || pendingRequest.deadlinePassed(System.currentTimeMillis())) {
+                    return command.deadlineExpired();
+                }
+                LOGGER.info("Timed out waiting for a remote control for environment '" + command.environment().name() + "'");
+                return command.noAvailableRemoteControl();
+            }
+            if (pool.confirmReservation(remoteControl)) {
+                return command.execute(pool, remoteControl);
+            }
+            pendingRequest = null;
+            continuation.reset();
         }
-        else {
-            LOGGER.info(String.format("Responding with %d / %s", response.statusCode(), responseBody));
+    }
+
+    /**
+     * Forward a plain command with the non-blocking client, suspending the request until the remote control
+     * replies. As for new session requests, the continuation throws a Jetty <code>RetryRequest</code> which
+     * must not be caught: the servlet is invoked again with the same continuation once the response arrived.
+     * How long to wait for the remote control is up to the client read time out, but the request is never
+     * suspended for longer than {@link #commandMaxWaitTimeInMilliseconds(SeleneseCommand)}.
+     */
+    protected Response forwardWithoutHoldingAThread(PassThroughSeleneseCommand command,
+                                                    DynamicRemoteControlPool pool,
+                                                    AsyncHttpClient client,
+                                                    Continuation continuation) {
+        SuspendedCommandRequest pendingRequest;
+        final Response response;
+
+        pendingRequest = (SuspendedCommandRequest) continuation.getObject();
+        if (null == pendingRequest) {
+            pendingRequest = new SuspendedCommandRequest(continuation);
+            continuation.setObject(pendingRequest);
+            try {
+                command.execute(pool, client, pendingRequest);
+            } catch (NoSuchSessionException e) {
+                continuation.setObject(null);
+                LOGGER.error(e.getMessage());
+                return new Response(e.getMessage());
+            }
         }
+        pendingRequest.suspendUntilCompleted(commandMaxWaitTimeInMilliseconds(command));
 
+        continuation.setObject(null);
+        response = pendingRequest.giveUp();
+        if (null == response) {
+            LOGGER.error("Gave up waiting for a reply to '" + command.parameters().toString() + "' after "
+                         + commandMaxWaitTimeInMilliseconds(command) + " ms");
+            return new Response("Remote control did not reply within "
+                                + commandMaxWaitTimeInMilliseconds(command) + " ms");
+        }
+        LOGGER.info(String.format("Responding with %d / %s", response.statusCode(), response.preview(128)));
         return response;
     }
 
+    /**
+     * @return Maximum time a command forwarded with the non-blocking client is suspended: its deadline plus
+     *         the connect time out and some slack, or 30 minutes for a command without deadline. Never forever,
+     *         so that the request is answered even if the client never reports back.
+     */
+    protected long commandMaxWaitTimeInMilliseconds(SeleneseCommand command) {
+        final long connectTimeoutInMilliseconds;
+
+        if (0 == command.timeoutInMilliseconds()) {
+            return MAX_COMMAND_WAIT_TIME_IN_MILLISECONDS;
+        }
+        connectTimeoutInMilliseconds = (long) (HubRegistry.registry().gridConfiguration().getHub()
+                .getRemoteControlConnectTimeoutInSeconds() * 1000);
+        return command.timeoutInMilliseconds() + connectTimeoutInMilliseconds + COMMAND_REPLY_GRACE_PERIOD_IN_MILLISECONDS;
+    }
+
+    /**
+     * @return Maximum time a new session request is suspended, 0 meaning forever.
+     */
+    protected long newSessionMaxWaitTimeInMilliseconds() {
+        final double maxWaitTimeInSeconds;
+
+        maxWaitTimeInSeconds = HubRegistry.registry().gridConfiguration().getHub().getNewSessionMaxWaitTimeInSeconds();
+        if (Double.isInfinite(maxWaitTimeInSeconds)) {
+            return 0;
+        }
+        return Math.max(1, (long) (maxWaitTimeInSeconds * 1000));
+    }
+
+    protected void reply(HttpServletRequest request, HttpServletResponse response, Response remoteControlResponse)
+            throws IOException {
+        reply(response, remoteControlResponse, gzipThresholdFor(request));
+    }
+
     protected void reply(HttpServletResponse response, Response remoteControlResponse) throws IOException {
+        reply(response, remoteControlResponse, -1);
+    }
+
+    /**
+     * A command timing out while its reply is relayed is answered with a Selenese error instead, unless part
+     * of the reply already reached the client: the connection is then dropped, since there is no way to
+     * signal the error in the middle of a reply.
+     *
+     * @param gzipThresholdInBytes Size from which the reply is gzip compressed. Negative when the
+     *                             client does not accept gzip.
+     */
+    protected void reply(HttpServletResponse response, Response remoteControlResponse, int gzipThresholdInBytes)
+            throws IOException {
+        try {
+            relay(response, remoteControlResponse, gzipThresholdInBytes);
+        } catch (CommandTimedOutException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.reset();
+            relay(response, e.reply(), gzipThresholdInBytes);
+        }
+    }
+
+    protected void relay(HttpServletResponse response, Response remoteControlResponse, int gzipThresholdInBytes)
+            throws IOException {
+        final GzipAboveThresholdOutputStream compressed;
+        final long contentLength;
+
         response.setContentType("text/plain");
         response.setCharacterEncoding("UTF-8");
         response.setStatus(remoteControlResponse.statusCode());
-        response.getWriter().print(remoteControlResponse.body());
+        if (remoteControlResponse.retryAfterInSeconds() >= 0) {
+            response.setHeader("Retry-After", String.valueOf(remoteControlResponse.retryAfterInSeconds()));
+        }
+        if (gzipThresholdInBytes < 0) {
+            remoteControlResponse.writeDecodedTo(response.getOutputStream());
+            return;
+        }
+        response.setHeader("Vary", "Accept-Encoding");
+        if (StreamingResponse.GZIP.equals(remoteControlResponse.contentEncoding())) {
+            response.setHeader("Content-Encoding", StreamingResponse.GZIP);
+            remoteControlResponse.writeTo(response.getOutputStream());
+            return;
+        }
+        contentLength = remoteControlResponse.contentLength();
+        if (contentLength >= 0 && contentLength < gzipThresholdInBytes) {
+            remoteControlResponse.writeDecodedTo(response.getOutputStream());
+            return;
+        }
+        compressed = new GzipAboveThresholdOutputStream(response, gzipThresholdInBytes);
+        remoteControlResponse.writeDecodedTo(compressed);
+        compressed.finish();
+    }
+
+    /**
+     * @return Size from which replies to this request are gzip compressed, -1 when compression is
+     *         disabled or the client does not accept gzip.
+     */
+    protected int gzipThresholdFor(HttpServletRequest request) {
+        final HubConfiguration configuration;
+
+        configuration = HubRegistry.registry().gridConfiguration().getHub();
+        if (!configuration.getGzipCompression() || !acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            return -1;
+        }
+        return configuration.getGzipCompressionThresholdInBytes();
+    }
+
+    /**
+     * @param acceptEncoding Value of the Accept-Encoding header, e.g. <code>gzip;q=1.0, identity</code>. Can be null.
+     */
+    protected static boolean acceptsGzip(String acceptEncoding) {
+        if (null == acceptEncoding) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] nameAndParameters = coding.trim().toLowerCase().split(";");
+
+            if (StreamingResponse.GZIP.equals(nameAndParameters[0].trim()) || "x-gzip".equals(nameAndParameters[0].trim())) {
+                return !(nameAndParameters.length > 1 && nameAndParameters[1].replace(" ", "").matches("q=0(\\.0*)?"));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the raw body of a form POST, before the servlet container gets a chance to decode it.
+     *
+     * The body is kept as a request attribute since the input stream can only be read once, while a
+     * suspended new session request is processed again when resumed.
+     *
+     * @return Raw body. Null for any other request (GET, query string parameters, other content types...),
+     *         which must go through {@link #requestParameters(HttpServletRequest)} instead.
+     */
+    protected FormBody formBody(HttpServletRequest request) throws IOException {
+        final String contentType;
+        FormBody body;
+
+        body = (FormBody) request.getAttribute(FORM_BODY_ATTRIBUTE);
+        if (null != body) {
+            return body;
+        }
+        contentType = request.getContentType();
+        if (!"POST".equals(request.getMethod())
+                || null != request.getQueryString()
+                || null == contentType
+                || !contentType.toLowerCase().startsWith(FORM_CONTENT_TYPE)) {
+            return null;
+        }
+        body = new FormBody(IOHelper.readFully(request.getInputStream(), request.getContentLength()),
+                            contentType, request.getCharacterEncoding());
+        request.setAttribute(FORM_BODY_ATTRIBUTE, body);
+        return body;
     }
 
     @SuppressWarnings({"unchecked"})
@@ -0,0 +1,23 @@
+package com.thoughtworks.selenium.grid.hub;
+
+/**
+ * Signals a new session request turned down because too many requests are already waiting
+ * for a remote control in its environment.
+ */
+public class NewSessionQueueFullException extends RuntimeException {
+
+    private final long retryAfterInMilliseconds;
+
+    public NewSessionQueueFullException(long retryAfterInMilliseconds) {
+        super("Too many pending new session requests");
+        this.retryAfterInMilliseconds = retryAfterInMilliseconds;
+    }
+
+    /**
+     * @return Estimate of how long to wait before trying again.
+     */
+    public long retryAfterInMilliseconds() {
+        return retryAfterInMilliseconds;
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.ResponseCallback;
+import org.mortbay.util.ajax.Continuation;
+
+import java.io.IOException;
+
+/**
+ * Command request waiting for its remote control to reply without holding on to a servlet thread.
+ * <p/>
+ * The HTTP request is suspended with a Jetty continuation while the command is in flight, and
+ * resumed (re-dispatched to the servlet) when the asynchronous client gets the response or fails.
+ * A failure is turned into a Selenese error response. The request is not suspended forever: a response
+ * arriving after the request gave up on it is released and dropped.
+ * <p/>
+ * With a connector that does not support asynchronous requests, the continuation simply
+ * blocks the calling thread until the response arrives.
+ */
+public class SuspendedCommandRequest implements ResponseCallback {
+
+    private final Continuation continuation;
+    private Response response;
+    private boolean gaveUp;
+
+    public SuspendedCommandRequest(Continuation continuation) {
+        this.continuation = continuation;
+    }
+
+    /**
+     * Suspend the HTTP request unless the response has already arrived.
+     * With Jetty's NIO connector, suspending throws a <code>RetryRequest</code>
+     * that must be left to propagate to the container. When the request is
+     * re-dispatched, this method returns right away.
+     *
+     * @param maxWaitTimeInMilliseconds How long to wait for the response. Must be positive.
+     */
+    public void suspendUntilCompleted(long maxWaitTimeInMilliseconds) {
+        /* Checking and suspending under the continuation monitor guarantees a response is never missed */
+        synchronized (continuation) {
+            if (null == response) {
+                continuation.suspend(maxWaitTimeInMilliseconds);
+            }
+        }
+    }
+
+    /**
+     * @return Remote control response, or a Selenese error if forwarding failed. Null while in flight.
+     */
+    public Response response() {
+        synchronized (continuation) {
+            return response;
+        }
+    }
+
+    /**
+     * Stop waiting for the response.
+     *
+     * @return Response if it arrived in the meantime, null otherwise.
+     */
+    public Response giveUp() {
+        synchronized (continuation) {
+            gaveUp = (null == response);
+            return response;
+        }
+    }
+
+    public void completed(Response response) {
+        synchronized (continuation) {
+            if (gaveUp) {
+                response.release();
+                return;
+            }
+            this.response = response;
+            continuation.resume();
+        }
+    }
+
+    public void failed(IOException e) {
+        completed(new Response("Remote control did not reply: " + e.getMessage()));
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.hub.remotecontrol.PendingReservation;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.Tenants;
+import org.mortbay.util.ajax.Continuation;
+
+/**
+ * New session request waiting for a remote control without holding on to a servlet thread.
+ * <p/>
+ * The HTTP request is suspended with a Jetty continuation while queued, and resumed
+ * (re-dispatched to the servlet) when the provisioner hands a remote control over or
+ * when the request times out. Waiting therefore costs a queue entry, not a thread.
+ * <p/>
+ * With a connector that does not support asynchronous requests, the continuation simply
+ * blocks the calling thread, which is the same as reserving a remote control the classic way.
+ */
+public class SuspendedNewSessionRequest extends PendingReservation {
+
+    private final Continuation continuation;
+
+    public SuspendedNewSessionRequest(Continuation continuation) {
+        this(continuation, DEFAULT_PRIORITY, NO_DEADLINE);
+    }
+
+    /**
+     * @see PendingReservation#PendingReservation(int, long)
+     */
+    public SuspendedNewSessionRequest(Continuation continuation, int priority, long deadline) {
+        this(continuation, priority, deadline, Tenants.NO_TENANT);
+    }
+
+    /**
+     * @see PendingReservation#PendingReservation(int, long, String)
+     */
+    public SuspendedNewSessionRequest(Continuation continuation, int priority, long deadline, String tenant) {
+        super(priority, deadline, tenant);
+        this.continuation = continuation;
+    }
+
+    /**
+     * Suspend the HTTP request unless a remote control has already been assigned or the request
+     * expired or was rejected. The request is not suspended past its deadline.
+     * With Jetty's NIO connector, suspending throws a <code>RetryRequest</code>
+     * that must be left to propagate to the container. When the request is
+     * re-dispatched, this method returns right away.
+     *
+     * @param maxWaitTimeInMilliseconds How long to wait for a remote control. 0 means forever.
+     */
+    public void suspendUntilAssigned(long maxWaitTimeInMilliseconds) {
+        /* Checking and suspending under the continuation monitor guarantees a hand-over is never missed */
+        synchronized (continuation) {
+            if (null == remoteControl() && !expired() && !rejected()) {
+                continuation.suspend(suspendTimeInMilliseconds(maxWaitTimeInMilliseconds));
+            }
+        }
+    }
+
+    protected void remoteControlAssigned() {
+        synchronized (continuation) {
+            continuation.resume();
+        }
+    }
+
+    /**
+     * @return Shortest of the maximum wait time and the time left before the deadline, at least 1 ms.
+     *         0 means forever.
+     */
+    protected long suspendTimeInMilliseconds(long maxWaitTimeInMilliseconds) {
+        final long timeLeft;
+
+        if (NO_DEADLINE == deadline()) {
+            return maxWaitTimeInMilliseconds;
+        }
+        timeLeft = Math.max(1, deadline() - System.currentTimeMillis());
+        return (0 == maxWaitTimeInMilliseconds) ? timeLeft : Math.min(maxWaitTimeInMilliseconds, timeLeft);
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.thoughtworks.selenium.grid.hub.management;
 
 import com.thoughtworks.selenium.grid.HttpClient;
+import com.thoughtworks.selenium.grid.HttpConnectionPool;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
 
 import javax.servlet.http.HttpServletRequest;
@@ -10,6 +12,9 @@ public class RemoteControlParser {
     public static RemoteControlProxy parse(HttpServletRequest request) {
         final RemoteControlProxy remoteControl;
         final String portParameter;
+        final String maxConcurrentSessionsParameter;
+        final int maxConcurrentSessions;
+        final HttpConnectionPool connectionPool;
         final String environment;
         final String host;
         final int port;
@@ -28,9 +33,47 @@ public class RemoteControlParser {
             throw new IllegalStateException("You must specify an 'environment' parameter");
         }
 
-        remoteControl = new RemoteControlProxy(host, port, environment, new HttpClient());
+        maxConcurrentSessionsParameter = request.getParameter("maxConcurrentSessions");
+        if (null == maxConcurrentSessionsParameter || "".equals(maxConcurrentSessionsParameter.trim())) {
+            maxConcurrentSessions = 1;
+        } else {
+            maxConcurrentSessions = parseMaxConcurrentSessions(maxConcurrentSessionsParameter.trim());
+        }
+
+        connectionPool = connectionPool();
+        connectionPool.limitConnectionsPerHost(host, port, maxConcurrentSessions + 1);
+        remoteControl = RemoteControlProxy.withMaxConcurrentSessions(host, port, environment, maxConcurrentSessions,
+                                                                     new HttpClient(connectionPool, acceptGzip()));
 
         return remoteControl;
     }
 
+    /**
+     * @return Number of browser sessions the remote control can run at once. 0 stands for the default (1).
+     */
+    protected static int parseMaxConcurrentSessions(String parameter) {
+        final int maxConcurrentSessions;
+
+        maxConcurrentSessions = Integer.parseInt(parameter);
+        if (maxConcurrentSessions < 0) {
+            throw new IllegalStateException("'maxConcurrentSessions' cannot be negative");
+        }
+        return (0 == maxConcurrentSessions) ? 1 : maxConcurrentSessions;
+    }
+
+    /**
+     * All remote controls share the Hub connection pool, which keeps one connection per session slot
+     * plus one for heartbeats to each remote control.
+     */
+    protected static HttpConnectionPool connectionPool() {
+        return HubRegistry.registry().remoteControlConnectionPool();
+    }
+
+    /**
+     * @return Whether to ask remote controls for gzip compressed responses.
+     */
+    protected static boolean acceptGzip() {
+        return HubRegistry.registry().gridConfiguration().getHub().getGzipCompression();
+    }
+
 }
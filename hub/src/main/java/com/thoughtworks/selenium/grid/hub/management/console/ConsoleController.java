@@ -26,6 +26,11 @@ public class ConsoleController extends Controller {
         page.set("environments", registry().environmentManager().environments());
         page.set("availableRemoteControls", registry().remoteControlPool().availableRemoteControls());
         page.set("reservedRemoteControls", registry().remoteControlPool().reservedRemoteControls());
+        page.set("pendingReservations", registry().remoteControlPool().pendingReservationsByEnvironment());
+        page.set("tenants", registry().remoteControlPool().tenants());
+        page.set("warmSessions", registry().remoteControlPool().warmSessions());
+        page.set("connectionPool", registry().remoteControlConnectionPool());
+        page.set("commandMetrics", registry().commandMetrics());
 
         return page;
     }
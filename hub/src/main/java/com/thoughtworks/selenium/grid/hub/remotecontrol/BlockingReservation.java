@@ -0,0 +1,91 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * Pending reservation holding on to the requesting thread until a remote control is
+ * handed over or the request times out.
+ * <p/>
+ * Only the request served is woken up on hand-over. Each request keeps its own
+ * maximum wait time and deadline, so waking up does not restart the clock.
+ * <p/>
+ * Not thread-safe: must only be used while holding the lock the condition belongs to.
+ */
+public class BlockingReservation extends PendingReservation {
+
+    private final Condition remoteControlAssigned;
+    private final long deadlineInNanoseconds;
+    private final boolean waitForever;
+
+    /**
+     * @param remoteControlAssigned  Condition signaled on hand-over. Should not be null.
+     * @param maxWaitTimeInSeconds   How long this request is willing to wait. Can be infinite.
+     */
+    public BlockingReservation(Condition remoteControlAssigned, double maxWaitTimeInSeconds) {
+        this(remoteControlAssigned, maxWaitTimeInSeconds, DEFAULT_PRIORITY, NO_DEADLINE);
+    }
+
+    /**
+     * @see PendingReservation#PendingReservation(int, long)
+     */
+    public BlockingReservation(Condition remoteControlAssigned, double maxWaitTimeInSeconds, int priority, long deadline) {
+        this(remoteControlAssigned, maxWaitTimeInSeconds, priority, deadline, Tenants.NO_TENANT);
+    }
+
+    /**
+     * @see PendingReservation#PendingReservation(int, long, String)
+     */
+    public BlockingReservation(Condition remoteControlAssigned, double maxWaitTimeInSeconds, int priority, long deadline,
+                               String tenant) {
+        super(priority, deadline, tenant);
+        this.remoteControlAssigned = remoteControlAssigned;
+        this.waitForever = Double.isInfinite(maxWaitTimeInSeconds);
+        this.deadlineInNanoseconds = waitForever ? Long.MAX_VALUE
+                : System.nanoTime() + (long) (maxWaitTimeInSeconds * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    protected void remoteControlAssigned() {
+        remoteControlAssigned.signal();
+    }
+
+    /**
+     * Block until a remote control is assigned, the request expires or is rejected, or the maximum
+     * wait time elapses.
+     *
+     * @return Assigned remote control. Null on time out, expiry or rejection.
+     * @throws InterruptedException when interrupted while waiting.
+     */
+    public RemoteControlProxy await() throws InterruptedException {
+        long remainingNanoseconds;
+
+        while (null == remoteControl() && !expired() && !rejected()) {
+            remainingNanoseconds = remainingNanoseconds();
+            if (remainingNanoseconds <= 0) {
+                return null;
+            }
+            if (Long.MAX_VALUE == remainingNanoseconds) {
+                remoteControlAssigned.await();
+            } else {
+                remoteControlAssigned.awaitNanos(remainingNanoseconds);
+            }
+        }
+        return remoteControl();
+    }
+
+    /**
+     * @return Time left before the maximum wait time elapses or the request deadline passes,
+     *         whichever comes first. <code>Long.MAX_VALUE</code> for ever.
+     */
+    protected long remainingNanoseconds() {
+        long remainingNanoseconds;
+
+        remainingNanoseconds = waitForever ? Long.MAX_VALUE : deadlineInNanoseconds - System.nanoTime();
+        if (NO_DEADLINE != deadline()) {
+            remainingNanoseconds = Math.min(remainingNanoseconds,
+                    TimeUnit.MILLISECONDS.toNanos(deadline() - System.currentTimeMillis()));
+        }
+        return remainingNanoseconds;
+    }
+
+}
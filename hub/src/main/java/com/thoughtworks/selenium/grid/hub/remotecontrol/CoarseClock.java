@@ -0,0 +1,54 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cheap monotonic clock with a resolution of a few milliseconds.
+ * <p/>
+ * Time is read from a volatile field refreshed by a background daemon thread, so reading
+ * it never allocates and never goes backwards, even if the system clock is adjusted.
+ * Values are milliseconds elapsed since the clock started: only use them to measure durations.
+ */
+public class CoarseClock {
+
+    public static final long RESOLUTION_IN_MILLISECONDS = 10;
+    private static final long ORIGIN_IN_NANOSECONDS = System.nanoTime();
+    private static volatile long now = 0;
+
+    static {
+        final Thread ticker;
+
+        tick();
+        ticker = new Thread("Coarse Clock") {
+            public void run() {
+                while (true) {
+                    tick();
+                    try {
+                        Thread.sleep(RESOLUTION_IN_MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * @return Milliseconds elapsed since the clock started, at most a few milliseconds behind.
+     */
+    public static long now() {
+        return now;
+    }
+
+    protected static synchronized void tick() {
+        final long elapsed;
+
+        elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ORIGIN_IN_NANOSECONDS);
+        if (elapsed > now) {
+            now = elapsed;
+        }
+    }
+
+}
@@ -1,6 +1,9 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
+import com.thoughtworks.selenium.grid.hub.Environment;
+
 import java.util.List;
+import java.util.Map;
 
 /**
  * Remote control pool that grows/shrinks when remote control
@@ -8,6 +11,31 @@ import java.util.List;
  */
 public interface DynamicRemoteControlPool extends RemoteControlPool {
 
+    /**
+     * Non-blocking alternative to {@link RemoteControlPool#reserve(Environment)}: the request is
+     * served right away or queued, and notified when a remote control is handed over.
+     *
+     * @param environment  Environment that the remote control must provide. Should not be null.
+     * @param reservation  Request for a remote control. Should not be null.
+     * @return false if no remote control is registered for this environment, true otherwise.
+     * @see DynamicRemoteControlPool#confirmReservation(RemoteControlProxy)
+     */
+    boolean reserve(Environment environment, PendingReservation reservation);
+
+    /**
+     * Withdraw a queued request.
+     *
+     * @return Remote control assigned to the request before it could be withdrawn. Null if none.
+     */
+    RemoteControlProxy cancel(Environment environment, PendingReservation reservation);
+
+    /**
+     * Complete the reservation of a remote control assigned to a pending reservation.
+     *
+     * @return false if the remote control turned out to be unreliable and got unregistered.
+     */
+    boolean confirmReservation(RemoteControlProxy remoteControl);
+
     void register(RemoteControlProxy newRemoteControl);
 
     boolean unregister(RemoteControlProxy remoteControl);
@@ -20,6 +48,21 @@ public interface DynamicRemoteControlPool extends RemoteControlPool {
 
     List<RemoteControlProxy> reservedRemoteControls();
 
+    /**
+     * @return Number of new session requests waiting for a remote control, keyed by environment name.
+     */
+    Map<String, Integer> pendingReservationsByEnvironment();
+
+    /**
+     * @return Sessions held and requests waiting, per tenant.
+     */
+    Tenants tenants();
+
+    /**
+     * @return Sessions started ahead of demand, waiting to be handed out.
+     */
+    WarmSessionPool warmSessions();
+
     void unregisterAllUnresponsiveRemoteControls();
 
     void recycleAllSessionsIdleForTooLong(double maxIdleTimeInSeconds);
@@ -0,0 +1,59 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Share of a {@link GangReservation} waiting in the provisioner of one environment: as many
+ * session slots as the gang needs in this environment.
+ * <p/>
+ * Not thread-safe: only used while holding the lock of its provisioner.
+ */
+public class GangMember extends PendingReservation {
+
+    private final GangReservation gang;
+    private final List<RemoteControlProxy> remoteControls;
+    private int sessionCount;
+
+    public GangMember(GangReservation gang) {
+        super(DEFAULT_PRIORITY, NO_DEADLINE, gang.tenant());
+        this.gang = gang;
+        this.remoteControls = new ArrayList<RemoteControlProxy>();
+        this.sessionCount = 0;
+    }
+
+    public GangReservation gang() {
+        return gang;
+    }
+
+    /**
+     * @return Number of session slots the gang needs in this environment.
+     */
+    public int sessionCount() {
+        return sessionCount;
+    }
+
+    protected void addSession() {
+        sessionCount += 1;
+    }
+
+    /**
+     * @return Remote controls handed over so far, one per session slot.
+     */
+    public List<RemoteControlProxy> remoteControls() {
+        return remoteControls;
+    }
+
+    /**
+     * Called by the provisioner, while holding its lock, when it left a free session slot idle
+     * for the gang instead of handing it over to a request which arrived later.
+     */
+    public void turnReached() {
+        gang.wake();
+    }
+
+    protected void remoteControlAssigned() {
+        remoteControls.add(remoteControl());
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request for sessions in several environments at once (say Firefox and IE for a chat test),
+ * reserved all or nothing.
+ * <p/>
+ * The gang waits in the provisioner of each environment involved, in arrival order with the
+ * other requests (see {@link GangMember}). Remote controls are only handed over once it is the
+ * gang's turn in every provisioner and they all have enough idle session slots: a gang never
+ * holds some remote controls while waiting for the others, so two tests needing the same
+ * environments cannot each hold one remote control and wait for ever for the other.
+ * <p/>
+ * Only the oldest waiting gang holds its turn: remote controls freed in its environments are
+ * left idle for it instead of going to requests which arrived later, so that it is not starved
+ * by a steady flow of single session requests. Younger gangs wait behind it.
+ */
+public class GangReservation {
+
+    private final List<String> environments;
+    private final long deadline;
+    private final String tenant;
+    private final Map<String, GangMember> membersByEnvironment;
+    private volatile boolean oldest;
+    private boolean woken;
+
+    /**
+     * @param environments Environment names, one per session. The same environment can be listed several times.
+     * @param deadline     Time (as given by <code>System.currentTimeMillis()</code>) past which the gang
+     *                     gives up. {@link PendingReservation#NO_DEADLINE} if there is none.
+     * @param tenant       Tenant the sessions are requested for. Null for {@link Tenants#NO_TENANT}.
+     */
+    public GangReservation(List<String> environments, long deadline, String tenant) {
+        this.environments = environments;
+        this.deadline = deadline;
+        this.tenant = null == tenant ? Tenants.NO_TENANT : tenant;
+        this.membersByEnvironment = new LinkedHashMap<String, GangMember>();
+        for (String environment : environments) {
+            GangMember member;
+
+            member = membersByEnvironment.get(environment);
+            if (null == member) {
+                member = new GangMember(this);
+                membersByEnvironment.put(environment, member);
+            }
+            member.addSession();
+        }
+    }
+
+    public List<String> environments() {
+        return environments;
+    }
+
+    public long deadline() {
+        return deadline;
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+    /**
+     * @return Share of the gang waiting in each environment involved, keyed by environment name.
+     */
+    public Map<String, GangMember> members() {
+        return membersByEnvironment;
+    }
+
+    /**
+     * @return Remote controls handed over, in the order of {@link #environments()}.
+     */
+    public List<RemoteControlProxy> remoteControls() {
+        final List<RemoteControlProxy> remoteControls;
+        final Map<String, Integer> taken;
+
+        remoteControls = new ArrayList<RemoteControlProxy>(environments.size());
+        taken = new HashMap<String, Integer>();
+        for (String environment : environments) {
+            final Integer index;
+
+            index = taken.containsKey(environment) ? taken.get(environment) : 0;
+            remoteControls.add(membersByEnvironment.get(environment).remoteControls().get(index));
+            taken.put(environment, index + 1);
+        }
+        return remoteControls;
+    }
+
+    /**
+     * @return Whether this is the oldest waiting gang, the only one holding its turn.
+     */
+    public boolean oldest() {
+        return oldest;
+    }
+
+    public void setOldest(boolean oldest) {
+        this.oldest = oldest;
+        if (oldest) {
+            wake();
+        }
+    }
+
+    /**
+     * Let the waiting thread check again whether the gang can be served. Quick, never blocks
+     * on a provisioner.
+     */
+    public synchronized void wake() {
+        woken = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait until {@link #wake() woken}, or the timeout elapses. Must not be called while holding a provisioner lock.
+     */
+    public synchronized void awaitTurn(long timeoutInMilliseconds) throws InterruptedException {
+        if (!woken && timeoutInMilliseconds > 0) {
+            wait(timeoutInMilliseconds);
+        }
+        woken = false;
+    }
+
+    public boolean deadlinePassed(long now) {
+        return now >= deadline;
+    }
+
+}
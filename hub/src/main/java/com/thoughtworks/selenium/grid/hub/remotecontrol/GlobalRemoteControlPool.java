@@ -1,117 +1,355 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
+import com.thoughtworks.selenium.grid.configuration.HubConfiguration;
 import com.thoughtworks.selenium.grid.hub.Environment;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.NoSuchEnvironmentException;
 import com.thoughtworks.selenium.grid.hub.NoSuchSessionException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * Monolithic Remote Control Pool keeping track of all environment and all sessions.
+ * <p/>
+ * Each environment has its own provisioner and its own lock: registering, reserving or
+ * releasing remote controls for one environment never blocks another environment.
+ * Lists spanning all environments are built from per-environment snapshots without
+ * taking any global lock.
+ * <p/>
+ * Sessions are indexed both by session id and by remote control, so that releasing a session
+ * or unregistering a remote control only touches the sessions involved. Both indexes are
+ * updated together while holding the lock of the remote control environment.
+ * <p/>
+ * Tenants and their quotas span all environments: each session remembers the tenant it was
+ * started for, and when a tenant with a quota frees a session, requests of this tenant waiting
+ * in other environments get a chance to be served.
+ * <p/>
+ * Sessions in several environments can be reserved all or nothing (see {@link GangReservation}),
+ * the provisioners involved being locked in environment name order. Sessions started together
+ * are grouped: activity in one of them keeps them all alive, and releasing one of them releases
+ * the whole group.
+ * <p/>
+ * Environments can keep warm sessions, started ahead of demand (see {@link WarmSessionPool}).
+ * They are replenished whenever a session slot is freed and make room as soon as a request has
+ * to wait.
  */
 public class GlobalRemoteControlPool implements DynamicRemoteControlPool {
 
     private static final Log LOGGER = LogFactory.getLog(GlobalRemoteControlPool.class);
     private final ConcurrentMap<String, RemoteControlSession> remoteControlsBySessionIds = new ConcurrentHashMap<String, RemoteControlSession>();
+    private final ConcurrentMap<String, Map<RemoteControlProxy, Set<RemoteControlSession>>> sessionsByEnvironment = new ConcurrentHashMap<String, Map<RemoteControlProxy, Set<RemoteControlSession>>>();
     private final ConcurrentMap<String, RemoteControlProvisioner> provisionersByEnvironment = new ConcurrentHashMap<String, RemoteControlProvisioner>();
+    private final ConcurrentMap<String, List<String>> sessionGroupsBySessionId = new ConcurrentHashMap<String, List<String>>();
+    private final LinkedList<GangReservation> waitingGangs = new LinkedList<GangReservation>();
+    private final SessionExpiryWheel sessionExpiryWheel = new SessionExpiryWheel(1000, 512, new SessionExpiryWheel.IdleSessionHandler() {
+        public void sessionIdleForTooLong(RemoteControlSession session) {
+            reclaimIdleSession(session);
+        }
+    });
+    private HeartbeatSweeper heartbeatSweeper;
+    private Tenants tenants;
+    private WarmSessionPool warmSessions;
 
     public void register(RemoteControlProxy newRemoteControl) {
+        provisionerFor(newRemoteControl.environment()).add(newRemoteControl);
+        warmSessions().replenish(newRemoteControl.environment());
+    }
+
+    public boolean unregister(RemoteControlProxy remoteControl) {
+        final Map<RemoteControlProxy, Set<RemoteControlSession>> sessionsByRemoteControl;
+        final Set<RemoteControlSession> sessionsToRemove;
         final RemoteControlProvisioner provisioner;
+        final boolean status;
 
-        synchronized(provisionersByEnvironment) {
-            if (null == getProvisioner(newRemoteControl.environment())) {
-                createNewProvisionerForEnvironment(newRemoteControl.environment());
+        provisioner = getProvisioner(remoteControl.environment());
+        status = null != provisioner && provisioner.remove(remoteControl);
+        sessionsByRemoteControl = sessionsByRemoteControlFor(remoteControl.environment());
+        synchronized (sessionsByRemoteControl) {
+            sessionsToRemove = sessionsByRemoteControl.remove(remoteControl);
+            if (null != sessionsToRemove) {
+                for (RemoteControlSession session : sessionsToRemove) {
+                    sessionGroupsBySessionId.remove(session.sessionId());
+                    warmSessions().forget(session);
+                    if (!remoteControlsBySessionIds.remove(session.sessionId(), session)) {
+                        continue;
+                    }
+                    session.end();
+                    if (null != session.tenant()) {
+                        tenants().sessionEnded(session.tenant());
+                    }
+                }
             }
-            provisioner = getProvisioner(newRemoteControl.environment());
-            provisioner.add(newRemoteControl);
         }
+        return status;
     }
 
-    public boolean unregister(RemoteControlProxy remoteControl) {
-        final boolean status;
+    public RemoteControlProxy reserve(Environment environment) {
+        return existingProvisioner(environment).reserve();
+    }
 
-        synchronized(provisionersByEnvironment) {
-            synchronized (remoteControlsBySessionIds) {
-                Set<RemoteControlSession> sessionsToRemove = new HashSet<RemoteControlSession>();
+    public RemoteControlProxy reserve(Environment environment, int priority, long deadline, String tenant) {
+        return existingProvisioner(environment).reserve(priority, deadline, tenant);
+    }
 
-                status = getProvisioner(remoteControl.environment()).remove(remoteControl);
-                for (RemoteControlSession session : remoteControlsBySessionIds.values()) {
-                    if (session.remoteControl().equals(remoteControl)) {
-                        sessionsToRemove.add(session);
-                    }
-                }
+    /**
+     * Blocking, all or nothing reservation of session slots in several environments. As for a single
+     * session, remote controls known to be down are unregistered once handed over: the gang then gives
+     * its other remote controls back and waits again.
+     *
+     * @see GangReservation#GangReservation(List, long, String)
+     */
+    public List<RemoteControlProxy> reserve(List<Environment> environments, long deadline, String tenant) {
+        final Map<String, RemoteControlProvisioner> provisioners;
+        final List<String> environmentNames;
+        final long timeOut;
+
+        environmentNames = new ArrayList<String>(environments.size());
+        provisioners = new TreeMap<String, RemoteControlProvisioner>();
+        for (Environment environment : environments) {
+            environmentNames.add(environment.name());
+            provisioners.put(environment.name(), existingProvisioner(environment));
+        }
+        timeOut = addWithoutOverflow(System.currentTimeMillis(), newSessionMaxWaitTimeInMilliseconds());
+        while (true) {
+            final List<RemoteControlProxy> remoteControls;
 
-                // Remove the session separately from the loop where we found it to avoid issues with concurrent modification.
-                for (RemoteControlSession session : sessionsToRemove) {
-                    removeFromSessionMap(session);
+            remoteControls = reserveGang(environmentNames, provisioners, deadline, tenant, timeOut);
+            if (null == remoteControls || confirmReservations(remoteControls, tenant)) {
+                return remoteControls;
+            }
+        }
+    }
+
+    protected List<RemoteControlProxy> reserveGang(List<String> environmentNames,
+                                                   Map<String, RemoteControlProvisioner> provisioners,
+                                                   long deadline, String tenant, long timeOut) {
+        final GangReservation gang;
+        boolean served;
+
+        for (RemoteControlProvisioner provisioner : provisioners.values()) {
+            if (provisioner.allRemoteControls().isEmpty()) {
+                return null;
+            }
+        }
+        gang = new GangReservation(environmentNames, deadline, tenant);
+        for (Map.Entry<String, RemoteControlProvisioner> entry : provisioners.entrySet()) {
+            entry.getValue().enqueue(gang.members().get(entry.getKey()));
+        }
+        served = false;
+        startWaiting(gang);
+        try {
+            while (true) {
+                final long now;
+
+                served = tryToServe(gang, provisioners);
+                if (served) {
+                    return gang.remoteControls();
+                }
+                now = System.currentTimeMillis();
+                if (now >= timeOut || gang.deadlinePassed(now)) {
+                    LOGGER.info("Timed out waiting for remote controls for environments " + environmentNames);
+                    return null;
+                }
+                try {
+                    gang.awaitTurn(Math.min(timeOut, gang.deadline()) - now);
+                } catch (InterruptedException e) {
+                    LOGGER.error("Interrupted while reserving remote controls", e);
+                }
+            }
+        } finally {
+            stopWaiting(gang);
+            if (!served) {
+                for (Map.Entry<String, RemoteControlProvisioner> entry : provisioners.entrySet()) {
+                    entry.getValue().cancel(gang.members().get(entry.getKey()));
                 }
             }
         }
-        return status;
     }
 
-    public RemoteControlProxy reserve(Environment environment) {
-        final RemoteControlProvisioner provisioner;
-        
-        provisioner = getProvisioner(environment.name());
-        if (null == provisioner) {
-            throw new NoSuchEnvironmentException(environment.name());
+    /**
+     * Check that none of the remote controls handed over to a gang is known to be down.
+     *
+     * @return Whether all remote controls are reserved. If not, the ones which are not down are released.
+     * @see RemoteControlProvisioner#confirmReservation(RemoteControlProxy)
+     */
+    protected boolean confirmReservations(List<RemoteControlProxy> remoteControls, String tenant) {
+        final List<RemoteControlProxy> confirmedRemoteControls;
+
+        confirmedRemoteControls = new ArrayList<RemoteControlProxy>(remoteControls.size());
+        for (RemoteControlProxy remoteControl : remoteControls) {
+            if (confirmReservation(remoteControl)) {
+                confirmedRemoteControls.add(remoteControl);
+            }
         }
-        return provisioner.reserve();
+        if (confirmedRemoteControls.size() == remoteControls.size()) {
+            return true;
+        }
+        for (RemoteControlProxy remoteControl : confirmedRemoteControls) {
+            release(remoteControl, tenant);
+        }
+        return false;
+    }
+
+    public boolean reserve(Environment environment, PendingReservation reservation) {
+        return existingProvisioner(environment).reserve(reservation);
+    }
+
+    public RemoteControlProxy cancel(Environment environment, PendingReservation reservation) {
+        return existingProvisioner(environment).cancel(reservation);
+    }
+
+    public boolean confirmReservation(RemoteControlProxy remoteControl) {
+        return getProvisioner(remoteControl.environment()).confirmReservation(remoteControl);
     }
 
     public void associateWithSession(RemoteControlProxy remoteControl, String sessionId) {
+        associateWithSession(remoteControl, sessionId, Tenants.NO_TENANT);
+    }
+
+    public void associateWithSession(RemoteControlProxy remoteControl, String sessionId, String tenant) {
         LOGGER.info("Associating session id='" + sessionId + "' =>" + remoteControl
                     + " for environment " + remoteControl.environment());
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Asssociating " + sessionId + " => " + remoteControl);
         }
-        synchronized (remoteControlsBySessionIds) {
-            if (remoteControlsBySessionIds.containsKey(sessionId)) {
+        final Map<RemoteControlProxy, Set<RemoteControlSession>> sessionsByRemoteControl;
+        final RemoteControlSession newSession;
+        final RemoteControlSession existingSession;
+        Set<RemoteControlSession> sessions;
+
+        newSession = new RemoteControlSession(sessionId, remoteControl,
+                                              sessionMaxIdleTimeInMilliseconds(remoteControl.environment()),
+                                              remoteControl.bindSessionSlot(tenant));
+        sessionsByRemoteControl = sessionsByRemoteControlFor(remoteControl.environment());
+        synchronized (sessionsByRemoteControl) {
+            existingSession = remoteControlsBySessionIds.putIfAbsent(sessionId, newSession);
+            if (null != existingSession) {
                 throw new IllegalStateException(
-                        "Session '" + sessionId + "' is already asssociated with " + remoteControlsBySessionIds.get(sessionId));
+                        "Session '" + sessionId + "' is already asssociated with " + existingSession);
             }
-
-            final RemoteControlSession newSession;
-
-            newSession = new RemoteControlSession(sessionId, remoteControl);
-            remoteControl.setSessionId(sessionId);
-            remoteControlsBySessionIds.putIfAbsent(sessionId, newSession);
+            sessions = sessionsByRemoteControl.get(remoteControl);
+            if (null == sessions) {
+                sessions = new HashSet<RemoteControlSession>();
+                sessionsByRemoteControl.put(remoteControl, sessions);
+            }
+            sessions.add(newSession);
         }
+        sessionExpiryWheel.schedule(newSession);
+        sessionExpiryWheel.start();
         if (LOGGER.isDebugEnabled()) {
             logSessionMap();
         }
     }
 
+    public void groupSessions(List<String> sessionIds) {
+        final List<String> group;
+
+        group = Collections.unmodifiableList(new ArrayList<String>(sessionIds));
+        for (String sessionId : group) {
+            sessionGroupsBySessionId.put(sessionId, group);
+        }
+    }
+
+    public RemoteControlSession takeWarmSession(Environment environment, String browserUrl, String tenant) {
+        return warmSessions().take(environment, browserUrl, tenant);
+    }
+
     public RemoteControlProxy retrieve(String sessionId) {
         return getRemoteControlForSession(sessionId);
     }
 
     public void release(RemoteControlProxy remoteControl) {
-        getProvisioner(remoteControl.environment()).release(remoteControl);
+        release(remoteControl, Tenants.NO_TENANT);
+    }
+
+    public void release(RemoteControlProxy remoteControl, String tenant) {
+        final String freedTenant;
+
+        freedTenant = getProvisioner(remoteControl.environment()).release(remoteControl, tenant);
+        serveRequestsWaitingForQuota(freedTenant);
+        warmSessions().replenish(remoteControl.environment());
+    }
+
+    /**
+     * Free a session slot without starting a warm session in it, typically because starting one just failed.
+     */
+    protected void releaseSessionSlot(RemoteControlProxy remoteControl) {
+        final String freedTenant;
+
+        freedTenant = getProvisioner(remoteControl.environment()).release(remoteControl, Tenants.NO_TENANT);
+        serveRequestsWaitingForQuota(freedTenant);
     }
 
     public void releaseForSession(String sessionId) {
+        final List<String> group;
+
+        group = sessionGroupsBySessionId.get(sessionId);
+        if (null == group) {
+            releaseSingleSession(sessionId);
+            return;
+        }
+        for (String member : group) {
+            sessionGroupsBySessionId.remove(member, group);
+        }
+        releaseSingleSession(sessionId);
+        for (String member : group) {
+            if (!member.equals(sessionId) && null != getRemoteControlSession(member)) {
+                try {
+                    releaseSingleSession(member);
+                } catch (NoSuchSessionException e) {
+                    LOGGER.debug("Session " + member + " of the group ended while being released");
+                }
+            }
+        }
+    }
+
+    protected void releaseSingleSession(String sessionId) {
         LOGGER.info("Releasing pool for session id='" + sessionId + "'");
 
+        final RemoteControlSession session;
         final RemoteControlProxy remoteControl;
-        remoteControl = getRemoteControlForSession(sessionId);
 
-        synchronized (remoteControlsBySessionIds) {
-            remoteControlsBySessionIds.remove(sessionId);
+        session = getRemoteControlSession(sessionId);
+        if (null == session) {
+            throw new NoSuchSessionException(sessionId);
+        }
+        remoteControl = session.remoteControl();
+        warmSessions().forget(session);
+        if (!removeFromSessionMap(session)) {
+            throw new NoSuchSessionException(sessionId);
+        }
+        remoteControl.terminateSession(sessionId, commandTimeoutInMillisecondsFor("testComplete"));
+        getProvisioner(remoteControl.environment()).releaseSession(remoteControl, session.tenant());
+        serveRequestsWaitingForQuota(session.tenant());
+        warmSessions().replenish(remoteControl.environment());
+    }
+
+    /**
+     * A session slot held by a tenant with a quota was freed: requests of this tenant waiting in
+     * other environments can now be served by the remote controls idle there. Only the environments
+     * where the tenant is waiting are visited.
+     *
+     * @param tenant Tenant the freed slot was accounted to. Null if none.
+     */
+    protected void serveRequestsWaitingForQuota(String tenant) {
+        if (null == tenant || 0 == tenants().maxConcurrentSessionsOf(tenant)) {
+            return;
+        }
+        for (RemoteControlProvisioner provisioner : tenants().provisionersWithRequestsWaitingFor(tenant)) {
+            provisioner.serveWaitingRequests();
         }
-        remoteControl.terminateSession(sessionId);
-        getProvisioner(remoteControl.environment()).release(remoteControl);
     }
 
     public List<RemoteControlProxy> availableRemoteControls() {
@@ -125,30 +363,56 @@ public class GlobalRemoteControlPool implements DynamicRemoteControlPool {
         return availableRemoteControls;
     }
 
+    /**
+     * @return Remote controls running sessions in use. Remote controls only running warm sessions
+     *         are listed by {@link #warmSessions()} instead.
+     */
     public List<RemoteControlProxy> reservedRemoteControls() {
         final List<RemoteControlProxy> reservedRemoteControls;
+        final Set<RemoteControlProxy> warmRemoteControls;
 
+        warmRemoteControls = new HashSet<RemoteControlProxy>();
+        for (RemoteControlSession session : warmSessions().sessions()) {
+            warmRemoteControls.add(session.remoteControl());
+        }
         reservedRemoteControls = new LinkedList<RemoteControlProxy>();
         for (RemoteControlProvisioner provisioner : provisionersByEnvironment.values()) {
-            reservedRemoteControls.addAll(provisioner.reservedRemoteControls());
+            for (RemoteControlProxy remoteControl : provisioner.reservedRemoteControls()) {
+                if (!warmRemoteControls.contains(remoteControl) || !onlyRunsWarmSessions(remoteControl)) {
+                    reservedRemoteControls.add(remoteControl);
+                }
+            }
         }
 
         return reservedRemoteControls;
     }
 
+
+    public Map<String, Integer> pendingReservationsByEnvironment() {
+        final Map<String, Integer> pendingReservations;
+
+        pendingReservations = new HashMap<String, Integer>();
+        for (Map.Entry<String, RemoteControlProvisioner> entry : provisionersByEnvironment.entrySet()) {
+            pendingReservations.put(entry.getKey(), entry.getValue().pendingReservationCount());
+        }
+
+        return pendingReservations;
+    }
+
     public List<RemoteControlProxy> allRegisteredRemoteControls() {
         final List<RemoteControlProxy> allRemoteControls;
 
         allRemoteControls = new LinkedList<RemoteControlProxy>();
-        synchronized(provisionersByEnvironment) {
-            for (RemoteControlProvisioner provisioner : provisionersByEnvironment.values()) {
-                allRemoteControls.addAll(provisioner.allRemoteControls());
-            }
+        for (RemoteControlProvisioner provisioner : provisionersByEnvironment.values()) {
+            allRemoteControls.addAll(provisioner.allRemoteControls());
         }
 
         return allRemoteControls;
     }
 
+    /**
+     * Thread-safe, lock-free.
+     */
     public boolean isRegistered(RemoteControlProxy remoteControl) {
         for (RemoteControlProvisioner provisioner : provisionersByEnvironment.values()) {
             if (provisioner.contains(remoteControl)) {
@@ -162,6 +426,16 @@ public class GlobalRemoteControlPool implements DynamicRemoteControlPool {
         return provisionersByEnvironment.get(environment);
     }
 
+    protected RemoteControlProvisioner existingProvisioner(Environment environment) {
+        final RemoteControlProvisioner provisioner;
+
+        provisioner = getProvisioner(environment.name());
+        if (null == provisioner) {
+            throw new NoSuchEnvironmentException(environment.name());
+        }
+        return provisioner;
+    }
+
     protected RemoteControlProxy getRemoteControlForSession(String sessionId) {
         final RemoteControlSession session;
 
@@ -177,14 +451,66 @@ public class GlobalRemoteControlPool implements DynamicRemoteControlPool {
         return remoteControlsBySessionIds.get(sessionId);
     }
 
-    protected void removeFromSessionMap(RemoteControlSession session) {
-        // Use a real iterator to avoid issues with concurrent modification.
-        for (final Iterator<Map.Entry<String, RemoteControlSession>> it = remoteControlsBySessionIds.entrySet().iterator(); it.hasNext();) {
-            final Map.Entry<String, RemoteControlSession> entry = it.next();
+    /**
+     * Forget about a session in both indexes. Constant time.
+     *
+     * @return Whether this call removed the session. False if it was already removed by a concurrent
+     *         release or unregistration, which is then the one in charge of freeing its session slot.
+     */
+    protected boolean removeFromSessionMap(RemoteControlSession session) {
+        final Map<RemoteControlProxy, Set<RemoteControlSession>> sessionsByRemoteControl;
+        final Set<RemoteControlSession> sessions;
+
+        sessionsByRemoteControl = sessionsByRemoteControlFor(session.remoteControl().environment());
+        synchronized (sessionsByRemoteControl) {
+            if (!remoteControlsBySessionIds.remove(session.sessionId(), session)) {
+                return false;
+            }
+            sessions = sessionsByRemoteControl.get(session.remoteControl());
+            if (null != sessions) {
+                sessions.remove(session);
+                if (sessions.isEmpty()) {
+                    sessionsByRemoteControl.remove(session.remoteControl());
+                }
+            }
+        }
+        session.end();
+        return true;
+    }
+
+    /**
+     * @return Sessions in progress on the remote controls of an environment, indexed by remote control.
+     *         Also used as the lock for all session changes in this environment.
+     */
+    protected Map<RemoteControlProxy, Set<RemoteControlSession>> sessionsByRemoteControlFor(String environment) {
+        final Map<RemoteControlProxy, Set<RemoteControlSession>> newIndex;
+        Map<RemoteControlProxy, Set<RemoteControlSession>> existingIndex;
+
+        existingIndex = sessionsByEnvironment.get(environment);
+        if (null != existingIndex) {
+            return existingIndex;
+        }
+        newIndex = new HashMap<RemoteControlProxy, Set<RemoteControlSession>>();
+        existingIndex = sessionsByEnvironment.putIfAbsent(environment, newIndex);
+        return null == existingIndex ? newIndex : existingIndex;
+    }
+
+    protected boolean onlyRunsWarmSessions(RemoteControlProxy remoteControl) {
+        final Map<RemoteControlProxy, Set<RemoteControlSession>> sessionsByRemoteControl;
+        final Set<RemoteControlSession> sessions;
 
-            if (entry.getValue().equals(session)) {
-                it.remove();
+        sessionsByRemoteControl = sessionsByRemoteControlFor(remoteControl.environment());
+        synchronized (sessionsByRemoteControl) {
+            sessions = sessionsByRemoteControl.get(remoteControl);
+            if (null == sessions || sessions.size() < remoteControl.concurrentSessionCount()) {
+                return false;
+            }
+            for (RemoteControlSession session : sessions) {
+                if (!session.warm()) {
+                    return false;
+                }
             }
+            return true;
         }
     }
 
@@ -194,14 +520,118 @@ public class GlobalRemoteControlPool implements DynamicRemoteControlPool {
         }
     }
 
-    protected void createNewProvisionerForEnvironment(String environemntName) {
-        provisionersByEnvironment.put(environemntName, new RemoteControlProvisioner());
+    /**
+     * Hand remote controls over to a gang if it can be served in all its environments right now.
+     *
+     * @param provisioners Provisioners involved, keyed and sorted by environment name: the locking order.
+     * @return Whether the gang was served.
+     */
+    protected boolean tryToServe(GangReservation gang, Map<String, RemoteControlProvisioner> provisioners) {
+        final List<RemoteControlProvisioner> lockedProvisioners;
+        final int maxConcurrentSessions;
+
+        maxConcurrentSessions = tenants().maxConcurrentSessionsOf(gang.tenant());
+        if (maxConcurrentSessions > 0
+            && tenants().sessionsInUse(gang.tenant()) + gang.environments().size() > maxConcurrentSessions) {
+            return false;
+        }
+        lockedProvisioners = new ArrayList<RemoteControlProvisioner>(provisioners.size());
+        try {
+            for (Map.Entry<String, RemoteControlProvisioner> entry : provisioners.entrySet()) {
+                entry.getValue().lock();
+                lockedProvisioners.add(entry.getValue());
+                if (!entry.getValue().readyFor(gang.members().get(entry.getKey()))) {
+                    return false;
+                }
+            }
+            for (Map.Entry<String, RemoteControlProvisioner> entry : provisioners.entrySet()) {
+                entry.getValue().serve(gang.members().get(entry.getKey()));
+            }
+            return true;
+        } finally {
+            for (RemoteControlProvisioner provisioner : lockedProvisioners) {
+                provisioner.unlock();
+            }
+        }
+    }
+
+    /**
+     * The first gang waiting holds its turn until it is served or gives up.
+     */
+    protected void startWaiting(GangReservation gang) {
+        synchronized (waitingGangs) {
+            waitingGangs.add(gang);
+            if (gang == waitingGangs.getFirst()) {
+                gang.setOldest(true);
+            }
+        }
+    }
+
+    protected void stopWaiting(GangReservation gang) {
+        synchronized (waitingGangs) {
+            gang.setOldest(false);
+            if (waitingGangs.remove(gang) && !waitingGangs.isEmpty()) {
+                waitingGangs.getFirst().setOldest(true);
+            }
+        }
+    }
+
+    protected long newSessionMaxWaitTimeInMilliseconds() {
+        final double maxWaitTimeInSeconds;
+
+        maxWaitTimeInSeconds = HubRegistry.registry().gridConfiguration().getHub().getNewSessionMaxWaitTimeInSeconds();
+        return Double.isInfinite(maxWaitTimeInSeconds) ? Long.MAX_VALUE : (long) (maxWaitTimeInSeconds * 1000);
+    }
+
+    protected static long addWithoutOverflow(long time, long duration) {
+        return duration > Long.MAX_VALUE - time ? Long.MAX_VALUE : time + duration;
     }
 
+    /**
+     * Thread-safe, lock-free: provisioners are created atomically the first time an environment is seen.
+     *
+     * @return Provisioner for the environment, newly created if there was none. Never null.
+     */
+    protected RemoteControlProvisioner provisionerFor(final String environment) {
+        final RemoteControlProvisioner newProvisioner;
+        RemoteControlProvisioner existingProvisioner;
+
+        existingProvisioner = getProvisioner(environment);
+        if (null != existingProvisioner) {
+            return existingProvisioner;
+        }
+        newProvisioner = new RemoteControlProvisioner(loadBalancingStrategyFor(environment),
+                                                      maxPendingNewSessionRequestsFor(environment), tenants());
+        newProvisioner.setWaitingRequestListener(new RemoteControlProvisioner.WaitingRequestListener() {
+            public void requestWaiting() {
+                warmSessions().makeRoom(environment);
+            }
+        });
+        existingProvisioner = provisionersByEnvironment.putIfAbsent(environment, newProvisioner);
+        return null == existingProvisioner ? newProvisioner : existingProvisioner;
+    }
+
+    /**
+     * Ping all remote controls in parallel and unregister the unresponsive ones.
+     * Remote controls that successfully answered a command or heartbeat during the last
+     * polling interval are not pinged again.
+     */
     public void unregisterAllUnresponsiveRemoteControls() {
-        for (RemoteControlProxy rc : allRegisteredRemoteControls()) {
-            unregisterRemoteControlIfUnreliable(rc);
+        final List<Runnable> probes;
+
+        probes = new LinkedList<Runnable>();
+        for (final RemoteControlProxy rc : allRegisteredRemoteControls()) {
+            if (rc.health().confirmedWithin(healthConfirmationPeriodInMilliseconds())) {
+                LOGGER.debug("Skipping heartbeat for " + rc + " which answered recently");
+                continue;
+            }
+            probes.add(new Runnable() {
+                public void run() {
+                    unregisterRemoteControlIfUnreliable(rc);
+                }
+            });
         }
+        heartbeatSweeper().sweep(probes);
     }
 
     protected void unregisterRemoteControlIfUnreliable(RemoteControlProxy rc) {
@@ -211,26 +641,133 @@ public class GlobalRemoteControlPool implements DynamicRemoteControlPool {
         }
     }
 
+    /**
+     * @return Lazily created heartbeat sweeper, configured from the hub configuration.
+     */
+    public synchronized HeartbeatSweeper heartbeatSweeper() {
+        final HubConfiguration configuration;
+        final long maxJitterInMilliseconds;
+        final long deadlineInMilliseconds;
+
+        if (null == heartbeatSweeper) {
+            configuration = HubRegistry.registry().gridConfiguration().getHub();
+            maxJitterInMilliseconds = (long) (configuration.getHeartbeatMaxJitterInSeconds() * 1000);
+            deadlineInMilliseconds = Math.max(healthConfirmationPeriodInMilliseconds(),
+                    maxJitterInMilliseconds + (long) (configuration.getHeartbeatTimeoutInSeconds() * 1000));
+            heartbeatSweeper = new HeartbeatSweeper(configuration.getHeartbeatThreadCount(),
+                                                    deadlineInMilliseconds, maxJitterInMilliseconds);
+        }
+        return heartbeatSweeper;
+    }
+
+    /**
+     * @return Lazily created tenants, configured from the hub configuration.
+     */
+    public synchronized Tenants tenants() {
+        if (null == tenants) {
+            tenants = new Tenants(HubRegistry.registry().gridConfiguration().getHub().getTenants());
+        }
+        return tenants;
+    }
+
+    /**
+     * @return Lazily created warm session pool.
+     */
+    public synchronized WarmSessionPool warmSessions() {
+        if (null == warmSessions) {
+            warmSessions = new WarmSessionPool(this);
+        }
+        return warmSessions;
+    }
+
+    /**
+     * Release a session the session expiry wheel found idle for too long, unless it already ended
+     * or is a warm session being handed out.
+     */
+    protected void reclaimIdleSession(RemoteControlSession session) {
+        if (session != getRemoteControlSession(session.sessionId())) {
+            return;
+        }
+        if (session.warm() && !warmSessions().forget(session)) {
+            return;
+        }
+        LOGGER.warn("Releasing session IDLE for more than " + session.maxIdleTimeInMilliseconds() / 1000
+                    + " seconds: " + session);
+        try {
+            releaseForSession(session.sessionId());
+        } catch (NoSuchSessionException e) {
+            LOGGER.debug("Session " + session.sessionId() + " ended while being reclaimed");
+        }
+    }
+
+    protected LoadBalancingStrategy loadBalancingStrategyFor(String environment) {
+        return LoadBalancingStrategies.named(HubRegistry.registry().gridConfiguration().getHub().loadBalancingStrategyFor(environment));
+    }
+
+    protected int maxPendingNewSessionRequestsFor(String environment) {
+        return HubRegistry.registry().gridConfiguration().getHub().maxPendingNewSessionRequestsFor(environment);
+    }
+
+    protected int commandTimeoutInMillisecondsFor(String command) {
+        return (int) (HubRegistry.registry().gridConfiguration().getHub().commandTimeoutInSecondsFor(command) * 1000);
+    }
+
+    protected long sessionMaxIdleTimeInMilliseconds(String environment) {
+        return (long) (HubRegistry.registry().gridConfiguration().getHub().sessionMaxIdleTimeInSecondsFor(environment) * 1000);
+    }
+
+    public SessionExpiryWheel sessionExpiryWheel() {
+        return sessionExpiryWheel;
+    }
+
+    protected long healthConfirmationPeriodInMilliseconds() {
+        return (long) (HubRegistry.registry().gridConfiguration().getHub().getRemoteControlPollingIntervalInSeconds() * 1000);
+    }
+
+    /**
+     * Does nothing for a session that has already ended, e.g. released while one of its
+     * commands was in flight.
+     */
     public void updateSessionLastActiveAt(String sessionId) {
-        getRemoteControlSession(sessionId).updateLastActiveAt();
+        final RemoteControlSession activeSession;
+        final List<String> group;
+
+        activeSession = getRemoteControlSession(sessionId);
+        if (null == activeSession) {
+            return;
+        }
+        activeSession.updateLastActiveAt();
+        group = sessionGroupsBySessionId.get(sessionId);
+        if (null == group) {
+            return;
+        }
+        for (String member : group) {
+            final RemoteControlSession session;
+
+            session = getRemoteControlSession(member);
+            if (null != session && !member.equals(sessionId)) {
+                session.updateLastActiveAt();
+            }
+        }
     }
 
+    /**
+     * Full scan of all sessions using a single idle time out. Idle sessions are normally
+     * reclaimed by the session expiry wheel, using the time out of their environment.
+     */
     public void recycleAllSessionsIdleForTooLong(double maxIdleTimeInSeconds) {
         for (RemoteControlSession session : iteratorSafeRemoteControlSessions()) {
             recycleSessionIfIdleForTooLong(session, maxIdleTimeInSeconds);
         }
     }
 
+    /**
+     * Thread-safe, lock-free.
+     *
+     * @return Snapshot of all sessions in progress.
+     */
     public Set<RemoteControlSession> iteratorSafeRemoteControlSessions() {
-        final Set<RemoteControlSession> iteratorSafeCopy;
-
-        iteratorSafeCopy = new HashSet<RemoteControlSession>();
-        synchronized (remoteControlsBySessionIds) {
-            for (Map.Entry<String, RemoteControlSession> entry : remoteControlsBySessionIds.entrySet()) {
-                iteratorSafeCopy.add(entry.getValue());
-            }
-        }
-        return iteratorSafeCopy;
+        return new HashSet<RemoteControlSession>(remoteControlsBySessionIds.values());
     }
 
     public void recycleSessionIfIdleForTooLong(RemoteControlSession session, double maxIdleTimeInSeconds) {
@@ -0,0 +1,150 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Run remote control heartbeats in parallel on a bounded pool of worker threads.
+ * <p/>
+ * Each probe start is delayed by a random jitter so that probes are spread over time
+ * instead of all hitting the grid at once. A sweep never lasts longer than its deadline:
+ * probes still pending or running at the deadline are cancelled and retried on the next sweep.
+ */
+public class HeartbeatSweeper {
+
+    private static final Log LOGGER = LogFactory.getLog(HeartbeatSweeper.class);
+    private final ScheduledExecutorService executor;
+    private final long deadlineInMilliseconds;
+    private final long maxJitterInMilliseconds;
+    private final Random random;
+    private long sweepCount;
+    private long lastSweepDurationInMilliseconds;
+    private int lastSweepProbeCount;
+    private int lastSweepUnfinishedProbeCount;
+
+    /**
+     * @param threadCount              Maximum number of concurrent probes.
+     * @param deadlineInMilliseconds   Maximum duration of a sweep.
+     * @param maxJitterInMilliseconds  Upper bound of the random delay before each probe. 0 for no jitter.
+     */
+    public HeartbeatSweeper(int threadCount, long deadlineInMilliseconds, long maxJitterInMilliseconds) {
+        this.executor = Executors.newScheduledThreadPool(Math.max(1, threadCount), new HeartbeatThreadFactory());
+        this.deadlineInMilliseconds = deadlineInMilliseconds;
+        this.maxJitterInMilliseconds = Math.max(0, Math.min(maxJitterInMilliseconds, deadlineInMilliseconds));
+        this.random = new Random();
+    }
+
+    /**
+     * Run all probes and wait until they are all done or the sweep deadline expires.
+     *
+     * @param probes Heartbeat probes, one per remote control. Should not be null.
+     */
+    public void sweep(Collection<Runnable> probes) {
+        final List<ScheduledFuture<?>> pendingProbes;
+        final long startedAt;
+        final long deadline;
+        int unfinishedProbeCount;
+
+        startedAt = System.nanoTime();
+        deadline = startedAt + TimeUnit.MILLISECONDS.toNanos(deadlineInMilliseconds);
+        pendingProbes = new ArrayList<ScheduledFuture<?>>(probes.size());
+        for (Runnable probe : probes) {
+            pendingProbes.add(executor.schedule(probe, jitterInMilliseconds(), TimeUnit.MILLISECONDS));
+        }
+
+        unfinishedProbeCount = 0;
+        for (ScheduledFuture<?> probe : pendingProbes) {
+            if (!waitForProbe(probe, deadline - System.nanoTime())) {
+                probe.cancel(true);
+                unfinishedProbeCount += 1;
+            }
+        }
+
+        recordSweep(probes.size(), unfinishedProbeCount, System.nanoTime() - startedAt);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public synchronized long sweepCount() {
+        return sweepCount;
+    }
+
+    public synchronized long lastSweepDurationInMilliseconds() {
+        return lastSweepDurationInMilliseconds;
+    }
+
+    public synchronized int lastSweepProbeCount() {
+        return lastSweepProbeCount;
+    }
+
+    public synchronized int lastSweepUnfinishedProbeCount() {
+        return lastSweepUnfinishedProbeCount;
+    }
+
+    /**
+     * @return false if the probe did not complete before the deadline.
+     */
+    protected boolean waitForProbe(ScheduledFuture<?> probe, long remainingNanoseconds) {
+        try {
+            probe.get(Math.max(0, remainingNanoseconds), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (CancellationException e) {
+            return false;
+        } catch (ExecutionException e) {
+            LOGGER.error("Heartbeat probe failed", e.getCause());
+            return true;
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for heartbeat probes");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    protected synchronized long jitterInMilliseconds() {
+        if (0 == maxJitterInMilliseconds) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * maxJitterInMilliseconds);
+    }
+
+    protected synchronized void recordSweep(int probeCount, int unfinishedProbeCount, long durationInNanoseconds) {
+        sweepCount += 1;
+        lastSweepProbeCount = probeCount;
+        lastSweepUnfinishedProbeCount = unfinishedProbeCount;
+        lastSweepDurationInMilliseconds = TimeUnit.NANOSECONDS.toMillis(durationInNanoseconds);
+        LOGGER.info("Heartbeat sweep #" + sweepCount + " probed " + probeCount + " remote controls in "
+                    + lastSweepDurationInMilliseconds + " ms (" + unfinishedProbeCount + " unfinished at deadline)");
+    }
+
+    protected static class HeartbeatThreadFactory implements ThreadFactory {
+
+        private int threadCount = 0;
+
+        public synchronized Thread newThread(Runnable runnable) {
+            final Thread thread;
+
+            threadCount += 1;
+            thread = new Thread(runnable, "RC Heartbeat " + threadCount);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
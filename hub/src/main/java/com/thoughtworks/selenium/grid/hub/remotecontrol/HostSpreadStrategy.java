@@ -0,0 +1,46 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Picks an idle remote control on the host running the fewest sessions for this environment,
+ * so that browser start ups are spread across distinct machines. Among remote controls on
+ * equally loaded hosts, the one idle the longest wins.
+ * Linear in the number of remote controls of the environment.
+ */
+public class HostSpreadStrategy implements LoadBalancingStrategy {
+
+    public RemoteControlProxy select(Collection<RemoteControlProxy> idleRemoteControls,
+                                     Collection<RemoteControlProxy> busyRemoteControls) {
+        final Map<String, Integer> sessionCountByHost;
+        RemoteControlProxy selected = null;
+        int selectedHostLoad = Integer.MAX_VALUE;
+
+        sessionCountByHost = new HashMap<String, Integer>();
+        countSessionsByHost(idleRemoteControls, sessionCountByHost);
+        countSessionsByHost(busyRemoteControls, sessionCountByHost);
+        for (RemoteControlProxy candidate : idleRemoteControls) {
+            final Integer sessionCount = sessionCountByHost.get(candidate.host());
+            final int hostLoad = (null == sessionCount) ? 0 : sessionCount;
+
+            if (hostLoad < selectedHostLoad) {
+                selected = candidate;
+                selectedHostLoad = hostLoad;
+            }
+        }
+        return selected;
+    }
+
+    protected static void countSessionsByHost(Collection<RemoteControlProxy> remoteControls,
+                                              Map<String, Integer> sessionCountByHost) {
+        for (RemoteControlProxy remoteControl : remoteControls) {
+            final Integer sessionCount = sessionCountByHost.get(remoteControl.host());
+            final int newSessionCount = remoteControl.concurrentSessionCount();
+
+            sessionCountByHost.put(remoteControl.host(), (null == sessionCount) ? newSessionCount : sessionCount + newSessionCount);
+        }
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.Collection;
+
+/**
+ * Picks the remote control that has been idle the longest. Constant time.
+ */
+public class LeastRecentlyUsedStrategy implements LoadBalancingStrategy {
+
+    public RemoteControlProxy select(Collection<RemoteControlProxy> idleRemoteControls,
+                                     Collection<RemoteControlProxy> busyRemoteControls) {
+        return idleRemoteControls.iterator().next();
+    }
+
+}
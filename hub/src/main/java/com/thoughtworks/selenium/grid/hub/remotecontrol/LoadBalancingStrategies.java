@@ -0,0 +1,42 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Load balancing strategies that can be selected by name in <code>grid_configuration.yml</code>,
+ * either hub-wide or per environment:
+ * <ul>
+ * <li><code>least-recently-used</code> (default)</li>
+ * <li><code>round-robin</code></li>
+ * <li><code>random-two-choices</code></li>
+ * <li><code>host-spread</code></li>
+ * </ul>
+ */
+public class LoadBalancingStrategies {
+
+    private static final Log LOGGER = LogFactory.getLog(LoadBalancingStrategies.class);
+    public static final String LEAST_RECENTLY_USED = "least-recently-used";
+    public static final String ROUND_ROBIN = "round-robin";
+    public static final String RANDOM_TWO_CHOICES = "random-two-choices";
+    public static final String HOST_SPREAD = "host-spread";
+
+    /**
+     * @param name Strategy name as found in the configuration. Can be null.
+     * @return New strategy instance (strategies keep per-environment state). Least recently
+     *         used when the name is null or unknown.
+     */
+    public static LoadBalancingStrategy named(String name) {
+        if (ROUND_ROBIN.equals(name)) {
+            return new RoundRobinStrategy();
+        } else if (RANDOM_TWO_CHOICES.equals(name)) {
+            return new RandomTwoChoicesStrategy();
+        } else if (HOST_SPREAD.equals(name)) {
+            return new HostSpreadStrategy();
+        } else if (null != name && !LEAST_RECENTLY_USED.equals(name)) {
+            LOGGER.warn("Unknown load balancing strategy '" + name + "', using " + LEAST_RECENTLY_USED);
+        }
+        return new LeastRecentlyUsedStrategy();
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.Collection;
+
+/**
+ * Picks which idle remote control serves the next new session request of an environment.
+ * <p/>
+ * Always called by the provisioner while holding its lock: implementations do not need
+ * to be thread-safe but must be quick and must never talk to a remote control.
+ *
+ * @see LoadBalancingStrategies
+ */
+public interface LoadBalancingStrategy {
+
+    /**
+     * @param idleRemoteControls Remote controls with a free session slot, longest idle first. Never empty. Read-only.
+     * @param busyRemoteControls Remote controls of the same environment with all their session slots taken. Read-only.
+     * @return One of the idle remote controls. Never null.
+     */
+    RemoteControlProxy select(Collection<RemoteControlProxy> idleRemoteControls,
+                              Collection<RemoteControlProxy> busyRemoteControls);
+
+}
@@ -0,0 +1,170 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.Comparator;
+
+/**
+ * Request for a remote control waiting in a provisioner queue.
+ * <p/>
+ * When a remote control becomes available, the provisioner hands it over directly to
+ * the next request in {@link #SCHEDULING_ORDER} (while holding its lock) and lets the request
+ * know about it. How the request waits for the hand-over (blocking a thread or not) is up to
+ * subclasses.
+ * <p/>
+ * A request can carry a priority (the higher, the sooner it is served) and a deadline, past
+ * which it is no use giving it a remote control: the provisioner then expires it instead.
+ * <p/>
+ * A request also belongs to a tenant (the team it is made for): see {@link Tenants}.
+ * <p/>
+ * When too many requests are already waiting, the provisioner turns the request down right away,
+ * with an estimate of when it would be worth trying again.
+ */
+public abstract class PendingReservation {
+
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Highest priority first, then earliest deadline first, then arrival order.
+     */
+    public static final Comparator<PendingReservation> SCHEDULING_ORDER = new Comparator<PendingReservation>() {
+        public int compare(PendingReservation first, PendingReservation second) {
+            if (first.priority != second.priority) {
+                return first.priority > second.priority ? -1 : 1;
+            }
+            if (first.deadline != second.deadline) {
+                return first.deadline < second.deadline ? -1 : 1;
+            }
+            if (first.sequenceNumber != second.sequenceNumber) {
+                return first.sequenceNumber < second.sequenceNumber ? -1 : 1;
+            }
+            return 0;
+        }
+    };
+
+    private final int priority;
+    private final long deadline;
+    private final String tenant;
+    private long sequenceNumber;
+    private volatile RemoteControlProxy remoteControl;
+    private volatile boolean expired;
+    private volatile long retryAfterInMilliseconds = -1;
+
+    protected PendingReservation() {
+        this(DEFAULT_PRIORITY, NO_DEADLINE);
+    }
+
+    /**
+     * @param priority Requests with a higher priority are served first.
+     * @param deadline Time (as given by <code>System.currentTimeMillis()</code>) past which the request
+     *                 must not be served anymore. {@link #NO_DEADLINE} if there is none.
+     */
+    protected PendingReservation(int priority, long deadline) {
+        this(priority, deadline, Tenants.NO_TENANT);
+    }
+
+    /**
+     * @param tenant Tenant the request is made for. Null for {@link Tenants#NO_TENANT}.
+     * @see #PendingReservation(int, long)
+     */
+    protected PendingReservation(int priority, long deadline, String tenant) {
+        this.priority = priority;
+        this.deadline = deadline;
+        this.tenant = null == tenant ? Tenants.NO_TENANT : tenant;
+    }
+
+    public void assign(RemoteControlProxy remoteControl) {
+        this.remoteControl = remoteControl;
+        remoteControlAssigned();
+    }
+
+    /**
+     * Give up on serving this request because its deadline has passed.
+     */
+    public void expire() {
+        this.expired = true;
+        remoteControlAssigned();
+    }
+
+    /**
+     * Turn down this request without queuing it because too many requests are already waiting.
+     *
+     * @param retryAfterInMilliseconds Estimate of how long it will take for the queue to drain enough.
+     */
+    public void reject(long retryAfterInMilliseconds) {
+        this.retryAfterInMilliseconds = Math.max(0, retryAfterInMilliseconds);
+        remoteControlAssigned();
+    }
+
+    /**
+     * @return Remote control handed over to this request. Null until assigned.
+     */
+    public RemoteControlProxy remoteControl() {
+        return remoteControl;
+    }
+
+    /**
+     * @return Whether the request has been expired instead of being served.
+     */
+    public boolean expired() {
+        return expired;
+    }
+
+    /**
+     * @return Whether the request has been turned down because the queue was full.
+     */
+    public boolean rejected() {
+        return retryAfterInMilliseconds >= 0;
+    }
+
+    /**
+     * @return How long to wait before trying again, for a rejected request. -1 if the request was not rejected.
+     */
+    public long retryAfterInMilliseconds() {
+        return retryAfterInMilliseconds;
+    }
+
+    /**
+     * @param now Current time, as given by <code>System.currentTimeMillis()</code>.
+     */
+    public boolean deadlinePassed(long now) {
+        return now >= deadline;
+    }
+
+    public int priority() {
+        return priority;
+    }
+
+    public long deadline() {
+        return deadline;
+    }
+
+    /**
+     * @return Tenant the request is made for. Never null.
+     */
+    public String tenant() {
+        return tenant;
+    }
+
+    /**
+     * Set by the provisioner when queuing the request, to serve requests of the same priority
+     * and deadline in arrival order.
+     */
+    protected void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * @return Whether this request was queued before another one queued by the same provisioner.
+     */
+    public boolean arrivedBefore(PendingReservation other) {
+        return sequenceNumber < other.sequenceNumber;
+    }
+
+    /**
+     * Called by the provisioner right after a remote control has been assigned to this request,
+     * or after the request expired or was rejected. Invoked while holding the provisioner lock: must be quick
+     * and must never block.
+     */
+    protected abstract void remoteControlAssigned();
+
+}
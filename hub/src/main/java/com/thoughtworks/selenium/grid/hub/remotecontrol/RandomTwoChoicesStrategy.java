@@ -0,0 +1,74 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Picks two idle remote controls at random and keeps the one whose host runs fewer sessions
+ * for this environment ("power of two choices"). Spreads load almost as well as a full scan
+ * of the hosts while staying cheap and avoiding herding on a single host.
+ */
+public class RandomTwoChoicesStrategy implements LoadBalancingStrategy {
+
+    private final Random random;
+
+    public RandomTwoChoicesStrategy() {
+        this(new Random());
+    }
+
+    public RandomTwoChoicesStrategy(Random random) {
+        this.random = random;
+    }
+
+    public RemoteControlProxy select(Collection<RemoteControlProxy> idleRemoteControls,
+                                     Collection<RemoteControlProxy> busyRemoteControls) {
+        final RemoteControlProxy firstChoice;
+        final RemoteControlProxy secondChoice;
+        final int firstIndex;
+        int secondIndex;
+
+        if (idleRemoteControls.size() == 1) {
+            return idleRemoteControls.iterator().next();
+        }
+        firstIndex = random.nextInt(idleRemoteControls.size());
+        secondIndex = random.nextInt(idleRemoteControls.size() - 1);
+        if (secondIndex >= firstIndex) {
+            secondIndex += 1;
+        }
+        firstChoice = nth(idleRemoteControls, firstIndex);
+        secondChoice = nth(idleRemoteControls, secondIndex);
+
+        return sessionCountOn(secondChoice.host(), idleRemoteControls, busyRemoteControls)
+                < sessionCountOn(firstChoice.host(), idleRemoteControls, busyRemoteControls)
+                ? secondChoice : firstChoice;
+    }
+
+    protected static int sessionCountOn(String host,
+                                        Collection<RemoteControlProxy> idleRemoteControls,
+                                        Collection<RemoteControlProxy> busyRemoteControls) {
+        return sessionCountOn(host, idleRemoteControls) + sessionCountOn(host, busyRemoteControls);
+    }
+
+    protected static int sessionCountOn(String host, Collection<RemoteControlProxy> remoteControls) {
+        int count = 0;
+
+        for (RemoteControlProxy remoteControl : remoteControls) {
+            if (remoteControl.host().equals(host)) {
+                count += remoteControl.concurrentSessionCount();
+            }
+        }
+        return count;
+    }
+
+    protected static RemoteControlProxy nth(Collection<RemoteControlProxy> remoteControls, int index) {
+        final Iterator<RemoteControlProxy> iterator;
+
+        iterator = remoteControls.iterator();
+        for (int i = 0; i < index; i++) {
+            iterator.next();
+        }
+        return iterator.next();
+    }
+
+}
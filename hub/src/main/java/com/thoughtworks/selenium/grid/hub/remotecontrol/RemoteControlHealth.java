@@ -0,0 +1,92 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+/**
+ * Last known health of a remote control, fed by background heartbeats and by the outcome
+ * of the Selenese commands forwarded to it.
+ * <p/>
+ * Reading the health state never talks to the remote control, so it is cheap enough to be
+ * checked on every reservation. Thread-safe.
+ */
+public class RemoteControlHealth {
+
+    private final int maxConsecutiveFailures;
+    private int consecutiveFailureCount;
+    private long lastSuccessfulContactAt;
+    private boolean down;
+    private int timedOutCommandCount;
+
+    /**
+     * @param maxConsecutiveFailures Number of consecutive failed contacts tolerated before the
+     *                               remote control is considered down.
+     */
+    public RemoteControlHealth(int maxConsecutiveFailures) {
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+        this.consecutiveFailureCount = 0;
+        this.lastSuccessfulContactAt = 0;
+        this.down = false;
+    }
+
+    public synchronized void recordSuccessfulContact() {
+        consecutiveFailureCount = 0;
+        lastSuccessfulContactAt = now();
+        down = false;
+    }
+
+    /**
+     * Record a failed contact, the remote control being considered down once
+     * too many contacts failed in a row.
+     */
+    public synchronized void recordFailedContact() {
+        consecutiveFailureCount += 1;
+        if (consecutiveFailureCount > maxConsecutiveFailures) {
+            down = true;
+        }
+    }
+
+    /**
+     * Consider the remote control down right away, for instance after a heartbeat failed
+     * even though it was retried.
+     */
+    public synchronized void markDown() {
+        consecutiveFailureCount += 1;
+        down = true;
+    }
+
+    /**
+     * A command missed its deadline: the browser is most likely hung, so the remote control is
+     * considered down right away.
+     */
+    public synchronized void recordTimedOutCommand() {
+        timedOutCommandCount += 1;
+        markDown();
+    }
+
+    public synchronized int timedOutCommandCount() {
+        return timedOutCommandCount;
+    }
+
+    public synchronized boolean down() {
+        return down;
+    }
+
+    public synchronized int consecutiveFailureCount() {
+        return consecutiveFailureCount;
+    }
+
+    /**
+     * @param periodInMilliseconds How far to look back.
+     * @return Whether the remote control is not down and answered successfully during the last period.
+     */
+    public synchronized boolean confirmedWithin(long periodInMilliseconds) {
+        return !down && 0 != lastSuccessfulContactAt && now() - lastSuccessfulContactAt <= periodInMilliseconds;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    public synchronized String toString() {
+        return "[RemoteControlHealth down=" + down + ", consecutiveFailures=" + consecutiveFailureCount + "]";
+    }
+
+}
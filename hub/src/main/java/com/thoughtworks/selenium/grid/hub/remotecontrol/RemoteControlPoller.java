@@ -3,21 +3,22 @@ package com.thoughtworks.selenium.grid.hub.remotecontrol;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * Periodically unregisters unresponsive remote controls. Sessions idle for too long are
+ * reclaimed separately by the pool's {@link SessionExpiryWheel}.
+ */
 public class RemoteControlPoller implements Runnable {
     private final long pollingIntervalInMilliseconds;
-    private final double sessionMaxIdleTimeInSeconds;
     private final DynamicRemoteControlPool pool;
     private boolean active;
 
     private static final Log LOGGER = LogFactory.getLog(RemoteControlPoller.class);
 
     public RemoteControlPoller(DynamicRemoteControlPool pool,
-                               double pollingIntervalInSeconds,
-                               double sessionMaxIdleTimeInSeconds) {
+                               double pollingIntervalInSeconds) {
         this.pollingIntervalInMilliseconds = (long) (pollingIntervalInSeconds * 1000);
         this.pool = pool;
         this.active = true;
-        this.sessionMaxIdleTimeInSeconds = sessionMaxIdleTimeInSeconds;
     }
 
     public boolean active() {
@@ -36,9 +37,8 @@ public class RemoteControlPoller implements Runnable {
 
     public void garbageCollectRemoteControls() {
         sleepForALittleWhile();
-        LOGGER.info("Garbage collecting unavailable RCs and stale sessions...");
+        LOGGER.info("Garbage collecting unavailable RCs...");
         pool.unregisterAllUnresponsiveRemoteControls();
-        pool.recycleAllSessionsIdleForTooLong(sessionMaxIdleTimeInSeconds);
     }
     
     protected void sleepForALittleWhile() {
@@ -53,9 +53,5 @@ public class RemoteControlPoller implements Runnable {
         return pollingIntervalInMilliseconds;
     }
 
-    public double sessionMaxIdleTimeInSeconds() {
-        return sessionMaxIdleTimeInSeconds;
-    }
-
 
 }
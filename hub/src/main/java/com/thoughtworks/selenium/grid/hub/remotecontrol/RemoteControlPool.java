@@ -2,6 +2,8 @@ package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
 import com.thoughtworks.selenium.grid.hub.Environment;
 
+import java.util.List;
+
 /**
  * Pool of remote controls that can be used to process Selenese requests.
  */
@@ -17,6 +19,31 @@ public interface RemoteControlPool {
      */
     RemoteControlProxy reserve(Environment environment);
 
+    /**
+     * Like {@link #reserve(Environment)}, for a request served according to its tenant fair share,
+     * then its priority and deadline among the ones waiting for the same environment.
+     *
+     * @param priority  Requests with a higher priority are served first.
+     * @param deadline  Time (as given by <code>System.currentTimeMillis()</code>) past which the request
+     *                  gives up. {@link PendingReservation#NO_DEADLINE} if there is none.
+     * @param tenant    Tenant the request is made for. {@link Tenants#NO_TENANT} if none.
+     * @return Reserved remote control. Null on time out or once the deadline has passed.
+     */
+    RemoteControlProxy reserve(Environment environment, int priority, long deadline, String tenant);
+
+    /**
+     * Gain exclusive access to remote controls in several environments at once, all or nothing.
+     *
+     * @param environments Environments of the remote controls, one per session. Should not be null.
+     * @param deadline     Time (as given by <code>System.currentTimeMillis()</code>) past which the request
+     *                     gives up. {@link PendingReservation#NO_DEADLINE} if there is none.
+     * @param tenant       Tenant the sessions are requested for. {@link Tenants#NO_TENANT} if none.
+     * @return Reserved remote controls, in the order of the environments. Null if some environment has no
+     *         remote control, on time out or once the deadline has passed.
+     * @see GangReservation
+     */
+    List<RemoteControlProxy> reserve(List<Environment> environments, long deadline, String tenant);
+
     /**
      * Associates a reserved remote control with a Selenese session id. Once associated
      * the remote control can easily be retrieved by session id.
@@ -27,6 +54,35 @@ public interface RemoteControlPool {
      */
     void associateWithSession(RemoteControlProxy remoteControl, String sessionId);
 
+    /**
+     * Associates a remote control reserved for a tenant with a Selenese session id.
+     *
+     * @param remoteControl Reserved remote control to be associated with session. Should not be null.
+     * @param sessionId     Id of the session to associate the remote control with. Should not be null.
+     * @param tenant        Tenant the remote control was reserved for. {@link Tenants#NO_TENANT} if none.
+     * @see RemoteControlPool#associateWithSession(RemoteControlProxy, String)
+     */
+    void associateWithSession(RemoteControlProxy remoteControl, String sessionId, String tenant);
+
+    /**
+     * Hand out a session started ahead of demand, instead of reserving a remote control and starting one.
+     *
+     * @param environment Environment the session is requested for. Should not be null.
+     * @param browserUrl  Browser URL the session is requested for. Null if none.
+     * @param tenant      Tenant the session is requested for. {@link Tenants#NO_TENANT} if none.
+     * @return Session already associated with its remote control. Null if there is no suitable warm session.
+     * @see WarmSessionPool
+     */
+    RemoteControlSession takeWarmSession(Environment environment, String browserUrl, String tenant);
+
+    /**
+     * Bind sessions started together: they are kept alive and released together.
+     *
+     * @param sessionIds Ids of sessions associated with remote controls. Should not be null.
+     * @see RemoteControlPool#releaseForSession(String)
+     */
+    void groupSessions(List<String> sessionIds);
+
     /**
      * Returns the remote control associated with a specific Selenese session.
      *
@@ -43,9 +99,18 @@ public interface RemoteControlPool {
      */
     void release(RemoteControlProxy remoteControl);
 
+    /**
+     * Release a remote control that was previously reserved for a tenant, when no session could be
+     * started on it.
+     *
+     * @param remoteControl  Previously reserved remote control. Should not be null.
+     * @param tenant         Tenant the remote control was reserved for. {@link Tenants#NO_TENANT} if none.
+     */
+    void release(RemoteControlProxy remoteControl, String tenant);
+
     /**
      * Release a remote control that was previously reserved, so it can be used to serve other
-     * Selenese sessions.
+     * Selenese sessions. Releases the other sessions of its group as well, if any.
      *
      * @param sessionId  Id of the selenese session the remote control is associated with. Should not be null.
      */
@@ -1,14 +1,23 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
 import com.thoughtworks.selenium.grid.hub.HubRegistry;
+import com.thoughtworks.selenium.grid.hub.NewSessionQueueFullException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -17,202 +26,807 @@ import java.util.concurrent.locks.ReentrantLock;
  * access to a remote control for a while.
  * <p/>
  * A client will block if it attempts to reserve a remote control and none is
- * available. The call will return as soon as a remote control becomes available
- * again.
+ * available, unless it queues its own {@link PendingReservation} and gets notified on
+ * hand-over. Waiting clients are served in scheduling order: a remote control that becomes
+ * available is handed over directly to the next waiting client, highest priority first, then
+ * earliest deadline first, then longest waiting first (see {@link PendingReservation#SCHEDULING_ORDER}).
+ * Requests whose deadline has passed are expired instead of being handed a remote control they
+ * could not use anymore.
+ * <p/>
+ * When several tenants (see {@link Tenants}) are waiting, the next remote control goes to the
+ * tenant holding the fewest sessions relative to its weight, and scheduling order only applies
+ * among the requests of that tenant. A tenant holding as many sessions as its quota allows
+ * is not served until one of them ends, even if a remote control is idle.
+ * <p/>
+ * Requests for sessions in several environments at once wait here as {@link GangMember}s, in
+ * arrival order with the other requests. When it is the turn of the oldest gang, freed session slots
+ * are left idle for it until the gang can be served in all its environments at once (see
+ * {@link GangReservation}).
+ * <p/>
+ * Registered remote controls are indexed by host and port, and are either idle
+ * (at least one free session slot, kept in registration/release order) or busy
+ * (all session slots taken). A session slot is taken as soon as a remote control is
+ * handed over to a request. Reserving,
+ * releasing, adding and removing a remote control are all constant time and the
+ * lock is never held while talking to a remote control. Reserving only reads the cached
+ * health of remote controls, it never pings them.
+ * <p/>
+ * Which idle remote control gets reserved is up to a {@link LoadBalancingStrategy}.
+ * <p/>
+ * Idle remote controls can also be reserved ahead of demand, for warm sessions (see
+ * {@link WarmSessionPool}), but only while nobody is waiting. A {@link WaitingRequestListener}
+ * gets told when a request has to wait, so that warm sessions can make room for it.
+ * <p/>
+ * The number of waiting requests can be capped. Past the limit, requests are turned down
+ * right away with an estimate of when to try again: the number of requests ahead times the
+ * average interval between recent releases of a session slot.
  */
 public class RemoteControlProvisioner {
 
     private static final Log LOGGER = LogFactory.getLog(RemoteControlProvisioner.class);
-    private final List<RemoteControlProxy> remoteControls;
+    public static final int UNLIMITED_PENDING_RESERVATIONS = 0;
+    protected static final long DEFAULT_RELEASE_INTERVAL_IN_MILLISECONDS = 30 * 1000;
+    protected static final long MAX_RETRY_AFTER_IN_MILLISECONDS = 10 * 60 * 1000;
+    private static final double RELEASE_INTERVAL_SMOOTHING = 0.2;
+    private final ConcurrentMap<String, RemoteControlProxy> remoteControlsById;
+    private final Set<RemoteControlProxy> idleRemoteControls;
+    private final Set<RemoteControlProxy> busyRemoteControls;
+    private final Map<String, Queue<PendingReservation>> pendingReservationsByTenant;
+    private final List<GangMember> gangMembers;
     private final Lock remoteControlListLock;
-    private final Condition remoteControlAvailable;
+    private final LoadBalancingStrategy loadBalancingStrategy;
+    private final int maxPendingReservations;
+    private final Tenants tenants;
+    private int pendingReservationCount;
+    private long nextSequenceNumber;
+    private long lastReleaseAt;
+    private double averageReleaseIntervalInMilliseconds;
+    private volatile WaitingRequestListener waitingRequestListener;
+
+    /**
+     * Told when a request has to wait for a session slot. Invoked while holding the provisioner lock:
+     * must be quick and must never block.
+     */
+    public interface WaitingRequestListener {
+        void requestWaiting();
+    }
 
     public RemoteControlProvisioner() {
-        remoteControls = new LinkedList<RemoteControlProxy>();
+        this(new LeastRecentlyUsedStrategy());
+    }
+
+    public RemoteControlProvisioner(LoadBalancingStrategy loadBalancingStrategy) {
+        this(loadBalancingStrategy, UNLIMITED_PENDING_RESERVATIONS);
+    }
+
+    /**
+     * @param maxPendingReservations Maximum number of requests waiting for a remote control.
+     *                               {@link #UNLIMITED_PENDING_RESERVATIONS} for no limit.
+     */
+    public RemoteControlProvisioner(LoadBalancingStrategy loadBalancingStrategy, int maxPendingReservations) {
+        this(loadBalancingStrategy, maxPendingReservations, new Tenants());
+    }
+
+    /**
+     * @param tenants Sessions held and quotas of all tenants, shared with the provisioners of other environments.
+     */
+    public RemoteControlProvisioner(LoadBalancingStrategy loadBalancingStrategy, int maxPendingReservations,
+                                    Tenants tenants) {
+        this.loadBalancingStrategy = loadBalancingStrategy;
+        this.maxPendingReservations = maxPendingReservations;
+        this.tenants = tenants;
+        this.lastReleaseAt = -1;
+        this.averageReleaseIntervalInMilliseconds = -1;
+        remoteControlsById = new ConcurrentHashMap<String, RemoteControlProxy>();
+        idleRemoteControls = new LinkedHashSet<RemoteControlProxy>();
+        busyRemoteControls = new HashSet<RemoteControlProxy>();
+        pendingReservationsByTenant = new LinkedHashMap<String, Queue<PendingReservation>>();
+        gangMembers = new LinkedList<GangMember>();
         remoteControlListLock = new ReentrantLock();
-        remoteControlAvailable = remoteControlListLock.newCondition();
     }
 
     public RemoteControlProxy reserve() {
-        remoteControlListLock.lock();
+        return reserve(PendingReservation.DEFAULT_PRIORITY, PendingReservation.NO_DEADLINE);
+    }
 
-        try {
-            if (remoteControls.isEmpty()) {
-                return null;
-            }
+    /**
+     * Blocking reservation.
+     *
+     * @see PendingReservation#PendingReservation(int, long)
+     * @return Reserved remote control. Null if there is no registered remote control, on time out,
+     *         or when the deadline passes.
+     * @throws NewSessionQueueFullException when too many requests are already waiting.
+     */
+    public RemoteControlProxy reserve(int priority, long deadline) {
+        return reserve(priority, deadline, Tenants.NO_TENANT);
+    }
+
+    /**
+     * Blocking reservation for a tenant.
+     *
+     * @see PendingReservation#PendingReservation(int, long, String)
+     * @see #reserve(int, long)
+     */
+    public RemoteControlProxy reserve(int priority, long deadline, String tenant) {
+        RemoteControlProxy remoteControl;
 
-            RemoteControlProxy remoteControl = blockUntilARemoteControlIsAvailableOrRequestTimesOut();
+        do {
+            remoteControl = claimNextAvailableRemoteControl(priority, deadline, tenant);
             if (null == remoteControl) {
-                LOGGER.info("Timed out waiting for a remote control for environment.");
                 return null;
             }
+        } while (!confirmReservation(remoteControl));
+        return remoteControl;
+    }
 
-            while (remoteControl.unreliable()) {
-                LOGGER.warn("Reserved RC " + remoteControl + " is detected as unreliable, unregistering it and reserving a new one...");
-                tearDownExistingRemoteControl(remoteControl);
-                if (remoteControls.isEmpty()) {
-                    return null;
-                }
-                remoteControl = blockUntilARemoteControlIsAvailableOrRequestTimesOut();
-                if (null == remoteControl) {
-                    LOGGER.info("Timed out waiting for a remote control for environment.");
-                    return null;
-                }
+    /**
+     * Non-blocking reservation: hand an idle remote control over to the request right away,
+     * or queue it behind requests to be served first. Once assigned, the remote control must go
+     * through {@link #confirmReservation(RemoteControlProxy)} before being used. A request whose
+     * deadline has already passed is expired right away, and one that would not fit in the queue
+     * is rejected. A request whose tenant is at quota, or arriving while idle remote controls are
+     * left for a gang, is queued even if a remote control is idle.
+     *
+     * @param reservation Request for a remote control. Should not be null.
+     * @return false if there is no registered remote control, true if the request was served, queued,
+     *         expired or rejected.
+     */
+    public boolean reserve(PendingReservation reservation) {
+        final RemoteControlProxy remoteControl;
+
+        remoteControlListLock.lock();
+        try {
+            if (remoteControlsById.isEmpty()) {
+                return false;
+            }
+            if (reservation.deadlinePassed(now())) {
+                LOGGER.info("Deadline passed before the request could be served, rejecting it");
+                reservation.expire();
+                return true;
+            }
+            if (tenants.atQuota(reservation.tenant()) || null != gangHoldingItsTurn()) {
+                remoteControl = null;
+            } else {
+                remoteControl = findNextAvailableRemoteControl();
+            }
+            if (null != remoteControl) {
+                handOver(remoteControl, reservation);
+                return true;
+            }
+            if (queueFull()) {
+                reservation.reject(estimatedWaitInMilliseconds());
+                LOGGER.warn("Too many pending requests (" + pendingReservationCount + "), rejecting new one. "
+                            + "Estimated wait: " + reservation.retryAfterInMilliseconds() + " ms");
+                return true;
+            }
+            enqueue(reservation);
+            LOGGER.info("Waiting for a remote control... (" + pendingReservationCount + " pending requests)");
+            return true;
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
+
+    /**
+     * Non-blocking reservation of an idle remote control for a session nobody asked for yet (a warm session,
+     * accounted to {@link Tenants#NO_TENANT}). Never takes a session slot a waiting request or gang could use.
+     * The remote control must go through {@link #confirmReservation(RemoteControlProxy)} before being used.
+     *
+     * @return Reserved remote control. Null if none is idle or if a request is waiting.
+     */
+    public RemoteControlProxy reserveSpareRemoteControl() {
+        final RemoteControlProxy remoteControl;
+
+        remoteControlListLock.lock();
+        try {
+            if (pendingReservationCount > 0 || tenants.atQuota(Tenants.NO_TENANT)) {
+                return null;
+            }
+            remoteControl = findNextAvailableRemoteControl();
+            if (null != remoteControl) {
+                takeSessionSlot(remoteControl, Tenants.NO_TENANT);
             }
-            remoteControl.registerNewSession();
-            LOGGER.info("Reserved remote control" + remoteControl);
             return remoteControl;
         } finally {
             remoteControlListLock.unlock();
         }
     }
 
+    /**
+     * @param listener Told when a request has to wait. Null for none.
+     */
+    public void setWaitingRequestListener(WaitingRequestListener listener) {
+        this.waitingRequestListener = listener;
+    }
+
+    /**
+     * Withdraw a request from the queue, typically when it timed out.
+     *
+     * @param reservation Request previously queued with {@link #reserve(PendingReservation)}. Should not be null.
+     * @return Remote control handed over to the request before it could be withdrawn. Null if there is none.
+     */
+    public RemoteControlProxy cancel(PendingReservation reservation) {
+        remoteControlListLock.lock();
+        try {
+            dequeue(reservation);
+            return reservation.remoteControl();
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
+
+    /**
+     * Check that a claimed remote control is not known to be down. Its session slot was taken
+     * when it got handed over. Only the cached health state is read: liveness is checked in
+     * the background by the remote control poller.
+     *
+     * @param remoteControl Remote control claimed for a new session. Should not be null.
+     * @return true if the remote control is reserved, false if it was down and got unregistered.
+     * @see RemoteControlProxy#health()
+     */
+    public boolean confirmReservation(RemoteControlProxy remoteControl) {
+        if (remoteControl.health().down()) {
+            LOGGER.warn("Reserved RC " + remoteControl + " is known to be down, unregistering it and reserving a new one...");
+            remove(remoteControl);
+            return false;
+        }
+        LOGGER.info("Reserved remote control" + remoteControl);
+        return true;
+    }
+
     public void release(RemoteControlProxy remoteControl) {
+        release(remoteControl, Tenants.NO_TENANT);
+    }
+
+    /**
+     * Free a session slot no session was associated with, typically because starting one failed.
+     *
+     * @param remoteControl Remote control the slot was taken on. Should not be null.
+     * @param tenant        Tenant the slot was taken for. Should not be null.
+     * @return Tenant the freed slot was accounted to. Null if none.
+     */
+    public String release(RemoteControlProxy remoteControl, String tenant) {
+        final String boundTenant;
+
+        boundTenant = remoteControl.bindSessionSlot(tenant);
+        releaseSessionSlot(remoteControl, boundTenant);
+        return boundTenant;
+    }
+
+    /**
+     * Free the session slot of a session that just ended.
+     *
+     * @param remoteControl Remote control the session ran on. Should not be null.
+     * @param tenant        Tenant the session is accounted to. Null if none.
+     * @see RemoteControlSession#tenant()
+     */
+    public void releaseSession(RemoteControlProxy remoteControl, String tenant) {
+        releaseSessionSlot(remoteControl, tenant);
+    }
+
+    protected void releaseSessionSlot(RemoteControlProxy remoteControl, String tenant) {
         remoteControlListLock.lock();
 
         try {
             remoteControl.unregisterSession();
+            if (null != tenant) {
+                tenants.sessionEnded(tenant);
+            }
+            recordRelease(now());
+            if (remoteControl == remoteControlsById.get(idFor(remoteControl))) {
+                makeAvailable(remoteControl);
+            }
             LOGGER.info("Released remote control" + remoteControl);
-            signalThatARemoteControlHasBeenMadeAvailable();
         } finally {
             remoteControlListLock.unlock();
         }
     }
 
+    /**
+     * Serve the waiting requests an idle remote control could not be handed over to so far,
+     * typically because their tenant was at quota and just freed a session slot in another environment,
+     * or because the gang they were waiting behind got served or gave up.
+     */
+    public void serveWaitingRequests() {
+        remoteControlListLock.lock();
+        try {
+            for (RemoteControlProxy remoteControl : new ArrayList<RemoteControlProxy>(idleRemoteControls)) {
+                makeAvailable(remoteControl);
+            }
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
+
+    /**
+     * Queue the share of a gang waiting for this environment.
+     *
+     * @param member Gang member to queue. Should not be null.
+     */
+    public void enqueue(GangMember member) {
+        remoteControlListLock.lock();
+        try {
+            member.setSequenceNumber(nextSequenceNumber++);
+            gangMembers.add(member);
+            pendingReservationCount += member.sessionCount();
+            for (int i = 0; i < member.sessionCount(); i++) {
+                tenants.requestQueued(member.tenant(), this);
+            }
+            requestWaiting();
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
+
+    /**
+     * Withdraw a gang member which timed out, if it is still queued, and serve the requests behind it.
+     */
+    public void cancel(GangMember member) {
+        remoteControlListLock.lock();
+        try {
+            if (!gangMembers.remove(member)) {
+                return;
+            }
+            forgetWaitingSessions(member);
+            serveWaitingRequests();
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
+
+    /**
+     * Lock this provisioner to reserve remote controls in several environments at once. To avoid
+     * deadlocks, provisioners must always be locked in the order of their environment names.
+     */
+    public void lock() {
+        remoteControlListLock.lock();
+    }
+
+    public void unlock() {
+        remoteControlListLock.unlock();
+    }
+
+    /**
+     * Not thread-safe: must only be called while holding the {@link #lock()}.
+     *
+     * @return Whether the gang member can be handed over its session slots right away: it belongs to
+     *         the oldest gang, no request ahead of it is waiting, and enough session slots are idle.
+     */
+    public boolean readyFor(GangMember member) {
+        final PendingReservation nextReservation;
+
+        if (member != gangHoldingItsTurn()) {
+            return false;
+        }
+        nextReservation = peekNextReservation();
+        if (null != nextReservation && nextReservation.arrivedBefore(member)) {
+            return false;
+        }
+        return idleSessionSlotCount() >= member.sessionCount();
+    }
+
+    /**
+     * Hand idle session slots over to a gang member which is {@link #readyFor(GangMember) ready}, then
+     * serve the requests which were waiting behind it. Not thread-safe: must only be called while
+     * holding the {@link #lock()}.
+     */
+    public void serve(GangMember member) {
+        gangMembers.remove(member);
+        forgetWaitingSessions(member);
+        for (int i = 0; i < member.sessionCount(); i++) {
+            handOver(findNextAvailableRemoteControl(), member);
+        }
+        serveWaitingRequests();
+    }
+
     public void add(RemoteControlProxy newRemoteControl) {
         remoteControlListLock.lock();
 
         try {
-            if (remoteControls.contains(newRemoteControl)) {
+            if (contains(newRemoteControl)) {
                 tearDownExistingRemoteControl(newRemoteControl);
             }
-            remoteControls.add(newRemoteControl);
-            signalThatARemoteControlHasBeenMadeAvailable();
+            remoteControlsById.put(idFor(newRemoteControl), newRemoteControl);
+            makeAvailable(newRemoteControl);
         } finally {
             remoteControlListLock.unlock();
         }
     }
 
-    /** Not Thread-safe */
+    /**
+     * Thread-safe, lock-free.
+     *
+     * @param remoteControl Remote control to look up (by host and port). Should not be null.
+     * @return Whether a remote control with the same host and port is registered.
+     */
     public boolean contains(RemoteControlProxy remoteControl) {
-        return remoteControls.contains(remoteControl);
+        return remoteControlsById.containsKey(idFor(remoteControl));
     }
 
+    /** Not Thread-safe */
     public void tearDownExistingRemoteControl(RemoteControlProxy newRemoteControl) {
         final RemoteControlProxy oldRemoteControl;
 
-        oldRemoteControl = remoteControls.get(remoteControls.indexOf(newRemoteControl));
-        remoteControls.remove(oldRemoteControl);
+        oldRemoteControl = remoteControlsById.remove(idFor(newRemoteControl));
+        if (null != oldRemoteControl) {
+            idleRemoteControls.remove(oldRemoteControl);
+            busyRemoteControls.remove(oldRemoteControl);
+            for (String tenant : oldRemoteControl.bindAllSessionSlots()) {
+                tenants.sessionEnded(tenant);
+            }
+        }
     }
 
     public boolean remove(RemoteControlProxy remoteControl) {
         remoteControlListLock.lock();
 
         try {
-            return remoteControls.remove(remoteControl);
+            if (!contains(remoteControl)) {
+                return false;
+            }
+            tearDownExistingRemoteControl(remoteControl);
+            return true;
         } finally {
             remoteControlListLock.unlock();
         }
     }
 
     /**
-     * Not thread safe.
-     *
-     * @return All available remote controls. Never null.
+     * @return Snapshot of all available remote controls. Never null.
      */
     public List<RemoteControlProxy> availableRemoteControls() {
-        final LinkedList<RemoteControlProxy> availableremoteControls;
+        remoteControlListLock.lock();
+        try {
+            return new ArrayList<RemoteControlProxy>(idleRemoteControls);
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
 
-        availableremoteControls = new LinkedList<RemoteControlProxy>();
-        for (RemoteControlProxy remoteControl : remoteControls) {
-            if (remoteControl.canHandleNewSession()) {
-                availableremoteControls.add(remoteControl);
+    /**
+     * @return Snapshot of all remote controls with at least one session in progress. Never null.
+     */
+    public List<RemoteControlProxy> reservedRemoteControls() {
+        final List<RemoteControlProxy> reservedRemoteControls;
+
+        remoteControlListLock.lock();
+        try {
+            reservedRemoteControls = new ArrayList<RemoteControlProxy>(busyRemoteControls.size());
+            for (RemoteControlProxy remoteControl : busyRemoteControls) {
+                if (remoteControl.sessionInProgress()) {
+                    reservedRemoteControls.add(remoteControl);
+                }
+            }
+            for (RemoteControlProxy remoteControl : idleRemoteControls) {
+                if (remoteControl.sessionInProgress()) {
+                    reservedRemoteControls.add(remoteControl);
+                }
             }
+            return reservedRemoteControls;
+        } finally {
+            remoteControlListLock.unlock();
         }
-        return Arrays.asList(availableremoteControls.toArray(new RemoteControlProxy[availableremoteControls.size()]));
     }
 
     /**
-     * Not thread safe.
+     * Take the next idle remote control and move it to the busy set. If none is idle, queue
+     * behind requests to be served first until one is handed over or the request times out.
      *
-     * @return All reserved remote controls. Never null.
+     * @return Claimed remote control. Null if there is no registered remote control, on time out or
+     *         when the deadline passes.
+     * @throws NewSessionQueueFullException when too many requests are already waiting.
      */
-    public List<RemoteControlProxy> reservedRemoteControls() {
-        final LinkedList<RemoteControlProxy> reservedRemoteControls;
+    protected RemoteControlProxy claimNextAvailableRemoteControl(int priority, long deadline, String tenant) {
+        final BlockingReservation reservation;
+        RemoteControlProxy remoteControl;
 
-        reservedRemoteControls = new LinkedList<RemoteControlProxy>();
-        for (RemoteControlProxy remoteControl : remoteControls) {
-            if (remoteControl.sessionInProgress()) {
-                reservedRemoteControls.add(remoteControl);
+        remoteControlListLock.lock();
+        try {
+            reservation = new BlockingReservation(remoteControlListLock.newCondition(), newSessionMaxWaitTimeInSeconds(),
+                                                  priority, deadline, tenant);
+            if (!reserve(reservation)) {
+                return null;
+            }
+            if (reservation.rejected()) {
+                throw new NewSessionQueueFullException(reservation.retryAfterInMilliseconds());
+            }
+            while (true) {
+                try {
+                    remoteControl = reservation.await();
+                    break;
+                } catch (InterruptedException e) {
+                    LOGGER.error("Interrupted while reserving remote control", e);
+                }
             }
+            if (null == remoteControl) {
+                dequeue(reservation);
+                LOGGER.info("Timed out waiting for a remote control for environment.");
+            }
+            return remoteControl;
+        } finally {
+            remoteControlListLock.unlock();
         }
-        return Arrays.asList(reservedRemoteControls.toArray(new RemoteControlProxy[reservedRemoteControls.size()]));
     }
 
-    protected RemoteControlProxy blockUntilARemoteControlIsAvailableOrRequestTimesOut() {
-        RemoteControlProxy availableRemoteControl;
+    /**
+     * Hand the free session slots of a remote control over to the next waiting requests, expiring
+     * the ones whose deadline has passed, and put it in the idle set if it still has a free slot
+     * once nobody is waiting anymore. Not thread-safe.
+     *
+     * @param remoteControl Registered remote control that just got added or had a session slot freed. Should not be null.
+     */
+    protected void makeAvailable(RemoteControlProxy remoteControl) {
+        final long now;
+
+        now = now();
+        while (remoteControl.canHandleNewSession()) {
+            final PendingReservation reservation;
+            final GangMember gangMember;
+
+            reservation = peekNextReservation();
+            gangMember = gangHoldingItsTurn();
+            if (null != gangMember && (null == reservation || gangMember.arrivedBefore(reservation))) {
+                gangMember.turnReached();
+                break;
+            }
+            if (null == reservation) {
+                break;
+            }
+            dequeue(reservation);
+            if (reservation.deadlinePassed(now)) {
+                reservation.expire();
+            } else {
+                handOver(remoteControl, reservation);
+            }
+        }
+        if (remoteControl.canHandleNewSession()) {
+            busyRemoteControls.remove(remoteControl);
+            idleRemoteControls.add(remoteControl);
+        } else {
+            idleRemoteControls.remove(remoteControl);
+            busyRemoteControls.add(remoteControl);
+        }
+    }
 
-        while (true) {
-            try {
-                availableRemoteControl = findNextAvailableRemoteControl();
-                boolean timedOut = false;
-                while ((null == availableRemoteControl) && !timedOut) {
-                    LOGGER.info("Waiting for a remote control...");
-                    timedOut = waitForARemoteControlToBeAvailable();
-                    availableRemoteControl = findNextAvailableRemoteControl();
-                }
-                return availableRemoteControl;
-            } catch (InterruptedException e) {
-                LOGGER.error("Interrupted while reserving remote control", e);
+    /**
+     * Take a session slot on a remote control for a request. Not thread-safe.
+     */
+    protected void handOver(RemoteControlProxy remoteControl, PendingReservation reservation) {
+        takeSessionSlot(remoteControl, reservation.tenant());
+        reservation.assign(remoteControl);
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    protected void takeSessionSlot(RemoteControlProxy remoteControl, String tenant) {
+        remoteControl.registerNewSession(tenant);
+        tenants.sessionStarted(tenant);
+        if (!remoteControl.canHandleNewSession()) {
+            idleRemoteControls.remove(remoteControl);
+            busyRemoteControls.add(remoteControl);
+        }
+    }
+
+    /**
+     * Queue a request behind the other requests of its tenant. Not thread-safe.
+     */
+    protected void enqueue(PendingReservation reservation) {
+        Queue<PendingReservation> queue;
+
+        queue = pendingReservationsByTenant.get(reservation.tenant());
+        if (null == queue) {
+            queue = new PriorityQueue<PendingReservation>(11, PendingReservation.SCHEDULING_ORDER);
+            pendingReservationsByTenant.put(reservation.tenant(), queue);
+        }
+        reservation.setSequenceNumber(nextSequenceNumber++);
+        queue.add(reservation);
+        pendingReservationCount++;
+        tenants.requestQueued(reservation.tenant(), this);
+        requestWaiting();
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    protected void requestWaiting() {
+        final WaitingRequestListener listener;
+
+        listener = waitingRequestListener;
+        if (null != listener) {
+            listener.requestWaiting();
+        }
+    }
+
+    /**
+     * Withdraw a request from the queue if it is still in it. Not thread-safe.
+     */
+    protected void dequeue(PendingReservation reservation) {
+        final Queue<PendingReservation> queue;
+
+        queue = pendingReservationsByTenant.get(reservation.tenant());
+        if (null == queue || !queue.remove(reservation)) {
+            return;
+        }
+        if (queue.isEmpty()) {
+            pendingReservationsByTenant.remove(reservation.tenant());
+        }
+        pendingReservationCount--;
+        tenants.requestDequeued(reservation.tenant(), this);
+    }
+
+    /**
+     * Pick the tenant under quota with the lowest share, first in scheduling order on ties,
+     * and peek at its first request in scheduling order. Not thread-safe.
+     *
+     * @return Next request to serve, still queued. Null if no request can be served.
+     */
+    protected PendingReservation peekNextReservation() {
+        PendingReservation next;
+        double nextShare;
+
+        next = null;
+        nextShare = 0;
+        for (Map.Entry<String, Queue<PendingReservation>> entry : pendingReservationsByTenant.entrySet()) {
+            final PendingReservation candidate;
+            final double share;
+
+            if (tenants.atQuota(entry.getKey())) {
+                continue;
+            }
+            candidate = entry.getValue().peek();
+            share = tenants.share(entry.getKey());
+            if (null == next || share < nextShare
+                || (share == nextShare && PendingReservation.SCHEDULING_ORDER.compare(candidate, next) < 0)) {
+                next = candidate;
+                nextShare = share;
             }
         }
+        return next;
     }
 
     /**
-     * Non-blocking, not thread-safe
+     * Not thread-safe.
      *
-     * @return Next Available remote control. Null if none is available.
+     * @return Member of the oldest waiting gang queued here. Null if there is none.
      */
-    protected RemoteControlProxy findNextAvailableRemoteControl() {
-        for (RemoteControlProxy remoteControl : remoteControls) {
-            if (remoteControl.canHandleNewSession()) {
-                return remoteControl;
+    protected GangMember gangHoldingItsTurn() {
+        for (GangMember member : gangMembers) {
+            if (member.gang().oldest()) {
+                return member;
             }
         }
         return null;
     }
 
-  /**
-   * Wait for a remote control to be available or timeout while waiting.
-   *
-   * @return Indicates whether the request timed out.
-   * 
-   * @throws InterruptedException
-   */
-    protected boolean waitForARemoteControlToBeAvailable() throws InterruptedException {
-        final Double maxWaitTime = HubRegistry.registry().gridConfiguration().getHub().getNewSessionMaxWaitTimeInSeconds();
+    /**
+     * Not thread-safe.
+     */
+    protected void forgetWaitingSessions(GangMember member) {
+        pendingReservationCount -= member.sessionCount();
+        for (int i = 0; i < member.sessionCount(); i++) {
+            tenants.requestDequeued(member.tenant(), this);
+        }
+    }
+
+    /**
+     * Not thread-safe.
+     *
+     * @return Number of free session slots on idle remote controls.
+     */
+    protected int idleSessionSlotCount() {
+        int count;
 
-        if (maxWaitTime.isInfinite()) {
-            remoteControlAvailable.await();
-            return false;
-        } else {
-            return !remoteControlAvailable.await(maxWaitTime.longValue(), TimeUnit.SECONDS);
+        count = 0;
+        for (RemoteControlProxy remoteControl : idleRemoteControls) {
+            count += remoteControl.maxConcurrentSessions() - remoteControl.concurrentSessionCount();
         }
+        return count;
     }
 
-    protected void signalThatARemoteControlHasBeenMadeAvailable() {
-        remoteControlAvailable.signalAll();
+    /**
+     * Non-blocking, not thread-safe
+     *
+     * @return Next Available remote control, as picked by the load balancing strategy. Null if none is available.
+     */
+    protected RemoteControlProxy findNextAvailableRemoteControl() {
+        if (idleRemoteControls.isEmpty()) {
+            return null;
+        }
+        return loadBalancingStrategy.select(Collections.unmodifiableSet(idleRemoteControls),
+                                            Collections.unmodifiableSet(busyRemoteControls));
     }
 
+    public LoadBalancingStrategy loadBalancingStrategy() {
+        return loadBalancingStrategy;
+    }
 
-    public List<RemoteControlProxy> allRemoteControls() {
-        final LinkedList<RemoteControlProxy> allRemoteControls;
+    /**
+     * @return Number of requests currently queued waiting for a remote control.
+     */
+    public int pendingReservationCount() {
+        remoteControlListLock.lock();
+        try {
+            return pendingReservationCount;
+        } finally {
+            remoteControlListLock.unlock();
+        }
+    }
+
+    public int maxPendingReservations() {
+        return maxPendingReservations;
+    }
+
+    public Tenants tenants() {
+        return tenants;
+    }
+
+    /**
+     * Not thread-safe.
+     *
+     * @return Whether a request that cannot be served right away must be rejected.
+     */
+    protected boolean queueFull() {
+        return UNLIMITED_PENDING_RESERVATIONS != maxPendingReservations
+               && pendingReservationCount >= maxPendingReservations;
+    }
+
+    /**
+     * Estimate how long a request arriving now would wait: all requests queued ahead of it need a
+     * session slot to be released first. A long silence since the last release counts as a slower
+     * release rate. Not thread-safe.
+     *
+     * @return Estimated wait, capped at {@link #MAX_RETRY_AFTER_IN_MILLISECONDS}.
+     */
+    protected long estimatedWaitInMilliseconds() {
+        double releaseIntervalInMilliseconds;
 
-        allRemoteControls = new LinkedList<RemoteControlProxy>();
-        for (RemoteControlProxy remoteControl : remoteControls) {
-            allRemoteControls.add(remoteControl);
+        if (averageReleaseIntervalInMilliseconds < 0) {
+            releaseIntervalInMilliseconds = DEFAULT_RELEASE_INTERVAL_IN_MILLISECONDS;
+        } else {
+            releaseIntervalInMilliseconds = Math.max(averageReleaseIntervalInMilliseconds, now() - lastReleaseAt);
         }
+        return (long) Math.min(MAX_RETRY_AFTER_IN_MILLISECONDS,
+                               (pendingReservationCount + 1) * releaseIntervalInMilliseconds);
+    }
+
+    /**
+     * Keep track of the interval between releases as an exponentially weighted moving average,
+     * so that the estimate follows recent load. Not thread-safe.
+     */
+    protected void recordRelease(long now) {
+        final long interval;
+
+        if (lastReleaseAt >= 0) {
+            interval = Math.max(0, now - lastReleaseAt);
+            if (averageReleaseIntervalInMilliseconds < 0) {
+                averageReleaseIntervalInMilliseconds = interval;
+            } else {
+                averageReleaseIntervalInMilliseconds += RELEASE_INTERVAL_SMOOTHING
+                                                        * (interval - averageReleaseIntervalInMilliseconds);
+            }
+        }
+        lastReleaseAt = now;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected double newSessionMaxWaitTimeInSeconds() {
+        return HubRegistry.registry().gridConfiguration().getHub().getNewSessionMaxWaitTimeInSeconds();
+    }
+
+    /**
+     * Thread-safe, lock-free.
+     *
+     * @return Snapshot of all registered remote controls. Never null.
+     */
+    public List<RemoteControlProxy> allRemoteControls() {
+        return new ArrayList<RemoteControlProxy>(remoteControlsById.values());
+    }
 
-        return allRemoteControls;
+    protected static String idFor(RemoteControlProxy remoteControl) {
+        return remoteControl.host() + ":" + remoteControl.port();
     }
 }
@@ -1,18 +1,31 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
 import com.thoughtworks.selenium.grid.HttpClient;
 import com.thoughtworks.selenium.grid.HttpParameters;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.ResponseCallback;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.HubServer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Local interface to a real remote control running somewhere in the grid.
+ * <p/>
+ * A remote control can run several sessions at once (one per browser slot) up to
+ * its maximum number of concurrent sessions, 1 by default.
+ * <p/>
+ * A session slot taken for a tenant (see {@link Tenants}) is unbound until a session gets
+ * associated with it, so that whoever frees the slot knows which tenant it was held for.
  */
 public class RemoteControlProxy {
 
@@ -20,28 +33,50 @@ public class RemoteControlProxy {
 
     private static final int MAX_FAILED_HEARTBEATS = 3;
 
-    private boolean sessionInProgress;
+    private final int maxConcurrentSessions;
+    private int concurrentSessionCount;
     private final HttpClient httpClient;
     private final String environment;
     private final String host;
     private final int port;
-    private int failedHeartbeatCount;
-	private String sessionId;
+    private final RemoteControlHealth health;
+    private final LinkedList<String> unboundTenants;
 
 
     public RemoteControlProxy(String host, int port, String environment, HttpClient httpClient) {
+        this(host, port, environment, 1, httpClient);
+    }
+
+    /**
+     * Remote control running up to <code>maxConcurrentSessions</code> browser sessions at once.
+     */
+    public static RemoteControlProxy withMaxConcurrentSessions(String host, int port, String environment,
+                                                               int maxConcurrentSessions, HttpClient httpClient) {
+        return new RemoteControlProxy(host, port, environment, maxConcurrentSessions, httpClient);
+    }
+
+    /**
+     * Not public: class mocks instantiate the first public constructor reflection returns, with
+     * zero arguments, which this constructor rejects. Use {@link #withMaxConcurrentSessions}.
+     */
+    protected RemoteControlProxy(String host, int port, String environment, int maxConcurrentSessions, HttpClient httpClient) {
         if (null == host) {
             throw new IllegalArgumentException("host cannot be null");
         }
         if (null == environment) {
             throw new IllegalArgumentException("environment cannot be null");
         }
+        if (maxConcurrentSessions < 1) {
+            throw new IllegalArgumentException("maxConcurrentSessions must be at least 1");
+        }
         this.host = host;
         this.port = port;
         this.environment = environment;
-        this.sessionInProgress = false;
+        this.maxConcurrentSessions = maxConcurrentSessions;
+        this.concurrentSessionCount = 0;
         this.httpClient = httpClient;
-        this.failedHeartbeatCount = 0;
+        this.health = new RemoteControlHealth(MAX_FAILED_HEARTBEATS);
+        this.unboundTenants = new LinkedList<String>();
     }
 
     public String host() {
@@ -68,13 +103,119 @@ public class RemoteControlProxy {
         return "http://" + host + ":" + port + "/selenium-server/" + path;
     }
 
+    /**
+     * Forward a Selenese command to the remote control. The outcome is recorded
+     * as a passive health signal: any HTTP response proves the remote control is alive.
+     * The response body is streamed, see {@link com.thoughtworks.selenium.grid.StreamingResponse}.
+     */
     public Response forward(HttpParameters parameters) throws IOException {
-        return httpClient.post(remoteControlDriverURL(), parameters);
+        final Response response;
+
+        try {
+            response = httpClient.stream(remoteControlDriverURL(), parameters);
+        } catch (IOException e) {
+            health.recordFailedContact();
+            throw e;
+        }
+        health.recordSuccessfulContact();
+        return response;
+    }
+
+    /**
+     * Forward a Selenese command request body byte for byte, without decoding its parameters.
+     *
+     * @see #forward(HttpParameters)
+     */
+    public Response forward(byte[] body, String contentType) throws IOException {
+        final Response response;
+
+        try {
+            response = httpClient.stream(remoteControlDriverURL(), body, contentType);
+        } catch (IOException e) {
+            health.recordFailedContact();
+            throw e;
+        }
+        health.recordSuccessfulContact();
+        return response;
+    }
+
+    /**
+     * Forward a Selenese command with a read time out. A command timing out marks the
+     * remote control down, see {@link RemoteControlHealth#recordTimedOutCommand()}.
+     *
+     * @param timeoutInMilliseconds Maximum time without data from the remote control, see
+     *                              {@link HttpClient#stream(String, HttpParameters, int)}. 0 keeps the
+     *                              read time out of the client.
+     * @throws SocketTimeoutException when the time out expired. The connection is closed.
+     * @see #forward(HttpParameters)
+     */
+    public Response forward(HttpParameters parameters, int timeoutInMilliseconds) throws IOException {
+        final Response response;
+
+        try {
+            response = httpClient.stream(remoteControlDriverURL(), parameters, timeoutInMilliseconds);
+        } catch (SocketTimeoutException e) {
+            health.recordTimedOutCommand();
+            throw e;
+        } catch (IOException e) {
+            health.recordFailedContact();
+            throw e;
+        }
+        health.recordSuccessfulContact();
+        return response;
+    }
+
+    /**
+     * @see #forward(byte[], String)
+     * @see #forward(HttpParameters, int)
+     */
+    public Response forward(byte[] body, String contentType, int timeoutInMilliseconds) throws IOException {
+        final Response response;
+
+        try {
+            response = httpClient.stream(remoteControlDriverURL(), body, contentType, timeoutInMilliseconds);
+        } catch (SocketTimeoutException e) {
+            health.recordTimedOutCommand();
+            throw e;
+        } catch (IOException e) {
+            health.recordFailedContact();
+            throw e;
+        }
+        health.recordSuccessfulContact();
+        return response;
+    }
+
+    /**
+     * Forward a Selenese command request body without waiting for the remote control to reply.
+     * Health is recorded when the outcome is known, before notifying the callback.
+     *
+     * @param timeoutInMilliseconds Maximum time to wait for the remote control to reply. 0 means forever.
+     * @param client                Started non-blocking client. Cannot be null.
+     * @param callback              Notified on the I/O thread of the client. Cannot be null.
+     * @see #forward(byte[], String, int)
+     */
+    public void forward(byte[] body, String contentType, int timeoutInMilliseconds,
+                        AsyncHttpClient client, final ResponseCallback callback) {
+        client.post(remoteControlDriverURL(), body, contentType, timeoutInMilliseconds, new ResponseCallback() {
+            public void completed(Response response) {
+                health.recordSuccessfulContact();
+                callback.completed(response);
+            }
+
+            public void failed(IOException e) {
+                if (e instanceof SocketTimeoutException) {
+                    health.recordTimedOutCommand();
+                } else {
+                    health.recordFailedContact();
+                }
+                callback.failed(e);
+            }
+        });
     }
 
     public String toString() {
         return "[RemoteControlProxy " + host + ":" + port + "#"
-                + sessionInProgress + "]";
+                + sessionInProgress() + "]";
     }
 
     public boolean equals(Object other) {
@@ -94,87 +235,137 @@ public class RemoteControlProxy {
         return (host + port).hashCode();
     }
 
-    public boolean sessionInProgress() {
-        return sessionInProgress;
+    public synchronized boolean sessionInProgress() {
+        return concurrentSessionCount > 0;
+    }
+
+    public int maxConcurrentSessions() {
+        return maxConcurrentSessions;
     }
 
-    public void registerNewSession() {
-        if (sessionInProgress) {
+    public synchronized int concurrentSessionCount() {
+        return concurrentSessionCount;
+    }
+
+    public synchronized void registerNewSession() {
+        if (concurrentSessionCount >= maxConcurrentSessions) {
             throw new IllegalStateException("Exceeded concurrent session max for " + toString());
         }
-        sessionInProgress = true;
+        concurrentSessionCount += 1;
+    }
+
+    /**
+     * Take a session slot for a tenant. The slot is unbound until a session is associated with it.
+     */
+    public synchronized void registerNewSession(String tenant) {
+        registerNewSession();
+        unboundTenants.addLast(tenant);
     }
 
-    public void unregisterSession() {
-        if (!sessionInProgress) {
+    /**
+     * Bind the session slot taken for a tenant, once a session is associated with it.
+     *
+     * @param tenant Tenant the session was requested for. Should not be null.
+     * @return Tenant of the bound slot: this tenant if it holds an unbound slot, otherwise the tenant of the
+     *         oldest unbound slot. Null if there is none, e.g. once the remote control got unregistered.
+     */
+    public synchronized String bindSessionSlot(String tenant) {
+        if (unboundTenants.remove(tenant)) {
+            return tenant;
+        }
+        return unboundTenants.poll();
+    }
+
+    /**
+     * Bind all unbound session slots, typically because the remote control is going away.
+     *
+     * @return Tenants of the slots that were unbound. Never null.
+     */
+    public synchronized List<String> bindAllSessionSlots() {
+        final List<String> tenants;
+
+        tenants = new ArrayList<String>(unboundTenants);
+        unboundTenants.clear();
+        return tenants;
+    }
+
+    public synchronized void unregisterSession() {
+        if (0 == concurrentSessionCount) {
             throw new IllegalStateException("Unregistering session on an idle remote control : " + toString());
         }
 
-        sessionInProgress = false;
+        concurrentSessionCount -= 1;
     }
 
-    public void terminateSession(String sessionId) {
+    /**
+     * Tell the remote control to end a session, giving up once it stays silent for too long so that
+     * a hung remote control cannot hold the calling thread, typically the idle session reclaimer.
+     *
+     * @param sessionId             Id of the session to end. Should not be null.
+     * @param timeoutInMilliseconds Maximum time the remote control may stay silent, 0 meaning forever.
+     */
+    public void terminateSession(String sessionId, int timeoutInMilliseconds) {
         try {
             Map<String, String[]> params = new HashMap<String, String[]>();
             params.put("cmd", new String[] { "testComplete" });
             params.put("sessionId", new String[] { sessionId });
-            this.sessionId = null;
-            forward(new HttpParameters(params));
+            forward(new HttpParameters(params), timeoutInMilliseconds).release();
         }
         catch (IOException e) {
             LOGGER.warn("Exception telling remote control to kill its session:" + e.getMessage());
         }
     }
 
-    public boolean canHandleNewSession() {
-        return  !sessionInProgress();
+    public synchronized boolean canHandleNewSession() {
+        return concurrentSessionCount < maxConcurrentSessions;
+    }
+
+    /**
+     * Actively check that the remote control is alive (heartbeat). Retried a few times when
+     * a session is in progress. Updates the cached health state.
+     *
+     * @return Whether the remote control should be considered unreliable.
+     * @see #health()
+     */
+    public boolean unreliable() {
+        for (int attempt = 0; ; attempt++) {
+            if (heartbeatSucceeds()) {
+                health.recordSuccessfulContact();
+                return false;
+            }
+            if (!sessionInProgress() || attempt >= MAX_FAILED_HEARTBEATS) {
+                health.markDown();
+                return true;
+            }
+            LOGGER.warn(String.format("... attempt %d of %d -- trying again.", attempt + 1, MAX_FAILED_HEARTBEATS));
+        }
+    }
+
+    /**
+     * @return Cached health state. Reading it never talks to the remote control.
+     */
+    public RemoteControlHealth health() {
+        return health;
+    }
+
+    protected int heartbeatTimeoutInMilliseconds() {
+        return (int) (HubRegistry.registry().gridConfiguration().getHub().getHeartbeatTimeoutInSeconds() * 1000);
     }
 
-	public boolean unreliable() {
+    protected boolean heartbeatSucceeds() {
         final Response response;
 
         try {
             LOGGER.debug("Polling Remote Control at " + host + ":" + port);
-            response = httpClient.get(remoteControlPingURL());
+            response = httpClient.get(remoteControlPingURL(), heartbeatTimeoutInMilliseconds());
         } catch (Exception e) {
             LOGGER.warn("Remote Control at " + host + ":" + port + " is unresponsive");
-
-            if (this.sessionInProgress() && (failedHeartbeatCount < MAX_FAILED_HEARTBEATS)) {
-                LOGGER.warn(String.format("... attempt %d of %d -- trying again.", failedHeartbeatCount + 1, MAX_FAILED_HEARTBEATS));
-
-                failedHeartbeatCount++;
-                return unreliable();
-            }
-            else {
-                failedHeartbeatCount = 0;
-                return true;
-            }
+            return false;
         }
-
         if (response.statusCode() != 200) {
             LOGGER.warn("Remote Control at " + host + ":" + port + " did not respond correctly");
-
-            if (this.sessionInProgress() && (failedHeartbeatCount < MAX_FAILED_HEARTBEATS)) {
-                LOGGER.warn(String.format("... attempt %d of %d -- trying again.", failedHeartbeatCount + 1, MAX_FAILED_HEARTBEATS));
-
-                failedHeartbeatCount++;
-                return unreliable();
-            }
-            else {
-                failedHeartbeatCount = 0;
-                return true;
-            }
+            return false;
         }
-
-        failedHeartbeatCount = 0;
-        return false;
+        return true;
     }
-
-	public String sessionId() {
-		return sessionId;
-	}
-
-	public void setSessionId(String sessionId){
-		this.sessionId = sessionId;
-	}
 }
@@ -1,18 +1,44 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
-import java.util.Date;
-
 /**
  * Selenium Session in progress
+ * <p/>
+ * Activity is stamped with the {@link CoarseClock} in a volatile field: updating it
+ * is lock-free and does not allocate, since it happens on every Selenese command.
+ * <p/>
+ * A session started by the Hub ahead of demand is warm until it is handed out
+ * (see {@link WarmSessionPool}).
  */
 public class RemoteControlSession {
     private final RemoteControlProxy remoteControl;
-    private long lastActiveAt;
+    private final long maxIdleTimeInMilliseconds;
+    private volatile long lastActiveAt;
+    private volatile boolean ended;
+    private volatile boolean warm;
     private final String sessionId;
+    private volatile String tenant;
 
     public RemoteControlSession(String sessionId, RemoteControlProxy remoteControl) {
+        this(sessionId, remoteControl, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxIdleTimeInMilliseconds How long the session can stay idle before being reclaimed.
+     */
+    public RemoteControlSession(String sessionId, RemoteControlProxy remoteControl, long maxIdleTimeInMilliseconds) {
+        this(sessionId, remoteControl, maxIdleTimeInMilliseconds, null);
+    }
+
+    /**
+     * @param tenant Tenant the session slot was taken for (see {@link Tenants}). Null if not accounted for.
+     */
+    public RemoteControlSession(String sessionId, RemoteControlProxy remoteControl, long maxIdleTimeInMilliseconds,
+                                String tenant) {
         this.sessionId = sessionId;
+        this.tenant = tenant;
         this.remoteControl = remoteControl;
+        this.maxIdleTimeInMilliseconds = maxIdleTimeInMilliseconds;
+        this.ended = false;
         updateLastActiveAt();
     }
 
@@ -24,16 +50,67 @@ public class RemoteControlSession {
         return remoteControl;
     }
 
+    /**
+     * @return Tenant the session slot was taken for. Null if not accounted for.
+     */
+    public String tenant() {
+        return tenant;
+    }
+
+    /**
+     * Account the session to another tenant, typically when a warm session is handed out.
+     */
+    public void transferTo(String tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * @return Whether the session was started ahead of demand and is still waiting to be handed out.
+     */
+    public boolean warm() {
+        return warm;
+    }
+
+    public void setWarm(boolean warm) {
+        this.warm = warm;
+    }
+
     public long lastActiveAt() {
         return lastActiveAt;
     }
 
+    public long maxIdleTimeInMilliseconds() {
+        return maxIdleTimeInMilliseconds;
+    }
+
+    /**
+     * @return Time at which the session becomes idle for too long if there is no further activity.
+     */
+    public long idleDeadline() {
+        final long deadline;
+
+        deadline = lastActiveAt() + maxIdleTimeInMilliseconds;
+        return deadline < 0 ? Long.MAX_VALUE : deadline;
+    }
+
     public void updateLastActiveAt() {
         updateLastActiveAt(now());
     }
 
-    public boolean innactiveSince(long millisecondsSinceEpoch) {
-        return lastActiveAt() <= millisecondsSinceEpoch;
+    public boolean innactiveSince(long time) {
+        return lastActiveAt() <= time;
+    }
+
+    /**
+     * Mark the session as ended (released or its remote control unregistered),
+     * so that it is not considered for expiry anymore.
+     */
+    public void end() {
+        ended = true;
+    }
+
+    public boolean ended() {
+        return ended;
     }
 
     protected void updateLastActiveAt(long newLastActiveAt) {
@@ -41,10 +118,14 @@ public class RemoteControlSession {
     }
 
     protected long now() {
-        return new Date().getTime();
+        return CoarseClock.now();
     }
 
     public boolean innactiveForMoreThan(int milliseconds) {
         return innactiveSince(now() - milliseconds);
     }
+
+    public String toString() {
+        return "[RemoteControlSession " + sessionId + " on " + remoteControl + (warm ? " (warm)" : "") + "]";
+    }
 }
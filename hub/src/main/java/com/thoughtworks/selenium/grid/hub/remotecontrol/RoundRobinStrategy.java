@@ -0,0 +1,39 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.Collection;
+
+/**
+ * Cycles through remote controls, skipping the busy ones. Remote controls are ordered by port,
+ * then by host, so that consecutive picks land on distinct machines when hosts run their
+ * remote controls on the same ports. Linear in the number of idle remote controls.
+ */
+public class RoundRobinStrategy implements LoadBalancingStrategy {
+
+    private RemoteControlProxy lastSelected;
+
+    public RemoteControlProxy select(Collection<RemoteControlProxy> idleRemoteControls,
+                                     Collection<RemoteControlProxy> busyRemoteControls) {
+        RemoteControlProxy first = null;
+        RemoteControlProxy next = null;
+
+        for (RemoteControlProxy candidate : idleRemoteControls) {
+            if (null == first || compare(candidate, first) < 0) {
+                first = candidate;
+            }
+            if ((null == lastSelected || compare(candidate, lastSelected) > 0)
+                    && (null == next || compare(candidate, next) < 0)) {
+                next = candidate;
+            }
+        }
+        lastSelected = (null == next) ? first : next;
+        return lastSelected;
+    }
+
+    protected static int compare(RemoteControlProxy remoteControl, RemoteControlProxy other) {
+        if (remoteControl.port() != other.port()) {
+            return remoteControl.port() < other.port() ? -1 : 1;
+        }
+        return remoteControl.host().compareTo(other.host());
+    }
+
+}
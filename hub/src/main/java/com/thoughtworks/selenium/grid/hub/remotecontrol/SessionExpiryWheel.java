@@ -0,0 +1,151 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel reclaiming sessions that stay idle for too long.
+ * <p/>
+ * Sessions are hashed into buckets by idle deadline. Every tick only the sessions in the
+ * current bucket are looked at: a session that was active since it got scheduled is simply
+ * moved to the bucket of its new deadline, so recording activity never touches the wheel.
+ * Ended sessions are dropped lazily when their bucket comes up.
+ * <p/>
+ * Scheduling is lock-free, ticks are processed by a single thread.
+ */
+public class SessionExpiryWheel {
+
+    private static final Log LOGGER = LogFactory.getLog(SessionExpiryWheel.class);
+    private final List<Queue<RemoteControlSession>> buckets;
+    private final long tickInMilliseconds;
+    private final IdleSessionHandler handler;
+    private volatile long currentTick;
+    private Thread ticker;
+
+    /**
+     * Invoked for each session that stayed idle past its deadline.
+     */
+    public interface IdleSessionHandler {
+        void sessionIdleForTooLong(RemoteControlSession session);
+    }
+
+    public SessionExpiryWheel(long tickInMilliseconds, int bucketCount, IdleSessionHandler handler) {
+        this.tickInMilliseconds = tickInMilliseconds;
+        this.handler = handler;
+        this.buckets = new ArrayList<Queue<RemoteControlSession>>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ConcurrentLinkedQueue<RemoteControlSession>());
+        }
+        this.currentTick = tickFor(CoarseClock.now());
+    }
+
+    /**
+     * Thread-safe, lock-free.
+     *
+     * @param session Session to reclaim once idle for too long. Should not be null.
+     */
+    public void schedule(RemoteControlSession session) {
+        final long deadlineTick;
+
+        deadlineTick = Math.max(tickFor(session.idleDeadline()), currentTick + 1);
+        bucketFor(deadlineTick).add(session);
+    }
+
+    /**
+     * Process all ticks up to a point in time. Not thread-safe: only one thread should advance the wheel.
+     *
+     * @param now Current time, as given by the {@link CoarseClock}.
+     */
+    public void advanceTo(long now) {
+        final long targetTick;
+
+        targetTick = tickFor(now);
+        while (currentTick < targetTick) {
+            currentTick += 1;
+            expireDueSessions(currentTick, now);
+        }
+    }
+
+    /**
+     * Advance the wheel every tick from a background daemon thread.
+     */
+    public synchronized void start() {
+        if (null != ticker) {
+            return;
+        }
+        ticker = new Thread("Session Expiry") {
+            public void run() {
+                while (!isInterrupted()) {
+                    try {
+                        Thread.sleep(tickInMilliseconds);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    advanceTo(CoarseClock.now());
+                }
+            }
+        };
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public synchronized void stop() {
+        if (null != ticker) {
+            ticker.interrupt();
+            ticker = null;
+        }
+    }
+
+    /**
+     * @return Number of sessions currently in the wheel, including ended ones not dropped yet. Not constant time.
+     */
+    public int size() {
+        int size = 0;
+
+        for (Queue<RemoteControlSession> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    protected void expireDueSessions(long tick, long now) {
+        final List<RemoteControlSession> notDueYet;
+        final Queue<RemoteControlSession> bucket;
+        RemoteControlSession session;
+
+        notDueYet = new LinkedList<RemoteControlSession>();
+        bucket = bucketFor(tick);
+        while (null != (session = bucket.poll())) {
+            if (session.ended()) {
+                continue;
+            }
+            if (session.idleDeadline() > now) {
+                notDueYet.add(session);
+                continue;
+            }
+            try {
+                handler.sessionIdleForTooLong(session);
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not reclaim idle session " + session, e);
+            }
+        }
+        for (RemoteControlSession rescheduled : notDueYet) {
+            schedule(rescheduled);
+        }
+    }
+
+    protected long tickFor(long time) {
+        return time / tickInMilliseconds;
+    }
+
+    protected Queue<RemoteControlSession> bucketFor(long tick) {
+        return buckets.get((int) (tick % buckets.size()));
+    }
+
+}
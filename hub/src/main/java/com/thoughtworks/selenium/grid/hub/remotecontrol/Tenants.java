@@ -0,0 +1,242 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import com.thoughtworks.selenium.grid.configuration.TenantConfiguration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Teams sharing the Hub, with how many sessions each one holds across all environments and
+ * how many of its requests are waiting for a remote control.
+ * <p/>
+ * Requests which do not name a tenant belong to {@link #NO_TENANT}, which has a weight of 1
+ * and no session limit, like any tenant that is not configured.
+ * <p/>
+ * Thread-safe: shared by the provisioners of all environments.
+ */
+public class Tenants {
+
+    public static final String NO_TENANT = "";
+
+    private final Map<String, TenantConfiguration> configurations;
+    private final ConcurrentMap<String, AtomicInteger> sessionsInUse;
+    private final ConcurrentMap<String, AtomicInteger> waitingRequests;
+    private final ConcurrentMap<String, ConcurrentMap<RemoteControlProvisioner, AtomicInteger>> waitingRequestsByProvisioner;
+
+    public Tenants() {
+        this(new TenantConfiguration[] {});
+    }
+
+    public Tenants(TenantConfiguration[] configurations) {
+        this.configurations = new LinkedHashMap<String, TenantConfiguration>();
+        for (TenantConfiguration configuration : configurations) {
+            this.configurations.put(configuration.getName(), configuration);
+        }
+        this.sessionsInUse = new ConcurrentHashMap<String, AtomicInteger>();
+        this.waitingRequests = new ConcurrentHashMap<String, AtomicInteger>();
+        this.waitingRequestsByProvisioner =
+                new ConcurrentHashMap<String, ConcurrentMap<RemoteControlProvisioner, AtomicInteger>>();
+    }
+
+    public double weightOf(String tenant) {
+        final TenantConfiguration configuration;
+
+        configuration = configurations.get(tenant);
+        if (null == configuration || configuration.getWeight() <= 0) {
+            return 1;
+        }
+        return configuration.getWeight();
+    }
+
+    /**
+     * @return Maximum number of sessions the tenant can hold at the same time. 0 for no limit.
+     */
+    public int maxConcurrentSessionsOf(String tenant) {
+        final TenantConfiguration configuration;
+
+        configuration = configurations.get(tenant);
+        return null == configuration ? 0 : configuration.getMaxConcurrentSessions();
+    }
+
+    /**
+     * @return Whether the tenant must not get any more session for now.
+     */
+    public boolean atQuota(String tenant) {
+        final int maxConcurrentSessions;
+
+        maxConcurrentSessions = maxConcurrentSessionsOf(tenant);
+        return maxConcurrentSessions > 0 && sessionsInUse(tenant) >= maxConcurrentSessions;
+    }
+
+    /**
+     * @return Sessions held by the tenant relative to its weight: under contention the next remote
+     *         control goes to the waiting tenant with the lowest share.
+     */
+    public double share(String tenant) {
+        return sessionsInUse(tenant) / weightOf(tenant);
+    }
+
+    /**
+     * @return Whether any tenant has a limit on its concurrent sessions.
+     */
+    public boolean hasQuotas() {
+        for (TenantConfiguration configuration : configurations.values()) {
+            if (configuration.getMaxConcurrentSessions() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int sessionsInUse(String tenant) {
+        return counter(sessionsInUse, tenant).get();
+    }
+
+    public int waitingRequests(String tenant) {
+        return counter(waitingRequests, tenant).get();
+    }
+
+    /**
+     * A session slot was handed over to a request of the tenant.
+     */
+    public void sessionStarted(String tenant) {
+        counter(sessionsInUse, tenant).incrementAndGet();
+    }
+
+    /**
+     * A session slot held by the tenant was freed.
+     */
+    public void sessionEnded(String tenant) {
+        decrement(counter(sessionsInUse, tenant));
+    }
+
+    /**
+     * Hand a session slot held by one tenant over to another, unless the receiving tenant is at quota.
+     * Checking the quota and taking the slot is a single step, so concurrent transfers cannot push
+     * the receiving tenant over its quota.
+     *
+     * @return Whether the slot was handed over.
+     */
+    public boolean tryTransfer(String from, String to) {
+        final int maxConcurrentSessions;
+        final AtomicInteger counter;
+        int value;
+
+        if (from.equals(to)) {
+            return true;
+        }
+        maxConcurrentSessions = maxConcurrentSessionsOf(to);
+        counter = counter(sessionsInUse, to);
+        do {
+            value = counter.get();
+            if (maxConcurrentSessions > 0 && value >= maxConcurrentSessions) {
+                return false;
+            }
+        } while (!counter.compareAndSet(value, value + 1));
+        sessionEnded(from);
+        return true;
+    }
+
+    public void requestQueued(String tenant) {
+        counter(waitingRequests, tenant).incrementAndGet();
+    }
+
+    public void requestDequeued(String tenant) {
+        decrement(counter(waitingRequests, tenant));
+    }
+
+    /**
+     * A request of the tenant started waiting in the environment of a provisioner.
+     */
+    public void requestQueued(String tenant, RemoteControlProvisioner provisioner) {
+        requestQueued(tenant);
+        counter(waitingRequestsByProvisionerOf(tenant), provisioner).incrementAndGet();
+    }
+
+    /**
+     * A request of the tenant stopped waiting in the environment of a provisioner.
+     */
+    public void requestDequeued(String tenant, RemoteControlProvisioner provisioner) {
+        requestDequeued(tenant);
+        decrement(counter(waitingRequestsByProvisionerOf(tenant), provisioner));
+    }
+
+    /**
+     * Constant time in the number of remote controls: only the environments the tenant waits in are listed.
+     *
+     * @return Provisioners of the environments where requests of the tenant are waiting. Never null.
+     */
+    public List<RemoteControlProvisioner> provisionersWithRequestsWaitingFor(String tenant) {
+        final List<RemoteControlProvisioner> provisioners;
+
+        provisioners = new ArrayList<RemoteControlProvisioner>();
+        for (Map.Entry<RemoteControlProvisioner, AtomicInteger> entry : waitingRequestsByProvisionerOf(tenant).entrySet()) {
+            if (entry.getValue().get() > 0) {
+                provisioners.add(entry.getKey());
+            }
+        }
+        return provisioners;
+    }
+
+    /**
+     * @return Configured tenants, in configuration order, followed by the other tenants seen so far.
+     */
+    public List<String> names() {
+        final List<String> names;
+
+        names = new ArrayList<String>(configurations.keySet());
+        for (String tenant : sessionsInUse.keySet()) {
+            if (!names.contains(tenant)) {
+                names.add(tenant);
+            }
+        }
+        for (String tenant : waitingRequests.keySet()) {
+            if (!names.contains(tenant)) {
+                names.add(tenant);
+            }
+        }
+        return names;
+    }
+
+    protected <K> AtomicInteger counter(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        final AtomicInteger newCounter;
+        final AtomicInteger existingCounter;
+
+        existingCounter = counters.get(key);
+        if (null != existingCounter) {
+            return existingCounter;
+        }
+        newCounter = new AtomicInteger();
+        return null == counters.putIfAbsent(key, newCounter) ? newCounter : counters.get(key);
+    }
+
+    protected ConcurrentMap<RemoteControlProvisioner, AtomicInteger> waitingRequestsByProvisionerOf(String tenant) {
+        final ConcurrentMap<RemoteControlProvisioner, AtomicInteger> newCounters;
+        final ConcurrentMap<RemoteControlProvisioner, AtomicInteger> existingCounters;
+
+        existingCounters = waitingRequestsByProvisioner.get(tenant);
+        if (null != existingCounters) {
+            return existingCounters;
+        }
+        newCounters = new ConcurrentHashMap<RemoteControlProvisioner, AtomicInteger>();
+        return null == waitingRequestsByProvisioner.putIfAbsent(tenant, newCounters)
+               ? newCounters : waitingRequestsByProvisioner.get(tenant);
+    }
+
+    protected static void decrement(AtomicInteger counter) {
+        int value;
+
+        do {
+            value = counter.get();
+            if (0 == value) {
+                return;
+            }
+        } while (!counter.compareAndSet(value, value - 1));
+    }
+
+}
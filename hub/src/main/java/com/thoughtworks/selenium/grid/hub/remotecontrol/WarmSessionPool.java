@@ -0,0 +1,450 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.Environment;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
+import com.thoughtworks.selenium.grid.hub.NoSuchSessionException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Browser sessions started ahead of demand on idle remote controls, so that a new session
+ * request gets an already running browser instead of waiting for one to launch.
+ * <p/>
+ * Opt-in per environment: up to the configured number of warm sessions are started with the
+ * configured browser URL. A request for the same browser URL gets a warm session as is. A request
+ * for another URL of the same scheme, host and port gets one after an <code>open</code> of its URL.
+ * Requests for other hosts, or passing extension Javascript or browser options, start a session
+ * as usual.
+ * <p/>
+ * Warm sessions are regular sessions accounted to {@link Tenants#NO_TENANT} until handed out: the
+ * idle expiry reclaims them like any other session. They are only started while no request
+ * is waiting, and they are ended as soon as a request has to wait for the session slot they hold.
+ * <p/>
+ * Sessions are started and ended one at a time by a background daemon thread, with the deadlines
+ * configured for <code>getNewBrowserSession</code> and <code>open</code> so that a hung remote control
+ * cannot stall it. A remote control failing to start a warm session is left alone for a while, twice
+ * as long after each consecutive failure. Thread-safe.
+ */
+public class WarmSessionPool {
+
+    private static final Log LOGGER = LogFactory.getLog(WarmSessionPool.class);
+    protected static final long INITIAL_BACKOFF_IN_MILLISECONDS = 10 * 1000;
+    protected static final long MAX_BACKOFF_IN_MILLISECONDS = 10 * 60 * 1000;
+    private final GlobalRemoteControlPool pool;
+    private final ConcurrentMap<String, LinkedList<RemoteControlSession>> sessionsByEnvironment;
+    private final Map<RemoteControlProxy, StartFailures> startFailuresByRemoteControl;
+    private ExecutorService executor;
+
+    public WarmSessionPool(GlobalRemoteControlPool pool) {
+        this.pool = pool;
+        this.sessionsByEnvironment = new ConcurrentHashMap<String, LinkedList<RemoteControlSession>>();
+        this.startFailuresByRemoteControl = new HashMap<RemoteControlProxy, StartFailures>();
+    }
+
+    /**
+     * Hand out the oldest warm session of an environment.
+     *
+     * @param environment Environment the session is requested for. Should not be null.
+     * @param browserUrl  Browser URL the session is requested for. Null if none.
+     * @param tenant      Tenant the session is requested for. Should not be null.
+     * @return Session ready for the request, now accounted to its tenant. Null if there is no warm session
+     *         the request can use, or if its tenant is at quota.
+     */
+    public RemoteControlSession take(Environment environment, String browserUrl, String tenant) {
+        final String warmSessionBrowserUrl;
+        final RemoteControlSession session;
+
+        if (targetCountFor(environment.name()) <= 0) {
+            return null;
+        }
+        warmSessionBrowserUrl = browserUrlFor(environment.name());
+        if (!sameOrigin(warmSessionBrowserUrl, browserUrl)) {
+            return null;
+        }
+        session = pollOldest(environment.name());
+        if (null == session) {
+            return null;
+        }
+        if (!pool.tenants().tryTransfer(session.tenant(), tenant)) {
+            putBack(session);
+            return null;
+        }
+        if (!tenant.equals(session.tenant())) {
+            session.transferTo(tenant);
+        }
+        replenish(environment.name());
+        if (!warmSessionBrowserUrl.equals(browserUrl) && !open(session, browserUrl)) {
+            release(session);
+            return null;
+        }
+        LOGGER.info("Handing out warm session " + session);
+        return session;
+    }
+
+    /**
+     * Start warm sessions in the background until the environment has as many as configured,
+     * or until no remote control is idle anymore.
+     */
+    public void replenish(final String environment) {
+        if (targetCountFor(environment) <= 0) {
+            return;
+        }
+        executor().execute(new Runnable() {
+            public void run() {
+                while (sessionsOf(environment).size() < targetCountFor(environment)) {
+                    if (!start(environment)) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * End warm sessions in the background to free session slots for requests waiting in the environment.
+     * Called whenever a request has to wait: queued behind any refill in progress, it also ends the warm
+     * sessions which were still starting when the request arrived.
+     */
+    public void makeRoom(final String environment) {
+        if (targetCountFor(environment) <= 0) {
+            return;
+        }
+        executor().execute(new Runnable() {
+            public void run() {
+                final RemoteControlProvisioner provisioner;
+                RemoteControlSession session;
+
+                provisioner = pool.getProvisioner(environment);
+                if (null == provisioner) {
+                    return;
+                }
+                for (int i = provisioner.pendingReservationCount(); i > 0; i--) {
+                    session = pollOldest(environment);
+                    if (null == session) {
+                        return;
+                    }
+                    LOGGER.info("Ending warm session " + session + " to make room for a waiting request");
+                    release(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop tracking a warm session which is ending.
+     *
+     * @return Whether the session was still waiting to be handed out.
+     */
+    public boolean forget(RemoteControlSession session) {
+        final LinkedList<RemoteControlSession> sessions;
+
+        if (!session.warm()) {
+            return false;
+        }
+        sessions = sessionsOf(session.remoteControl().environment());
+        synchronized (sessions) {
+            session.setWarm(false);
+            return sessions.remove(session);
+        }
+    }
+
+    /**
+     * @return Snapshot of the warm sessions waiting to be handed out, in all environments.
+     */
+    public List<RemoteControlSession> sessions() {
+        final List<RemoteControlSession> snapshot;
+
+        snapshot = new ArrayList<RemoteControlSession>();
+        for (LinkedList<RemoteControlSession> sessions : sessionsByEnvironment.values()) {
+            synchronized (sessions) {
+                snapshot.addAll(sessions);
+            }
+        }
+        return snapshot;
+    }
+
+    public synchronized void shutdown() {
+        if (null != executor) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Start one warm session on an idle remote control, skipping the remote controls which recently failed
+     * to start one. Blocks while the browser launches. Only called by the background thread.
+     *
+     * @return Whether a session was started.
+     */
+    protected boolean start(String environment) {
+        final List<RemoteControlProxy> skippedRemoteControls;
+        final RemoteControlProvisioner provisioner;
+        RemoteControlProxy remoteControl;
+
+        provisioner = pool.getProvisioner(environment);
+        if (null == provisioner) {
+            return false;
+        }
+        skippedRemoteControls = new ArrayList<RemoteControlProxy>();
+        try {
+            while (true) {
+                remoteControl = provisioner.reserveSpareRemoteControl();
+                if (null == remoteControl) {
+                    return false;
+                }
+                if (!provisioner.confirmReservation(remoteControl)) {
+                    continue;
+                }
+                if (backingOff(remoteControl, now())) {
+                    skippedRemoteControls.add(remoteControl);
+                    continue;
+                }
+                return start(environment, remoteControl);
+            }
+        } finally {
+            for (RemoteControlProxy skippedRemoteControl : skippedRemoteControls) {
+                pool.releaseSessionSlot(skippedRemoteControl);
+            }
+        }
+    }
+
+    /**
+     * A remote control which fails is released without starting a warm session on it again right away.
+     */
+    protected boolean start(String environment, RemoteControlProxy remoteControl) {
+        final RemoteControlSession session;
+        final HttpParameters parameters;
+        final Response response;
+        final String body;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "getNewBrowserSession");
+        parameters.put("1", browserFor(environment));
+        parameters.put("2", browserUrlFor(environment));
+        try {
+            response = remoteControl.forward(parameters, timeoutInMillisecondsFor("getNewBrowserSession"));
+            body = response.body();
+            response.release();
+        } catch (IOException e) {
+            return startFailed(remoteControl, e.toString());
+        }
+        if (!body.startsWith("OK,")) {
+            return startFailed(remoteControl, body);
+        }
+        startFailuresByRemoteControl.remove(remoteControl);
+        pool.associateWithSession(remoteControl, body.substring(3));
+        session = pool.getRemoteControlSession(body.substring(3));
+        if (null == session) {
+            return true;
+        }
+        park(session);
+        LOGGER.info("Started warm session " + session);
+        return true;
+    }
+
+    protected boolean startFailed(RemoteControlProxy remoteControl, String reason) {
+        StartFailures failures;
+
+        failures = startFailuresByRemoteControl.get(remoteControl);
+        if (null == failures) {
+            failures = new StartFailures();
+            startFailuresByRemoteControl.put(remoteControl, failures);
+        }
+        failures.record(now());
+        LOGGER.warn("Could not start a warm session on " + remoteControl + " (" + reason + "), not trying again for "
+                    + (failures.retryAt - now()) + " ms");
+        pool.releaseSessionSlot(remoteControl);
+        return false;
+    }
+
+    protected boolean backingOff(RemoteControlProxy remoteControl, long now) {
+        final StartFailures failures;
+
+        failures = startFailuresByRemoteControl.get(remoteControl);
+        return null != failures && now < failures.retryAt;
+    }
+
+    protected void park(RemoteControlSession session) {
+        final LinkedList<RemoteControlSession> sessions;
+
+        sessions = sessionsOf(session.remoteControl().environment());
+        synchronized (sessions) {
+            session.setWarm(true);
+            sessions.addLast(session);
+        }
+    }
+
+    /**
+     * Give back a warm session taken by a request which could not use it, keeping its place as the oldest.
+     */
+    protected void putBack(RemoteControlSession session) {
+        final LinkedList<RemoteControlSession> sessions;
+
+        sessions = sessionsOf(session.remoteControl().environment());
+        synchronized (sessions) {
+            session.setWarm(true);
+            sessions.addFirst(session);
+        }
+    }
+
+    /**
+     * @return Oldest warm session of the environment, not warm anymore and marked active. Null if there is none.
+     */
+    protected RemoteControlSession pollOldest(String environment) {
+        final LinkedList<RemoteControlSession> sessions;
+        final RemoteControlSession session;
+
+        sessions = sessionsOf(environment);
+        synchronized (sessions) {
+            session = sessions.poll();
+            if (null != session) {
+                session.setWarm(false);
+                session.updateLastActiveAt();
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Reset the page of a warm session for a request made with another browser URL of the same origin.
+     */
+    protected boolean open(RemoteControlSession session, String browserUrl) {
+        final HttpParameters parameters;
+        final Response response;
+        final String body;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "open");
+        parameters.put("1", browserUrl);
+        parameters.put("sessionId", session.sessionId());
+        try {
+            response = session.remoteControl().forward(parameters, timeoutInMillisecondsFor("open"));
+            body = response.body();
+            response.release();
+        } catch (IOException e) {
+            LOGGER.warn("Could not open " + browserUrl + " in warm session " + session + ": " + e.getMessage());
+            return false;
+        }
+        if (!body.startsWith("OK")) {
+            LOGGER.warn("Could not open " + browserUrl + " in warm session " + session + ": " + body);
+            return false;
+        }
+        return true;
+    }
+
+    protected void release(RemoteControlSession session) {
+        try {
+            pool.releaseForSession(session.sessionId());
+        } catch (NoSuchSessionException e) {
+            LOGGER.debug("Warm session " + session.sessionId() + " already ended");
+        }
+    }
+
+    protected LinkedList<RemoteControlSession> sessionsOf(String environment) {
+        final LinkedList<RemoteControlSession> newSessions;
+        final LinkedList<RemoteControlSession> existingSessions;
+
+        existingSessions = sessionsByEnvironment.get(environment);
+        if (null != existingSessions) {
+            return existingSessions;
+        }
+        newSessions = new LinkedList<RemoteControlSession>();
+        return null == sessionsByEnvironment.putIfAbsent(environment, newSessions)
+               ? newSessions : sessionsByEnvironment.get(environment);
+    }
+
+    /**
+     * @return Whether both URLs have the same scheme, host and port. False if either is missing or malformed.
+     */
+    protected static boolean sameOrigin(String firstUrl, String secondUrl) {
+        final URL first;
+        final URL second;
+
+        if (null == firstUrl || null == secondUrl) {
+            return false;
+        }
+        try {
+            first = new URL(firstUrl);
+            second = new URL(secondUrl);
+        } catch (MalformedURLException e) {
+            return false;
+        }
+        return first.getProtocol().equalsIgnoreCase(second.getProtocol())
+               && first.getHost().equalsIgnoreCase(second.getHost())
+               && portOf(first) == portOf(second);
+    }
+
+    protected static int portOf(URL url) {
+        return -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+    }
+
+    protected synchronized ExecutorService executor() {
+        if (null == executor) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread;
+
+                    thread = new Thread(runnable, "Warm Sessions");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return Deadline configured for the command (see <code>commandDeadlines</code>), 0 meaning forever.
+     */
+    protected int timeoutInMillisecondsFor(String command) {
+        return (int) (HubRegistry.registry().gridConfiguration().getHub().commandTimeoutInSecondsFor(command) * 1000);
+    }
+
+    protected int targetCountFor(String environment) {
+        return HubRegistry.registry().gridConfiguration().getHub().warmSessionsFor(environment);
+    }
+
+    protected String browserUrlFor(String environment) {
+        return HubRegistry.registry().gridConfiguration().getHub().warmSessionBrowserUrlFor(environment);
+    }
+
+    protected String browserFor(String environment) {
+        return HubRegistry.registry().environmentManager().environment(environment).browser();
+    }
+
+    /**
+     * Consecutive failures of a remote control to start a warm session.
+     */
+    protected static class StartFailures {
+
+        private int count;
+        private long retryAt;
+
+        public void record(long now) {
+            count += 1;
+            retryAt = now + Math.min(MAX_BACKOFF_IN_MILLISECONDS, INITIAL_BACKOFF_IN_MILLISECONDS << Math.min(count - 1, 16));
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.SpillOverBuffer;
+import com.thoughtworks.selenium.grid.SpooledResponse;
+import com.thoughtworks.selenium.grid.hub.CommandParsingException;
+import com.thoughtworks.selenium.grid.hub.NoSuchSessionException;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Ordered list of Selenese commands for a single session, run back to back on its remote
+ * control so that the client pays one round trip to the Hub for the whole batch.
+ * <p/>
+ * Each command keeps its own semantics (last active time updates, release on
+ * <code>testComplete</code>, deadlines...). The batch stops at the first <code>ERROR</code>.
+ * <p/>
+ * The reply is form encoded: the result of the n-th command is the value of parameter
+ * <code>n</code> (starting at 1), e.g. <code>1=OK&2=OK%2Ctrue&3=ERROR%3A+Element+q+not+found</code>.
+ * It is encoded as the results are streamed off the remote control into a {@link SpillOverBuffer},
+ * so that large results do not take their size in heap.
+ */
+public class BatchCommand extends SeleneseCommand {
+
+    private static final String ERROR = "ERROR";
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+                                              'A', 'B', 'C', 'D', 'E', 'F'};
+
+    private final List<SeleneseCommand> commands;
+
+    public BatchCommand(String sessionId, HttpParameters parameters, List<SeleneseCommand> commands) {
+        super(sessionId, parameters);
+        this.commands = commands;
+    }
+
+    public List<SeleneseCommand> commands() {
+        return commands;
+    }
+
+    public Response execute(RemoteControlPool pool) throws IOException {
+        final SpillOverBuffer results;
+
+        results = new SpillOverBuffer();
+        try {
+            for (int i = 0; i < commands.size(); i++) {
+                final Response response;
+                final boolean failed;
+
+                if (i > 0) {
+                    results.write('&');
+                }
+                results.write(String.valueOf(i + 1).getBytes("UTF-8"));
+                results.write('=');
+                response = execute(commands.get(i), pool);
+                try {
+                    failed = formEncode(new BufferedInputStream(response.openBody()), results);
+                } finally {
+                    response.release();
+                }
+                if (failed) {
+                    break;
+                }
+            }
+            results.close();
+        } catch (IOException e) {
+            results.dispose();
+            throw e;
+        }
+        return new SpooledResponse(200, results);
+    }
+
+    /**
+     * @return Response of the command, a Selenese error if it could not be run.
+     */
+    protected Response execute(SeleneseCommand command, RemoteControlPool pool) {
+        try {
+            return command.execute(pool);
+        } catch (IOException e) {
+            return new Response("Remote control did not reply: " + e.getMessage());
+        } catch (NoSuchSessionException e) {
+            return new Response(e.getMessage());
+        } catch (CommandParsingException e) {
+            return new Response(200, e.getMessage());
+        }
+    }
+
+    /**
+     * Form encode a UTF-8 result as it is copied, as {@link java.net.URLEncoder} would, so that
+     * large results (screenshots...) are never held in memory.
+     *
+     * @return Whether the result is a Selenese error.
+     */
+    protected static boolean formEncode(InputStream result, OutputStream out) throws IOException {
+        final byte[] error;
+        int length;
+        int b;
+
+        error = ERROR.getBytes("UTF-8");
+        length = 0;
+        while ((b = result.read()) >= 0) {
+            if (length < error.length && b == error[length]) {
+                length++;
+            } else if (length < error.length) {
+                length = error.length + 1;
+            }
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || '.' == b || '-' == b || '*' == b || '_' == b) {
+                out.write(b);
+            } else if (' ' == b) {
+                out.write('+');
+            } else {
+                out.write('%');
+                out.write(HEX_DIGITS[b >> 4]);
+                out.write(HEX_DIGITS[b & 0x0F]);
+            }
+        }
+        return length == error.length;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hub-wide counters of command incidents, kept by command name so that the console can
+ * show which command families hang remote controls.
+ * <p/>
+ * Thread-safe, lock-free.
+ */
+public class CommandMetrics {
+
+    private final ConcurrentMap<String, AtomicLong> timeOutsByCommand;
+    private final AtomicLong timeOutCount;
+
+    public CommandMetrics() {
+        timeOutsByCommand = new ConcurrentHashMap<String, AtomicLong>();
+        timeOutCount = new AtomicLong(0);
+    }
+
+    /**
+     * @param commandName Name of the command that missed its deadline. Can be null.
+     */
+    public void recordTimeOut(String commandName) {
+        final String key;
+        AtomicLong count;
+
+        key = (null == commandName) ? "" : commandName;
+        count = timeOutsByCommand.get(key);
+        if (null == count) {
+            timeOutsByCommand.putIfAbsent(key, new AtomicLong(0));
+            count = timeOutsByCommand.get(key);
+        }
+        count.incrementAndGet();
+        timeOutCount.incrementAndGet();
+    }
+
+    public long timeOutCount() {
+        return timeOutCount.get();
+    }
+
+    /**
+     * @return Snapshot of the number of time outs per command name, sorted by name. Never null.
+     */
+    public Map<String, Long> timeOutsByCommand() {
+        final Map<String, Long> snapshot;
+
+        snapshot = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : timeOutsByCommand.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+
+}
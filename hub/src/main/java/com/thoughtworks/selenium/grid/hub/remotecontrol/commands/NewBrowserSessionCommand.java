@@ -2,13 +2,20 @@ package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
 
 import com.thoughtworks.selenium.grid.HttpParameters;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.RetryLaterResponse;
 import com.thoughtworks.selenium.grid.hub.Environment;
+import com.thoughtworks.selenium.grid.hub.NewSessionQueueFullException;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.PendingReservation;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlSession;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.Tenants;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.WarmSessionPool;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.net.ProtocolException;
@@ -16,47 +23,168 @@ import java.net.ProtocolException;
 /**
  * Selenese command requesting a new session for a specific browser/environment.
  * Marks the start of a new Selenese session.
+ * <p/>
+ * While waiting for a remote control, requests with a higher priority are served first, then
+ * the ones with the earliest deadline. A request whose deadline passes gets an error instead
+ * of a browser it could not use anymore.
+ * <p/>
+ * When too many requests are already waiting in the environment, the request is turned down
+ * right away with a 503 status and a <code>Retry-After</code> estimate.
+ * <p/>
+ * A request made for a tenant gets its fair share of the remote controls and is kept within the
+ * tenant quota.
+ * <p/>
+ * When the environment keeps warm sessions (see {@link WarmSessionPool}), a suitable one is handed
+ * out right away instead of reserving a remote control and launching a browser.
  */
 public class NewBrowserSessionCommand extends SeleneseCommand {
 
     private static final Pattern SESSION_ID_PATTERN = Pattern.compile("OK,([^,]*)");
     private static final Log logger = LogFactory.getLog(NewBrowserSessionCommand.class);
     private final Environment environment;
+    private final int priority;
+    private final long deadline;
+    private final String tenant;
 
     public NewBrowserSessionCommand(Environment environment, HttpParameters parameters) {
+        this(environment, parameters, PendingReservation.DEFAULT_PRIORITY, PendingReservation.NO_DEADLINE);
+    }
+
+    /**
+     * @see PendingReservation#PendingReservation(int, long)
+     */
+    public NewBrowserSessionCommand(Environment environment, HttpParameters parameters, int priority, long deadline) {
+        this(environment, parameters, priority, deadline, Tenants.NO_TENANT);
+    }
+
+    /**
+     * @see PendingReservation#PendingReservation(int, long, String)
+     */
+    public NewBrowserSessionCommand(Environment environment, HttpParameters parameters, int priority, long deadline,
+                                    String tenant) {
         super(null, parameters);
         this.environment = environment;
+        this.priority = priority;
+        this.deadline = deadline;
+        this.tenant = null == tenant ? Tenants.NO_TENANT : tenant;
     }
 
     public Response execute(RemoteControlPool pool) throws IOException {
-        RemoteControlProxy remoteControl;
-        final String sessionId;
-        final Response response;
+        final RemoteControlProxy remoteControl;
+        final Response warmSessionResponse;
 
-        remoteControl = pool.reserve(environment);
+        warmSessionResponse = startOnWarmSession(pool);
+        if (null != warmSessionResponse) {
+            return warmSessionResponse;
+        }
+        try {
+            if (PendingReservation.DEFAULT_PRIORITY == priority && PendingReservation.NO_DEADLINE == deadline
+                && Tenants.NO_TENANT.equals(tenant)) {
+                remoteControl = pool.reserve(environment);
+            } else {
+                remoteControl = pool.reserve(environment, priority, deadline, tenant);
+            }
+        } catch (NewSessionQueueFullException e) {
+            return queueFull(e.retryAfterInMilliseconds());
+        }
         if (null == remoteControl) {
-            final String message = "No available remote control for environment '" + environment.name() + "'";
-            logger.warn(message);
-            return new Response(message);
+            if (deadlinePassed()) {
+                return deadlineExpired();
+            }
+            return noAvailableRemoteControl();
         }
+        return execute(pool, remoteControl);
+    }
+
+    /**
+     * Start a new session on a remote control that is already reserved.
+     *
+     * @param pool          Pool the remote control was reserved from. Should not be null.
+     * @param remoteControl Reserved remote control. Released if the session cannot be started.
+     * @return Remote control response.
+     */
+    public Response execute(RemoteControlPool pool, RemoteControlProxy remoteControl) {
+        final String sessionId;
+        final Response response;
+
         try {
-            response = remoteControl.forward(parameters());
+            response = forward(remoteControl);
             sessionId = parseSessionId(response.body());
             if (null == sessionId) {
-                pool.release(remoteControl);
+                pool.release(remoteControl, tenant);
                 return new Response("Could not retrieve a new session");
             }
-            pool.associateWithSession(remoteControl, sessionId);
+            pool.associateWithSession(remoteControl, sessionId, tenant);
             pool.updateSessionLastActiveAt(sessionId);
 
             return response;
+        } catch (SocketTimeoutException e) {
+            pool.release(remoteControl, tenant);
+            return timedOut(remoteControl);
         } catch (Exception e) {
             logger.error("Problem while requesting new browser session", e);
-            pool.release(remoteControl);
+            pool.release(remoteControl, tenant);
             return new Response(e.getMessage());
         }
     }
 
+    /**
+     * Hand out a warm session, unless the request passes extension Javascript or browser options
+     * the session was not started with.
+     *
+     * @return Response carrying the id of the warm session. Null if there is no suitable warm session.
+     */
+    public Response startOnWarmSession(RemoteControlPool pool) {
+        final RemoteControlSession session;
+
+        if (null == parameters() || hasValue("3") || hasValue("4")) {
+            return null;
+        }
+        session = pool.takeWarmSession(environment, parameters().get("2"), tenant);
+        if (null == session) {
+            return null;
+        }
+        return new Response(200, "OK," + session.sessionId());
+    }
+
+    public Response noAvailableRemoteControl() {
+        final String message = "No available remote control for environment '" + environment.name() + "'";
+        logger.warn(message);
+        return new Response(message);
+    }
+
+    public Response deadlineExpired() {
+        final String message = "Deadline passed before a remote control for environment '" + environment.name()
+                               + "' became available";
+        logger.warn(message);
+        return new Response(message);
+    }
+
+    /**
+     * @param retryAfterInMilliseconds Estimate of how long it will take for a request to get a remote control.
+     */
+    public Response queueFull(long retryAfterInMilliseconds) {
+        final long retryAfterInSeconds;
+        final String message;
+
+        retryAfterInSeconds = Math.max(1, (retryAfterInMilliseconds + 999) / 1000);
+        message = "Too many pending new session requests for environment '" + environment.name()
+                  + "', retry in " + retryAfterInSeconds + " seconds";
+        logger.warn(message);
+        return new RetryLaterResponse(message, retryAfterInSeconds);
+    }
+
+    public boolean deadlinePassed() {
+        return System.currentTimeMillis() >= deadline;
+    }
+
+    protected boolean hasValue(String parameterName) {
+        final String value;
+
+        value = parameters().get(parameterName);
+        return null != value && !"".equals(value.trim());
+    }
+
     protected String parseSessionId(String responseBody) {
         final Matcher matcher = SESSION_ID_PATTERN.matcher(responseBody);        
         if (matcher.matches()) {
@@ -69,4 +197,19 @@ public class NewBrowserSessionCommand extends SeleneseCommand {
         return environment;
     }
 
+    public int priority() {
+        return priority;
+    }
+
+    public long deadline() {
+        return deadline;
+    }
+
+    /**
+     * @return Tenant the session is requested for. Never null.
+     */
+    public String tenant() {
+        return tenant;
+    }
+
 }
@@ -0,0 +1,126 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.Environment;
+import com.thoughtworks.selenium.grid.hub.NoSuchSessionException;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selenese command requesting new sessions in several environments at once, for a test driving
+ * several browsers together, e.g.
+ * <code>cmd=gridGetNewBrowserSessions&1=Firefox on Windows,IE on Windows&2=http://chat.example.com</code>.
+ * <p/>
+ * Remote controls are reserved all or nothing (see
+ * {@link com.thoughtworks.selenium.grid.hub.remotecontrol.GangReservation}), so that tests needing
+ * the same environments cannot deadlock each other. Sessions are then started one after the other.
+ * If one cannot be started, the ones already started are ended and all remote controls are released.
+ * <p/>
+ * Replies with the session ids, in the order of the environments: <code>OK,1234,5678</code>. The
+ * sessions are grouped: <code>testComplete</code> on any of them ends them all.
+ */
+public class NewBrowserSessionGroupCommand extends SeleneseCommand {
+
+    private static final Log LOGGER = LogFactory.getLog(NewBrowserSessionGroupCommand.class);
+    private final List<NewBrowserSessionCommand> sessionCommands;
+    private final long deadline;
+    private final String tenant;
+
+    /**
+     * @param sessionCommands New session command for each session. Should not be empty.
+     * @see com.thoughtworks.selenium.grid.hub.remotecontrol.GangReservation#GangReservation(List, long, String)
+     */
+    public NewBrowserSessionGroupCommand(HttpParameters parameters, List<NewBrowserSessionCommand> sessionCommands,
+                                         long deadline, String tenant) {
+        super(null, parameters);
+        this.sessionCommands = sessionCommands;
+        this.deadline = deadline;
+        this.tenant = tenant;
+    }
+
+    public Response execute(RemoteControlPool pool) throws IOException {
+        final List<RemoteControlProxy> remoteControls;
+        final List<Environment> environments;
+        final List<String> sessionIds;
+        final StringBuilder reply;
+
+        environments = new ArrayList<Environment>(sessionCommands.size());
+        for (NewBrowserSessionCommand command : sessionCommands) {
+            environments.add(command.environment());
+        }
+        remoteControls = pool.reserve(environments, deadline, tenant);
+        if (null == remoteControls) {
+            final String message;
+
+            message = "Could not reserve remote controls for environments " + environmentNames();
+            LOGGER.warn(message);
+            return new Response(message);
+        }
+        sessionIds = new ArrayList<String>(sessionCommands.size());
+        for (int i = 0; i < sessionCommands.size(); i++) {
+            final Response response;
+            final String sessionId;
+
+            response = sessionCommands.get(i).execute(pool, remoteControls.get(i));
+            sessionId = sessionCommands.get(i).parseSessionId(response.body());
+            if (null == sessionId) {
+                abort(pool, sessionIds, remoteControls.subList(i + 1, remoteControls.size()));
+                return response;
+            }
+            response.release();
+            sessionIds.add(sessionId);
+        }
+        pool.groupSessions(sessionIds);
+        reply = new StringBuilder("OK");
+        for (String sessionId : sessionIds) {
+            reply.append(',').append(sessionId);
+        }
+        return new Response(200, reply.toString());
+    }
+
+    /**
+     * End the sessions already started and release the remote controls not used yet.
+     */
+    protected void abort(RemoteControlPool pool, List<String> sessionIds, List<RemoteControlProxy> unusedRemoteControls) {
+        for (String sessionId : sessionIds) {
+            try {
+                pool.releaseForSession(sessionId);
+            } catch (NoSuchSessionException e) {
+                LOGGER.debug("Session " + sessionId + " already ended");
+            }
+        }
+        for (RemoteControlProxy remoteControl : unusedRemoteControls) {
+            pool.release(remoteControl, tenant);
+        }
+    }
+
+    public List<String> environmentNames() {
+        final List<String> names;
+
+        names = new ArrayList<String>(sessionCommands.size());
+        for (NewBrowserSessionCommand command : sessionCommands) {
+            names.add(command.environment().name());
+        }
+        return names;
+    }
+
+    public List<NewBrowserSessionCommand> sessionCommands() {
+        return sessionCommands;
+    }
+
+    public long deadline() {
+        return deadline;
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.ResponseCallback;
+import com.thoughtworks.selenium.grid.hub.FormBody;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Plain Selenese command forwarded to its remote control as the original request body,
+ * without decoding and re-encoding all its parameters.
+ * <p/>
+ * Only <code>cmd</code> and <code>sessionId</code> are decoded, for routing and logging.
+ */
+public class PassThroughSeleneseCommand extends SeleneseCommand {
+
+    private final FormBody body;
+
+    public PassThroughSeleneseCommand(String sessionId, HttpParameters routingParameters, FormBody body) {
+        super(sessionId, routingParameters);
+        this.body = body;
+    }
+
+    public FormBody body() {
+        return body;
+    }
+
+    protected Response forward(RemoteControlProxy remoteControl) throws IOException {
+        return remoteControl.forward(body.bytes(), body.contentType(), timeoutInMilliseconds());
+    }
+
+    /**
+     * Forward the command with a non-blocking client. Returns as soon as the command is sent off.
+     *
+     * @param callback Notified on the I/O thread of the client once the remote control replied or failed.
+     *                 A command missing its deadline completes with a Selenese error.
+     * @throws com.thoughtworks.selenium.grid.hub.NoSuchSessionException if the session is unknown.
+     */
+    public void execute(final RemoteControlPool pool, AsyncHttpClient client, final ResponseCallback callback) {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = pool.retrieve(sessionId());
+        pool.updateSessionLastActiveAt(sessionId());
+        remoteControl.forward(body.bytes(), body.contentType(), timeoutInMilliseconds(), client, new ResponseCallback() {
+            public void completed(Response response) {
+                try {
+                    pool.updateSessionLastActiveAt(sessionId());
+                } finally {
+                    callback.completed(response);
+                }
+            }
+
+            public void failed(IOException e) {
+                if (e instanceof SocketTimeoutException) {
+                    callback.completed(timedOut(remoteControl));
+                } else {
+                    callback.failed(e);
+                }
+            }
+        });
+    }
+
+}
@@ -2,16 +2,29 @@ package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
 
 import com.thoughtworks.selenium.grid.HttpParameters;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.StreamingResponse;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 
 /**
  * Generic Selenese command
+ * <p/>
+ * Commands are forwarded with the time out configured for their family (see
+ * <code>commandDeadlines</code> in <code>grid_configuration.yml</code>). It bounds how long
+ * the remote control may stay silent, while the Hub waits for the reply or for the rest of its
+ * body, not the duration of the whole command. A command timing out gets a Selenese error
+ * (when nothing was relayed to the client yet), and is counted in the hub {@link CommandMetrics}.
  */
 public class SeleneseCommand {
 
+    private static final Log LOGGER = LogFactory.getLog(SeleneseCommand.class);
+
     private final String sessionId;
     private final HttpParameters parameters;
 
@@ -37,10 +50,61 @@ public class SeleneseCommand {
         }
         remoteControl = pool.retrieve(sessionId());
         pool.updateSessionLastActiveAt(sessionId);
-        response = remoteControl.forward(parameters());
+        try {
+            response = forward(remoteControl);
+        } catch (SocketTimeoutException e) {
+            return timedOut(remoteControl);
+        }
         pool.updateSessionLastActiveAt(sessionId);
 
+        return timeBound(response, remoteControl);
+    }
+
+    protected Response forward(RemoteControlProxy remoteControl) throws IOException {
+        return remoteControl.forward(parameters(), timeoutInMilliseconds());
+    }
+
+    /**
+     * @return Name of the Selenese command, e.g. <code>open</code>. Null if unknown.
+     */
+    public String name() {
+        return (null == parameters) ? null : parameters.get("cmd");
+    }
+
+    /**
+     * @return Read time out configured for the family of this command, 0 meaning forever.
+     */
+    public int timeoutInMilliseconds() {
+        return (int) (HubRegistry.registry().gridConfiguration().getHub().commandTimeoutInSecondsFor(name()) * 1000);
+    }
+
+    /**
+     * A reply whose body is still being read off the connection can time out later on.
+     */
+    protected Response timeBound(Response response, RemoteControlProxy remoteControl) {
+        if (response instanceof StreamingResponse && !((StreamingResponse) response).complete()) {
+            return new TimeBoundResponse(response, this, remoteControl);
+        }
         return response;
     }
 
+    /**
+     * Record that the command timed out on a remote control.
+     *
+     * @return Selenese error to reply with.
+     */
+    protected Response timedOut(RemoteControlProxy remoteControl) {
+        final String message;
+
+        commandMetrics().recordTimeOut(name());
+        message = "Command '" + name() + "' timed out after " + timeoutInMilliseconds() + " ms without any data from "
+                  + "remote control " + remoteControl.host() + ":" + remoteControl.port() + ", which is now considered down";
+        LOGGER.error(message);
+        return new Response(message);
+    }
+
+    protected CommandMetrics commandMetrics() {
+        return HubRegistry.registry().commandMetrics();
+    }
+
 }
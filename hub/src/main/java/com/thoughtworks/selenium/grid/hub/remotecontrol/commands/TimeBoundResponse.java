@@ -0,0 +1,102 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.CommandTimedOutException;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * Streamed remote control reply whose body can still time out while it is read, after the
+ * command has been answered. Such a time out is handled like one during the initial exchange:
+ * the command is counted as timed out, the remote control is taken down, and a
+ * {@link CommandTimedOutException} carrying the Selenese error is thrown.
+ * <p/>
+ * Not thread-safe: meant to be consumed by the thread that issued the request.
+ */
+public class TimeBoundResponse extends Response {
+
+    private final Response response;
+    private final SeleneseCommand command;
+    private final RemoteControlProxy remoteControl;
+
+    public TimeBoundResponse(Response response, SeleneseCommand command, RemoteControlProxy remoteControl) {
+        super(response.statusCode(), (String) null);
+        this.response = response;
+        this.command = command;
+        this.remoteControl = remoteControl;
+    }
+
+    public String body() {
+        try {
+            return response.body();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof SocketTimeoutException) {
+                throw new RuntimeException(timedOut());
+            }
+            throw e;
+        }
+    }
+
+    public InputStream openBody() throws IOException {
+        try {
+            return response.openBody();
+        } catch (SocketTimeoutException e) {
+            throw timedOut();
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            response.writeTo(out);
+        } catch (SocketTimeoutException e) {
+            throw timedOut();
+        }
+    }
+
+    public void writeDecodedTo(OutputStream out) throws IOException {
+        try {
+            response.writeDecodedTo(out);
+        } catch (SocketTimeoutException e) {
+            throw timedOut();
+        }
+    }
+
+    public String contentEncoding() {
+        return response.contentEncoding();
+    }
+
+    public long retryAfterInSeconds() {
+        return response.retryAfterInSeconds();
+    }
+
+    public long contentLength() {
+        return response.contentLength();
+    }
+
+    public void release() {
+        response.release();
+    }
+
+    public String preview(int maxLength) {
+        return response.preview(maxLength);
+    }
+
+    protected byte[] bytes() {
+        try {
+            return body().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected CommandTimedOutException timedOut() {
+        response.release();
+        remoteControl.health().recordTimedOutCommand();
+        return new CommandTimedOutException(command.timedOut(remoteControl));
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Hub command polling a Selenese predicate on the session remote control until it returns
+ * the expected value, so that clients wait with a single round trip to the Hub instead of
+ * one per probe.
+ * <p/>
+ * Replies <code>OK</code> as soon as the predicate matches, or a Selenese error once the
+ * time out elapses. Probes failing with a Selenese error are retried, as a client loop would.
+ */
+public class WaitForCommand extends SeleneseCommand {
+
+    private final HttpParameters predicateParameters;
+    private final String expectedValue;
+    private final long waitTimeoutInMilliseconds;
+    private final long pollingIntervalInMilliseconds;
+
+    /**
+     * @param predicateParameters           Selenese command probed on the remote control, e.g.
+     *                                      <code>cmd=isElementPresent&1=id=submit</code>.
+     * @param expectedValue                 Value the predicate must return, e.g. <code>true</code>.
+     * @param waitTimeoutInMilliseconds     How long to keep polling.
+     * @param pollingIntervalInMilliseconds Pause between two probes.
+     */
+    public WaitForCommand(String sessionId, HttpParameters parameters, HttpParameters predicateParameters,
+                          String expectedValue, long waitTimeoutInMilliseconds, long pollingIntervalInMilliseconds) {
+        super(sessionId, parameters);
+        this.predicateParameters = predicateParameters;
+        this.expectedValue = expectedValue;
+        this.waitTimeoutInMilliseconds = waitTimeoutInMilliseconds;
+        this.pollingIntervalInMilliseconds = pollingIntervalInMilliseconds;
+    }
+
+    public Response execute(RemoteControlPool pool) throws IOException {
+        final RemoteControlProxy remoteControl;
+        final long deadline;
+        String lastReply;
+
+        remoteControl = pool.retrieve(sessionId());
+        deadline = now() + waitTimeoutInMilliseconds;
+        while (true) {
+            final long remaining;
+
+            pool.updateSessionLastActiveAt(sessionId());
+            try {
+                lastReply = probe(remoteControl);
+            } catch (SocketTimeoutException e) {
+                return timedOut(remoteControl);
+            }
+            if (("OK," + expectedValue).equals(lastReply)) {
+                pool.updateSessionLastActiveAt(sessionId());
+                return new Response(200, "OK");
+            }
+            remaining = deadline - now();
+            if (remaining <= 0) {
+                return new Response("Timed out after " + waitTimeoutInMilliseconds + " ms waiting for "
+                                    + predicateParameters.get("cmd") + " to return '" + expectedValue
+                                    + "'. Last reply: " + lastReply);
+            }
+            pause(Math.min(pollingIntervalInMilliseconds, remaining));
+        }
+    }
+
+    /**
+     * Run the predicate once.
+     *
+     * @return Body of the remote control reply.
+     */
+    protected String probe(RemoteControlProxy remoteControl) throws IOException {
+        final Response response;
+
+        response = remoteControl.forward(predicateParameters, timeoutInMilliseconds());
+        try {
+            return response.body();
+        } finally {
+            response.release();
+        }
+    }
+
+    /**
+     * @return Deadline of a single probe: the one configured for the family of the predicate.
+     */
+    public int timeoutInMilliseconds() {
+        final String predicate = predicateParameters.get("cmd");
+        return (int) (HubRegistry.registry().gridConfiguration().getHub().commandTimeoutInSecondsFor(predicate) * 1000);
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    protected void pause(long milliseconds) throws IOException {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + predicateParameters.get("cmd"));
+        }
+    }
+
+    public HttpParameters predicateParameters() {
+        return predicateParameters;
+    }
+
+    public String expectedValue() {
+        return expectedValue;
+    }
+
+    public long waitTimeoutInMilliseconds() {
+        return waitTimeoutInMilliseconds;
+    }
+
+    public long pollingIntervalInMilliseconds() {
+        return pollingIntervalInMilliseconds;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+
+
+public class FormBodyTest {
+
+    @Test
+    public void valueReturnsTheDecodedValueOfAParameter() throws UnsupportedEncodingException {
+        assertEquals("open", body("cmd=open&1=%2F&sessionId=1234").value("cmd"));
+        assertEquals("/", body("cmd=open&1=%2F&sessionId=1234").value("1"));
+        assertEquals("1234", body("cmd=open&1=%2F&sessionId=1234").value("sessionId"));
+    }
+
+    @Test
+    public void valueReturnsNullWhenTheParameterIsMissing() throws UnsupportedEncodingException {
+        assertNull(body("cmd=open&1=%2F").value("sessionId"));
+        assertNull(body("").value("cmd"));
+    }
+
+    @Test
+    public void valueDoesNotMatchParametersOnlySharingAPrefixOrSuffix() throws UnsupportedEncodingException {
+        assertNull(body("cmdx=open&xcmd=close").value("cmd"));
+        assertEquals("type", body("xcmd=close&cmd=type").value("cmd"));
+    }
+
+    @Test
+    public void valueReturnsTheFirstValueOfARepeatedParameter() throws UnsupportedEncodingException {
+        assertEquals("open", body("cmd=open&cmd=close").value("cmd"));
+    }
+
+    @Test
+    public void valueReturnsAnEmptyStringForAnEmptyValue() throws UnsupportedEncodingException {
+        assertEquals("", body("cmd=&sessionId=1234").value("cmd"));
+    }
+
+    @Test
+    public void valueDecodesPlusSignsAndUTF8EscapeSequences() throws UnsupportedEncodingException {
+        assertEquals("a \u0436 b", body("1=a+%D0%B6+b").value("1"));
+    }
+
+    @Test
+    public void valueKeepsMalformedEscapeSequencesAsIs() throws UnsupportedEncodingException {
+        assertEquals("100%", body("1=100%").value("1"));
+    }
+
+    @Test
+    public void parametersDecodesAllParameters() throws UnsupportedEncodingException {
+        final HttpParameters parameters;
+
+        parameters = body("cmd=type&1=id%3Dname&2=%D0%9F%D1%80%D0%B8%D0%B2%D0%B5%D1%82&sessionId=1234").parameters();
+        assertEquals("type", parameters.get("cmd"));
+        assertEquals("id=name", parameters.get("1"));
+        assertEquals("\u041f\u0440\u0438\u0432\u0435\u0442", parameters.get("2"));
+        assertEquals("1234", parameters.get("sessionId"));
+    }
+
+    @Test
+    public void parametersHandlesEmptyFieldsAndParametersWithoutValue() throws UnsupportedEncodingException {
+        final HttpParameters parameters;
+
+        parameters = body("cmd=open&&flag&1=").parameters();
+        assertEquals("open", parameters.get("cmd"));
+        assertEquals("", parameters.get("flag"));
+        assertEquals("", parameters.get("1"));
+        assertEquals(3, parameters.names().size());
+    }
+
+    @Test
+    public void charsetDefaultsToUTF8() throws UnsupportedEncodingException {
+        assertEquals("\u0436", new FormBody("1=\u0436".getBytes("UTF-8"), null, null).value("1"));
+    }
+
+    @Test
+    public void valueUsesTheProvidedCharset() throws UnsupportedEncodingException {
+        assertEquals("\u00e9", new FormBody("1=%E9".getBytes("ISO-8859-1"), null, "ISO-8859-1").value("1"));
+    }
+
+    private static FormBody body(String content) throws UnsupportedEncodingException {
+        return new FormBody(content.getBytes("UTF-8"), "application/x-www-form-urlencoded", "UTF-8");
+    }
+
+}
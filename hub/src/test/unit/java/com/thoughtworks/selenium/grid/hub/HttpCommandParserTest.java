@@ -1,15 +1,28 @@
 package com.thoughtworks.selenium.grid.hub;
 
 import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.configuration.HubConfiguration;
+import com.thoughtworks.selenium.grid.configuration.TenantConfiguration;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.PendingReservation;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.Tenants;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.BatchCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.NewBrowserSessionCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.NewBrowserSessionGroupCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.PassThroughSeleneseCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.SeleneseCommand;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.TestCompleteCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.WaitForCommand;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 
 public class HttpCommandParserTest extends UsingClassMock {
 
@@ -97,6 +110,216 @@ public class HttpCommandParserTest extends UsingClassMock {
     }
 
     
+    @Test
+    public void newBrowserSessionHasTheDefaultPriorityAndNoDeadlineUnlessSpecified() {
+        final NewBrowserSessionCommand command;
+
+        command = parseNewBrowserSession(new HttpParameters());
+        assertEquals(PendingReservation.DEFAULT_PRIORITY, command.priority());
+        assertEquals(PendingReservation.NO_DEADLINE, command.deadline());
+    }
+
+    @Test
+    public void newBrowserSessionPriorityAndDeadlineAreParsedFromTheRequest() {
+        final HttpParameters parameters = new HttpParameters();
+        final NewBrowserSessionCommand command;
+        final long before;
+
+        parameters.put("priority", "10");
+        parameters.put("deadline", "60000");
+        before = System.currentTimeMillis();
+        command = parseNewBrowserSession(parameters);
+        assertEquals(10, command.priority());
+        assertTrue(command.deadline() >= before + 60000);
+        assertTrue(command.deadline() <= System.currentTimeMillis() + 60000);
+    }
+
+    @Test
+    public void newBrowserSessionPriorityAndDeadlineAreNotForwardedToTheRemoteControl() {
+        final HttpParameters parameters = new HttpParameters();
+        final NewBrowserSessionCommand command;
+
+        parameters.put("priority", "10");
+        parameters.put("deadline", "60000");
+        command = parseNewBrowserSession(parameters);
+        assertNull(command.parameters().get("priority"));
+        assertNull(command.parameters().get("deadline"));
+    }
+
+    @Test
+    public void newBrowserSessionDeadlineTooFarAwayMeansNoDeadline() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("deadline", String.valueOf(Long.MAX_VALUE));
+        assertEquals(PendingReservation.NO_DEADLINE, parseNewBrowserSession(parameters).deadline());
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void newBrowserSessionRejectsAnInvalidPriority() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("priority", "high");
+        parseNewBrowserSession(parameters);
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void newBrowserSessionRejectsANegativeDeadline() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("deadline", "-1");
+        parseNewBrowserSession(parameters);
+    }
+
+    @Test
+    public void newBrowserSessionHasNoTenantUnlessSpecified() {
+        assertEquals(Tenants.NO_TENANT, parseNewBrowserSession(new HttpParameters()).tenant());
+    }
+
+    @Test
+    public void newBrowserSessionTenantCanBeIdentifiedByName() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("tenant", "checkout");
+        assertEquals("checkout", parseNewBrowserSession(parameters, hubWithTenants()).tenant());
+    }
+
+    @Test
+    public void newBrowserSessionTenantIsIdentifiedByItsApiKeyWhichIsNotForwarded() {
+        final HttpParameters parameters = new HttpParameters();
+        final NewBrowserSessionCommand command;
+
+        parameters.put("apiKey", "s3cr3t");
+        command = parseNewBrowserSession(parameters, hubWithTenants());
+        assertEquals("search", command.tenant());
+        assertNull(command.parameters().get("apiKey"));
+    }
+
+    @Test
+    public void newBrowserSessionTenantIsNotForwarded() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("tenant", "checkout");
+        assertNull(parseNewBrowserSession(parameters, hubWithTenants()).parameters().get("tenant"));
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void newBrowserSessionRejectsAnInvalidApiKey() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("apiKey", "guess");
+        parseNewBrowserSession(parameters, hubWithTenants());
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void newBrowserSessionRejectsAnUnknownTenant() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("tenant", "nobody");
+        parseNewBrowserSession(parameters, hubWithTenants());
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void newBrowserSessionRejectsTheNameOfATenantWithAnApiKey() {
+        final HttpParameters parameters = new HttpParameters();
+
+        parameters.put("tenant", "search");
+        parseNewBrowserSession(parameters, hubWithTenants());
+    }
+
+    @Test
+    public void parseReturnsANewBrowserSessionGroupCommandWithASessionPerEnvironment() {
+        final NewBrowserSessionGroupCommand command;
+        final HttpParameters parameters;
+        final Mock environmentManager;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridGetNewBrowserSessions");
+        parameters.put("1", "Firefox on Windows,IE on Windows");
+        parameters.put("2", "http://www.google.com");
+        environmentManager = mock(EnvironmentManager.class);
+        environmentManager.stubs("environment").with(eq("Firefox on Windows"))
+                .will(returnValue(new Environment("Firefox on Windows", "*chrome")));
+        environmentManager.stubs("environment").with(eq("IE on Windows"))
+                .will(returnValue(new Environment("IE on Windows", "*iehta")));
+
+        command = (NewBrowserSessionGroupCommand) new HttpCommandParser(parameters).parse(
+                (EnvironmentManager) environmentManager);
+        assertEquals(Arrays.asList("Firefox on Windows", "IE on Windows"), command.environmentNames());
+        assertEquals("*chrome", command.sessionCommands().get(0).parameters().get("1"));
+        assertEquals("http://www.google.com", command.sessionCommands().get(1).parameters().get("2"));
+        assertEquals(PendingReservation.NO_DEADLINE, command.deadline());
+    }
+
+    @Test
+    public void newBrowserSessionGroupSessionsAreRequestedForTheTenantOfTheGroup() {
+        final NewBrowserSessionGroupCommand command;
+        final HttpParameters parameters;
+        final Mock environmentManager;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridGetNewBrowserSessions");
+        parameters.put("1", "Firefox on Windows");
+        parameters.put("tenant", "checkout");
+        environmentManager = mock(EnvironmentManager.class);
+        environmentManager.stubs("environment").will(returnValue(new Environment("Firefox on Windows", "*chrome")));
+
+        command = (NewBrowserSessionGroupCommand) new HttpCommandParser(parameters) {
+            protected HubConfiguration hubConfiguration() {
+                return hubWithTenants();
+            }
+        }.parse((EnvironmentManager) environmentManager);
+        assertEquals("checkout", command.tenant());
+        assertEquals("checkout", command.sessionCommands().get(0).tenant());
+        assertNull(command.parameters().get("tenant"));
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void parseThrowsCommandParsingExceptionForANewBrowserSessionGroupWithoutEnvironments() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridGetNewBrowserSessions");
+        new HttpCommandParser(parameters).parse((EnvironmentManager) mock(EnvironmentManager.class));
+    }
+
+    @Test
+    public void parseArraySplitsOnUnescapedCommas() {
+        assertEquals(Arrays.asList("Firefox, nightly", "IE\\"),
+                     HttpCommandParser.parseArray("Firefox\\, nightly,IE\\\\"));
+    }
+
+    protected HubConfiguration hubWithTenants() {
+        final HubConfiguration configuration;
+        final TenantConfiguration search;
+
+        search = new TenantConfiguration("search");
+        search.setApiKey("s3cr3t");
+        configuration = new HubConfiguration();
+        configuration.setTenants(new TenantConfiguration[] {new TenantConfiguration("checkout"), search});
+        return configuration;
+    }
+
+    protected NewBrowserSessionCommand parseNewBrowserSession(HttpParameters parameters) {
+        return parseNewBrowserSession(parameters, new HubConfiguration());
+    }
+
+    protected NewBrowserSessionCommand parseNewBrowserSession(HttpParameters parameters,
+                                                              final HubConfiguration configuration) {
+        final Mock environmentManager;
+        final HttpCommandParser parser;
+
+        parameters.put("cmd", "getNewBrowserSession");
+        parameters.put("1", "an environment name");
+        environmentManager = mock(EnvironmentManager.class);
+        environmentManager.stubs("environment").will(returnValue(new Environment("", "aBrowser")));
+        parser = new HttpCommandParser(parameters) {
+            protected HubConfiguration hubConfiguration() {
+                return configuration;
+            }
+        };
+        return (NewBrowserSessionCommand) parser.parse((EnvironmentManager) environmentManager);
+    }
+
     @Test(expected = CommandParsingException.class)
     public void executeThrowsCommandParsingExceptionForNewBrowserSessionWhenEnvironmentIsNotKnown() {
         final Mock environmentManager;
@@ -139,5 +362,197 @@ public class HttpCommandParserTest extends UsingClassMock {
         verifyMocks();
     }
 
-    
+    @Test
+    public void parsePassThroughReturnsAPassThroughCommandForAGenericRequest() {
+        final SeleneseCommand command;
+        final FormBody body;
+
+        body = new FormBody("cmd=type&1=q&2=a+lot+of+text&sessionId=1234".getBytes(), null, null);
+        command = HttpCommandParser.parsePassThrough(body);
+        assertTrue(command instanceof PassThroughSeleneseCommand);
+        assertEquals("1234", command.sessionId());
+        assertEquals("type", command.parameters().get("cmd"));
+        assertNull(command.parameters().get("2"));
+        assertSame(body, ((PassThroughSeleneseCommand) command).body());
+    }
+
+    @Test
+    public void parsePassThroughReturnsNullForNewSessionRequests() {
+        assertNull(HttpCommandParser.parsePassThrough(
+                new FormBody("cmd=getNewBrowserSession&1=*chrome".getBytes(), null, null)));
+    }
+
+    @Test
+    public void parsePassThroughReturnsNullForTestCompleteRequests() {
+        assertNull(HttpCommandParser.parsePassThrough(
+                new FormBody("cmd=testComplete&sessionId=1234".getBytes(), null, null)));
+    }
+
+    @Test
+    public void parsePassThroughReturnsNullForWaitForRequests() {
+        assertNull(HttpCommandParser.parsePassThrough(
+                new FormBody("cmd=gridWaitFor&predicate=isElementPresent&sessionId=1234".getBytes(), null, null)));
+    }
+
+    @Test
+    public void parsePassThroughReturnsNullWhenTheSessionIdIsMissing() {
+        assertNull(HttpCommandParser.parsePassThrough(new FormBody("cmd=type".getBytes(), null, null)));
+    }
+
+    @Test
+    public void parsePassThroughReturnsNullWhenTheCommandIsMissing() {
+        assertNull(HttpCommandParser.parsePassThrough(new FormBody("sessionId=1234".getBytes(), null, null)));
+    }
+
+    @Test
+    public void returnsAWaitForCommandProbingThePredicateWithItsArguments() {
+        final HttpParameters parameters;
+        final WaitForCommand command;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridWaitFor");
+        parameters.put("sessionId", "1234");
+        parameters.put("predicate", "isTextPresent");
+        parameters.put("1", "Welcome");
+        parameters.put("timeout", "60000");
+        parameters.put("interval", "250");
+        parameters.put("expected", "false");
+
+        command = (WaitForCommand) new HttpCommandParser(parameters).parse(null);
+        assertEquals("1234", command.sessionId());
+        assertEquals("isTextPresent", command.predicateParameters().get("cmd"));
+        assertEquals("1234", command.predicateParameters().get("sessionId"));
+        assertEquals("Welcome", command.predicateParameters().get("1"));
+        assertNull(command.predicateParameters().get("2"));
+        assertNull(command.predicateParameters().get("timeout"));
+        assertEquals("false", command.expectedValue());
+        assertEquals(60000, command.waitTimeoutInMilliseconds());
+        assertEquals(250, command.pollingIntervalInMilliseconds());
+    }
+
+    @Test
+    public void waitForCommandsWaitForTrueEvery500MillisecondsFor30SecondsByDefault() {
+        final HttpParameters parameters;
+        final WaitForCommand command;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridWaitFor");
+        parameters.put("sessionId", "1234");
+        parameters.put("predicate", "isElementPresent");
+
+        command = (WaitForCommand) new HttpCommandParser(parameters).parse(null);
+        assertEquals("true", command.expectedValue());
+        assertEquals(30000, command.waitTimeoutInMilliseconds());
+        assertEquals(500, command.pollingIntervalInMilliseconds());
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void waitForCommandsRequireAPredicate() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridWaitFor");
+        parameters.put("sessionId", "1234");
+        new HttpCommandParser(parameters).parse(null);
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void waitForCommandsRejectAnInvalidTimeout() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "gridWaitFor");
+        parameters.put("sessionId", "1234");
+        parameters.put("predicate", "isElementPresent");
+        parameters.put("timeout", "forever");
+        new HttpCommandParser(parameters).parse(null);
+    }
+
+    @Test
+    public void parseBatchReturnsTheNumberedCommandsInOrderForTheSession() {
+        final HttpParameters parameters;
+        final BatchCommand batch;
+
+        parameters = new HttpParameters();
+        parameters.put("sessionId", "1234");
+        parameters.put("2.cmd", "click");
+        parameters.put("2.1", "btnG");
+        parameters.put("1.cmd", "type");
+        parameters.put("1.1", "q");
+        parameters.put("1.2", "selenium grid");
+        parameters.put("3.cmd", "testComplete");
+
+        batch = new HttpCommandParser(parameters).parseBatch(null);
+        assertEquals("1234", batch.sessionId());
+        assertEquals(3, batch.commands().size());
+        assertEquals("type", batch.commands().get(0).parameters().get("cmd"));
+        assertEquals("q", batch.commands().get(0).parameters().get("1"));
+        assertEquals("selenium grid", batch.commands().get(0).parameters().get("2"));
+        assertEquals("1234", batch.commands().get(0).parameters().get("sessionId"));
+        assertEquals("click", batch.commands().get(1).parameters().get("cmd"));
+        assertNull(batch.commands().get(1).parameters().get("2"));
+        assertTrue(batch.commands().get(2) instanceof TestCompleteCommand);
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void parseBatchRejectsAnEmptyBatch() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("sessionId", "1234");
+        new HttpCommandParser(parameters).parseBatch(null);
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void parseBatchRequiresASession() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("1.cmd", "click");
+        new HttpCommandParser(parameters).parseBatch(null);
+    }
+
+    @Test(expected = CommandParsingException.class)
+    public void parseBatchRejectsNewSessionRequests() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("sessionId", "1234");
+        parameters.put("1.cmd", "getNewBrowserSession");
+        parameters.put("1.1", "*chrome");
+        new HttpCommandParser(parameters).parseBatch(null);
+    }
+
+    @Test
+    public void parseBatchRejectsNewSessionGroupRequests() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("sessionId", "1234");
+        parameters.put("1.cmd", "gridGetNewBrowserSessions");
+        parameters.put("1.1", "Firefox on Windows,IE on Windows");
+        try {
+            new HttpCommandParser(parameters).parseBatch(null);
+            fail("did not catch CommandParsingException as expected");
+        } catch (CommandParsingException e) {
+            assertEquals("ERROR: Cannot start a new session in a batch", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parseBatchRejectsWaitForRequests() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("sessionId", "1234");
+        parameters.put("1.cmd", "gridWaitFor");
+        parameters.put("1.predicate", "isElementPresent");
+        try {
+            new HttpCommandParser(parameters).parseBatch(null);
+            fail("did not catch CommandParsingException as expected");
+        } catch (CommandParsingException e) {
+            assertEquals("ERROR: Cannot run gridWaitFor in a batch", e.getMessage());
+        }
+    }
+
 }
@@ -3,6 +3,7 @@ package com.thoughtworks.selenium.grid.hub;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 
@@ -62,9 +63,30 @@ public class HubRegistryTest {
 
         registry = new HubRegistry();
         registry.gridConfiguration().getHub().setRemoteControlPollingIntervalInSeconds(24);
-        registry.gridConfiguration().getHub().setSessionMaxIdleTimeInSeconds(33);
         assertEquals(24000, registry.remoteControlPoller().pollingIntervalInMilliseconds());
-        assertEquals(33.0, registry.remoteControlPoller().sessionMaxIdleTimeInSeconds(), 0);
+    }
+
+    @Test
+    public void remoteControlConnectionPoolReturnsAUniqueInstance() {
+        assertSame(HubRegistry.registry().remoteControlConnectionPool(),
+                   HubRegistry.registry().remoteControlConnectionPool());
+    }
+
+    @Test
+    public void remoteControlConnectionPoolReapsIdleConnections() {
+        assertTrue(HubRegistry.registry().remoteControlConnectionPool().reapingIdleConnections());
+    }
+
+    @Test
+    public void remoteControlConnectionPoolUsesTheConfiguredMaxConnections() {
+        assertEquals(HubRegistry.registry().gridConfiguration().getHub().getMaxRemoteControlConnections(),
+                     HubRegistry.registry().remoteControlConnectionPool().maxTotalConnections());
+    }
+
+    @Test
+    public void asyncHttpClientReturnsAUniqueStartedInstance() {
+        assertSame(HubRegistry.registry().asyncHttpClient(), HubRegistry.registry().asyncHttpClient());
+        assertTrue(HubRegistry.registry().asyncHttpClient().running());
     }
 
 }
@@ -1,25 +1,50 @@
 package com.thoughtworks.selenium.grid.hub;
 
+import com.thoughtworks.selenium.grid.BufferPool;
 import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.RetryLaterResponse;
+import com.thoughtworks.selenium.grid.ResponseCallback;
+import com.thoughtworks.selenium.grid.StreamingResponse;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.DynamicRemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.GlobalRemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.HealthyRemoteControl;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.NewBrowserSessionCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.PassThroughSeleneseCommand;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.SeleneseCommand;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import org.apache.commons.httpclient.HttpMethod;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
 import org.junit.Test;
+import org.mortbay.util.ajax.Continuation;
 
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 public class HubServletTest extends UsingClassMock {
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
     
     @Test
     public void replySetContentTypeAsPlainText() throws IOException {
@@ -29,7 +54,7 @@ public class HubServletTest extends UsingClassMock {
         remoteControlResponse = new Response(123, "");
         servletResponse = mock(HttpServletResponse.class);
         servletResponse.expects("setContentType").with("text/plain");
-        servletResponse.expects("getWriter").will(returnValue(new PrintWriter(new StringWriter(100))));
+        servletResponse.expects("getOutputStream").will(returnValue(new ByteArrayServletOutputStream()));
 
         new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse);
         verifyMocks();
@@ -43,7 +68,7 @@ public class HubServletTest extends UsingClassMock {
         remoteControlResponse = new Response(123, "");
         servletResponse = mock(HttpServletResponse.class);
         servletResponse.expects("setCharacterEncoding").with("UTF-8");
-        servletResponse.expects("getWriter").will(returnValue(new PrintWriter(new StringWriter(100))));
+        servletResponse.expects("getOutputStream").will(returnValue(new ByteArrayServletOutputStream()));
 
         new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse);
         verifyMocks();
@@ -57,7 +82,7 @@ public class HubServletTest extends UsingClassMock {
         remoteControlResponse = new Response(123, "");
         servletResponse = mock(HttpServletResponse.class);
         servletResponse.expects("setStatus").with(123);
-        servletResponse.expects("getWriter").will(returnValue(new PrintWriter(new StringWriter(100))));
+        servletResponse.expects("getOutputStream").will(returnValue(new ByteArrayServletOutputStream()));
 
         new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse);
         verifyMocks();
@@ -65,16 +90,219 @@ public class HubServletTest extends UsingClassMock {
 
     @Test
     public void replyWriteRemoteControlResponseOnServletResponseAsPlainText() throws IOException {
-        final StringWriter writer = new StringWriter(100);
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
         final Response remoteControlResponse;
         final Mock servletResponse;
 
         remoteControlResponse = new Response(0, "some response message");
         servletResponse = mock(HttpServletResponse.class);
-        servletResponse.expects("getWriter").will(returnValue(new PrintWriter(writer)));
+        servletResponse.expects("getOutputStream").will(returnValue(out));
 
         new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse);
-        assertEquals("some response message", writer.getBuffer().toString());
+        assertEquals("some response message", out.toString("UTF-8"));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyTellsTheClientWhenToRetryARequestTurnedDown() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Mock servletResponse;
+
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("setHeader").with(eq("Retry-After"), eq("42"));
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, new RetryLaterResponse("Too busy", 42));
+        assertEquals("ERROR: Too busy", out.toString("UTF-8"));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyAnswersWithASeleneseErrorWhenTheCommandTimesOutBeforeAnythingWasSent() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+
+        remoteControlResponse = new Response(200, "OK,a screenshot") {
+            public void writeDecodedTo(OutputStream out) throws IOException {
+                throw new CommandTimedOutException(new Response("Command timed out"));
+            }
+        };
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.stubs("isCommitted").will(returnValue(false));
+        servletResponse.expects("reset");
+        servletResponse.stubs("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse);
+        assertEquals("ERROR: Command timed out", out.toString("UTF-8"));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyCompressesBodiesOverTheThresholdWhenTheClientAcceptsGzip() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+
+        remoteControlResponse = new Response(200, "OK,some large text");
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("setHeader").with("Vary", "Accept-Encoding");
+        servletResponse.expects("setHeader").with("Content-Encoding", "gzip");
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse, 10);
+        assertEquals("OK,some large text", gunzip(out.toByteArray()));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyDoesNotCompressBodiesUnderTheThreshold() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+
+        remoteControlResponse = new Response(200, "OK");
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("setHeader").with("Vary", "Accept-Encoding");
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse, 10);
+        assertEquals("OK", out.toString("UTF-8"));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyDoesNotCompressStreamedBodiesOfUnknownLengthUnderTheThreshold() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.stubs("releaseConnection");
+        remoteControlResponse = new StreamingResponse(200, (HttpMethod) method,
+                                                      new ByteArrayInputStream("OK".getBytes("UTF-8")),
+                                                      null, -1, BufferPool.shared());
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("setHeader").with("Vary", "Accept-Encoding");
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse, 10);
+        assertEquals("OK", out.toString("UTF-8"));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyCompressesStreamedBodiesOfUnknownLengthOnceOverTheThreshold() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.stubs("releaseConnection");
+        remoteControlResponse = new StreamingResponse(200, (HttpMethod) method,
+                                                      new ByteArrayInputStream("OK,some large text".getBytes("UTF-8")),
+                                                      null, -1, BufferPool.shared());
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("setHeader").with("Vary", "Accept-Encoding");
+        servletResponse.expects("setHeader").with("Content-Encoding", "gzip");
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse, 10);
+        assertEquals("OK,some large text", gunzip(out.toByteArray()));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyRelaysBodiesTheRemoteControlCompressedAsTheyAre() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+        final byte[] compressed;
+        final Mock method;
+
+        compressed = gzip("OK,compressed by the remote control");
+        method = mock(HttpMethod.class);
+        method.stubs("releaseConnection");
+        remoteControlResponse = new StreamingResponse(200, (HttpMethod) method, new ByteArrayInputStream(compressed),
+                                                      "gzip", compressed.length, BufferPool.shared());
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("setHeader").with("Vary", "Accept-Encoding");
+        servletResponse.expects("setHeader").with("Content-Encoding", "gzip");
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse, 4096);
+        assertTrue(Arrays.equals(compressed, out.toByteArray()));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void replyDecompressesBodiesTheRemoteControlCompressedForClientsNotAcceptingGzip() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+        final byte[] compressed;
+        final Mock method;
+
+        compressed = gzip("OK,compressed by the remote control");
+        method = mock(HttpMethod.class);
+        method.stubs("releaseConnection");
+        remoteControlResponse = new StreamingResponse(200, (HttpMethod) method, new ByteArrayInputStream(compressed),
+                                                      "gzip", compressed.length, BufferPool.shared());
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse, -1);
+        assertEquals("OK,compressed by the remote control", out.toString("UTF-8"));
+
+        verifyMocks();
+    }
+
+    @Test
+    public void acceptsGzipWhenListedInTheAcceptEncodingHeader() {
+        assertTrue(HubServlet.acceptsGzip("gzip"));
+        assertTrue(HubServlet.acceptsGzip("deflate, gzip;q=1.0, *;q=0.5"));
+        assertTrue(HubServlet.acceptsGzip("x-gzip"));
+    }
+
+    @Test
+    public void doesNotAcceptGzipWhenMissingOrRefusedInTheAcceptEncodingHeader() {
+        assertFalse(HubServlet.acceptsGzip(null));
+        assertFalse(HubServlet.acceptsGzip("identity"));
+        assertFalse(HubServlet.acceptsGzip("gzip;q=0"));
+        assertFalse(HubServlet.acceptsGzip("gzip; q=0.0, identity"));
+    }
+
+    @Test
+    public void replyStreamsTheRemoteControlBytesAndReleasesTheConnection() throws IOException {
+        final ByteArrayServletOutputStream out = new ByteArrayServletOutputStream();
+        final StringBuilder largeBody;
+        final Response remoteControlResponse;
+        final Mock servletResponse;
+        final Mock method;
+
+        largeBody = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            largeBody.append("\u0436screenshot");
+        }
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection");
+        remoteControlResponse = new StreamingResponse(200, (HttpMethod) method,
+                new ByteArrayInputStream(largeBody.toString().getBytes("UTF-8")), BufferPool.shared());
+        servletResponse = mock(HttpServletResponse.class);
+        servletResponse.expects("getOutputStream").will(returnValue(out));
+
+        new HubServlet().reply((HttpServletResponse) servletResponse, remoteControlResponse);
+        assertEquals(largeBody.toString(), out.toString("UTF-8"));
 
         verifyMocks();
     }
@@ -98,7 +326,7 @@ public class HubServletTest extends UsingClassMock {
         response = new Response(0, "");
 
         pool.expects("retrieve").with("a session id").will(returnValue(remoteControl));
-        remoteControl.expects("forward").with(eq(requestParameters)).will(returnValue(response));
+        remoteControl.expects("forward").with(eq(requestParameters), anything()).will(returnValue(response));
 
         assertEquals(response, servlet.forward(requestParameters, (DynamicRemoteControlPool) pool, (EnvironmentManager) environmentManager));
         verifyMocks();
@@ -170,4 +398,418 @@ public class HubServletTest extends UsingClassMock {
     }
 
 
+    @Test
+    public void startSessionWithoutHoldingAThreadStartsTheSessionRightAwayWhenARemoteControlIsAvailable() {
+        final GlobalRemoteControlPool pool;
+        final RetryingContinuation continuation;
+        final Response response;
+
+        pool = new GlobalRemoteControlPool();
+        pool.register(new NewSessionRemoteControl("a", "an environment"));
+        continuation = new RetryingContinuation();
+
+        response = new HubServlet().startSessionWithoutHoldingAThread(newSessionCommand(), pool, continuation);
+        assertEquals("OK,a session", response.body());
+        assertEquals(0, continuation.suspendCount);
+        assertNull(continuation.getObject());
+    }
+
+    @Test
+    public void startSessionWithoutHoldingAThreadSuspendsTheRequestUntilARemoteControlIsReleased() {
+        final NewSessionRemoteControl remoteControl;
+        final RetryingContinuation continuation;
+        final GlobalRemoteControlPool pool;
+        final HubServlet servlet;
+        final Response response;
+
+        pool = new GlobalRemoteControlPool();
+        remoteControl = new NewSessionRemoteControl("a", "an environment");
+        pool.register(remoteControl);
+        pool.reserve(new Environment("an environment", "*chrome"));
+        continuation = new RetryingContinuation();
+        servlet = new HubServlet();
+
+        try {
+            servlet.startSessionWithoutHoldingAThread(newSessionCommand(), pool, continuation);
+            fail("Request should have been suspended");
+        } catch (RetryException e) {
+            assertEquals(1, continuation.suspendCount);
+            assertEquals(1, pool.pendingReservationsByEnvironment().get("an environment").intValue());
+        }
+
+        pool.release(remoteControl);
+        assertTrue(continuation.resumed);
+
+        response = servlet.startSessionWithoutHoldingAThread(newSessionCommand(), pool, continuation);
+        assertEquals("OK,a session", response.body());
+        assertSame(remoteControl, pool.retrieve("a session"));
+        assertEquals(0, pool.pendingReservationsByEnvironment().get("an environment").intValue());
+    }
+
+    @Test
+    public void startSessionWithoutHoldingAThreadReturnsAnErrorWhenTheRequestTimesOut() {
+        final RetryingContinuation continuation;
+        final GlobalRemoteControlPool pool;
+        final HubServlet servlet;
+        final Response response;
+
+        pool = new GlobalRemoteControlPool();
+        pool.register(new NewSessionRemoteControl("a", "an environment"));
+        pool.reserve(new Environment("an environment", "*chrome"));
+        continuation = new RetryingContinuation();
+        servlet = new HubServlet();
+
+        try {
+            servlet.startSessionWithoutHoldingAThread(newSessionCommand(), pool, continuation);
+            fail("Request should have been suspended");
+        } catch (RetryException e) {
+            // Expected
+        }
+
+        response = servlet.startSessionWithoutHoldingAThread(newSessionCommand(), pool, continuation);
+        assertEquals("ERROR: No available remote control for environment 'an environment'", response.body());
+        assertEquals(0, pool.pendingReservationsByEnvironment().get("an environment").intValue());
+        assertFalse(continuation.resumed);
+    }
+
+    @Test
+    public void forwardWithoutHoldingAThreadSuspendsTheRequestUntilTheRemoteControlReplies() {
+        final AsynchronousRemoteControl remoteControl;
+        final RetryingContinuation continuation;
+        final GlobalRemoteControlPool pool;
+        final HubServlet servlet;
+        final Response response;
+
+        pool = new GlobalRemoteControlPool();
+        remoteControl = new AsynchronousRemoteControl("a", "an environment");
+        pool.register(remoteControl);
+        pool.associateWithSession(pool.reserve(new Environment("an environment", "*chrome")), "1234");
+        continuation = new RetryingContinuation();
+        servlet = new HubServlet();
+
+        try {
+            servlet.forwardWithoutHoldingAThread(passThroughCommand(), pool, null, continuation);
+            fail("Request should have been suspended");
+        } catch (RetryException e) {
+            assertEquals(1, continuation.suspendCount);
+        }
+
+        remoteControl.callback.completed(new Response(200, "OK,a title"));
+        assertTrue(continuation.resumed);
+
+        response = servlet.forwardWithoutHoldingAThread(passThroughCommand(), pool, null, continuation);
+        assertEquals("OK,a title", response.body());
+        assertNull(continuation.getObject());
+    }
+
+    @Test
+    public void forwardWithoutHoldingAThreadReturnsAnErrorWhenTheRemoteControlFails() {
+        final AsynchronousRemoteControl remoteControl;
+        final RetryingContinuation continuation;
+        final GlobalRemoteControlPool pool;
+        final HubServlet servlet;
+
+        pool = new GlobalRemoteControlPool();
+        remoteControl = new AsynchronousRemoteControl("a", "an environment");
+        pool.register(remoteControl);
+        pool.associateWithSession(pool.reserve(new Environment("an environment", "*chrome")), "1234");
+        continuation = new RetryingContinuation();
+        servlet = new HubServlet();
+
+        try {
+            servlet.forwardWithoutHoldingAThread(passThroughCommand(), pool, null, continuation);
+            fail("Request should have been suspended");
+        } catch (RetryException e) {
+            // Expected
+        }
+
+        remoteControl.callback.failed(new IOException("Connection refused"));
+        assertEquals("ERROR: Remote control did not reply: Connection refused",
+                     servlet.forwardWithoutHoldingAThread(passThroughCommand(), pool, null, continuation).body());
+    }
+
+    @Test
+    public void forwardWithoutHoldingAThreadGivesUpWhenTheRemoteControlNeverReplies() {
+        final AsynchronousRemoteControl remoteControl;
+        final RetryingContinuation continuation;
+        final GlobalRemoteControlPool pool;
+        final HubServlet servlet;
+
+        pool = new GlobalRemoteControlPool();
+        remoteControl = new AsynchronousRemoteControl("a", "an environment");
+        pool.register(remoteControl);
+        pool.associateWithSession(pool.reserve(new Environment("an environment", "*chrome")), "1234");
+        continuation = new RetryingContinuation();
+        servlet = new HubServlet() {
+            protected long commandMaxWaitTimeInMilliseconds(SeleneseCommand command) {
+                return 10;
+            }
+        };
+
+        try {
+            servlet.forwardWithoutHoldingAThread(passThroughCommand(), pool, null, continuation);
+            fail("Request should have been suspended");
+        } catch (RetryException e) {
+            // Expected
+        }
+
+        assertEquals("ERROR: Remote control did not reply within 10 ms",
+                     servlet.forwardWithoutHoldingAThread(passThroughCommand(), pool, null, continuation).body());
+        assertNull(continuation.getObject());
+        remoteControl.callback.completed(new Response(200, "OK,a late title"));
+        assertFalse(continuation.resumed);
+    }
+
+    @Test
+    public void forwardWithoutHoldingAThreadReturnsAnErrorForAnUnknownSession() {
+        final RetryingContinuation continuation;
+        final Response response;
+
+        continuation = new RetryingContinuation();
+        response = new HubServlet().forwardWithoutHoldingAThread(passThroughCommand(), new GlobalRemoteControlPool(),
+                                                                 null, continuation);
+        assertEquals("ERROR: " + new NoSuchSessionException("1234").getMessage(), response.body());
+        assertEquals(0, continuation.suspendCount);
+        assertNull(continuation.getObject());
+    }
+
+    protected PassThroughSeleneseCommand passThroughCommand() {
+        return new PassThroughSeleneseCommand("1234", new HttpParameters(),
+                                              new FormBody("cmd=getTitle&sessionId=1234".getBytes(), FORM_CONTENT_TYPE, null));
+    }
+
+    protected static class AsynchronousRemoteControl extends HealthyRemoteControl {
+
+        private ResponseCallback callback;
+
+        public AsynchronousRemoteControl(String host, String environment) {
+            super(host, 0, environment, null);
+        }
+
+        public void forward(byte[] body, String contentType, int timeoutInMilliseconds,
+                            AsyncHttpClient client, ResponseCallback callback) {
+            this.callback = callback;
+        }
+    }
+
+    @Test
+    public void startSessionWithoutHoldingAThreadFailsFastWhenTheDeadlineHasAlreadyPassed() {
+        final RetryingContinuation continuation;
+        final GlobalRemoteControlPool pool;
+        final Response response;
+
+        pool = new GlobalRemoteControlPool();
+        pool.register(new NewSessionRemoteControl("a", "an environment"));
+        pool.reserve(new Environment("an environment", "*chrome"));
+        continuation = new RetryingContinuation();
+
+        response = new HubServlet().startSessionWithoutHoldingAThread(
+                new NewBrowserSessionCommand(new Environment("an environment", "*chrome"), new HttpParameters(),
+                                             0, System.currentTimeMillis() - 1), pool, continuation);
+        assertEquals("ERROR: Deadline passed before a remote control for environment 'an environment' became available",
+                     response.body());
+        assertEquals(0, pool.pendingReservationsByEnvironment().get("an environment").intValue());
+    }
+
+    @Test
+    public void startSessionWithoutHoldingAThreadIsTurnedDownWhenTooManyRequestsAreWaiting() {
+        final GlobalRemoteControlPool pool;
+        final Environment environment;
+        final Response response;
+
+        pool = new GlobalRemoteControlPool() {
+            protected int maxPendingNewSessionRequestsFor(String environment) {
+                return 1;
+            }
+        };
+        environment = new Environment("an environment", "*chrome");
+        pool.register(new NewSessionRemoteControl("a", "an environment"));
+        pool.reserve(environment);
+        pool.reserve(environment, new SuspendedNewSessionRequest(new RetryingContinuation()));
+
+        response = new HubServlet().startSessionWithoutHoldingAThread(
+                new NewBrowserSessionCommand(environment, new HttpParameters()), pool, new RetryingContinuation());
+        assertEquals(503, response.statusCode());
+        assertEquals(60, response.retryAfterInSeconds());
+        assertEquals("ERROR: Too many pending new session requests for environment 'an environment', retry in 60 seconds",
+                     response.body());
+        assertEquals(1, pool.pendingReservationsByEnvironment().get("an environment").intValue());
+    }
+
+    protected NewBrowserSessionCommand newSessionCommand() {
+        return new NewBrowserSessionCommand(new Environment("an environment", "*chrome"), new HttpParameters());
+    }
+
+    protected static class NewSessionRemoteControl extends HealthyRemoteControl {
+
+        public NewSessionRemoteControl(String host, String environment) {
+            super(host, 0, environment, null);
+        }
+
+        public Response forward(HttpParameters parameters, int timeoutInMilliseconds) {
+            return new Response(200, "OK,a session");
+        }
+    }
+
+    protected static class RetryException extends RuntimeException {
+    }
+
+    /**
+     * Mimics Jetty's NIO continuations: the first suspend throws, the request is then
+     * re-dispatched with the same continuation.
+     */
+    protected static class RetryingContinuation implements Continuation {
+
+        private Object object;
+        private boolean pending;
+        private boolean resumed;
+        private int suspendCount;
+
+        public boolean suspend(long timeout) {
+            suspendCount += 1;
+            if (!pending) {
+                pending = true;
+                throw new RetryException();
+            }
+            pending = false;
+            return resumed;
+        }
+
+        public void resume() {
+            if (pending) {
+                resumed = true;
+            }
+        }
+
+        public void reset() {
+            pending = false;
+            resumed = false;
+        }
+
+        public boolean isNew() {
+            return 0 == suspendCount;
+        }
+
+        public boolean isPending() {
+            return pending;
+        }
+
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        public Object getObject() {
+            return object;
+        }
+
+        public void setObject(Object object) {
+            this.object = object;
+        }
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPOutputStream out;
+
+        out = new GZIPOutputStream(bytes);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final GZIPInputStream in;
+        final byte[] buffer = new byte[1024];
+        int read;
+
+        in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static class ByteArrayServletOutputStream extends ServletOutputStream {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        public String toString(String charsetName) throws UnsupportedEncodingException {
+            return bytes.toString(charsetName);
+        }
+
+        public byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    @Test
+    public void formBodyReadsTheRawBodyOfAFormPost() throws IOException {
+        final HubServlet servlet;
+        final Mock request;
+        final FormBody body;
+
+        request = formPost("cmd=type&sessionId=1234", null);
+        request.expects("setAttribute").with(eq(FormBody.class.getName()), anything());
+        servlet = new HubServlet();
+        body = servlet.formBody((HttpServletRequest) request);
+        assertEquals("cmd=type&sessionId=1234", new String(body.bytes(), "UTF-8"));
+        assertEquals("application/x-www-form-urlencoded; charset=UTF-8", body.contentType());
+        verifyMocks();
+    }
+
+    @Test
+    public void formBodyReturnsTheBodyAlreadyReadForAResumedRequest() throws IOException {
+        final FormBody body;
+        final Mock request;
+
+        body = new FormBody(new byte[0], null, null);
+        request = mock(HttpServletRequest.class);
+        request.stubs("getAttribute").with(FormBody.class.getName()).will(returnValue(body));
+        assertSame(body, new HubServlet().formBody((HttpServletRequest) request));
+    }
+
+    @Test
+    public void formBodyReturnsNullForAGetRequest() throws IOException {
+        assertNull(new HubServlet().formBody((HttpServletRequest) request("GET", FORM_CONTENT_TYPE, "", null)));
+    }
+
+    @Test
+    public void formBodyReturnsNullWhenParametersAreAlsoProvidedInTheQueryString() throws IOException {
+        assertNull(new HubServlet().formBody((HttpServletRequest) formPost("", "cmd=open")));
+    }
+
+    @Test
+    public void formBodyReturnsNullForOtherContentTypes() throws IOException {
+        assertNull(new HubServlet().formBody((HttpServletRequest) request("POST", "multipart/form-data", "", null)));
+    }
+
+    private Mock formPost(String body, String queryString) throws IOException {
+        return request("POST", FORM_CONTENT_TYPE, body, queryString);
+    }
+
+    private Mock request(String method, String contentType, String body, String queryString) throws IOException {
+        final ByteArrayInputStream content;
+        final Mock request;
+
+        content = new ByteArrayInputStream(body.getBytes("UTF-8"));
+        request = mock(HttpServletRequest.class);
+        request.stubs("getAttribute").will(returnValue(null));
+        request.stubs("getMethod").will(returnValue(method));
+        request.stubs("getQueryString").will(returnValue(queryString));
+        request.stubs("getContentType").will(returnValue(contentType));
+        request.stubs("getContentLength").will(returnValue(body.getBytes("UTF-8").length));
+        request.stubs("getCharacterEncoding").will(returnValue("UTF-8"));
+        request.stubs("getInputStream").will(returnValue(new ServletInputStream() {
+            public int read() {
+                return content.read();
+            }
+        }));
+        return request;
+    }
+
 }
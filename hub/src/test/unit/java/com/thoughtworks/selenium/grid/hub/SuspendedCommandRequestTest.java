@@ -0,0 +1,113 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.Response;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+import org.mortbay.util.ajax.Continuation;
+
+import java.io.IOException;
+
+
+public class SuspendedCommandRequestTest extends UsingClassMock {
+
+    @Test
+    public void suspendUntilCompletedSuspendsTheContinuationWhileTheCommandIsInFlight() {
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("suspend").with(eq(1000L)).will(returnValue(false));
+
+        new SuspendedCommandRequest((Continuation) continuation).suspendUntilCompleted(1000);
+        verifyMocks();
+    }
+
+    @Test
+    public void suspendUntilCompletedDoesNotSuspendTheContinuationOnceTheResponseArrived() {
+        final SuspendedCommandRequest request;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume");
+        continuation.expects("suspend").never();
+
+        request = new SuspendedCommandRequest((Continuation) continuation);
+        request.completed(new Response(200, "OK"));
+        request.suspendUntilCompleted(1000);
+        verifyMocks();
+    }
+
+    @Test
+    public void completedResumesTheContinuation() {
+        final SuspendedCommandRequest request;
+        final Response response;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume");
+        response = new Response(200, "OK");
+
+        request = new SuspendedCommandRequest((Continuation) continuation);
+        assertNull(request.response());
+        request.completed(response);
+        assertSame(response, request.response());
+        verifyMocks();
+    }
+
+    @Test
+    public void giveUpReturnsTheResponseIfItArrivedInTheMeantime() {
+        final SuspendedCommandRequest request;
+        final Response response;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume");
+        response = new Response(200, "OK");
+
+        request = new SuspendedCommandRequest((Continuation) continuation);
+        request.completed(response);
+        assertSame(response, request.giveUp());
+        verifyMocks();
+    }
+
+    @Test
+    public void aResponseArrivingAfterGivingUpIsReleasedAndDropped() {
+        final SuspendedCommandRequest request;
+        final boolean[] released;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume").never();
+        released = new boolean[1];
+
+        request = new SuspendedCommandRequest((Continuation) continuation);
+        assertNull(request.giveUp());
+        request.completed(new Response(200, "OK") {
+            public void release() {
+                released[0] = true;
+            }
+        });
+        assertNull(request.response());
+        assertTrue(released[0]);
+        verifyMocks();
+    }
+
+    @Test
+    public void failedResumesTheContinuationWithASeleneseError() {
+        final SuspendedCommandRequest request;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume");
+
+        request = new SuspendedCommandRequest((Continuation) continuation);
+        request.failed(new IOException("Connection refused"));
+        assertEquals("ERROR: Remote control did not reply: Connection refused", request.response().body());
+        verifyMocks();
+    }
+
+}
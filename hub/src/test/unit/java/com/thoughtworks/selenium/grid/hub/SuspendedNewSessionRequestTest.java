@@ -0,0 +1,55 @@
+package com.thoughtworks.selenium.grid.hub;
+
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import static junit.framework.Assert.assertEquals;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+import org.mortbay.util.ajax.Continuation;
+
+
+public class SuspendedNewSessionRequestTest extends UsingClassMock {
+
+    @Test
+    public void suspendUntilAssignedSuspendsTheContinuationWhenNoRemoteControlIsAssigned() {
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("suspend").with(eq(1000L)).will(returnValue(false));
+
+        new SuspendedNewSessionRequest((Continuation) continuation).suspendUntilAssigned(1000L);
+        verifyMocks();
+    }
+
+    @Test
+    public void suspendUntilAssignedDoesNotSuspendTheContinuationOnceARemoteControlIsAssigned() {
+        final SuspendedNewSessionRequest request;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume");
+        continuation.expects("suspend").never();
+
+        request = new SuspendedNewSessionRequest((Continuation) continuation);
+        request.assign(new RemoteControlProxy("a", 0, "", null));
+        request.suspendUntilAssigned(1000L);
+        verifyMocks();
+    }
+
+    @Test
+    public void assignResumesTheContinuation() {
+        final SuspendedNewSessionRequest request;
+        final RemoteControlProxy remoteControl;
+        final Mock continuation;
+
+        continuation = mock(Continuation.class);
+        continuation.expects("resume");
+        remoteControl = new RemoteControlProxy("a", 0, "", null);
+
+        request = new SuspendedNewSessionRequest((Continuation) continuation);
+        request.assign(remoteControl);
+        assertEquals(remoteControl, request.remoteControl());
+        verifyMocks();
+    }
+
+}
@@ -42,6 +42,7 @@ public class RegistrationServletTest extends UsingClassMock {
         request.stubs("getParameter").with("host").will(returnValue(expectedRemoteControl.host()));
         request.stubs("getParameter").with("port").will(returnValue("" + expectedRemoteControl.port()));
         request.stubs("getParameter").with("environment").will(returnValue(expectedRemoteControl.environment()));
+        request.stubs("getParameter").with("maxConcurrentSessions").will(returnValue(null));
 
         registry.expects("remoteControlPool").will(returnValue(remoteControlPool));
         remoteControlPool.expects("register").with(eq(expectedRemoteControl));
@@ -1,5 +1,6 @@
 package com.thoughtworks.selenium.grid.hub.management;
 
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
 import static junit.framework.Assert.assertEquals;
 import org.jbehave.classmock.UsingClassMock;
@@ -52,6 +53,45 @@ public class RemoteControlParserTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void parseReturnsARemoteControlWhoseMaxConcurrentSessionsMatchHttpParameter() {
+        final Mock httpRequest;
+        final RemoteControlProxy remoteControl;
+
+        httpRequest = mock(HttpServletRequest.class);
+        httpRequest.expects("getParameter").with("maxConcurrentSessions").will(returnValue("4"));
+        httpRequest.expects("getParameter").with(anything()).will(returnValue("0")).atLeastOnce();
+
+        remoteControl = RemoteControlParser.parse((HttpServletRequest) httpRequest);
+        assertEquals(4, remoteControl.maxConcurrentSessions());
+        verifyMocks();
+    }
+
+    @Test
+    public void parseReturnsARemoteControlRunningASingleSessionWhenMaxConcurrentSessionsIsMissing() {
+        final Mock httpRequest;
+        final RemoteControlProxy remoteControl;
+
+        httpRequest = mock(HttpServletRequest.class);
+        httpRequest.expects("getParameter").with("maxConcurrentSessions").will(returnValue(null));
+        httpRequest.expects("getParameter").with(anything()).will(returnValue("0")).atLeastOnce();
+
+        remoteControl = RemoteControlParser.parse((HttpServletRequest) httpRequest);
+        assertEquals(1, remoteControl.maxConcurrentSessions());
+        verifyMocks();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void parseThrowsIllegalStateExceptionIfMaxConcurrentSessionsIsNegative() {
+        final Mock httpRequest;
+
+        httpRequest = mock(HttpServletRequest.class);
+        httpRequest.expects("getParameter").with("maxConcurrentSessions").will(returnValue("-2"));
+        httpRequest.expects("getParameter").with(anything()).will(returnValue("0")).atLeastOnce();
+
+        RemoteControlParser.parse((HttpServletRequest) httpRequest);
+    }
+
     @Test(expected = IllegalStateException.class)
     public void parseThrowsIllegalArgumentExceptionIfHostIsNull() {
         final Mock httpRequest;
@@ -124,4 +164,19 @@ public class RemoteControlParserTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void parseLimitsConnectionsToTheRemoteControlToItsSessionSlotsPlusOneForHeartbeats() {
+        final Mock httpRequest;
+
+        httpRequest = mock(HttpServletRequest.class);
+        httpRequest.expects("getParameter").with("host").will(returnValue("pooled.host.com"));
+        httpRequest.expects("getParameter").with("port").will(returnValue("4321"));
+        httpRequest.expects("getParameter").with("maxConcurrentSessions").will(returnValue("4"));
+        httpRequest.expects("getParameter").with(anything()).will(returnValue("0")).atLeastOnce();
+
+        RemoteControlParser.parse((HttpServletRequest) httpRequest);
+        assertEquals(5, HubRegistry.registry().remoteControlConnectionPool().maxConnectionsPerHost("pooled.host.com", 4321));
+        verifyMocks();
+    }
+
 }
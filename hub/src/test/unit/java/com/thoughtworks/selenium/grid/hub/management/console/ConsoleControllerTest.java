@@ -1,13 +1,16 @@
 package com.thoughtworks.selenium.grid.hub.management.console;
 
+import com.thoughtworks.selenium.grid.HttpConnectionPool;
 import com.thoughtworks.selenium.grid.hub.Environment;
 import com.thoughtworks.selenium.grid.hub.EnvironmentManager;
 import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.management.console.mvc.Page;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.DynamicRemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.commands.CommandMetrics;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
 import org.junit.Test;
@@ -15,8 +18,11 @@ import org.junit.Test;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ConsoleControllerTest extends UsingClassMock {
 
@@ -26,6 +32,8 @@ public class ConsoleControllerTest extends UsingClassMock {
         final Mock registry;
 
         registry = mock(HubRegistry.class);
+        registry.stubs("remoteControlConnectionPool").will(returnValue(null));
+        registry.stubs("commandMetrics").will(returnValue(null));
         registry.stubs("environmentManager").will(returnValue(mock(EnvironmentManager.class)));
         registry.stubs("remoteControlPool").will(returnValue(mock(DynamicRemoteControlPool.class)));
 
@@ -43,6 +51,8 @@ public class ConsoleControllerTest extends UsingClassMock {
 
         expectedRemoteControls = Arrays.asList(new RemoteControlProxy("", 0, "", null));
         registry = mock(HubRegistry.class);
+        registry.stubs("remoteControlConnectionPool").will(returnValue(null));
+        registry.stubs("commandMetrics").will(returnValue(null));
         remoteControlPool = mock(DynamicRemoteControlPool.class);
         registry.stubs("environmentManager").will(returnValue(mock(EnvironmentManager.class)));
 
@@ -63,6 +73,8 @@ public class ConsoleControllerTest extends UsingClassMock {
 
         expectedRemoteControls = Arrays.asList(new RemoteControlProxy("", 0, "", null));
         registry = mock(HubRegistry.class);
+        registry.stubs("remoteControlConnectionPool").will(returnValue(null));
+        registry.stubs("commandMetrics").will(returnValue(null));
         remoteControlPool = mock(DynamicRemoteControlPool.class);
         registry.stubs("environmentManager").will(returnValue(mock(EnvironmentManager.class)));
 
@@ -74,6 +86,29 @@ public class ConsoleControllerTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void listSetPendingReservationsAssignFromRegistry() {
+        final Map<String, Integer> expectedPendingReservations;
+        final ConsoleController controller;
+        final Mock remoteControlPool;
+        final Mock registry;
+
+        expectedPendingReservations = new HashMap<String, Integer>();
+        expectedPendingReservations.put("an environment", 3);
+        registry = mock(HubRegistry.class);
+        registry.stubs("remoteControlConnectionPool").will(returnValue(null));
+        registry.stubs("commandMetrics").will(returnValue(null));
+        remoteControlPool = mock(DynamicRemoteControlPool.class);
+        registry.stubs("environmentManager").will(returnValue(mock(EnvironmentManager.class)));
+
+        registry.stubs("remoteControlPool").will(returnValue(remoteControlPool));
+        remoteControlPool.stubs("pendingReservationsByEnvironment").will(returnValue(expectedPendingReservations));
+
+        controller = new ConsoleController((HubRegistry) registry);
+        assertEquals(expectedPendingReservations, controller.list().assigns().get("pendingReservations"));
+        verifyMocks();
+    }
+
     @Test
     public void listSetEnvironmentsAssignFromRegistry() {
         final List<Environment> expectedEnvironments;
@@ -83,6 +118,8 @@ public class ConsoleControllerTest extends UsingClassMock {
 
         expectedEnvironments = Arrays.asList(new Environment("", ""));
         registry = mock(HubRegistry.class);
+        registry.stubs("remoteControlConnectionPool").will(returnValue(null));
+        registry.stubs("commandMetrics").will(returnValue(null));
         environmentManager = mock(EnvironmentManager.class);
         registry.stubs("remoteControlPool").will(returnValue(mock(DynamicRemoteControlPool.class)));
 
@@ -104,6 +141,8 @@ public class ConsoleControllerTest extends UsingClassMock {
         expectedPage = new Page("");
         expectedResponse = mock(HttpServletResponse.class);
         registry = mock(HubRegistry.class);
+        registry.stubs("remoteControlConnectionPool").will(returnValue(null));
+        registry.stubs("commandMetrics").will(returnValue(null));
         registry.stubs("environmentManager").will(returnValue(mock(EnvironmentManager.class)));
         registry.stubs("remoteControlPool").will(returnValue(mock(DynamicRemoteControlPool.class)));
 
@@ -142,4 +181,69 @@ public class ConsoleControllerTest extends UsingClassMock {
         controller.render(page, (HttpServletResponse) response);
     }
 
+    @Test
+    public void listSetConnectionPoolAssignFromRegistry() {
+        final HttpConnectionPool expectedConnectionPool;
+        final ConsoleController controller;
+        final Mock registry;
+
+        expectedConnectionPool = new HttpConnectionPool(1000, 1000, 1000, 10, 2);
+        registry = mock(HubRegistry.class);
+        registry.stubs("environmentManager").will(returnValue(mock(EnvironmentManager.class)));
+        registry.stubs("remoteControlPool").will(returnValue(mock(DynamicRemoteControlPool.class)));
+        registry.expects("remoteControlConnectionPool").will(returnValue(expectedConnectionPool));
+        registry.stubs("commandMetrics").will(returnValue(null));
+
+        controller = new ConsoleController((HubRegistry) registry);
+        assertSame(expectedConnectionPool, controller.list().assigns().get("connectionPool"));
+        verifyMocks();
+    }
+
+    @Test
+    public void rendersIndexPageWithConnectionPoolStatistics() throws IOException {
+        final ConsoleController controller;
+        final StringWriter writer;
+        final Mock response;
+        final Page page;
+
+        writer = new StringWriter();
+        response = mock(HttpServletResponse.class);
+        response.stubs("getWriter").will(returnValue(new PrintWriter(writer)));
+        page = new Page("index.html");
+        page.set("environments", new Environment[0]);
+        page.set("availableRemoteControls", new RemoteControlProxy[0]);
+        page.set("reservedRemoteControls", new RemoteControlProxy[0]);
+        page.set("connectionPool", new HttpConnectionPool(1000, 1000, 1000, 321, 2));
+
+        controller = new ConsoleController(HubRegistry.registry());
+        controller.render(page, (HttpServletResponse) response);
+        assertTrue(writer.toString().contains("Remote Control Connections"));
+        assertTrue(writer.toString().contains("<td>321</td>"));
+    }
+
+    @Test
+    public void rendersIndexPageWithCommandTimeOuts() throws IOException {
+        final ConsoleController controller;
+        final CommandMetrics commandMetrics;
+        final StringWriter writer;
+        final Mock response;
+        final Page page;
+
+        writer = new StringWriter();
+        response = mock(HttpServletResponse.class);
+        response.stubs("getWriter").will(returnValue(new PrintWriter(writer)));
+        commandMetrics = new CommandMetrics();
+        commandMetrics.recordTimeOut("waitForPageToLoad");
+        page = new Page("index.html");
+        page.set("environments", new Environment[0]);
+        page.set("availableRemoteControls", new RemoteControlProxy[0]);
+        page.set("reservedRemoteControls", new RemoteControlProxy[0]);
+        page.set("commandMetrics", commandMetrics);
+
+        controller = new ConsoleController(HubRegistry.registry());
+        controller.render(page, (HttpServletResponse) response);
+        assertTrue(writer.toString().contains("Command Time Outs"));
+        assertTrue(writer.toString().contains("<td>waitForPageToLoad</td>"));
+    }
+
 }
@@ -0,0 +1,28 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+public class CoarseClockTest {
+
+    @Test
+    public void nowNeverGoesBackwards() {
+        long previous = CoarseClock.now();
+
+        for (int i = 0; i < 1000; i++) {
+            final long now = CoarseClock.now();
+            assertTrue(now >= previous);
+            previous = now;
+        }
+    }
+
+    @Test
+    public void nowAdvancesWithTime() throws InterruptedException {
+        final long before;
+
+        before = CoarseClock.now();
+        Thread.sleep(5 * CoarseClock.RESOLUTION_IN_MILLISECONDS);
+        assertTrue(CoarseClock.now() > before);
+    }
+
+}
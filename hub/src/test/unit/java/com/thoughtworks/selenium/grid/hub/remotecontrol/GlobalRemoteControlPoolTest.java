@@ -1,11 +1,13 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
 import com.thoughtworks.selenium.grid.HttpClient;
+import com.thoughtworks.selenium.grid.Response;
 import com.thoughtworks.selenium.grid.hub.Environment;
 import com.thoughtworks.selenium.grid.hub.EnvironmentManager;
 import com.thoughtworks.selenium.grid.hub.NoSuchEnvironmentException;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
@@ -16,7 +18,7 @@ import org.jbehave.core.mock.Mock;
 import static org.junit.Assert.assertNotNull;
 import org.junit.Test;
 
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -105,6 +107,135 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void unregisterOnlyForgetsTheSessionsOfTheUnregisteredRemoteControl() {
+        final RemoteControlProxy remoteControl;
+        final RemoteControlProxy anotherRemoteControl;
+        final RemoteControlSession session;
+        final GlobalRemoteControlPool pool;
+
+        remoteControl = new RemoteControlProxy("host", 4444, "an environment", null);
+        anotherRemoteControl = new RemoteControlProxy("host", 5555, "an environment", null);
+        pool = new GlobalRemoteControlPool();
+
+        pool.register(remoteControl);
+        pool.register(anotherRemoteControl);
+        pool.associateWithSession(remoteControl, "a session id");
+        pool.associateWithSession(anotherRemoteControl, "another session id");
+        session = pool.getRemoteControlSession("a session id");
+        pool.unregister(remoteControl);
+
+        assertNull(pool.getRemoteControlSession("a session id"));
+        assertTrue(session.ended());
+        assertEquals(anotherRemoteControl, pool.retrieve("another session id"));
+        assertFalse(pool.sessionsByRemoteControlFor("an environment").containsKey(remoteControl));
+    }
+
+    @Test
+    public void releasingTheLastSessionOfARemoteControlRemovesItFromTheSessionIndex() {
+        final RemoteControlProxy remoteControl;
+        final GlobalRemoteControlPool pool;
+
+        remoteControl = new RemoteControlProxy("host", 4444, "an environment", null);
+        pool = new GlobalRemoteControlPool();
+
+        pool.associateWithSession(remoteControl, "a session id");
+        assertTrue(pool.sessionsByRemoteControlFor("an environment").containsKey(remoteControl));
+        pool.removeFromSessionMap(pool.getRemoteControlSession("a session id"));
+
+        assertNull(pool.getRemoteControlSession("a session id"));
+        assertTrue(pool.sessionsByRemoteControlFor("an environment").isEmpty());
+    }
+
+    @Test
+    public void aSessionIsOnlyRemovedFromTheSessionIndexOnce() {
+        final GlobalRemoteControlPool pool;
+        final RemoteControlSession session;
+
+        pool = new GlobalRemoteControlPool();
+        pool.associateWithSession(new RemoteControlProxy("host", 4444, "an environment", null), "a session id");
+        session = pool.getRemoteControlSession("a session id");
+
+        assertTrue(pool.removeFromSessionMap(session));
+        assertFalse(pool.removeFromSessionMap(session));
+    }
+
+    @Test
+    public void aReleaseLosingTheRaceAgainstAnUnregistrationDoesNotFreeTheSessionSlotAgain() {
+        final RemoteControlSession[] staleSession = new RemoteControlSession[1];
+        final Environment environment = new Environment("an environment", "*chrome");
+        final RemoteControlProxy remoteControl;
+        final RemoteControlProxy anotherRemoteControl;
+        final GlobalRemoteControlPool pool;
+
+        pool = new GlobalRemoteControlPool() {
+            protected RemoteControlSession getRemoteControlSession(String sessionId) {
+                return null != staleSession[0] ? staleSession[0] : super.getRemoteControlSession(sessionId);
+            }
+        };
+        remoteControl = new HealthyRemoteControl("host", 4444, "an environment", null);
+        anotherRemoteControl = new HealthyRemoteControl("host", 5555, "an environment", null);
+        pool.register(remoteControl);
+        pool.register(anotherRemoteControl);
+        pool.associateWithSession(pool.reserve(environment, 0, PendingReservation.NO_DEADLINE, "search"),
+                                  "a session id", "search");
+        pool.associateWithSession(pool.reserve(environment, 0, PendingReservation.NO_DEADLINE, "search"),
+                                  "another session id", "search");
+        staleSession[0] = pool.getRemoteControlSession("a session id");
+        pool.unregister(staleSession[0].remoteControl());
+        assertEquals(1, pool.tenants().sessionsInUse("search"));
+
+        try {
+            pool.releaseForSession("a session id");
+            fail("did not catch NoSuchSessionException as expected");
+        } catch (NoSuchSessionException e) {
+            assertEquals("a session id", e.sessionId());
+        }
+        assertEquals(1, pool.tenants().sessionsInUse("search"));
+        assertEquals(1, staleSession[0].remoteControl().concurrentSessionCount());
+    }
+
+    @Test
+    public void provisionerForCreatesASingleProvisionerPerEnvironment() {
+        final GlobalRemoteControlPool pool;
+
+        pool = new GlobalRemoteControlPool();
+        assertNull(pool.getProvisioner("an environment"));
+        assertSame(pool.provisionerFor("an environment"), pool.provisionerFor("an environment"));
+        assertSame(pool.provisionerFor("an environment"), pool.getProvisioner("an environment"));
+        assertNotSame(pool.provisionerFor("an environment"), pool.provisionerFor("another environment"));
+    }
+
+    @Test
+    public void concurrentRegistrationsForTheSameEnvironmentAllEndUpInTheSameProvisioner() throws InterruptedException {
+        final GlobalRemoteControlPool pool;
+        final Thread[] threads;
+
+        pool = new GlobalRemoteControlPool();
+        threads = new Thread[20];
+        for (int i = 0; i < threads.length; i++) {
+            final int port = 5000 + i;
+            threads[i] = new Thread() {
+                public void run() {
+                    pool.register(new RemoteControlProxy("host", port, "an environment", null));
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length, pool.getProvisioner("an environment").allRemoteControls().size());
+        assertEquals(threads.length, pool.allRegisteredRemoteControls().size());
+    }
+
+    @Test
+    public void unregisterReturnsFalseForAnUnknownEnvironment() {
+        assertFalse(new GlobalRemoteControlPool().unregister(new RemoteControlProxy("host", 4444, "unknown", null)));
+    }
+
     @Test
     public void reserveReturnsTheRemoteControlReservedByTheProvisioner() {
         final Mock provisioner;
@@ -185,16 +316,16 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
     }
 
     @Test
-    public void associateWithSessionSetsSessionIdOnRemoteControl() {
+    public void associateWithSessionKeepsTrackOfEverySessionOfARemoteControl() {
         final GlobalRemoteControlPool pool = new GlobalRemoteControlPool();
-        final RemoteControlProxy firstRemoteControl = new RemoteControlProxy("", 0, "", null);
-        final RemoteControlProxy secondRemoteControl = new RemoteControlProxy("", 0, "", null);
+        final RemoteControlProxy remoteControl = new RemoteControlProxy("", 0, "", 2, null);
 
-        pool.associateWithSession(firstRemoteControl, "first session id");
-        pool.associateWithSession(secondRemoteControl, "second session id");
+        pool.associateWithSession(remoteControl, "first session id");
+        pool.associateWithSession(remoteControl, "second session id");
+        pool.removeFromSessionMap(pool.getRemoteControlSession("first session id"));
 
-        assertEquals(firstRemoteControl.sessionId(), "first session id");
-        assertEquals(secondRemoteControl.sessionId(), "second session id");
+        assertSame(remoteControl, pool.retrieve("second session id"));
+        assertEquals(1, pool.sessionsByRemoteControlFor("").get(remoteControl).size());
     }
     @Test
     public void afterReleaseForSessionARemoteControlIsNotAssociatedWithASessionAnymore() {
@@ -239,7 +370,7 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         pool.register(remoteControl);
         pool.associateWithSession(remoteControl, "a session id");
 
-        provisioner.expects("release").with(remoteControl);
+        provisioner.expects("releaseSession").with(sameInstanceAs(remoteControl), anything());
         pool.releaseForSession("a session id");
 
         try {
@@ -267,7 +398,7 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
             }
         };
 
-        provisioner.expects("release").with(remoteControl);
+        provisioner.expects("release").with(sameInstanceAs(remoteControl), eq(Tenants.NO_TENANT));
 
         pool.release(remoteControl);
 
@@ -685,6 +816,25 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         assertTrue(pool.allRegisteredRemoteControls().contains(healthyRC));
     }
 
+    @Test
+    public void unregisterAllUnresponsiveRemoteControlsDoesNotPingARemoteControlThatAnsweredRecently() {
+        final RemoteControlProxy remoteControl;
+        final GlobalRemoteControlPool pool;
+
+        remoteControl = new RemoteControlProxy("host", 4444, "an environment", null) {
+            public boolean unreliable() {
+                fail("Should not ping a remote control that answered recently");
+                return true;
+            }
+        };
+        remoteControl.health().recordSuccessfulContact();
+        pool = new GlobalRemoteControlPool();
+        pool.register(remoteControl);
+
+        pool.unregisterAllUnresponsiveRemoteControls();
+        assertTrue(pool.allRegisteredRemoteControls().contains(remoteControl));
+    }
+
     @Test
     public void unregisterRemoteControlIfUnresponsiveUnregistersARemoteControlThatIsUnreliable() {
         final RemoteControlProxy unreliableRC;
@@ -704,7 +854,7 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         final GlobalRemoteControlPool pool;
 
         final Mock httpClient = mock(HttpClient.class);
-        httpClient.stubs("post");
+        httpClient.stubs("stream").will(returnValue(new Response(200, "OK")));
         aRC = new HealthyRemoteControl("host", 4444, "an environment", (HttpClient) httpClient);
 
         pool = new GlobalRemoteControlPool();
@@ -724,6 +874,85 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         }
     }
 
+    @Test
+    public void associateWithSessionUsesTheMaxIdleTimeOfTheRemoteControlEnvironment() {
+        final RemoteControlProxy aRC;
+        final GlobalRemoteControlPool pool;
+
+        aRC = new HealthyRemoteControl("host", 4444, "an environment", null);
+        pool = new GlobalRemoteControlPool() {
+            @Override
+            protected long sessionMaxIdleTimeInMilliseconds(String environment) {
+                return "an environment".equals(environment) ? 42000 : 0;
+            }
+        };
+        pool.register(aRC);
+        pool.reserve(new Environment("an environment", "a browser"));
+        pool.associateWithSession(aRC, "a session id");
+
+        assertEquals(42000, pool.getRemoteControlSession("a session id").maxIdleTimeInMilliseconds());
+        assertEquals(1, pool.sessionExpiryWheel().size());
+    }
+
+    @Test
+    public void reclaimIdleSessionReleasesTheSessionAndItsRemoteControl() {
+        final RemoteControlProxy aRC;
+        final GlobalRemoteControlPool pool;
+        final RemoteControlSession session;
+
+        final Mock httpClient = mock(HttpClient.class);
+        httpClient.stubs("stream").will(returnValue(new Response(200, "OK")));
+        aRC = new HealthyRemoteControl("host", 4444, "an environment", (HttpClient) httpClient);
+
+        pool = new GlobalRemoteControlPool();
+        pool.register(aRC);
+        pool.reserve(new Environment("an environment", "a browser"));
+        pool.associateWithSession(aRC, "a session id");
+        session = pool.getRemoteControlSession("a session id");
+
+        pool.reclaimIdleSession(session);
+        assertNull(pool.getRemoteControlSession("a session id"));
+        assertTrue(session.ended());
+        assertTrue(pool.availableRemoteControls().contains(aRC));
+    }
+
+    @Test
+    public void reclaimIdleSessionIgnoresASessionThatAlreadyEnded() {
+        final RemoteControlProxy aRC;
+        final GlobalRemoteControlPool pool;
+        final RemoteControlSession newSession;
+
+        aRC = new HealthyRemoteControl("host", 4444, "an environment", null);
+        pool = new GlobalRemoteControlPool();
+        pool.register(aRC);
+        pool.reserve(new Environment("an environment", "a browser"));
+        pool.associateWithSession(aRC, "a session id");
+        newSession = pool.getRemoteControlSession("a session id");
+
+        pool.reclaimIdleSession(new RemoteControlSession("a session id", aRC));
+        assertSame(newSession, pool.getRemoteControlSession("a session id"));
+        assertFalse(pool.availableRemoteControls().contains(aRC));
+    }
+
+    @Test
+    public void releaseForSessionEndsTheSession() {
+        final RemoteControlProxy aRC;
+        final GlobalRemoteControlPool pool;
+        final RemoteControlSession session;
+
+        final Mock httpClient = mock(HttpClient.class);
+        httpClient.stubs("stream").will(returnValue(new Response(200, "OK")));
+        aRC = new HealthyRemoteControl("host", 4444, "an environment", (HttpClient) httpClient);
+        pool = new GlobalRemoteControlPool();
+        pool.register(aRC);
+        pool.reserve(new Environment("an environment", "a browser"));
+        pool.associateWithSession(aRC, "a session id");
+        session = pool.getRemoteControlSession("a session id");
+
+        pool.releaseForSession("a session id");
+        assertTrue(session.ended());
+    }
+
     @Test
     public void recycleSessionIfIdleForTooLongDoesNotReleaseTheSessionWhenIdleForLessThanTheMaxIdleInterval() {
         final RemoteControlProxy aRC;
@@ -748,7 +977,7 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         final Mock session;
 
         final Mock httpClient = mock(HttpClient.class);
-        httpClient.stubs("post");
+        httpClient.stubs("stream").will(returnValue(new Response(200, "OK")));
         aRC = new HealthyRemoteControl("host", 4444, "an environment", (HttpClient) httpClient);
 
         pool = new GlobalRemoteControlPool();
@@ -789,7 +1018,7 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         final GlobalRemoteControlPool pool;
 
         final Mock httpClient = mock(HttpClient.class);
-        httpClient.stubs("post");
+        httpClient.stubs("stream").will(returnValue(new Response(200, "OK")));
         rc = new HealthyRemoteControl("host", 4444, "an environment", (HttpClient) httpClient);
 
         pool = new GlobalRemoteControlPool();
@@ -845,7 +1074,7 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
 
         pool.register(remoteControl);
         pool.associateWithSession(remoteControl, "a session id");
-        now = new Date().getTime();
+        now = CoarseClock.now();
         creationTime = now - 10;
         pool.getRemoteControlSession("a session id").updateLastActiveAt(creationTime);
         pool.updateSessionLastActiveAt("a session id");
@@ -855,6 +1084,11 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         assertTrue(session.lastActiveAt() <= now + 10 * 1000);
     }
 
+    @Test
+    public void updateSessionLastActiveAtIgnoresASessionThatAlreadyEnded() {
+        new GlobalRemoteControlPool().updateSessionLastActiveAt("an ended session id");
+    }
+
     @Test
     public void isRegisteredReturnsTrueWhenRemoteControlIsRegistered() {
         final RemoteControlProxy remoteControl;
@@ -891,4 +1125,145 @@ public class GlobalRemoteControlPoolTest extends UsingClassMock {
         assertTrue(pool.isRegistered(anotherRemoteControl));
     }
     
-}
\ No newline at end of file
+    @Test
+    public void pendingReservationsByEnvironmentReportsQueueDepthForEachEnvironment() {
+        final GlobalRemoteControlPool pool;
+
+        pool = new GlobalRemoteControlPool();
+        pool.register(new HealthyRemoteControl("a", 0, "an environment", null));
+        pool.register(new HealthyRemoteControl("b", 0, "another environment", null));
+
+        assertEquals(0, pool.pendingReservationsByEnvironment().get("an environment").intValue());
+        assertEquals(0, pool.pendingReservationsByEnvironment().get("another environment").intValue());
+    }
+
+    @Test
+    public void reserveForSeveralEnvironmentsReturnsARemoteControlPerEnvironmentInOrder() {
+        final RemoteControlProxy firefoxRemoteControl = new HealthyRemoteControl("a", 0, "Firefox", null);
+        final RemoteControlProxy ieRemoteControl = new HealthyRemoteControl("b", 0, "IE", null);
+        final GlobalRemoteControlPool pool = new GlobalRemoteControlPool();
+
+        pool.register(firefoxRemoteControl);
+        pool.register(ieRemoteControl);
+
+        assertEquals(Arrays.asList(ieRemoteControl, firefoxRemoteControl),
+                     pool.reserve(Arrays.asList(new Environment("IE", "*iehta"), new Environment("Firefox", "*chrome")),
+                                  PendingReservation.NO_DEADLINE, null));
+        assertTrue(pool.availableRemoteControls().isEmpty());
+    }
+
+    @Test
+    public void aGangDoesNotHoldAnyRemoteControlWhileWaitingForTheOthers() {
+        final RemoteControlProxy firefoxRemoteControl = new HealthyRemoteControl("a", 0, "Firefox", null);
+        final RemoteControlProxy ieRemoteControl = new HealthyRemoteControl("b", 0, "IE", null);
+        final GlobalRemoteControlPool pool = new ShortWaitRemoteControlPool();
+
+        pool.register(firefoxRemoteControl);
+        pool.register(ieRemoteControl);
+        pool.reserve(new Environment("IE", "*iehta"));
+
+        assertNull(pool.reserve(Arrays.asList(new Environment("Firefox", "*chrome"), new Environment("IE", "*iehta")),
+                                PendingReservation.NO_DEADLINE, null));
+        assertEquals(Arrays.asList(firefoxRemoteControl), pool.availableRemoteControls());
+        assertEquals(0, pool.getProvisioner("Firefox").pendingReservationCount());
+        assertEquals(0, pool.getProvisioner("IE").pendingReservationCount());
+    }
+
+    @Test
+    public void aGangHandedARemoteControlKnownToBeDownGivesTheOthersBackAndWaitsAgain() {
+        final RemoteControlProxy firefoxRemoteControl = new HealthyRemoteControl("a", 0, "Firefox", null);
+        final RemoteControlProxy ieRemoteControl = new HealthyRemoteControl("b", 0, "IE", null);
+        final GlobalRemoteControlPool pool = new ShortWaitRemoteControlPool();
+
+        pool.register(firefoxRemoteControl);
+        pool.register(ieRemoteControl);
+        firefoxRemoteControl.health().markDown();
+
+        assertNull(pool.reserve(Arrays.asList(new Environment("Firefox", "*chrome"), new Environment("IE", "*iehta")),
+                                PendingReservation.NO_DEADLINE, "search"));
+        assertFalse(pool.getProvisioner("Firefox").contains(firefoxRemoteControl));
+        assertEquals(Arrays.asList(ieRemoteControl), pool.availableRemoteControls());
+        assertEquals(0, ieRemoteControl.concurrentSessionCount());
+        assertEquals(0, pool.tenants().sessionsInUse("search"));
+    }
+
+    @Test
+    public void aWaitingGangIsServedOnceTheMissingRemoteControlIsReleased() throws InterruptedException {
+        final RemoteControlProxy firefoxRemoteControl = new HealthyRemoteControl("a", 0, "Firefox", null);
+        final RemoteControlProxy ieRemoteControl = new HealthyRemoteControl("b", 0, "IE", null);
+        final GlobalRemoteControlPool pool = new GlobalRemoteControlPool();
+        final RemoteControlProvisionerTest.RecordingReservation laterFirefoxRequest;
+        final List<List<RemoteControlProxy>> reserved;
+        final List<List<RemoteControlProxy>> expected;
+        final Thread gang;
+
+        laterFirefoxRequest = new RemoteControlProvisionerTest.RecordingReservation();
+        reserved = new java.util.ArrayList<List<RemoteControlProxy>>();
+        pool.register(firefoxRemoteControl);
+        pool.register(ieRemoteControl);
+        pool.reserve(new Environment("Firefox", "*chrome"));
+        pool.reserve(new Environment("IE", "*iehta"));
+        gang = new Thread() {
+            public void run() {
+                reserved.add(pool.reserve(Arrays.asList(new Environment("Firefox", "*chrome"),
+                                                        new Environment("IE", "*iehta")),
+                                          PendingReservation.NO_DEADLINE, null));
+            }
+        };
+        gang.start();
+        waitUntilPendingReservationCountIs(pool.getProvisioner("IE"), 1);
+        pool.reserve(new Environment("Firefox", "*chrome"), laterFirefoxRequest);
+
+        pool.release(firefoxRemoteControl);
+        assertNull(laterFirefoxRequest.remoteControl());
+        pool.release(ieRemoteControl);
+        gang.join(5000);
+
+        expected = new java.util.ArrayList<List<RemoteControlProxy>>();
+        expected.add(Arrays.asList(firefoxRemoteControl, ieRemoteControl));
+        assertEquals(expected, reserved);
+        assertNull(laterFirefoxRequest.remoteControl());
+    }
+
+    @Test
+    public void releasingASessionOfAGroupReleasesTheWholeGroup() {
+        final Mock httpClient = mock(HttpClient.class);
+        final RemoteControlProxy firefoxRemoteControl;
+        final RemoteControlProxy ieRemoteControl;
+        final GlobalRemoteControlPool pool;
+
+        httpClient.stubs("stream").will(returnValue(new Response(200, "OK")));
+        firefoxRemoteControl = new HealthyRemoteControl("a", 0, "Firefox", (HttpClient) httpClient);
+        ieRemoteControl = new HealthyRemoteControl("b", 0, "IE", (HttpClient) httpClient);
+        pool = new GlobalRemoteControlPool();
+        pool.register(firefoxRemoteControl);
+        pool.register(ieRemoteControl);
+        pool.reserve(Arrays.asList(new Environment("Firefox", "*chrome"), new Environment("IE", "*iehta")),
+                     PendingReservation.NO_DEADLINE, null);
+        pool.associateWithSession(firefoxRemoteControl, "firefox session");
+        pool.associateWithSession(ieRemoteControl, "ie session");
+        pool.groupSessions(Arrays.asList("firefox session", "ie session"));
+
+        pool.releaseForSession("ie session");
+        assertNull(pool.getRemoteControlSession("firefox session"));
+        assertNull(pool.getRemoteControlSession("ie session"));
+        assertEquals(2, pool.availableRemoteControls().size());
+    }
+
+    protected void waitUntilPendingReservationCountIs(RemoteControlProvisioner provisioner, int expectedCount)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && provisioner.pendingReservationCount() != expectedCount; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedCount, provisioner.pendingReservationCount());
+    }
+
+    protected static class ShortWaitRemoteControlPool extends GlobalRemoteControlPool {
+
+        protected long newSessionMaxWaitTimeInMilliseconds() {
+            return 100;
+        }
+
+    }
+
+}
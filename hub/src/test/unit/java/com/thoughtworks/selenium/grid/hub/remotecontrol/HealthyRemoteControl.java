@@ -8,6 +8,10 @@ public class HealthyRemoteControl extends RemoteControlProxy {
         super(host, port, environment, httpClient);
     }
 
+    public HealthyRemoteControl(String host, int port, String environment, int maxConcurrentSessions, HttpClient httpClient) {
+        super(host, port, environment, maxConcurrentSessions, httpClient);
+    }
+
     @Override
     public boolean unreliable() {
         return false;
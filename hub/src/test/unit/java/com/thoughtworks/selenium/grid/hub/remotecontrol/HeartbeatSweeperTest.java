@@ -0,0 +1,135 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HeartbeatSweeperTest {
+
+    @Test
+    public void sweepRunsAllProbes() {
+        final AtomicInteger probedCount = new AtomicInteger(0);
+        final List<Runnable> probes;
+        final HeartbeatSweeper sweeper;
+
+        probes = new ArrayList<Runnable>();
+        for (int i = 0; i < 10; i++) {
+            probes.add(new Runnable() {
+                public void run() {
+                    probedCount.incrementAndGet();
+                }
+            });
+        }
+        sweeper = new HeartbeatSweeper(2, 5000, 0);
+        sweeper.sweep(probes);
+
+        assertEquals(10, probedCount.get());
+        sweeper.shutdown();
+    }
+
+    @Test
+    public void sweepRunsProbesInParallel() {
+        final CountDownLatch bothProbesStarted = new CountDownLatch(2);
+        final AtomicInteger parallelProbeCount = new AtomicInteger(0);
+        final List<Runnable> probes;
+        final HeartbeatSweeper sweeper;
+
+        probes = new ArrayList<Runnable>();
+        for (int i = 0; i < 2; i++) {
+            probes.add(new Runnable() {
+                public void run() {
+                    bothProbesStarted.countDown();
+                    try {
+                        if (bothProbesStarted.await(5, TimeUnit.SECONDS)) {
+                            parallelProbeCount.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        // Cancelled
+                    }
+                }
+            });
+        }
+        sweeper = new HeartbeatSweeper(2, 10000, 0);
+        sweeper.sweep(probes);
+
+        assertEquals(2, parallelProbeCount.get());
+        sweeper.shutdown();
+    }
+
+    @Test
+    public void sweepGivesUpOnProbesStillRunningAtTheDeadline() {
+        final CountDownLatch neverReleased = new CountDownLatch(1);
+        final HeartbeatSweeper sweeper;
+        final long startedAt;
+
+        sweeper = new HeartbeatSweeper(1, 100, 0);
+        startedAt = System.currentTimeMillis();
+        sweeper.sweep(Collections.<Runnable>singletonList(new Runnable() {
+            public void run() {
+                try {
+                    neverReleased.await();
+                } catch (InterruptedException e) {
+                    // Cancelled at deadline
+                }
+            }
+        }));
+
+        assertTrue(System.currentTimeMillis() - startedAt < 5000);
+        assertEquals(1, sweeper.lastSweepUnfinishedProbeCount());
+        sweeper.shutdown();
+    }
+
+    @Test
+    public void sweepRecordsStatistics() {
+        final List<Runnable> probes;
+        final HeartbeatSweeper sweeper;
+
+        probes = new ArrayList<Runnable>();
+        probes.add(new Runnable() {
+            public void run() {
+            }
+        });
+        probes.add(new Runnable() {
+            public void run() {
+            }
+        });
+        sweeper = new HeartbeatSweeper(4, 5000, 0);
+        sweeper.sweep(probes);
+        sweeper.sweep(probes);
+
+        assertEquals(2, sweeper.sweepCount());
+        assertEquals(2, sweeper.lastSweepProbeCount());
+        assertEquals(0, sweeper.lastSweepUnfinishedProbeCount());
+        assertTrue(sweeper.lastSweepDurationInMilliseconds() >= 0);
+        sweeper.shutdown();
+    }
+
+    @Test
+    public void jitterIsWithinTheConfiguredBound() {
+        final HeartbeatSweeper sweeper;
+
+        sweeper = new HeartbeatSweeper(1, 5000, 50);
+        for (int i = 0; i < 100; i++) {
+            final long jitter = sweeper.jitterInMilliseconds();
+            assertTrue(jitter >= 0 && jitter < 50);
+        }
+        sweeper.shutdown();
+    }
+
+    @Test
+    public void jitterIsZeroWhenDisabled() {
+        final HeartbeatSweeper sweeper;
+
+        sweeper = new HeartbeatSweeper(1, 5000, 0);
+        assertEquals(0, sweeper.jitterInMilliseconds());
+        sweeper.shutdown();
+    }
+
+}
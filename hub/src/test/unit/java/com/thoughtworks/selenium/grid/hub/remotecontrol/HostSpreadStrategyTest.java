@@ -0,0 +1,55 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertSame;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class HostSpreadStrategyTest {
+
+    @Test
+    public void selectPicksARemoteControlOnTheHostRunningTheFewestSessions() {
+        final RemoteControlProxy onBusiestHost;
+        final RemoteControlProxy onQuietHost;
+
+        onBusiestHost = new RemoteControlProxy("busy", 5555, "env", null);
+        onQuietHost = new RemoteControlProxy("quiet", 5555, "env", null);
+        assertSame(onQuietHost, new HostSpreadStrategy().select(
+                Arrays.asList(onBusiestHost, onQuietHost),
+                Arrays.asList(busy("busy", 4444), busy("busy", 6666), busy("quiet", 4444))));
+    }
+
+    @Test
+    public void selectPicksTheRemoteControlIdleTheLongestAmongEquallyLoadedHosts() {
+        final RemoteControlProxy idleTheLongest;
+
+        idleTheLongest = new RemoteControlProxy("host-b", 5555, "env", null);
+        assertSame(idleTheLongest, new HostSpreadStrategy().select(
+                Arrays.asList(idleTheLongest, new RemoteControlProxy("host-a", 5555, "env", null)),
+                Collections.<RemoteControlProxy>emptyList()));
+    }
+
+    @Test
+    public void selectCountsSessionsInProgressOnRemoteControlsThatStillHaveAFreeSlot() {
+        final RemoteControlProxy onBusiestHost;
+        final RemoteControlProxy onQuietHost;
+
+        onBusiestHost = new RemoteControlProxy("busy", 5555, "env", 3, null);
+        onBusiestHost.registerNewSession();
+        onBusiestHost.registerNewSession();
+        onQuietHost = new RemoteControlProxy("quiet", 5555, "env", 3, null);
+        onQuietHost.registerNewSession();
+        assertSame(onQuietHost, new HostSpreadStrategy().select(
+                Arrays.asList(onBusiestHost, onQuietHost), Collections.<RemoteControlProxy>emptyList()));
+    }
+
+    protected static RemoteControlProxy busy(String host, int port) {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = new RemoteControlProxy(host, port, "env", null);
+        remoteControl.registerNewSession();
+        return remoteControl;
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertSame;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class LeastRecentlyUsedStrategyTest {
+
+    @Test
+    public void selectReturnsTheRemoteControlIdleTheLongest() {
+        final RemoteControlProxy idleTheLongest;
+
+        idleTheLongest = new RemoteControlProxy("host", 5555, "env", null);
+        assertSame(idleTheLongest, new LeastRecentlyUsedStrategy().select(
+                Arrays.asList(idleTheLongest, new RemoteControlProxy("host", 4444, "env", null)),
+                Collections.<RemoteControlProxy>emptyList()));
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import org.junit.Test;
+
+public class LoadBalancingStrategiesTest {
+
+    @Test
+    public void namedReturnsTheStrategyMatchingTheConfiguredName() {
+        assertEquals(LeastRecentlyUsedStrategy.class, LoadBalancingStrategies.named("least-recently-used").getClass());
+        assertEquals(RoundRobinStrategy.class, LoadBalancingStrategies.named("round-robin").getClass());
+        assertEquals(RandomTwoChoicesStrategy.class, LoadBalancingStrategies.named("random-two-choices").getClass());
+        assertEquals(HostSpreadStrategy.class, LoadBalancingStrategies.named("host-spread").getClass());
+    }
+
+    @Test
+    public void namedFallsBackOnLeastRecentlyUsedForAMissingOrUnknownName() {
+        assertEquals(LeastRecentlyUsedStrategy.class, LoadBalancingStrategies.named(null).getClass());
+        assertEquals(LeastRecentlyUsedStrategy.class, LoadBalancingStrategies.named("fastest").getClass());
+    }
+
+    @Test
+    public void namedReturnsANewInstanceForEachEnvironment() {
+        assertNotSame(LoadBalancingStrategies.named("round-robin"), LoadBalancingStrategies.named("round-robin"));
+    }
+
+}
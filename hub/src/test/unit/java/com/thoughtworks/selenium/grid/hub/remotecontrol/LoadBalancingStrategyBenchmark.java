@@ -0,0 +1,103 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares load balancing strategies on a simulated grid: hosts running several remote controls,
+ * with sessions starting and ending at random while the grid is partially loaded.
+ * <p/>
+ * Reports, for each strategy, the average reservation latency and how evenly concurrent
+ * sessions are spread across hosts (peak sessions on a single host and standard deviation
+ * of the number of sessions per host sampled at each reservation).
+ * <p/>
+ * Run with: <code>ant benchmark -Dbenchmark=com.thoughtworks.selenium.grid.hub.remotecontrol.LoadBalancingStrategyBenchmark</code>
+ */
+public class LoadBalancingStrategyBenchmark {
+
+    private static final int HOSTS = 10;
+    private static final int REMOTE_CONTROLS_PER_HOST = 8;
+    private static final double TARGET_UTILIZATION = 0.4;
+    private static final int RESERVATIONS = 200000;
+
+    public static void main(String[] args) {
+        final String[] strategies = {
+                LoadBalancingStrategies.LEAST_RECENTLY_USED,
+                LoadBalancingStrategies.ROUND_ROBIN,
+                LoadBalancingStrategies.RANDOM_TWO_CHOICES,
+                LoadBalancingStrategies.HOST_SPREAD,
+        };
+
+        System.out.println(HOSTS + " hosts x " + REMOTE_CONTROLS_PER_HOST + " remote controls, "
+                           + (int) (TARGET_UTILIZATION * 100) + "% utilization, " + RESERVATIONS + " reservations");
+        for (String strategy : strategies) {
+            run(strategy);   // Warm up
+        }
+        for (String strategy : strategies) {
+            System.out.println(run(strategy));
+        }
+    }
+
+    protected static String run(String strategyName) {
+        final RemoteControlProvisioner provisioner;
+        final List<RemoteControlProxy> inUse;
+        final int[] sessionsByHost;
+        final Random random;
+        final int maxInUse;
+        long reservationTimeInNanoseconds = 0;
+        double sumOfSquaredDeviations = 0;
+        int peakSessionsOnAHost = 0;
+
+        provisioner = new RemoteControlProvisioner(LoadBalancingStrategies.named(strategyName));
+        for (int port = 0; port < REMOTE_CONTROLS_PER_HOST; port++) {
+            for (int host = 0; host < HOSTS; host++) {
+                provisioner.add(new RemoteControlProxy("host-" + host, 5555 + port, "env", null));
+            }
+        }
+        random = new Random(42);
+        inUse = new ArrayList<RemoteControlProxy>();
+        sessionsByHost = new int[HOSTS];
+        maxInUse = (int) (HOSTS * REMOTE_CONTROLS_PER_HOST * TARGET_UTILIZATION);
+
+        for (int i = 0; i < RESERVATIONS; i++) {
+            final long start;
+            final RemoteControlProxy remoteControl;
+
+            while (inUse.size() >= maxInUse) {
+                final RemoteControlProxy done = inUse.remove(random.nextInt(inUse.size()));
+                sessionsByHost[hostIndex(done)] -= 1;
+                provisioner.release(done);
+            }
+            start = System.nanoTime();
+            remoteControl = provisioner.reserve();
+            reservationTimeInNanoseconds += System.nanoTime() - start;
+
+            inUse.add(remoteControl);
+            sessionsByHost[hostIndex(remoteControl)] += 1;
+            peakSessionsOnAHost = Math.max(peakSessionsOnAHost, sessionsByHost[hostIndex(remoteControl)]);
+            sumOfSquaredDeviations += squaredDeviation(sessionsByHost, inUse.size());
+        }
+
+        return String.format("%-20s reserve: %6d ns   peak sessions on a host: %2d   stddev sessions per host: %.2f",
+                             strategyName,
+                             reservationTimeInNanoseconds / RESERVATIONS,
+                             peakSessionsOnAHost,
+                             Math.sqrt(sumOfSquaredDeviations / RESERVATIONS));
+    }
+
+    protected static double squaredDeviation(int[] sessionsByHost, int sessionCount) {
+        final double mean = (double) sessionCount / sessionsByHost.length;
+        double sum = 0;
+
+        for (int sessions : sessionsByHost) {
+            sum += (sessions - mean) * (sessions - mean);
+        }
+        return sum / sessionsByHost.length;
+    }
+
+    protected static int hostIndex(RemoteControlProxy remoteControl) {
+        return Integer.parseInt(remoteControl.host().substring("host-".length()));
+    }
+
+}
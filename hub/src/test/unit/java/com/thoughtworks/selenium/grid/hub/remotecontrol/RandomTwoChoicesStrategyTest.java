@@ -0,0 +1,39 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertSame;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+public class RandomTwoChoicesStrategyTest {
+
+    @Test
+    public void selectReturnsTheOnlyIdleRemoteControl() {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = new RemoteControlProxy("host", 5555, "env", null);
+        assertSame(remoteControl, new RandomTwoChoicesStrategy().select(
+                Arrays.asList(remoteControl), Collections.<RemoteControlProxy>emptyList()));
+    }
+
+    @Test
+    public void selectKeepsTheChoiceOnTheLeastLoadedHost() {
+        final RemoteControlProxy onLoadedHost;
+        final RemoteControlProxy onIdleHost;
+        final RemoteControlProxy busyOnLoadedHost;
+        final RandomTwoChoicesStrategy strategy;
+
+        onLoadedHost = new RemoteControlProxy("loaded", 5555, "env", null);
+        onIdleHost = new RemoteControlProxy("idle", 5555, "env", null);
+        busyOnLoadedHost = new RemoteControlProxy("loaded", 4444, "env", null);
+        busyOnLoadedHost.registerNewSession();
+        strategy = new RandomTwoChoicesStrategy(new Random(42));
+        for (int i = 0; i < 10; i++) {
+            assertSame(onIdleHost, strategy.select(
+                    Arrays.asList(onLoadedHost, onIdleHost), Arrays.asList(busyOnLoadedHost)));
+        }
+    }
+
+}
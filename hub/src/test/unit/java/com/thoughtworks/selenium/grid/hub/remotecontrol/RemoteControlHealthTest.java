@@ -0,0 +1,91 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+public class RemoteControlHealthTest {
+
+    @Test
+    public void aNewRemoteControlIsNotDown() {
+        assertFalse(new RemoteControlHealth(3).down());
+    }
+
+    @Test
+    public void aNewRemoteControlHasNotBeenConfirmedRecently() {
+        assertFalse(new RemoteControlHealth(3).confirmedWithin(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void aRemoteControlIsConfirmedWithinAPeriodAfterASuccessfulContact() {
+        final RemoteControlHealth health;
+
+        health = new RemoteControlHealth(3);
+        health.recordSuccessfulContact();
+        assertTrue(health.confirmedWithin(1000));
+    }
+
+    @Test
+    public void aRemoteControlIsNotConfirmedOnceThePeriodIsOver() {
+        final RemoteControlHealth health;
+
+        health = new RemoteControlHealth(3) {
+            private long now = 1000;
+
+            protected long now() {
+                now += 5000;
+                return now;
+            }
+        };
+        health.recordSuccessfulContact();
+        assertFalse(health.confirmedWithin(1000));
+    }
+
+    @Test
+    public void failedContactsAreToleratedUpToTheMaximum() {
+        final RemoteControlHealth health;
+
+        health = new RemoteControlHealth(2);
+        health.recordFailedContact();
+        health.recordFailedContact();
+        assertFalse(health.down());
+        health.recordFailedContact();
+        assertTrue(health.down());
+        assertEquals(3, health.consecutiveFailureCount());
+    }
+
+    @Test
+    public void aSuccessfulContactResetsFailuresAndBringsTheRemoteControlBackUp() {
+        final RemoteControlHealth health;
+
+        health = new RemoteControlHealth(0);
+        health.recordFailedContact();
+        health.recordSuccessfulContact();
+        assertFalse(health.down());
+        assertEquals(0, health.consecutiveFailureCount());
+    }
+
+    @Test
+    public void markDownConsidersTheRemoteControlDownRightAway() {
+        final RemoteControlHealth health;
+
+        health = new RemoteControlHealth(3);
+        health.recordSuccessfulContact();
+        health.markDown();
+        assertTrue(health.down());
+        assertFalse(health.confirmedWithin(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void aTimedOutCommandIsCountedAndTakesTheRemoteControlDown() {
+        final RemoteControlHealth health;
+
+        health = new RemoteControlHealth(3);
+        health.recordSuccessfulContact();
+        health.recordTimedOutCommand();
+        assertTrue(health.down());
+        assertEquals(1, health.timedOutCommandCount());
+    }
+
+}
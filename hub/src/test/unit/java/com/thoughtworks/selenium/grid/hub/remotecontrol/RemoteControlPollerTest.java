@@ -11,26 +11,21 @@ public class RemoteControlPollerTest extends UsingClassMock {
 
     @Test
     public void activeIsTrueJustAfterThePollerHasBeenCreated() {
-        assertTrue(new RemoteControlPoller(null, 0, 0).active());
+        assertTrue(new RemoteControlPoller(null, 0).active());
     }
 
     @Test
     public void activeIsFalseOnceStopHasBeenCalled() {
         final RemoteControlPoller poller;
 
-        poller = new RemoteControlPoller(null, 0, 0);
+        poller = new RemoteControlPoller(null, 0);
         poller.stop();
         assertFalse(poller.active());
     }
 
     @Test
     public void pollingIntervalInMillisecondsIsDerivedFromTheConstructorValueInSeconds() {
-        assertEquals(1000, new RemoteControlPoller(null, 1, 0).pollingIntervalInMilliseconds());
-    }
-
-    @Test
-    public void sessionMaxIdleTimeInSecondsIsTheOneProvidedInTheConstructor() {
-        assertEquals(37.2, new RemoteControlPoller(null, 1, 37.2).sessionMaxIdleTimeInSeconds());
+        assertEquals(1000, new RemoteControlPoller(null, 1).pollingIntervalInMilliseconds());
     }
 
     @Test
@@ -39,8 +34,7 @@ public class RemoteControlPollerTest extends UsingClassMock {
         final Mock pool;
 
         pool = mock(DynamicRemoteControlPool.class);
-        poller = new RemoteControlPoller((DynamicRemoteControlPool) pool, 0, 0);
-        pool.stubs("recycleAllSessionsIdleForTooLong");
+        poller = new RemoteControlPoller((DynamicRemoteControlPool) pool, 0);
 
         pool.expects("unregisterAllUnresponsiveRemoteControls");
         poller.garbageCollectRemoteControls();
@@ -48,19 +42,4 @@ public class RemoteControlPollerTest extends UsingClassMock {
         verifyMocks();
     }
 
-    @Test
-    public void garbageCollectRemoteControlsCallsRecycleAllSessionsIdleForTooLongOnThePool() {
-        final RemoteControlPoller poller;
-        final Mock pool;
-
-        pool = mock(DynamicRemoteControlPool.class);
-        poller = new RemoteControlPoller((DynamicRemoteControlPool) pool, 0, 37.2);
-        pool.stubs("unregisterAllUnresponsiveRemoteControls");
-
-        pool.expects("recycleAllSessionsIdleForTooLong").with(eq(37.2));
-        poller.garbageCollectRemoteControls();
-
-        verifyMocks();
-    }
-
 }
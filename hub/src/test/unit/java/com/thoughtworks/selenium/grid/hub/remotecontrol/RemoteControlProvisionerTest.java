@@ -1,15 +1,24 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol;
 
+import com.thoughtworks.selenium.grid.configuration.TenantConfiguration;
 import com.thoughtworks.selenium.grid.hub.ConcurrentAction;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertSame;
 
 import com.thoughtworks.selenium.grid.hub.HubRegistry;
+import com.thoughtworks.selenium.grid.hub.NewSessionQueueFullException;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 public class RemoteControlProvisionerTest {
 
     @Test
@@ -179,6 +188,76 @@ public class RemoteControlProvisionerTest {
         assertEquals(secondRemoteControl, provisioner.reserve());
     }
 
+    @Test
+    public void reserveLetsTheLoadBalancingStrategyPickTheRemoteControl() {
+        final RemoteControlProxy firstRemoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RemoteControlProxy secondRemoteControl = new HealthyRemoteControl("b", 0, "", null);
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner(new LoadBalancingStrategy() {
+            public RemoteControlProxy select(Collection<RemoteControlProxy> idleRemoteControls,
+                                             Collection<RemoteControlProxy> busyRemoteControls) {
+                assertEquals(Arrays.asList(firstRemoteControl, secondRemoteControl), new ArrayList<RemoteControlProxy>(idleRemoteControls));
+                assertTrue(busyRemoteControls.isEmpty());
+                return secondRemoteControl;
+            }
+        });
+        provisioner.add(firstRemoteControl);
+        provisioner.add(secondRemoteControl);
+
+        assertEquals(secondRemoteControl, provisioner.reserve());
+    }
+
+    @Test
+    public void reserveHandsOverTheSameRemoteControlUntilAllItsSessionSlotsAreTaken() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", 2, null);
+        final RecordingReservation reservation = new RecordingReservation();
+        provisioner.add(remoteControl);
+
+        assertSame(remoteControl, provisioner.reserve());
+        assertEquals(1, provisioner.availableRemoteControls().size());
+        assertSame(remoteControl, provisioner.reserve());
+        assertTrue(provisioner.availableRemoteControls().isEmpty());
+        assertEquals(1, provisioner.reservedRemoteControls().size());
+
+        provisioner.reserve(reservation);
+        assertNull(reservation.remoteControl());
+        assertEquals(1, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void releasingASessionSlotHandsItOverToTheNextWaitingRequest() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", 2, null);
+        final RecordingReservation reservation = new RecordingReservation();
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        provisioner.reserve();
+        provisioner.reserve(reservation);
+
+        provisioner.release(remoteControl);
+        assertSame(remoteControl, reservation.remoteControl());
+        assertEquals(2, remoteControl.concurrentSessionCount());
+        assertTrue(provisioner.availableRemoteControls().isEmpty());
+    }
+
+    @Test
+    public void addingARemoteControlHandsAllItsSessionSlotsOverToWaitingRequests() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy firstRemoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RemoteControlProxy secondRemoteControl = new HealthyRemoteControl("b", 0, "", 3, null);
+        final RecordingReservation firstReservation = new RecordingReservation();
+        final RecordingReservation secondReservation = new RecordingReservation();
+        provisioner.add(firstRemoteControl);
+        provisioner.reserve();
+        provisioner.reserve(firstReservation);
+        provisioner.reserve(secondReservation);
+
+        provisioner.add(secondRemoteControl);
+        assertSame(secondRemoteControl, firstReservation.remoteControl());
+        assertSame(secondRemoteControl, secondReservation.remoteControl());
+        assertEquals(Arrays.asList(secondRemoteControl), provisioner.availableRemoteControls());
+    }
+
     @Test
     public void reserveBlocksUntilARemoteControlIsReleasedWhenThereIsAtLeastOneRegisteredRemoteControl() {
         final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
@@ -427,4 +506,662 @@ public class RemoteControlProvisionerTest {
         assertTrue(provisioner.allRemoteControls().contains(remoteControl));
     }
 
+
+    @Test
+    public void releasingAReplacedRemoteControlDoesNotAffectItsReplacement() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy oldRC = new HealthyRemoteControl("a", 0, "", null);
+        final RemoteControlProxy newRC = new HealthyRemoteControl("a", 0, "", null);
+
+        provisioner.add(oldRC);
+        provisioner.reserve();
+        provisioner.add(newRC);
+        provisioner.reserve();
+        provisioner.release(oldRC);
+
+        assertFalse(oldRC.sessionInProgress());
+        assertTrue(newRC.sessionInProgress());
+        assertTrue(provisioner.availableRemoteControls().isEmpty());
+        assertEquals(1, provisioner.reservedRemoteControls().size());
+        assertSame(newRC, provisioner.reservedRemoteControls().get(0));
+    }
+
+    @Test
+    public void reserveOnlyReadsTheCachedHealthOfTheRemoteControl() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new RemoteControlProxy("a", 0, "", null) {
+            public boolean unreliable() {
+                fail("Reserving a remote control should not ping it");
+                return true;
+            }
+        };
+        provisioner.add(remoteControl);
+
+        assertSame(remoteControl, provisioner.reserve());
+    }
+
+    @Test
+    public void aReleasedRemoteControlIsHandedOverToTheLongestWaitingRequest() throws InterruptedException {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final List<String> servedRequests = Collections.synchronizedList(new ArrayList<String>());
+        final Thread firstRequest;
+        final Thread secondRequest;
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+
+        firstRequest = reserveAndReleaseInBackground(provisioner, "first", servedRequests);
+        waitUntilPendingReservationCountIs(provisioner, 1);
+        secondRequest = reserveAndReleaseInBackground(provisioner, "second", servedRequests);
+        waitUntilPendingReservationCountIs(provisioner, 2);
+
+        provisioner.release(remoteControl);
+        firstRequest.join(5000);
+        secondRequest.join(5000);
+
+        assertEquals(Arrays.asList("first", "second"), servedRequests);
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void pendingReservationCountIsZeroWhenNobodyIsWaiting() {
+        assertEquals(0, new RemoteControlProvisioner().pendingReservationCount());
+    }
+
+    @Test
+    public void aTimedOutRequestIsNotPendingAnymore() {
+        final RemoteControlProvisioner provisioner;
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+
+        provisioner = new RemoteControlProvisioner() {
+            protected double newSessionMaxWaitTimeInSeconds() {
+                return 0.1;
+            }
+        };
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+
+        assertNull(provisioner.reserve());
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void aPendingReservationIsServedRightAwayWhenARemoteControlIsIdle() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RecordingReservation reservation = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+
+        assertTrue(provisioner.reserve(reservation));
+        assertSame(remoteControl, reservation.remoteControl());
+        assertEquals(1, reservation.notificationCount);
+        assertTrue(provisioner.availableRemoteControls().isEmpty());
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void aPendingReservationIsRejectedWhenNoRemoteControlIsRegistered() {
+        final RecordingReservation reservation = new RecordingReservation();
+
+        assertFalse(new RemoteControlProvisioner().reserve(reservation));
+        assertNull(reservation.remoteControl());
+    }
+
+    @Test
+    public void aPendingReservationIsQueuedAndNotifiedOnRelease() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RecordingReservation reservation = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+
+        assertTrue(provisioner.reserve(reservation));
+        assertNull(reservation.remoteControl());
+        assertEquals(1, provisioner.pendingReservationCount());
+
+        provisioner.release(remoteControl);
+        assertSame(remoteControl, reservation.remoteControl());
+        assertEquals(1, reservation.notificationCount);
+        assertEquals(0, provisioner.pendingReservationCount());
+        assertTrue(provisioner.availableRemoteControls().isEmpty());
+    }
+
+    @Test
+    public void aCancelledReservationIsNotServedAnymore() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RecordingReservation reservation = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        provisioner.reserve(reservation);
+
+        assertNull(provisioner.cancel(reservation));
+        provisioner.release(remoteControl);
+        assertNull(reservation.remoteControl());
+        assertEquals(1, provisioner.availableRemoteControls().size());
+    }
+
+    @Test
+    public void cancelReturnsTheRemoteControlAlreadyAssignedToTheReservation() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RecordingReservation reservation = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve(reservation);
+
+        assertSame(remoteControl, provisioner.cancel(reservation));
+    }
+
+    @Test
+    public void aReleasedRemoteControlIsHandedOverToTheHighestPriorityRequestFirst() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RecordingReservation nightlyRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE);
+        final RecordingReservation smokeRequest = new RecordingReservation(10, PendingReservation.NO_DEADLINE);
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        provisioner.reserve(nightlyRequest);
+        provisioner.reserve(smokeRequest);
+
+        provisioner.release(remoteControl);
+        assertSame(remoteControl, smokeRequest.remoteControl());
+        assertNull(nightlyRequest.remoteControl());
+        assertEquals(1, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void requestsOfTheSamePriorityAreServedEarliestDeadlineFirstThenInArrivalOrder() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final long now = System.currentTimeMillis();
+        final RecordingReservation firstWithoutDeadline = new RecordingReservation(0, PendingReservation.NO_DEADLINE);
+        final RecordingReservation secondWithoutDeadline = new RecordingReservation(0, PendingReservation.NO_DEADLINE);
+        final RecordingReservation lateDeadline = new RecordingReservation(0, now + 120000);
+        final RecordingReservation earlyDeadline = new RecordingReservation(0, now + 60000);
+        final List<RecordingReservation> servedRequests = new ArrayList<RecordingReservation>();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        for (RecordingReservation reservation : Arrays.asList(firstWithoutDeadline, lateDeadline,
+                                                              secondWithoutDeadline, earlyDeadline)) {
+            provisioner.reserve(reservation);
+        }
+        for (int i = 0; i < 4; i++) {
+            provisioner.release(remoteControl);
+            for (RecordingReservation reservation : Arrays.asList(firstWithoutDeadline, lateDeadline,
+                                                                  secondWithoutDeadline, earlyDeadline)) {
+                if (null != reservation.remoteControl() && !servedRequests.contains(reservation)) {
+                    servedRequests.add(reservation);
+                }
+            }
+        }
+        assertEquals(Arrays.asList(earlyDeadline, lateDeadline, firstWithoutDeadline, secondWithoutDeadline),
+                     servedRequests);
+    }
+
+    @Test
+    public void aRequestWhoseDeadlineHasPassedIsExpiredRightAway() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RecordingReservation reservation = new RecordingReservation(0, System.currentTimeMillis() - 1);
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "", null));
+
+        assertTrue(provisioner.reserve(reservation));
+        assertTrue(reservation.expired());
+        assertNull(reservation.remoteControl());
+        assertEquals(1, reservation.notificationCount);
+        assertEquals(1, provisioner.availableRemoteControls().size());
+    }
+
+    @Test
+    public void aQueuedRequestWhoseDeadlinePassedIsExpiredInsteadOfBeingServed() {
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RemoteControlProvisioner provisioner;
+        final RecordingReservation impatientRequest;
+        final RecordingReservation patientRequest;
+        final long[] now = {System.currentTimeMillis()};
+
+        provisioner = new RemoteControlProvisioner() {
+            protected long now() {
+                return now[0];
+            }
+        };
+        impatientRequest = new RecordingReservation(10, now[0] + 1000);
+        patientRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE);
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        provisioner.reserve(impatientRequest);
+        provisioner.reserve(patientRequest);
+
+        now[0] += 1000;
+        provisioner.release(remoteControl);
+        assertTrue(impatientRequest.expired());
+        assertNull(impatientRequest.remoteControl());
+        assertSame(remoteControl, patientRequest.remoteControl());
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void aBlockingReservationGivesUpWhenItsDeadlinePasses() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final long start;
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "", null));
+        provisioner.reserve();
+
+        start = System.currentTimeMillis();
+        assertNull(provisioner.reserve(0, start + 100));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void aRequestIsRejectedRightAwayWhenTooManyRequestsAreWaiting() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(), 1);
+        final RecordingReservation queuedRequest = new RecordingReservation();
+        final RecordingReservation extraRequest = new RecordingReservation();
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "", null));
+        provisioner.reserve();
+        provisioner.reserve(queuedRequest);
+
+        assertTrue(provisioner.reserve(extraRequest));
+        assertFalse(queuedRequest.rejected());
+        assertTrue(extraRequest.rejected());
+        assertNull(extraRequest.remoteControl());
+        assertEquals(1, extraRequest.notificationCount);
+        assertEquals(2 * RemoteControlProvisioner.DEFAULT_RELEASE_INTERVAL_IN_MILLISECONDS,
+                     extraRequest.retryAfterInMilliseconds());
+        assertEquals(1, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void theEstimatedWaitOfARejectedRequestFollowsTheRecentReleaseRate() {
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RemoteControlProvisioner provisioner;
+        final RecordingReservation extraRequest;
+        final long[] now = {System.currentTimeMillis()};
+
+        provisioner = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(), 1) {
+            protected long now() {
+                return now[0];
+            }
+        };
+        extraRequest = new RecordingReservation();
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        provisioner.release(remoteControl);
+        now[0] += 2000;
+        provisioner.reserve();
+        provisioner.release(remoteControl);
+        provisioner.reserve();
+        provisioner.reserve(new RecordingReservation());
+
+        now[0] += 500;
+        provisioner.reserve(extraRequest);
+        assertEquals(2 * 2000, extraRequest.retryAfterInMilliseconds());
+    }
+
+    @Test
+    public void theEstimatedWaitIsCapped() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(), 100);
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "", null));
+        provisioner.reserve();
+        for (int i = 0; i < 101; i++) {
+            provisioner.reserve(new RecordingReservation());
+        }
+        assertEquals(RemoteControlProvisioner.MAX_RETRY_AFTER_IN_MILLISECONDS, provisioner.estimatedWaitInMilliseconds());
+    }
+
+    @Test
+    public void aBlockingReservationFailsRightAwayWhenTooManyRequestsAreWaiting() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(), 1);
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "", null));
+        provisioner.reserve();
+        provisioner.reserve(new RecordingReservation());
+        try {
+            provisioner.reserve();
+            fail("Expected a NewSessionQueueFullException");
+        } catch (NewSessionQueueFullException e) {
+            assertEquals(2 * RemoteControlProvisioner.DEFAULT_RELEASE_INTERVAL_IN_MILLISECONDS,
+                         e.retryAfterInMilliseconds());
+        }
+        assertEquals(1, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void confirmReservationStartsASessionOnAReliableRemoteControl() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", null);
+        final RecordingReservation reservation = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve(reservation);
+
+        assertTrue(provisioner.confirmReservation(remoteControl));
+        assertTrue(remoteControl.sessionInProgress());
+    }
+
+    @Test
+    public void confirmReservationUnregistersAnUnreliableRemoteControl() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new UnreliableRemoteControl("a", 0, "", null);
+        final RecordingReservation reservation = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve(reservation);
+
+        assertFalse(provisioner.confirmReservation(remoteControl));
+        assertFalse(provisioner.contains(remoteControl));
+    }
+
+    @Test
+    public void aReleasedRemoteControlGoesToTheTenantHoldingTheFewestSessionsWhateverThePriority() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", 2, null);
+        final RecordingReservation greedyRequest = new RecordingReservation(10, PendingReservation.NO_DEADLINE, "greedy");
+        final RecordingReservation modestRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "modest");
+
+        provisioner.add(remoteControl);
+        provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "greedy"));
+        provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "greedy"));
+        provisioner.reserve(greedyRequest);
+        provisioner.reserve(modestRequest);
+
+        provisioner.release(remoteControl);
+        assertSame(remoteControl, modestRequest.remoteControl());
+        assertNull(greedyRequest.remoteControl());
+        assertEquals(1, provisioner.tenants().waitingRequests("greedy"));
+    }
+
+    @Test
+    public void aSessionSlotIsReleasedForTheTenantItIsAccountedTo() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", 2, null);
+
+        provisioner.add(remoteControl);
+        provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "search"));
+        provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "checkout"));
+        remoteControl.bindSessionSlot("checkout");
+
+        provisioner.releaseSession(remoteControl, "checkout");
+        assertEquals(0, provisioner.tenants().sessionsInUse("checkout"));
+        assertEquals(1, provisioner.tenants().sessionsInUse("search"));
+        provisioner.release(remoteControl, "search");
+        assertEquals(0, provisioner.tenants().sessionsInUse("search"));
+    }
+
+    @Test
+    public void removingARemoteControlEndsTheSessionsOfTheTenantsHoldingItsUnboundSlots() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", 2, null);
+
+        provisioner.add(remoteControl);
+        provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "search"));
+        provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "checkout"));
+
+        assertTrue(provisioner.remove(new HealthyRemoteControl("a", 0, "", 2, null)));
+        assertEquals(0, provisioner.tenants().sessionsInUse("search"));
+        assertEquals(0, provisioner.tenants().sessionsInUse("checkout"));
+        provisioner.release(remoteControl, "search");
+        assertEquals(0, provisioner.tenants().sessionsInUse("search"));
+    }
+
+    @Test
+    public void tenantsGetRemoteControlsInProportionToTheirWeight() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("heavy", 2, 0)});
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(),
+                                                                                  0, tenants);
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "", 6, null);
+        final RecordingReservation heavyRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "heavy");
+        final RecordingReservation lightRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "light");
+
+        provisioner.add(remoteControl);
+        for (String tenant : Arrays.asList("light", "heavy", "heavy", "heavy", "light", "light")) {
+            provisioner.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, tenant));
+        }
+        provisioner.reserve(lightRequest);
+        provisioner.reserve(heavyRequest);
+
+        provisioner.release(remoteControl);
+        assertSame(remoteControl, heavyRequest.remoteControl());
+        assertNull(lightRequest.remoteControl());
+    }
+
+    @Test
+    public void aTenantAtQuotaWaitsEvenWhenARemoteControlIsIdle() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("capped", 1, 1)});
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(),
+                                                                                  0, tenants);
+        final RemoteControlProxy first = new HealthyRemoteControl("a", 0, "", null);
+        final RemoteControlProxy second = new HealthyRemoteControl("b", 0, "", null);
+        final RecordingReservation overQuotaRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "capped");
+        final RecordingReservation firstRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "capped");
+
+        provisioner.add(first);
+        provisioner.add(second);
+        provisioner.reserve(firstRequest);
+        provisioner.reserve(overQuotaRequest);
+        assertNull(overQuotaRequest.remoteControl());
+        assertEquals(1, provisioner.pendingReservationCount());
+
+        provisioner.release(firstRequest.remoteControl());
+        assertTrue(null != overQuotaRequest.remoteControl());
+        assertEquals(1, tenants.sessionsInUse("capped"));
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void serveWaitingRequestsHandsIdleRemoteControlsOverToTenantsBackUnderQuota() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("capped", 1, 1)});
+        final RemoteControlProvisioner firefox = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(), 0, tenants);
+        final RemoteControlProvisioner safari = new RemoteControlProvisioner(new LeastRecentlyUsedStrategy(), 0, tenants);
+        final RemoteControlProxy firefoxRemoteControl = new HealthyRemoteControl("a", 0, "firefox", null);
+        final RemoteControlProxy safariRemoteControl = new HealthyRemoteControl("b", 0, "safari", null);
+        final RecordingReservation safariRequest = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "capped");
+
+        firefox.add(firefoxRemoteControl);
+        safari.add(safariRemoteControl);
+        firefox.reserve(new RecordingReservation(0, PendingReservation.NO_DEADLINE, "capped"));
+        safari.reserve(safariRequest);
+        assertNull(safariRequest.remoteControl());
+
+        firefox.release(firefoxRemoteControl);
+        safari.serveWaitingRequests();
+        assertSame(safariRemoteControl, safariRequest.remoteControl());
+    }
+
+    @Test
+    public void aCancelledReservationIsNotCountedAsWaitingForItsTenantAnymore() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RecordingReservation reservation = new RecordingReservation(0, PendingReservation.NO_DEADLINE, "search");
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "", null));
+        provisioner.reserve();
+        provisioner.reserve(reservation);
+        assertEquals(1, provisioner.tenants().waitingRequests("search"));
+
+        provisioner.cancel(reservation);
+        assertEquals(0, provisioner.tenants().waitingRequests("search"));
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void sessionSlotsFreedWhileTheOldestGangWaitsAreLeftIdleForIt() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "firefox", null);
+        final GangReservation gang = new GangReservation(Arrays.asList("firefox"), PendingReservation.NO_DEADLINE, null);
+        final GangMember member = gang.members().get("firefox");
+        final RecordingReservation laterRequest = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        gang.setOldest(true);
+        provisioner.enqueue(member);
+        provisioner.reserve(laterRequest);
+
+        provisioner.release(remoteControl);
+        assertNull(laterRequest.remoteControl());
+        assertTrue(provisioner.availableRemoteControls().contains(remoteControl));
+
+        provisioner.lock();
+        try {
+            assertTrue(provisioner.readyFor(member));
+            provisioner.serve(member);
+        } finally {
+            provisioner.unlock();
+        }
+        assertEquals(Arrays.asList(remoteControl), member.remoteControls());
+        assertEquals(1, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void aYoungerGangDoesNotHoldItsTurn() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "firefox", null);
+        final GangReservation gang = new GangReservation(Arrays.asList("firefox"), PendingReservation.NO_DEADLINE, null);
+        final RecordingReservation laterRequest = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        provisioner.enqueue(gang.members().get("firefox"));
+        provisioner.reserve(laterRequest);
+
+        provisioner.release(remoteControl);
+        assertSame(remoteControl, laterRequest.remoteControl());
+    }
+
+    @Test
+    public void aGangMemberIsNotReadyWhileARequestQueuedBeforeItWaits() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final GangReservation gang = new GangReservation(Arrays.asList("firefox"), PendingReservation.NO_DEADLINE, null);
+
+        provisioner.add(new HealthyRemoteControl("a", 0, "firefox", null));
+        provisioner.reserve();
+        provisioner.reserve(new RecordingReservation());
+        gang.setOldest(true);
+        provisioner.enqueue(gang.members().get("firefox"));
+
+        provisioner.lock();
+        try {
+            assertFalse(provisioner.readyFor(gang.members().get("firefox")));
+        } finally {
+            provisioner.unlock();
+        }
+    }
+
+    @Test
+    public void aCancelledGangMemberLetsTheRequestsBehindItBeServed() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "firefox", null);
+        final GangReservation gang = new GangReservation(Arrays.asList("firefox", "firefox"),
+                                                         PendingReservation.NO_DEADLINE, null);
+        final RecordingReservation laterRequest = new RecordingReservation();
+
+        provisioner.add(remoteControl);
+        provisioner.reserve();
+        gang.setOldest(true);
+        provisioner.enqueue(gang.members().get("firefox"));
+        provisioner.reserve(laterRequest);
+        assertEquals(3, provisioner.pendingReservationCount());
+        provisioner.release(remoteControl);
+
+        provisioner.cancel(gang.members().get("firefox"));
+        assertSame(remoteControl, laterRequest.remoteControl());
+        assertEquals(0, provisioner.pendingReservationCount());
+    }
+
+    @Test
+    public void reserveSpareRemoteControlTakesAnIdleSessionSlotOnlyWhenNobodyIsWaiting() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "firefox", 2, null);
+
+        provisioner.add(remoteControl);
+        assertSame(remoteControl, provisioner.reserveSpareRemoteControl());
+        assertSame(remoteControl, provisioner.reserveSpareRemoteControl());
+        assertNull(provisioner.reserveSpareRemoteControl());
+
+        provisioner.reserve(new RecordingReservation());
+        provisioner.release(remoteControl);
+        assertNull(provisioner.reserveSpareRemoteControl());
+    }
+
+    @Test
+    public void theWaitingRequestListenerIsToldWhenARequestHasToWait() {
+        final RemoteControlProvisioner provisioner = new RemoteControlProvisioner();
+        final int[] waitingRequestCount = new int[1];
+
+        provisioner.setWaitingRequestListener(new RemoteControlProvisioner.WaitingRequestListener() {
+            public void requestWaiting() {
+                waitingRequestCount[0] += 1;
+            }
+        });
+        provisioner.add(new HealthyRemoteControl("a", 0, "firefox", null));
+        provisioner.reserve(new RecordingReservation());
+        assertEquals(0, waitingRequestCount[0]);
+
+        provisioner.reserve(new RecordingReservation());
+        assertEquals(1, waitingRequestCount[0]);
+    }
+
+    protected TenantConfiguration tenant(String name, double weight, int maxConcurrentSessions) {
+        final TenantConfiguration tenant;
+
+        tenant = new TenantConfiguration(name);
+        tenant.setWeight(weight);
+        tenant.setMaxConcurrentSessions(maxConcurrentSessions);
+        return tenant;
+    }
+
+    protected static class RecordingReservation extends PendingReservation {
+
+        private int notificationCount;
+
+        public RecordingReservation() {
+        }
+
+        public RecordingReservation(int priority, long deadline) {
+            super(priority, deadline);
+        }
+
+        public RecordingReservation(int priority, long deadline, String tenant) {
+            super(priority, deadline, tenant);
+        }
+
+        protected void remoteControlAssigned() {
+            notificationCount += 1;
+        }
+    }
+
+    protected Thread reserveAndReleaseInBackground(final RemoteControlProvisioner provisioner,
+                                                   final String name, final List<String> servedRequests) {
+        final Thread request;
+
+        request = new Thread() {
+            public void run() {
+                final RemoteControlProxy remoteControl = provisioner.reserve();
+                servedRequests.add(name);
+                provisioner.release(remoteControl);
+            }
+        };
+        request.start();
+        return request;
+    }
+
+    protected void waitUntilPendingReservationCountIs(RemoteControlProvisioner provisioner, int expectedCount)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && provisioner.pendingReservationCount() != expectedCount; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedCount, provisioner.pendingReservationCount());
+    }
+
 }
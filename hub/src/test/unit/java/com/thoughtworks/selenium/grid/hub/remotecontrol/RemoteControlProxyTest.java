@@ -5,17 +5,25 @@ import static com.thoughtworks.selenium.grid.AssertionHelper.assertNotEquals;
 import static com.thoughtworks.selenium.grid.AssertionHelper.assertSameHashCode;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
 import com.thoughtworks.selenium.grid.HttpClient;
 import com.thoughtworks.selenium.grid.HttpParameters;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.ResponseCallback;
 
 public class RemoteControlProxyTest {
 
@@ -103,6 +111,61 @@ public class RemoteControlProxyTest {
         assertFalse(remoteControl.canHandleNewSession());
     }
 
+    @Test
+    public void canHandleNewSessionUntilAllSessionSlotsAreTaken() {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = new RemoteControlProxy("a host", 0, "", 2, null);
+        remoteControl.registerNewSession();
+        assertTrue(remoteControl.canHandleNewSession());
+        assertTrue(remoteControl.sessionInProgress());
+        remoteControl.registerNewSession();
+        assertFalse(remoteControl.canHandleNewSession());
+        assertEquals(2, remoteControl.concurrentSessionCount());
+    }
+
+    @Test
+    public void bindSessionSlotBindsASlotOfTheGivenTenantWhateverTheOrderSlotsWereTakenIn() {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = new RemoteControlProxy("a host", 0, "", 3, null);
+        remoteControl.registerNewSession("search");
+        remoteControl.registerNewSession("checkout");
+        remoteControl.registerNewSession(Tenants.NO_TENANT);
+        assertEquals("checkout", remoteControl.bindSessionSlot("checkout"));
+        assertEquals("search", remoteControl.bindSessionSlot("unknown"));
+        assertEquals(Arrays.asList(Tenants.NO_TENANT), remoteControl.bindAllSessionSlots());
+        assertNull(remoteControl.bindSessionSlot(Tenants.NO_TENANT));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void registerNewSessionThrowsAnIllegalStateExceptionWhenAllSessionSlotsAreTaken() {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = new RemoteControlProxy("a host", 0, "", 2, null);
+        remoteControl.registerNewSession();
+        remoteControl.registerNewSession();
+        remoteControl.registerNewSession();
+    }
+
+    @Test
+    public void unregisterSessionFreesASessionSlot() {
+        final RemoteControlProxy remoteControl;
+
+        remoteControl = new RemoteControlProxy("a host", 0, "", 2, null);
+        remoteControl.registerNewSession();
+        remoteControl.registerNewSession();
+        remoteControl.unregisterSession();
+        assertTrue(remoteControl.canHandleNewSession());
+        assertTrue(remoteControl.sessionInProgress());
+        assertEquals(1, remoteControl.concurrentSessionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxConcurrentSessionsMustBeAtLeastOne() {
+        new RemoteControlProxy("a host", 0, "", 0, null);
+    }
+
     @Test
     public void remoteControlDriverURLTargetsTheSeleniumDriver() {
         final RemoteControlProxy proxy = new RemoteControlProxy("localhost", 5555, "", null);
@@ -124,7 +187,7 @@ public class RemoteControlProxyTest {
         HttpClient client = mock(HttpClient.class);
         parameters = new HttpParameters();
         expectedResponse = new Response(0, "");
-        when(client.post("http://foo:10/selenium-server/driver/", parameters)).thenReturn(expectedResponse);
+        when(client.stream("http://foo:10/selenium-server/driver/", parameters)).thenReturn(expectedResponse);
         proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
         assertEquals(expectedResponse, proxy.forward(parameters));
     }
@@ -217,7 +280,7 @@ public class RemoteControlProxyTest {
 
         HttpClient client = mock(HttpClient.class);
         successfulResponse = new Response(200, "");
-        when(client.get("http://foo:10/selenium-server/heartbeat")).thenReturn(successfulResponse);
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000)).thenReturn(successfulResponse);
         proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
         proxy.registerNewSession();
         assertFalse(proxy.unreliable());
@@ -230,7 +293,7 @@ public class RemoteControlProxyTest {
         
         HttpClient client = mock(HttpClient.class);
         badResponse = new Response(500, "");
-        when(client.get("http://foo:10/selenium-server/heartbeat")).thenReturn(badResponse);
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000)).thenReturn(badResponse);
         proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
         proxy.registerNewSession();
         assertTrue(proxy.unreliable());
@@ -241,7 +304,7 @@ public class RemoteControlProxyTest {
         final RemoteControlProxy proxy;
 
         HttpClient client = mock(HttpClient.class);
-        when(client.get("http://foo:10/selenium-server/heartbeat")).thenThrow(new RuntimeException());
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000)).thenThrow(new RuntimeException());
         proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
         proxy.registerNewSession();
         assertTrue(proxy.unreliable());
@@ -254,7 +317,7 @@ public class RemoteControlProxyTest {
 
         HttpClient client = mock(HttpClient.class);
         successfulResponse = new Response(200, "");
-        when(client.get("http://foo:10/selenium-server/heartbeat"))
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000))
     		.thenThrow(new RuntimeException())
     		.thenReturn(successfulResponse);
         proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
@@ -271,10 +334,162 @@ public class RemoteControlProxyTest {
         HttpClient client = mock(HttpClient.class);
         badResponse = new Response(500, "");
         successfulResponse = new Response(200, "");
-        when(client.get("http://foo:10/selenium-server/heartbeat")).thenReturn(badResponse, successfulResponse);
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000)).thenReturn(badResponse, successfulResponse);
         proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
         proxy.registerNewSession();
         assertFalse(proxy.unreliable());
     }
 	
+    @Test
+    public void unreliableMarksTheRemoteControlAsDown() throws IOException {
+        final RemoteControlProxy proxy;
+
+        HttpClient client = mock(HttpClient.class);
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000)).thenReturn(new Response(500, ""));
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        proxy.unreliable();
+        assertTrue(proxy.health().down());
+    }
+
+    @Test
+    public void aSuccessfulHeartbeatConfirmsTheRemoteControlHealth() throws IOException {
+        final RemoteControlProxy proxy;
+
+        HttpClient client = mock(HttpClient.class);
+        when(client.get("http://foo:10/selenium-server/heartbeat", 10000)).thenReturn(new Response(200, ""));
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        proxy.unreliable();
+        assertTrue(proxy.health().confirmedWithin(60000));
+    }
+
+    @Test
+    public void aSuccessfullyForwardedCommandConfirmsTheRemoteControlHealth() throws IOException {
+        final HttpParameters parameters;
+        final RemoteControlProxy proxy;
+
+        HttpClient client = mock(HttpClient.class);
+        parameters = new HttpParameters();
+        when(client.stream("http://foo:10/selenium-server/driver/", parameters)).thenReturn(new Response(200, ""));
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        proxy.forward(parameters);
+        assertTrue(proxy.health().confirmedWithin(60000));
+    }
+
+    @Test
+    public void forwardRecordsAFailedContactWhenTheRemoteControlCannotBeReached() throws IOException {
+        final HttpParameters parameters;
+        final RemoteControlProxy proxy;
+
+        HttpClient client = mock(HttpClient.class);
+        parameters = new HttpParameters();
+        when(client.stream("http://foo:10/selenium-server/driver/", parameters)).thenThrow(new IOException("connection refused"));
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        try {
+            proxy.forward(parameters);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals(1, proxy.health().consecutiveFailureCount());
+        }
+    }
+
+    @Test
+    public void forwardTakesTheRemoteControlDownWhenTheCommandMissesItsDeadline() throws IOException {
+        final HttpParameters parameters;
+        final RemoteControlProxy proxy;
+
+        HttpClient client = mock(HttpClient.class);
+        parameters = new HttpParameters();
+        when(client.stream("http://foo:10/selenium-server/driver/", parameters, 5000)).thenThrow(new SocketTimeoutException());
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        try {
+            proxy.forward(parameters, 5000);
+            fail("Expected a SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            assertTrue(proxy.health().down());
+            assertEquals(1, proxy.health().timedOutCommandCount());
+        }
+    }
+
+    @Test
+    public void terminateSessionGivesUpOnARemoteControlSilentPastTheDeadline() throws IOException {
+        final RemoteControlProxy proxy;
+
+        HttpClient client = mock(HttpClient.class);
+        when(client.stream(eq("http://foo:10/selenium-server/driver/"), any(HttpParameters.class), eq(5000)))
+                .thenThrow(new SocketTimeoutException());
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        proxy.terminateSession("a session id", 5000);
+        assertTrue(proxy.health().down());
+    }
+
+    @Test
+    public void forwardWithARawBodyPostsItToTheDriverURLAndConfirmsTheRemoteControlHealth() throws IOException {
+        final RemoteControlProxy proxy;
+        final Response expectedResponse;
+        final byte[] body;
+
+        HttpClient client = mock(HttpClient.class);
+        body = "cmd=type&sessionId=1234".getBytes();
+        expectedResponse = new Response(0, "OK");
+        when(client.stream("http://foo:10/selenium-server/driver/", body, "a content type")).thenReturn(expectedResponse);
+        proxy = new RemoteControlProxy("foo", 10, "", (HttpClient) client);
+        assertEquals(expectedResponse, proxy.forward(body, "a content type"));
+        assertTrue(proxy.health().confirmedWithin(60000));
+    }
+
+    @Test
+    public void asynchronousForwardPostsTheBodyToTheDriverURLAndConfirmsTheRemoteControlHealth() {
+        final RemoteControlProxy proxy;
+        final Response expectedResponse;
+        final Response[] response;
+
+        expectedResponse = new Response(0, "OK");
+        response = new Response[1];
+        proxy = new RemoteControlProxy("foo", 10, "", null);
+        proxy.forward("cmd=type".getBytes(), "a content type", 30000, new AsyncHttpClient(0, 0) {
+            public void post(String url, byte[] body, String contentType, int readTimeoutInMilliseconds,
+                             ResponseCallback callback) {
+                assertEquals("http://foo:10/selenium-server/driver/", url);
+                assertEquals("a content type", contentType);
+                assertEquals(30000, readTimeoutInMilliseconds);
+                callback.completed(expectedResponse);
+            }
+        }, new ResponseCallback() {
+            public void completed(Response completedResponse) {
+                response[0] = completedResponse;
+            }
+
+            public void failed(IOException e) {
+                fail(e.getMessage());
+            }
+        });
+        assertEquals(expectedResponse, response[0]);
+        assertTrue(proxy.health().confirmedWithin(60000));
+    }
+
+    @Test
+    public void asynchronousForwardRecordsAFailedContactWhenThePostFails() {
+        final RemoteControlProxy proxy;
+        final IOException[] failure;
+
+        failure = new IOException[1];
+        proxy = new RemoteControlProxy("foo", 10, "", null);
+        proxy.forward("cmd=type".getBytes(), "a content type", 30000, new AsyncHttpClient(0, 0) {
+            public void post(String url, byte[] body, String contentType, int readTimeoutInMilliseconds,
+                             ResponseCallback callback) {
+                callback.failed(new IOException("Connection refused"));
+            }
+        }, new ResponseCallback() {
+            public void completed(Response completedResponse) {
+                fail("Should have failed");
+            }
+
+            public void failed(IOException e) {
+                failure[0] = e;
+            }
+        });
+        assertEquals("Connection refused", failure[0].getMessage());
+        assertFalse(proxy.health().confirmedWithin(60000));
+    }
+
 }
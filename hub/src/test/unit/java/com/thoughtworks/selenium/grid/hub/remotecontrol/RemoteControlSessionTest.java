@@ -6,7 +6,6 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
-import java.util.Date;
 
 
 public class RemoteControlSessionTest extends UsingClassMock {
@@ -29,7 +28,7 @@ public class RemoteControlSessionTest extends UsingClassMock {
         final RemoteControlSession session;
         final long now;
 
-        now = new Date().getTime();
+        now = CoarseClock.now();
         session = new RemoteControlSession("whatever",
                                            new RemoteControlProxy("host", 24, "env", null));
         assertTrue(session.lastActiveAt() >= now);
@@ -49,7 +48,7 @@ public class RemoteControlSessionTest extends UsingClassMock {
         final RemoteControlSession session;
         final long now;
 
-        now = new Date().getTime();
+        now = CoarseClock.now();
         session = new RemoteControlSession("whatever",
                                            new RemoteControlProxy("host", 24, "env", null)) {
             @Override
@@ -90,7 +89,7 @@ public class RemoteControlSessionTest extends UsingClassMock {
         final RemoteControlSession session;
         final long now;
 
-        now = new Date().getTime();
+        now = CoarseClock.now();
         session = new RemoteControlSession("whatever",
                                            new RemoteControlProxy("host", 24, "env", null)) {
             @Override
@@ -109,4 +108,35 @@ public class RemoteControlSessionTest extends UsingClassMock {
         assertTrue(session.innactiveForMoreThan(5));
     }
 
+    @Test
+    public void idleDeadlineIsLastActiveAtPlusTheMaxIdleTime() {
+        final RemoteControlSession session;
+
+        session = new RemoteControlSession("whatever",
+                                           new RemoteControlProxy("host", 24, "env", null), 3000);
+        session.updateLastActiveAt(1000);
+        assertEquals(4000, session.idleDeadline());
+    }
+
+    @Test
+    public void idleDeadlineDoesNotOverflowWhenTheMaxIdleTimeIsUnlimited() {
+        final RemoteControlSession session;
+
+        session = new RemoteControlSession("whatever",
+                                           new RemoteControlProxy("host", 24, "env", null));
+        session.updateLastActiveAt(1000);
+        assertEquals(Long.MAX_VALUE, session.idleDeadline());
+    }
+
+    @Test
+    public void sessionIsEndedOnlyOnceEndHasBeenCalled() {
+        final RemoteControlSession session;
+
+        session = new RemoteControlSession("whatever",
+                                           new RemoteControlProxy("host", 24, "env", null));
+        assertFalse(session.ended());
+        session.end();
+        assertTrue(session.ended());
+    }
+
 }
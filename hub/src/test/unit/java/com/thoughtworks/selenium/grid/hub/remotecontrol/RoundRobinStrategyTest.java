@@ -0,0 +1,62 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertSame;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RoundRobinStrategyTest {
+
+    private final RemoteControlProxy first = new RemoteControlProxy("host-a", 5555, "env", null);
+    private final RemoteControlProxy second = new RemoteControlProxy("host-b", 5555, "env", null);
+    private final RemoteControlProxy third = new RemoteControlProxy("host-c", 5555, "env", null);
+    private final List<RemoteControlProxy> noBusyRemoteControl = Collections.emptyList();
+
+    @Test
+    public void selectCyclesThroughRemoteControlsInPortThenHostOrder() {
+        final RoundRobinStrategy strategy;
+        final List<RemoteControlProxy> idle;
+
+        strategy = new RoundRobinStrategy();
+        idle = Arrays.asList(third, first, second);
+        assertSame(first, strategy.select(idle, noBusyRemoteControl));
+        assertSame(second, strategy.select(idle, noBusyRemoteControl));
+        assertSame(third, strategy.select(idle, noBusyRemoteControl));
+        assertSame(first, strategy.select(idle, noBusyRemoteControl));
+    }
+
+    @Test
+    public void selectAlternatesBetweenHostsRunningRemoteControlsOnTheSamePorts() {
+        final RemoteControlProxy secondOnFirstHost;
+        final RoundRobinStrategy strategy;
+        final List<RemoteControlProxy> idle;
+
+        secondOnFirstHost = new RemoteControlProxy("host-a", 5556, "env", null);
+        strategy = new RoundRobinStrategy();
+        idle = Arrays.asList(first, secondOnFirstHost, second);
+        assertSame(first, strategy.select(idle, noBusyRemoteControl));
+        assertSame(second, strategy.select(idle, noBusyRemoteControl));
+        assertSame(secondOnFirstHost, strategy.select(idle, noBusyRemoteControl));
+    }
+
+    @Test
+    public void selectSkipsRemoteControlsThatAreNotIdle() {
+        final RoundRobinStrategy strategy;
+
+        strategy = new RoundRobinStrategy();
+        assertSame(first, strategy.select(Arrays.asList(first, second, third), noBusyRemoteControl));
+        assertSame(third, strategy.select(Arrays.asList(first, third), Arrays.asList(second)));
+    }
+
+    @Test
+    public void selectWrapsAroundWhenNoIdleRemoteControlComesAfterTheLastSelectedOne() {
+        final RoundRobinStrategy strategy;
+
+        strategy = new RoundRobinStrategy();
+        assertSame(third, strategy.select(Arrays.asList(third), Arrays.asList(first, second)));
+        assertSame(first, strategy.select(Arrays.asList(first, second), Arrays.asList(third)));
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class SessionExpiryWheelTest {
+
+    @Test
+    public void sessionIsNotReclaimedBeforeItsIdleDeadline() {
+        final RecordingHandler handler;
+        final SessionExpiryWheel wheel;
+        final RemoteControlSession session;
+
+        handler = new RecordingHandler();
+        wheel = new SessionExpiryWheel(1000, 8, handler);
+        session = new StampedSession(0, 5000);
+        wheel.schedule(session);
+        wheel.advanceTo(4999);
+        assertTrue(handler.reclaimed.isEmpty());
+    }
+
+    @Test
+    public void sessionIsReclaimedOnceIdlePastItsDeadline() {
+        final RecordingHandler handler;
+        final SessionExpiryWheel wheel;
+        final RemoteControlSession session;
+
+        handler = new RecordingHandler();
+        wheel = new SessionExpiryWheel(1000, 8, handler);
+        session = new StampedSession(0, 5000);
+        wheel.schedule(session);
+        wheel.advanceTo(5000);
+        assertEquals(1, handler.reclaimed.size());
+        assertEquals(session, handler.reclaimed.get(0));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void sessionActiveSinceItWasScheduledIsRescheduledInsteadOfReclaimed() {
+        final RecordingHandler handler;
+        final SessionExpiryWheel wheel;
+        final StampedSession session;
+
+        handler = new RecordingHandler();
+        wheel = new SessionExpiryWheel(1000, 8, handler);
+        session = new StampedSession(0, 5000);
+        wheel.schedule(session);
+        session.updateLastActiveAt(3000);
+        wheel.advanceTo(5000);
+        assertTrue(handler.reclaimed.isEmpty());
+        assertEquals(1, wheel.size());
+
+        wheel.advanceTo(8000);
+        assertEquals(1, handler.reclaimed.size());
+    }
+
+    @Test
+    public void sessionWithADeadlineBeyondOneRevolutionSurvivesEarlierPasses() {
+        final RecordingHandler handler;
+        final SessionExpiryWheel wheel;
+        final RemoteControlSession session;
+
+        handler = new RecordingHandler();
+        wheel = new SessionExpiryWheel(1000, 4, handler);
+        session = new StampedSession(0, 10000);
+        wheel.schedule(session);
+        wheel.advanceTo(9000);
+        assertTrue(handler.reclaimed.isEmpty());
+        wheel.advanceTo(10000);
+        assertEquals(1, handler.reclaimed.size());
+    }
+
+    @Test
+    public void endedSessionIsDroppedWithoutBeingReclaimed() {
+        final RecordingHandler handler;
+        final SessionExpiryWheel wheel;
+        final RemoteControlSession session;
+
+        handler = new RecordingHandler();
+        wheel = new SessionExpiryWheel(1000, 8, handler);
+        session = new StampedSession(0, 2000);
+        wheel.schedule(session);
+        session.end();
+        wheel.advanceTo(3000);
+        assertTrue(handler.reclaimed.isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void aFailingHandlerDoesNotPreventOtherSessionsFromBeingReclaimed() {
+        final RecordingHandler handler;
+        final SessionExpiryWheel wheel;
+        final RemoteControlSession failing;
+        final RemoteControlSession other;
+
+        handler = new RecordingHandler();
+        wheel = new SessionExpiryWheel(1000, 8, handler);
+        failing = new StampedSession(0, 2000);
+        other = new StampedSession(0, 2000);
+        handler.failOn = failing;
+        wheel.schedule(failing);
+        wheel.schedule(other);
+        wheel.advanceTo(2000);
+        assertEquals(1, handler.reclaimed.size());
+        assertEquals(other, handler.reclaimed.get(0));
+    }
+
+    private static class RecordingHandler implements SessionExpiryWheel.IdleSessionHandler {
+        final List<RemoteControlSession> reclaimed = new LinkedList<RemoteControlSession>();
+        RemoteControlSession failOn;
+
+        public void sessionIdleForTooLong(RemoteControlSession session) {
+            if (session == failOn) {
+                throw new IllegalStateException("boom");
+            }
+            reclaimed.add(session);
+        }
+    }
+
+    private static class StampedSession extends RemoteControlSession {
+
+        public StampedSession(long lastActiveAt, long maxIdleTimeInMilliseconds) {
+            super("a session", new RemoteControlProxy("host", 24, "env", null), maxIdleTimeInMilliseconds);
+            updateLastActiveAt(lastActiveAt);
+        }
+    }
+
+}
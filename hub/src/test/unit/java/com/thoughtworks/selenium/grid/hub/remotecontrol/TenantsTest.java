@@ -0,0 +1,162 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import com.thoughtworks.selenium.grid.configuration.TenantConfiguration;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TenantsTest {
+
+    @Test
+    public void aTenantThatIsNotConfiguredHasAWeightOfOneAndNoQuota() {
+        final Tenants tenants = new Tenants();
+
+        assertEquals(1.0, tenants.weightOf("anybody"));
+        assertEquals(0, tenants.maxConcurrentSessionsOf("anybody"));
+        assertFalse(tenants.hasQuotas());
+    }
+
+    @Test
+    public void weightAndQuotaComeFromTheConfiguration() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("search", 3, 5)});
+
+        assertEquals(3.0, tenants.weightOf("search"));
+        assertEquals(5, tenants.maxConcurrentSessionsOf("search"));
+        assertTrue(tenants.hasQuotas());
+    }
+
+    @Test
+    public void aNonPositiveWeightCountsAsOne() {
+        assertEquals(1.0, new Tenants(new TenantConfiguration[] {tenant("search", 0, 0)}).weightOf("search"));
+    }
+
+    @Test
+    public void aTenantIsAtQuotaOnceItHoldsItsMaximumNumberOfSessions() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("search", 1, 2)});
+
+        tenants.sessionStarted("search");
+        assertFalse(tenants.atQuota("search"));
+        tenants.sessionStarted("search");
+        assertTrue(tenants.atQuota("search"));
+        tenants.sessionEnded("search");
+        assertFalse(tenants.atQuota("search"));
+    }
+
+    @Test
+    public void aTenantWithoutQuotaIsNeverAtQuota() {
+        final Tenants tenants = new Tenants();
+
+        for (int i = 0; i < 100; i++) {
+            tenants.sessionStarted("search");
+        }
+        assertFalse(tenants.atQuota("search"));
+    }
+
+    @Test
+    public void shareIsTheNumberOfSessionsInUseRelativeToTheWeight() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("search", 2, 0)});
+
+        tenants.sessionStarted("search");
+        tenants.sessionStarted("checkout");
+        assertEquals(0.5, tenants.share("search"));
+        assertEquals(1.0, tenants.share("checkout"));
+    }
+
+    @Test
+    public void countersNeverGoBelowZero() {
+        final Tenants tenants = new Tenants();
+
+        tenants.sessionEnded("search");
+        tenants.requestDequeued("search");
+        assertEquals(0, tenants.sessionsInUse("search"));
+        assertEquals(0, tenants.waitingRequests("search"));
+    }
+
+    @Test
+    public void tryTransferHandsSessionSlotsOverUntilTheReceivingTenantIsAtQuota() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("search", 1, 1)});
+
+        tenants.sessionStarted(Tenants.NO_TENANT);
+        tenants.sessionStarted(Tenants.NO_TENANT);
+        assertTrue(tenants.tryTransfer(Tenants.NO_TENANT, "search"));
+        assertFalse(tenants.tryTransfer(Tenants.NO_TENANT, "search"));
+        assertEquals(1, tenants.sessionsInUse("search"));
+        assertEquals(1, tenants.sessionsInUse(Tenants.NO_TENANT));
+    }
+
+    @Test
+    public void concurrentTransfersNeverPushATenantOverItsQuota() throws InterruptedException {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("search", 1, 2)});
+        final AtomicInteger transfers = new AtomicInteger();
+        final Thread[] threads = new Thread[20];
+
+        for (int i = 0; i < threads.length; i++) {
+            tenants.sessionStarted(Tenants.NO_TENANT);
+            threads[i] = new Thread() {
+                public void run() {
+                    if (tenants.tryTransfer(Tenants.NO_TENANT, "search")) {
+                        transfers.incrementAndGet();
+                    }
+                }
+            };
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(2, transfers.get());
+        assertEquals(2, tenants.sessionsInUse("search"));
+        assertEquals(threads.length - 2, tenants.sessionsInUse(Tenants.NO_TENANT));
+    }
+
+    @Test
+    public void waitingRequestsAreCountedPerTenant() {
+        final Tenants tenants = new Tenants();
+
+        tenants.requestQueued("search");
+        tenants.requestQueued("search");
+        tenants.requestQueued("checkout");
+        tenants.requestDequeued("search");
+        assertEquals(1, tenants.waitingRequests("search"));
+        assertEquals(1, tenants.waitingRequests("checkout"));
+    }
+
+    @Test
+    public void provisionersWithRequestsWaitingForListsOnlyTheEnvironmentsTheTenantWaitsIn() {
+        final Tenants tenants = new Tenants();
+        final RemoteControlProvisioner firefox = new RemoteControlProvisioner();
+        final RemoteControlProvisioner safari = new RemoteControlProvisioner();
+
+        tenants.requestQueued("search", firefox);
+        tenants.requestQueued("search", safari);
+        tenants.requestQueued("checkout", safari);
+        tenants.requestDequeued("search", safari);
+        assertEquals(Arrays.asList(firefox), tenants.provisionersWithRequestsWaitingFor("search"));
+        assertEquals(Arrays.asList(safari), tenants.provisionersWithRequestsWaitingFor("checkout"));
+        assertEquals(1, tenants.waitingRequests("search"));
+    }
+
+    @Test
+    public void namesListsConfiguredTenantsFirstThenTheOtherTenantsSeen() {
+        final Tenants tenants = new Tenants(new TenantConfiguration[] {tenant("search", 1, 0)});
+
+        tenants.sessionStarted(Tenants.NO_TENANT);
+        assertEquals(Arrays.asList("search", Tenants.NO_TENANT), tenants.names());
+    }
+
+    protected TenantConfiguration tenant(String name, double weight, int maxConcurrentSessions) {
+        final TenantConfiguration tenant;
+
+        tenant = new TenantConfiguration(name);
+        tenant.setWeight(weight);
+        tenant.setMaxConcurrentSessions(maxConcurrentSessions);
+        return tenant;
+    }
+
+}
@@ -6,6 +6,7 @@ public class UnreliableRemoteControl extends RemoteControlProxy {
 
     public UnreliableRemoteControl(String host, int port, String environment, HttpClient httpClient) {
         super(host, port, environment, httpClient);
+        health().markDown();
     }
 
     @Override
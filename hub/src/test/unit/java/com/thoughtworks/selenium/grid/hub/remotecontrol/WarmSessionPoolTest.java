@@ -0,0 +1,216 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol;
+
+import com.thoughtworks.selenium.grid.HttpClient;
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.Environment;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class WarmSessionPoolTest {
+
+    private static final Environment FIREFOX = new Environment("Firefox", "*chrome");
+
+    @Test
+    public void registeringRemoteControlsStartsWarmSessionsUpToTheConfiguredCount() throws InterruptedException {
+        final RecordingHttpClient httpClient = new RecordingHttpClient();
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(2);
+
+        pool.register(new HealthyRemoteControl("a", 0, "Firefox", httpClient));
+        pool.register(new HealthyRemoteControl("b", 0, "Firefox", httpClient));
+        pool.register(new HealthyRemoteControl("c", 0, "Firefox", httpClient));
+        waitUntilWarmSessionCountIs(pool, 2);
+
+        assertEquals(1, pool.availableRemoteControls().size());
+        assertTrue(pool.reservedRemoteControls().isEmpty());
+        assertEquals(Arrays.asList("getNewBrowserSession", "getNewBrowserSession"), httpClient.commands());
+        assertEquals(2, pool.tenants().sessionsInUse(Tenants.NO_TENANT));
+    }
+
+    @Test
+    public void aRequestForTheWarmSessionBrowserUrlGetsAWarmSessionAsIs() throws InterruptedException {
+        final RecordingHttpClient httpClient = new RecordingHttpClient();
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(1);
+        final RemoteControlSession session;
+
+        pool.register(new HealthyRemoteControl("a", 0, "Firefox", httpClient));
+        waitUntilWarmSessionCountIs(pool, 1);
+
+        session = pool.takeWarmSession(FIREFOX, "http://www.google.com", "checkout");
+        assertEquals("1", session.sessionId());
+        assertFalse(session.warm());
+        assertEquals("checkout", session.tenant());
+        assertEquals(1, pool.tenants().sessionsInUse("checkout"));
+        assertEquals(0, pool.tenants().sessionsInUse(Tenants.NO_TENANT));
+        assertTrue(pool.warmSessions().sessions().isEmpty());
+        assertEquals(Arrays.asList("getNewBrowserSession"), httpClient.commands());
+    }
+
+    @Test
+    public void aRequestForAnotherPageOfTheSameSiteGetsAWarmSessionOnceItIsOpened() throws InterruptedException {
+        final RecordingHttpClient httpClient = new RecordingHttpClient();
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(1);
+
+        pool.register(new HealthyRemoteControl("a", 0, "Firefox", httpClient));
+        waitUntilWarmSessionCountIs(pool, 1);
+
+        assertEquals("1", pool.takeWarmSession(FIREFOX, "http://www.google.com/search", Tenants.NO_TENANT).sessionId());
+        assertEquals(Arrays.asList("getNewBrowserSession", "open"), httpClient.commands());
+    }
+
+    @Test
+    public void aRequestForAnotherSiteDoesNotGetAWarmSession() throws InterruptedException {
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(1);
+
+        pool.register(new HealthyRemoteControl("a", 0, "Firefox", new RecordingHttpClient()));
+        waitUntilWarmSessionCountIs(pool, 1);
+
+        assertNull(pool.takeWarmSession(FIREFOX, "http://www.yahoo.com", Tenants.NO_TENANT));
+        assertNull(pool.takeWarmSession(FIREFOX, null, Tenants.NO_TENANT));
+        assertEquals(1, pool.warmSessions().sessions().size());
+    }
+
+    @Test
+    public void aWarmSessionIsEndedWhenARequestHasToWaitForItsSessionSlot() throws InterruptedException {
+        final RecordingHttpClient httpClient = new RecordingHttpClient();
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(1);
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "Firefox", httpClient);
+
+        pool.register(remoteControl);
+        waitUntilWarmSessionCountIs(pool, 1);
+
+        assertSame(remoteControl, pool.reserve(FIREFOX));
+        assertTrue(pool.warmSessions().sessions().isEmpty());
+        assertNull(pool.getRemoteControlSession("1"));
+        assertEquals(Arrays.asList("getNewBrowserSession", "testComplete"), httpClient.commands());
+    }
+
+    @Test
+    public void anIdleWarmSessionIsReclaimedAndReplaced() throws InterruptedException {
+        final RecordingHttpClient httpClient = new RecordingHttpClient();
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(1);
+        final RemoteControlSession session;
+
+        pool.register(new HealthyRemoteControl("a", 0, "Firefox", httpClient));
+        waitUntilWarmSessionCountIs(pool, 1);
+        session = pool.warmSessions().sessions().get(0);
+
+        pool.reclaimIdleSession(session);
+        assertNull(pool.getRemoteControlSession(session.sessionId()));
+        waitUntilWarmSessionCountIs(pool, 1);
+        assertEquals("2", pool.warmSessions().sessions().get(0).sessionId());
+    }
+
+    @Test
+    public void aRemoteControlFailingToStartAWarmSessionIsNotRetriedRightAway() throws InterruptedException {
+        final RecordingHttpClient httpClient = new RecordingHttpClient(true);
+        final WarmGlobalRemoteControlPool pool = new WarmGlobalRemoteControlPool(1);
+        final RemoteControlProxy remoteControl = new HealthyRemoteControl("a", 0, "Firefox", httpClient);
+
+        pool.register(remoteControl);
+        Thread.sleep(200);
+        pool.warmSessions().replenish("Firefox");
+        Thread.sleep(200);
+
+        assertEquals(Arrays.asList("getNewBrowserSession"), httpClient.commands());
+        assertEquals(Arrays.asList(remoteControl), pool.availableRemoteControls());
+        assertTrue(pool.warmSessions().sessions().isEmpty());
+    }
+
+    @Test
+    public void sameOriginComparesSchemeHostAndPort() {
+        assertTrue(WarmSessionPool.sameOrigin("http://www.google.com", "http://WWW.google.com:80/search"));
+        assertFalse(WarmSessionPool.sameOrigin("http://www.google.com", "https://www.google.com"));
+        assertFalse(WarmSessionPool.sameOrigin("http://www.google.com", "http://www.google.com:8080"));
+        assertFalse(WarmSessionPool.sameOrigin("http://www.google.com", "not a URL"));
+    }
+
+    protected void waitUntilWarmSessionCountIs(GlobalRemoteControlPool pool, int expectedCount)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && pool.warmSessions().sessions().size() != expectedCount; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(expectedCount, pool.warmSessions().sessions().size());
+    }
+
+    /**
+     * Keeps warm sessions of http://www.google.com in the Firefox environment.
+     */
+    protected static class WarmGlobalRemoteControlPool extends GlobalRemoteControlPool {
+
+        private final WarmSessionPool warmSessions;
+
+        public WarmGlobalRemoteControlPool(final int warmSessionCount) {
+            warmSessions = new WarmSessionPool(this) {
+                protected int targetCountFor(String environment) {
+                    return "Firefox".equals(environment) ? warmSessionCount : 0;
+                }
+
+                protected String browserUrlFor(String environment) {
+                    return "http://www.google.com";
+                }
+
+                protected String browserFor(String environment) {
+                    return "*chrome";
+                }
+            };
+        }
+
+        public WarmSessionPool warmSessions() {
+            return warmSessions;
+        }
+
+    }
+
+    /**
+     * Records the commands sent to remote controls and starts sessions numbered from 1.
+     */
+    protected static class RecordingHttpClient extends HttpClient {
+
+        private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+        private final boolean failingToStartSessions;
+        private int sessionCount;
+
+        public RecordingHttpClient() {
+            this(false);
+        }
+
+        public RecordingHttpClient(boolean failingToStartSessions) {
+            this.failingToStartSessions = failingToStartSessions;
+        }
+
+        public Response stream(String url, HttpParameters parameters, int timeoutInMilliseconds) {
+            return stream(url, parameters);
+        }
+
+        public Response stream(String url, HttpParameters parameters) {
+            commands.add(parameters.get("cmd"));
+            if (failingToStartSessions && "getNewBrowserSession".equals(parameters.get("cmd"))) {
+                return new Response(200, "Failed to start new browser session");
+            }
+            if ("getNewBrowserSession".equals(parameters.get("cmd"))) {
+                synchronized (this) {
+                    sessionCount += 1;
+                    return new Response(200, "OK," + sessionCount);
+                }
+            }
+            return new Response(200, "OK");
+        }
+
+        public List<String> commands() {
+            return new ArrayList<String>(commands);
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.NoSuchSessionException;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class BatchCommandTest {
+
+    @Test
+    public void executeRunsAllCommandsInOrderAndRepliesWithTheirFormEncodedResults() throws IOException {
+        final List<String> executed;
+        final Response response;
+
+        executed = new ArrayList<String>();
+        response = batch(new CannedCommand("type", "OK", executed),
+                         new CannedCommand("getTitle", "OK,Selenium Grid & co", executed)).execute(null);
+        assertEquals("1=OK&2=OK%2CSelenium+Grid+%26+co", response.body());
+        assertEquals(Arrays.asList("type", "getTitle"), executed);
+    }
+
+    @Test
+    public void executeStopsAtTheFirstError() throws IOException {
+        final List<String> executed;
+        final Response response;
+
+        executed = new ArrayList<String>();
+        response = batch(new CannedCommand("type", "OK", executed),
+                         new CannedCommand("click", "ERROR: Element btnG not found", executed),
+                         new CannedCommand("type", "OK", executed)).execute(null);
+        assertEquals("1=OK&2=ERROR%3A+Element+btnG+not+found", response.body());
+        assertEquals(2, executed.size());
+    }
+
+    @Test
+    public void aCommandTheRemoteControlDidNotReplyToEndsTheBatchWithAnError() throws IOException {
+        final Response response;
+
+        response = batch(new SeleneseCommand("a session id", new HttpParameters()) {
+            public Response execute(RemoteControlPool pool) throws IOException {
+                throw new IOException("Connection reset");
+            }
+        }, new CannedCommand("type", "OK", new ArrayList<String>())).execute(null);
+        assertEquals("1=ERROR%3A+Remote+control+did+not+reply%3A+Connection+reset", response.body());
+    }
+
+    @Test
+    public void anUnknownSessionEndsTheBatchWithAnError() throws IOException {
+        final Response response;
+
+        response = batch(new SeleneseCommand("a session id", new HttpParameters()) {
+            public Response execute(RemoteControlPool pool) {
+                throw new NoSuchSessionException("a session id");
+            }
+        }).execute(null);
+        assertFalse(-1 == response.body().indexOf("1=ERROR%3A+There+is+no+registered+session"));
+    }
+
+    @Test
+    public void formEncodeEncodesUtf8ResultsAsUrlEncoderDoes() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final String result = "OK,\u0436 screenshot & co *.-_~/=%";
+
+        assertFalse(BatchCommand.formEncode(new ByteArrayInputStream(result.getBytes("UTF-8")), out));
+        assertEquals(URLEncoder.encode(result, "UTF-8"), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void formEncodeTellsWhetherTheResultIsAnError() throws IOException {
+        assertTrue(BatchCommand.formEncode(new ByteArrayInputStream("ERROR: oops".getBytes("UTF-8")), new ByteArrayOutputStream()));
+        assertFalse(BatchCommand.formEncode(new ByteArrayInputStream("ERR".getBytes("UTF-8")), new ByteArrayOutputStream()));
+        assertFalse(BatchCommand.formEncode(new ByteArrayInputStream("OK,ERROR".getBytes("UTF-8")), new ByteArrayOutputStream()));
+    }
+
+    protected BatchCommand batch(SeleneseCommand... commands) {
+        return new BatchCommand("a session id", new HttpParameters(), Arrays.asList(commands));
+    }
+
+    protected static class CannedCommand extends SeleneseCommand {
+
+        private final String name;
+        private final String result;
+        private final List<String> executed;
+
+        public CannedCommand(String name, String result, List<String> executed) {
+            super("a session id", new HttpParameters());
+            this.name = name;
+            this.result = result;
+            this.executed = executed;
+        }
+
+        public Response execute(RemoteControlPool pool) {
+            executed.add(name);
+            return new Response(200, result);
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import static junit.framework.Assert.assertEquals;
+import org.junit.Test;
+
+import java.util.Map;
+
+
+public class CommandMetricsTest {
+
+    @Test
+    public void timeOutCountIsZeroByDefault() {
+        assertEquals(0, new CommandMetrics().timeOutCount());
+        assertEquals(0, new CommandMetrics().timeOutsByCommand().size());
+    }
+
+    @Test
+    public void timeOutsAreCountedByCommandName() {
+        final CommandMetrics metrics;
+        final Map<String, Long> timeOuts;
+
+        metrics = new CommandMetrics();
+        metrics.recordTimeOut("open");
+        metrics.recordTimeOut("waitForPageToLoad");
+        metrics.recordTimeOut("open");
+        timeOuts = metrics.timeOutsByCommand();
+        assertEquals(3, metrics.timeOutCount());
+        assertEquals(2L, timeOuts.get("open").longValue());
+        assertEquals(1L, timeOuts.get("waitForPageToLoad").longValue());
+    }
+
+    @Test
+    public void timeOutsOfCommandsWithoutANameAreCountedUnderAnEmptyName() {
+        final CommandMetrics metrics;
+
+        metrics = new CommandMetrics();
+        metrics.recordTimeOut(null);
+        assertEquals(1L, metrics.timeOutsByCommand().get("").longValue());
+    }
+
+}
@@ -3,10 +3,14 @@ package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
 import com.thoughtworks.selenium.grid.HttpParameters;
 import com.thoughtworks.selenium.grid.Response;
 import com.thoughtworks.selenium.grid.hub.Environment;
+import com.thoughtworks.selenium.grid.hub.NewSessionQueueFullException;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.DynamicRemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlSession;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.Tenants;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
 import org.junit.Test;
@@ -59,9 +63,9 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         remoteControl = mock(RemoteControlProxy.class);
         environment = new Environment("an environment", "*browser");
         command = new NewBrowserSessionCommand(environment, parameters);
-        remoteControl.expects("forward").with(parameters).will(returnValue(expectedResponse));
+        remoteControl.expects("forward").with(eq(parameters), anything()).will(returnValue(expectedResponse));
         pool.expects("reserve").with(environment).will(returnValue(remoteControl));
-        pool.expects("associateWithSession").with(anything(), eq("1234"));  // TODO with(remoteControl, ...)
+        pool.expects("associateWithSession").with(anything(), eq("1234"), eq(Tenants.NO_TENANT));  // TODO with(remoteControl, ...)
 
         assertEquals(expectedResponse, command.execute((RemoteControlPool) pool));
         verifyMocks();
@@ -80,7 +84,7 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         environment = new Environment("an environment", "*browser");
         command = new NewBrowserSessionCommand(environment, new HttpParameters());
         pool.expects("reserve").with(environment).will(returnValue(remoteControl));
-        remoteControl.expects("forward").with(command.parameters()).will(returnValue(new Response(500, "")));
+        remoteControl.expects("forward").with(eq(command.parameters()), anything()).will(returnValue(new Response(500, "")));
 
         response = command.execute((RemoteControlPool) pool);
         assertEquals(200, response.statusCode());
@@ -101,7 +105,7 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         environment = new Environment("an environment", "*browser");
         command = new NewBrowserSessionCommand(environment, new HttpParameters());
         pool.stubs("reserve").will(returnValue(remoteControl));
-        pool.expects("release").with(remoteControl);
+        pool.expects("release").with(sameInstanceAs(remoteControl), eq(Tenants.NO_TENANT));
         remoteControl.stubs("forward").will(returnValue(new Response(500, "")));
 
         response = command.execute((RemoteControlPool) pool);
@@ -123,9 +127,9 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         remoteControl = mock(RemoteControlProxy.class);
         environment = new Environment("an environment", "*browser");
         command = new NewBrowserSessionCommand(environment, new HttpParameters());
-        remoteControl.expects("forward").with(command.parameters()).will(throwException(new IOException("an error message")));
+        remoteControl.expects("forward").with(eq(command.parameters()), anything()).will(throwException(new IOException("an error message")));
         pool.expects("reserve").with(environment).will(returnValue(remoteControl));
-        pool.stubs("release").with(remoteControl);
+        pool.stubs("release").with(sameInstanceAs(remoteControl), eq(Tenants.NO_TENANT));
 
         response = command.execute((RemoteControlPool) pool);
         assertEquals(200, response.statusCode());
@@ -147,7 +151,7 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         command = new NewBrowserSessionCommand(environment, new HttpParameters());
         remoteControl.stubs("forward").will(throwException(new IOException("an error message")));
         pool.stubs("reserve").will(returnValue(remoteControl));
-        pool.expects("release").with(remoteControl);
+        pool.expects("release").with(sameInstanceAs(remoteControl), eq(Tenants.NO_TENANT));
 
         command.execute((RemoteControlPool) pool);
         verifyMocks();
@@ -171,6 +175,26 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void executeReturnsARetryLaterResponseWhenTooManyRequestsAreWaiting() throws IOException {
+        final NewBrowserSessionCommand command;
+        final Environment environment;
+        final Response response;
+        final Mock pool;
+
+        pool = mock(DynamicRemoteControlPool.class);
+        environment = new Environment("an environment", "*browser");
+        command = new NewBrowserSessionCommand(environment, null);
+        pool.expects("reserve").with(environment).will(throwException(new NewSessionQueueFullException(12001)));
+
+        response = command.execute((RemoteControlPool) pool);
+        assertEquals(503, response.statusCode());
+        assertEquals(13, response.retryAfterInSeconds());
+        assertEquals("ERROR: Too many pending new session requests for environment 'an environment', retry in 13 seconds",
+                     response.body());
+        verifyMocks();
+    }
+
     @Test
     public void executeCallsUpdateSessionLastActiveAtWithTheSession() throws IOException {
         final NewBrowserSessionCommand command;
@@ -191,4 +215,40 @@ public class NewBrowserSessionCommandTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void executeHandsOutAWarmSessionWithoutReservingARemoteControl() throws IOException {
+        final NewBrowserSessionCommand command;
+        final HttpParameters parameters;
+        final Environment environment;
+        final Mock pool;
+
+        environment = new Environment("an environment", "*chrome");
+        parameters = new HttpParameters();
+        parameters.put("2", "http://www.google.com");
+        pool = mock(DynamicRemoteControlPool.class);
+        pool.expects("takeWarmSession").with(eq(environment), eq("http://www.google.com"), eq(Tenants.NO_TENANT))
+                .will(returnValue(new RemoteControlSession("1234", new RemoteControlProxy("host", 0, "an environment", null))));
+        pool.expects("reserve").never();
+        command = new NewBrowserSessionCommand(environment, parameters);
+
+        assertEquals("OK,1234", command.execute((RemoteControlPool) pool).body());
+        verifyMocks();
+    }
+
+    @Test
+    public void startOnWarmSessionIgnoresWarmSessionsForARequestWithBrowserOptions() {
+        final HttpParameters parameters;
+        final Mock pool;
+
+        parameters = new HttpParameters();
+        parameters.put("2", "http://www.google.com");
+        parameters.put("4", "captureNetworkTraffic=true");
+        pool = mock(DynamicRemoteControlPool.class);
+        pool.expects("takeWarmSession").never();
+
+        assertNull(new NewBrowserSessionCommand(new Environment("an environment", "*chrome"), parameters)
+                .startOnWarmSession((RemoteControlPool) pool));
+        verifyMocks();
+    }
+
 }
@@ -0,0 +1,91 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.Environment;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.DynamicRemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.PendingReservation;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.Tenants;
+import static junit.framework.Assert.assertEquals;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+public class NewBrowserSessionGroupCommandTest extends UsingClassMock {
+
+    @Test
+    public void executeStartsASessionOnEachReservedRemoteControlAndGroupsThem() throws IOException {
+        final NewBrowserSessionGroupCommand command;
+        final Mock firefoxRemoteControl;
+        final Mock ieRemoteControl;
+        final Mock pool;
+
+        pool = mock(DynamicRemoteControlPool.class);
+        firefoxRemoteControl = mock(RemoteControlProxy.class);
+        ieRemoteControl = mock(RemoteControlProxy.class);
+        command = groupCommand();
+        pool.expects("reserve").will(returnValue(Arrays.asList(firefoxRemoteControl, ieRemoteControl)));
+        firefoxRemoteControl.expects("forward").will(returnValue(new Response(200, "OK,1234")));
+        ieRemoteControl.expects("forward").will(returnValue(new Response(200, "OK,5678")));
+        pool.expects("groupSessions").with(eq(Arrays.asList("1234", "5678")));
+
+        assertEquals("OK,1234,5678", command.execute((RemoteControlPool) pool).body());
+        verifyMocks();
+    }
+
+    @Test
+    public void executeEndsTheSessionsAlreadyStartedAndReleasesTheOtherRemoteControlsWhenASessionCannotBeStarted()
+            throws IOException {
+        final NewBrowserSessionGroupCommand command;
+        final Mock firefoxRemoteControl;
+        final Mock ieRemoteControl;
+        final Mock safariRemoteControl;
+        final Mock pool;
+
+        pool = mock(DynamicRemoteControlPool.class);
+        firefoxRemoteControl = mock(RemoteControlProxy.class);
+        ieRemoteControl = mock(RemoteControlProxy.class);
+        safariRemoteControl = mock(RemoteControlProxy.class);
+        command = new NewBrowserSessionGroupCommand(new HttpParameters(), Arrays.asList(
+                new NewBrowserSessionCommand(new Environment("Firefox", "*chrome"), new HttpParameters()),
+                new NewBrowserSessionCommand(new Environment("IE", "*iehta"), new HttpParameters()),
+                new NewBrowserSessionCommand(new Environment("Safari", "*safari"), new HttpParameters())),
+                PendingReservation.NO_DEADLINE, null);
+        pool.expects("reserve").will(returnValue(Arrays.asList(firefoxRemoteControl, ieRemoteControl,
+                                                               safariRemoteControl)));
+        firefoxRemoteControl.expects("forward").will(returnValue(new Response(200, "OK,1234")));
+        ieRemoteControl.expects("forward").will(returnValue(new Response(500, "")));
+        pool.expects("releaseForSession").with(eq("1234"));
+        pool.expects("release").with(sameInstanceAs(ieRemoteControl), eq(Tenants.NO_TENANT));
+        pool.expects("release").with(sameInstanceAs(safariRemoteControl), anything());
+
+        assertEquals("ERROR: Could not retrieve a new session", command.execute((RemoteControlPool) pool).body());
+        verifyMocks();
+    }
+
+    @Test
+    public void executeReturnsAnErrorWhenTheRemoteControlsCannotBeReserved() throws IOException {
+        final Mock pool;
+
+        pool = mock(DynamicRemoteControlPool.class);
+        pool.expects("reserve").will(returnValue(null));
+
+        assertEquals("ERROR: Could not reserve remote controls for environments [Firefox, IE]",
+                     groupCommand().execute((RemoteControlPool) pool).body());
+        verifyMocks();
+    }
+
+    protected NewBrowserSessionGroupCommand groupCommand() {
+        return new NewBrowserSessionGroupCommand(new HttpParameters(), Arrays.asList(
+                new NewBrowserSessionCommand(new Environment("Firefox", "*chrome"), new HttpParameters()),
+                new NewBrowserSessionCommand(new Environment("IE", "*iehta"), new HttpParameters())),
+                PendingReservation.NO_DEADLINE, null);
+    }
+
+}
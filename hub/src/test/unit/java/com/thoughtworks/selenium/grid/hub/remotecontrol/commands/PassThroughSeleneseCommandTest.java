@@ -0,0 +1,87 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.AsyncHttpClient;
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.ResponseCallback;
+import com.thoughtworks.selenium.grid.hub.FormBody;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+
+import java.io.IOException;
+
+
+public class PassThroughSeleneseCommandTest extends UsingClassMock {
+
+    @Test
+    public void executeForwardsTheOriginalBodyToTheRemoteControl() throws IOException {
+        final PassThroughSeleneseCommand command;
+        final Response expectedResponse;
+        final Mock remoteControl;
+        final FormBody body;
+        final Mock pool;
+
+        body = new FormBody("cmd=type&sessionId=1234".getBytes(), "application/x-www-form-urlencoded", null);
+        command = new PassThroughSeleneseCommand("1234", new HttpParameters(), body);
+        expectedResponse = new Response(0, "OK");
+        remoteControl = mock(RemoteControlProxy.class);
+        pool = mock(RemoteControlPool.class);
+        pool.stubs("retrieve").with("1234").will(returnValue(remoteControl));
+        pool.expects("updateSessionLastActiveAt").with("1234").times(2);
+        remoteControl.expects("forward").with(eq(body.bytes()), eq("application/x-www-form-urlencoded"), anything())
+                .will(returnValue(expectedResponse));
+
+        assertSame(expectedResponse, command.execute((RemoteControlPool) pool));
+        verifyMocks();
+    }
+
+    @Test
+    public void asynchronousExecuteForwardsTheOriginalBodyAndHandsTheResponseOver() {
+        final PassThroughSeleneseCommand command;
+        final Response expectedResponse;
+        final Response[] response;
+        final FormBody body;
+        final Mock pool;
+
+        body = new FormBody("cmd=type&sessionId=1234".getBytes(), "application/x-www-form-urlencoded", null);
+        command = new PassThroughSeleneseCommand("1234", new HttpParameters(), body);
+        expectedResponse = new Response(0, "OK");
+        response = new Response[1];
+        pool = mock(RemoteControlPool.class);
+        pool.stubs("retrieve").with("1234").will(returnValue(new RemoteControlProxy("foo", 10, "", null) {
+            public void forward(byte[] forwardedBody, String contentType, int timeoutInMilliseconds,
+                                AsyncHttpClient client, ResponseCallback callback) {
+                assertSame(body.bytes(), forwardedBody);
+                assertEquals("application/x-www-form-urlencoded", contentType);
+                callback.completed(expectedResponse);
+            }
+        }));
+        pool.expects("updateSessionLastActiveAt").with("1234").times(2);
+
+        command.execute((RemoteControlPool) pool, null, new ResponseCallback() {
+            public void completed(Response completedResponse) {
+                response[0] = completedResponse;
+            }
+
+            public void failed(IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertSame(expectedResponse, response[0]);
+        verifyMocks();
+    }
+
+    @Test
+    public void bodyReturnsTheBodyProvidedToTheConstructor() {
+        final FormBody body;
+
+        body = new FormBody(new byte[0], null, null);
+        assertEquals(body, new PassThroughSeleneseCommand("1234", new HttpParameters(), body).body());
+    }
+
+}
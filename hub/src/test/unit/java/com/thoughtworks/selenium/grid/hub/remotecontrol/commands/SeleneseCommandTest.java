@@ -1,15 +1,25 @@
 package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
 
+import com.thoughtworks.selenium.grid.BufferPool;
 import com.thoughtworks.selenium.grid.HttpParameters;
 import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.StreamingResponse;
+import com.thoughtworks.selenium.grid.hub.CommandTimedOutException;
+import com.thoughtworks.selenium.grid.hub.HubRegistry;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
 import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
 
 
 public class SeleneseCommandTest extends UsingClassMock {
@@ -38,7 +48,7 @@ public class SeleneseCommandTest extends UsingClassMock {
         remoteControl = mock(RemoteControlProxy.class);
         pool = mock(RemoteControlPool.class);
         pool.expects("retrieve").with("a session id").will(returnValue(remoteControl));
-        remoteControl.expects("forward").with(command.parameters()).will(returnValue(expectedResponse));
+        remoteControl.expects("forward").with(eq(command.parameters()), anything()).will(returnValue(expectedResponse));
 
         assertEquals(expectedResponse, command.execute((RemoteControlPool) pool));
         verifyMocks();
@@ -67,11 +77,90 @@ public class SeleneseCommandTest extends UsingClassMock {
         remoteControl = mock(RemoteControlProxy.class);
         pool = mock(RemoteControlPool.class);
         pool.stubs("retrieve").with("a session id").will(returnValue(remoteControl));
-        remoteControl.stubs("forward").with(command.parameters()).will(returnValue(expectedResponse));
+        remoteControl.stubs("forward").with(eq(command.parameters()), anything()).will(returnValue(expectedResponse));
         pool.expects("updateSessionLastActiveAt").with("a session id").times(2);
 
         command.execute((RemoteControlPool) pool);
         verifyMocks();
     }
 
+    @Test
+    public void timeoutIsTheDeadlineConfiguredForTheCommandFamily() {
+        final HttpParameters parameters;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "aCommandWithoutADeadline");
+        assertEquals((int) (HubRegistry.registry().gridConfiguration().getHub().getRemoteControlReadTimeoutInSeconds() * 1000),
+                     new SeleneseCommand("a session id", parameters).timeoutInMilliseconds());
+    }
+
+    @Test
+    public void executeReturnsASeleneseErrorAndCountsTheTimeOutWhenTheCommandMissesItsDeadline() throws Exception {
+        final Mock remoteControl;
+        final SeleneseCommand command;
+        final HttpParameters parameters;
+        final Response response;
+        final long timeOutCount;
+        final Mock pool;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "waitForPageToLoad");
+        command = new SeleneseCommand("a session id", parameters);
+        remoteControl = mock(RemoteControlProxy.class);
+        pool = mock(RemoteControlPool.class);
+        pool.stubs("retrieve").with("a session id").will(returnValue(remoteControl));
+        remoteControl.stubs("forward").will(throwException(new SocketTimeoutException()));
+        remoteControl.stubs("host").will(returnValue("a host"));
+        remoteControl.stubs("port").will(returnValue(5555));
+        timeOutCount = HubRegistry.registry().commandMetrics().timeOutCount();
+
+        response = command.execute((RemoteControlPool) pool);
+        assertTrue(response.body().startsWith("ERROR: Command 'waitForPageToLoad' timed out after "));
+        assertTrue(response.body().contains("a host:5555"));
+        assertEquals(timeOutCount + 1, HubRegistry.registry().commandMetrics().timeOutCount());
+    }
+
+    @Test
+    public void aStreamedReplyTimingOutWhileRelayedIsCountedAsATimeOutAndTakesTheRemoteControlDown() throws Exception {
+        final RemoteControlProxy remoteControl;
+        final SeleneseCommand command;
+        final HttpParameters parameters;
+        final Response response;
+        final long timeOutCount;
+        final Mock pool;
+
+        parameters = new HttpParameters();
+        parameters.put("cmd", "captureScreenshotToString");
+        command = new SeleneseCommand("a session id", parameters);
+        remoteControl = new RemoteControlProxy("a host", 5555, "an environment", null) {
+            public Response forward(HttpParameters parameters, int timeoutInMilliseconds) throws IOException {
+                return new StreamingResponse(200, null, stallingAfter(StreamingResponse.PEEK_SIZE + 1), BufferPool.shared());
+            }
+        };
+        pool = mock(RemoteControlPool.class);
+        pool.stubs("retrieve").with("a session id").will(returnValue(remoteControl));
+        timeOutCount = HubRegistry.registry().commandMetrics().timeOutCount();
+
+        response = command.execute((RemoteControlPool) pool);
+        try {
+            response.writeTo(new ByteArrayOutputStream());
+            fail("Expected a CommandTimedOutException");
+        } catch (CommandTimedOutException e) {
+            assertTrue(e.reply().body().startsWith("ERROR: Command 'captureScreenshotToString' timed out after "));
+        }
+        assertEquals(timeOutCount + 1, HubRegistry.registry().commandMetrics().timeOutCount());
+        assertEquals(1, remoteControl.health().timedOutCommandCount());
+        assertTrue(remoteControl.health().down());
+    }
+
+    private static InputStream stallingAfter(int length) {
+        return new ByteArrayInputStream(new byte[length]) {
+
+            /* Peeking uses read(byte[], int, int), copying the rest uses read(byte[]) */
+            public int read(byte[] buffer) throws IOException {
+                throw new SocketTimeoutException("Read timed out");
+            }
+        };
+    }
+
 }
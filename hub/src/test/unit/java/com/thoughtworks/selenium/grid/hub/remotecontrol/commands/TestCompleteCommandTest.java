@@ -26,7 +26,7 @@ public class TestCompleteCommandTest extends UsingClassMock {
         pool = mock(RemoteControlPool.class);
         remoteControl = mock(RemoteControlProxy.class);
         pool.expects("retrieve").with("a session id").will(returnValue(remoteControl));
-        remoteControl.expects("forward").with(command.parameters()).will(returnValue(expectedResponse));
+        remoteControl.expects("forward").with(eq(command.parameters()), anything()).will(returnValue(expectedResponse));
         pool.expects("releaseForSession").with("a session id");
 
         assertEquals(expectedResponse, command.execute((RemoteControlPool) pool));
@@ -44,7 +44,7 @@ public class TestCompleteCommandTest extends UsingClassMock {
         pool = mock(RemoteControlPool.class);
         remoteControl = mock(RemoteControlProxy.class);
         pool.expects("retrieve").with("a session id").will(returnValue(remoteControl));
-        remoteControl.expects("forward").with(command.parameters()).will(throwException(new IOException()));
+        remoteControl.expects("forward").with(eq(command.parameters()), anything()).will(throwException(new IOException()));
         pool.expects("releaseForSession").with("a session id");
         command.execute((RemoteControlPool) pool);
         verifyMocks();
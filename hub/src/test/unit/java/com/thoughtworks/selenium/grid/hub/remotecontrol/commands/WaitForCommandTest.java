@@ -0,0 +1,113 @@
+package com.thoughtworks.selenium.grid.hub.remotecontrol.commands;
+
+import com.thoughtworks.selenium.grid.HttpParameters;
+import com.thoughtworks.selenium.grid.Response;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlPool;
+import com.thoughtworks.selenium.grid.hub.remotecontrol.RemoteControlProxy;
+import static junit.framework.Assert.assertEquals;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+
+public class WaitForCommandTest extends UsingClassMock {
+
+    @Test
+    public void executeRepliesOKAsSoonAsThePredicateReturnsTheExpectedValue() throws IOException {
+        final ScriptedWaitForCommand command;
+        final Response response;
+
+        command = new ScriptedWaitForCommand(10000, "OK,false", "OK,false", "OK,true", "OK,false");
+        response = command.execute(pool());
+        assertEquals("OK", response.body());
+        assertEquals(3, command.probeCount);
+        assertEquals(1000, command.clock);
+    }
+
+    @Test
+    public void executeKeepsPollingWhenAProbeFails() throws IOException {
+        final ScriptedWaitForCommand command;
+
+        command = new ScriptedWaitForCommand(10000, "ERROR: Element id=submit not found", "OK,true");
+        assertEquals("OK", command.execute(pool()).body());
+        assertEquals(2, command.probeCount);
+    }
+
+    @Test
+    public void executeRepliesASeleneseErrorWithTheLastReplyOnceTheTimeOutElapses() throws IOException {
+        final ScriptedWaitForCommand command;
+        final Response response;
+
+        command = new ScriptedWaitForCommand(1200, "OK,false", "OK,false", "OK,false", "OK,false", "OK,true");
+        response = command.execute(pool());
+        assertEquals("ERROR: Timed out after 1200 ms waiting for isElementPresent to return 'true'. Last reply: OK,false",
+                     response.body());
+        assertEquals(4, command.probeCount);
+        assertEquals(1200, command.clock);
+    }
+
+    @Test
+    public void executeKeepsTheSessionAliveWhileWaiting() throws IOException {
+        final Mock pool;
+
+        pool = mock(RemoteControlPool.class);
+        pool.stubs("retrieve").will(returnValue(mock(RemoteControlProxy.class)));
+        pool.expects("updateSessionLastActiveAt").with("a session id").times(4);
+
+        new ScriptedWaitForCommand(10000, "OK,false", "OK,false", "OK,true").execute((RemoteControlPool) pool);
+        verifyMocks();
+    }
+
+    protected RemoteControlPool pool() {
+        final Mock pool;
+
+        pool = mock(RemoteControlPool.class);
+        pool.stubs("retrieve").with("a session id").will(returnValue(mock(RemoteControlProxy.class)));
+        pool.stubs("updateSessionLastActiveAt");
+        return (RemoteControlPool) pool;
+    }
+
+    /**
+     * Replies to probes from a script, on a fake clock advanced by pauses.
+     */
+    protected static class ScriptedWaitForCommand extends WaitForCommand {
+
+        private final List<String> replies;
+        private long clock;
+        private int probeCount;
+
+        public ScriptedWaitForCommand(long timeoutInMilliseconds, String... replies) {
+            super("a session id", new HttpParameters(), predicate(), "true", timeoutInMilliseconds, 500);
+            this.replies = new LinkedList<String>(Arrays.asList(replies));
+        }
+
+        protected String probe(RemoteControlProxy remoteControl) {
+            probeCount += 1;
+            return replies.remove(0);
+        }
+
+        protected long now() {
+            return clock;
+        }
+
+        protected void pause(long milliseconds) {
+            clock += milliseconds;
+        }
+
+        protected static HttpParameters predicate() {
+            final HttpParameters parameters;
+
+            parameters = new HttpParameters();
+            parameters.put("cmd", "isElementPresent");
+            parameters.put("1", "id=submit");
+            return parameters;
+        }
+
+    }
+
+}
@@ -0,0 +1,564 @@
+package com.thoughtworks.selenium.grid;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP client: POST requests are sent and their responses read by a single
+ * I/O thread multiplexing all connections with a NIO selector, so that thousands of requests
+ * can be in flight without tying up a thread each.
+ * <p/>
+ * The outcome of a request is reported to a {@link ResponseCallback} on the I/O thread.
+ * Keep-alive connections are reused, up to a few idle connections per host. Connect and read
+ * time outs have the same meaning as for the blocking {@link HttpClient}: the read time out
+ * is the maximum time without receiving any data once the request is sent.
+ * <p/>
+ * Response bodies are spooled in a {@link SpillOverBuffer}: short Selenese replies stay in memory,
+ * large ones (screenshots...) spill over to a temporary file instead of costing their size in heap.
+ * Callbacks get a {@link SpooledResponse}, to be released once consumed. Host names are resolved
+ * by the thread posting the request, so that a slow DNS lookup never stalls the I/O thread.
+ * <p/>
+ * Thread-safe.
+ */
+public class AsyncHttpClient {
+
+    private static final Log logger = LogFactory.getLog(AsyncHttpClient.class);
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 8;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final long TIME_OUT_CHECK_INTERVAL_IN_MILLISECONDS = 50;
+
+    private final int connectTimeoutInMilliseconds;
+    private final int readTimeoutInMilliseconds;
+    private final int maxIdleConnectionsPerHost;
+    private final Queue<Exchange> submittedExchanges;
+    private final Set<Exchange> inFlightExchanges;
+    private final Map<String, LinkedList<SocketChannel>> idleConnectionsByHost;
+    private final AtomicInteger inFlightRequestCount;
+    private final AtomicInteger idleConnectionCount;
+    private final ByteBuffer readBuffer;
+    private Selector selector;
+    private Thread ioThread;
+    private volatile boolean running;
+
+    /**
+     * @param connectTimeoutInMilliseconds Maximum time to establish a connection. 0 means no time out.
+     * @param readTimeoutInMilliseconds    Maximum time to wait for data once the request is sent. 0 means no time out.
+     */
+    public AsyncHttpClient(int connectTimeoutInMilliseconds, int readTimeoutInMilliseconds) {
+        this(connectTimeoutInMilliseconds, readTimeoutInMilliseconds, DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST);
+    }
+
+    public AsyncHttpClient(int connectTimeoutInMilliseconds, int readTimeoutInMilliseconds, int maxIdleConnectionsPerHost) {
+        this.connectTimeoutInMilliseconds = connectTimeoutInMilliseconds;
+        this.readTimeoutInMilliseconds = readTimeoutInMilliseconds;
+        this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+        this.submittedExchanges = new ConcurrentLinkedQueue<Exchange>();
+        this.inFlightExchanges = new HashSet<Exchange>();
+        this.idleConnectionsByHost = new HashMap<String, LinkedList<SocketChannel>>();
+        this.inFlightRequestCount = new AtomicInteger(0);
+        this.idleConnectionCount = new AtomicInteger(0);
+        this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Open the selector and start the I/O thread. Does nothing if already started.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        running = true;
+        ioThread = new Thread(new Runnable() {
+            public void run() {
+                processEvents();
+            }
+        }, "Async HTTP Client I/O");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * Stop the I/O thread and close all connections. Requests still in flight fail.
+     */
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean running() {
+        return running;
+    }
+
+    /**
+     * POST a request body as is. Returns right away: the response is handed over to the callback.
+     *
+     * @param url         Absolute http URL. Cannot be null. Its host name is resolved right away, by the calling thread.
+     * @param body        Raw request body, sent byte for byte. Cannot be null.
+     * @param contentType Content type of the body.
+     * @param callback    Notified on the I/O thread once the response is complete or the request failed. Cannot be null.
+     * @throws IllegalStateException if the client is not started.
+     * @throws IllegalArgumentException if the URL is not a valid http URL.
+     */
+    public void post(String url, byte[] body, String contentType, ResponseCallback callback) {
+        post(url, body, contentType, readTimeoutInMilliseconds, callback);
+    }
+
+    /**
+     * @param readTimeoutInMilliseconds Maximum time to wait for data once the request is sent, for this
+     *                                  request only. 0 means no time out. When it expires, the connection
+     *                                  is closed and the callback gets a <code>SocketTimeoutException</code>.
+     * @see #post(String, byte[], String, ResponseCallback)
+     */
+    public void post(String url, byte[] body, String contentType, int readTimeoutInMilliseconds, ResponseCallback callback) {
+        final Exchange exchange;
+        final URL target;
+
+        if (!running) {
+            throw new IllegalStateException("Asynchronous HTTP client is not started");
+        }
+        try {
+            target = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid URL '" + url + "' : " + e.getMessage());
+        }
+        if (!"http".equals(target.getProtocol())) {
+            throw new IllegalArgumentException("Only http URLs are supported: '" + url + "'");
+        }
+        exchange = new Exchange(resolve(target.getHost(), (-1 == target.getPort()) ? 80 : target.getPort()),
+                                encodeRequest(target, body, contentType),
+                                readTimeoutInMilliseconds,
+                                callback);
+        inFlightRequestCount.incrementAndGet();
+        submittedExchanges.add(exchange);
+        selector.wakeup();
+    }
+
+    /**
+     * @return Number of requests submitted and not completed yet.
+     */
+    public int inFlightRequestCount() {
+        return inFlightRequestCount.get();
+    }
+
+    /**
+     * @return Number of open keep-alive connections waiting for a request.
+     */
+    public int idleConnectionCount() {
+        return idleConnectionCount.get();
+    }
+
+    /**
+     * @return Resolved address, or an unresolved one the I/O thread fails the request with.
+     */
+    protected static InetSocketAddress resolve(String host, int port) {
+        final InetSocketAddress address;
+
+        address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            logger.debug("Cannot resolve " + host);
+        }
+        return address;
+    }
+
+    protected static byte[] encodeRequest(URL target, byte[] body, String contentType) {
+        final ByteArrayOutputStream request;
+        final StringBuilder head;
+        final String path;
+
+        path = ("".equals(target.getFile())) ? "/" : target.getFile();
+        head = new StringBuilder(256);
+        head.append("POST ").append(path).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(target.getHost());
+        if (-1 != target.getPort()) {
+            head.append(':').append(target.getPort());
+        }
+        head.append("\r\n");
+        if (null != contentType) {
+            head.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: keep-alive\r\n\r\n");
+        request = new ByteArrayOutputStream(head.length() + body.length);
+        try {
+            request.write(head.toString().getBytes("ISO-8859-1"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+        request.write(body, 0, body.length);
+        return request.toByteArray();
+    }
+
+    /**
+     * I/O thread main loop.
+     */
+    protected void processEvents() {
+        long nextTimeOutCheck = 0;
+
+        while (running) {
+            try {
+                selector.select(TIME_OUT_CHECK_INTERVAL_IN_MILLISECONDS);
+            } catch (IOException e) {
+                logger.error("Selector failed, stopping asynchronous HTTP client", e);
+                break;
+            }
+            startSubmittedExchanges();
+            processSelectedKeys();
+            if (System.currentTimeMillis() >= nextTimeOutCheck) {
+                expireTimedOutExchanges();
+                nextTimeOutCheck = System.currentTimeMillis() + TIME_OUT_CHECK_INTERVAL_IN_MILLISECONDS;
+            }
+        }
+        running = false;
+        closeEverything();
+    }
+
+    protected void startSubmittedExchanges() {
+        Exchange exchange;
+
+        while (null != (exchange = submittedExchanges.poll())) {
+            inFlightExchanges.add(exchange);
+            exchange.start();
+        }
+    }
+
+    protected void processSelectedKeys() {
+        final Iterator<SelectionKey> keys;
+
+        keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.attachment() instanceof Exchange) {
+                ((Exchange) key.attachment()).process(key);
+            } else {
+                discardIdleConnection((String) key.attachment(), (SocketChannel) key.channel());
+            }
+        }
+    }
+
+    protected void expireTimedOutExchanges() {
+        final long now;
+        final List<Exchange> expired;
+
+        now = System.currentTimeMillis();
+        expired = new ArrayList<Exchange>();
+        for (Exchange exchange : inFlightExchanges) {
+            if (now >= exchange.deadline) {
+                expired.add(exchange);
+            }
+        }
+        for (Exchange exchange : expired) {
+            exchange.fail(new SocketTimeoutException(exchange.connecting
+                    ? "Timed out connecting to " + exchange.hostId()
+                    : "Timed out waiting for a response from " + exchange.hostId()));
+        }
+    }
+
+    protected SocketChannel takeIdleConnection(String hostId) {
+        final LinkedList<SocketChannel> idleConnections;
+        final SocketChannel channel;
+
+        idleConnections = idleConnectionsByHost.get(hostId);
+        if (null == idleConnections || idleConnections.isEmpty()) {
+            return null;
+        }
+        channel = idleConnections.removeLast();
+        idleConnectionCount.decrementAndGet();
+        return channel;
+    }
+
+    protected void keepIdleConnection(String hostId, SocketChannel channel, SelectionKey key) {
+        LinkedList<SocketChannel> idleConnections;
+
+        idleConnections = idleConnectionsByHost.get(hostId);
+        if (null == idleConnections) {
+            idleConnections = new LinkedList<SocketChannel>();
+            idleConnectionsByHost.put(hostId, idleConnections);
+        }
+        if (!running || idleConnections.size() >= maxIdleConnectionsPerHost) {
+            close(channel);
+            return;
+        }
+        /* An idle connection only becomes readable when the remote end closes it */
+        key.attach(hostId);
+        key.interestOps(SelectionKey.OP_READ);
+        idleConnections.addLast(channel);
+        idleConnectionCount.incrementAndGet();
+    }
+
+    protected void discardIdleConnection(String hostId, SocketChannel channel) {
+        final LinkedList<SocketChannel> idleConnections;
+
+        idleConnections = idleConnectionsByHost.get(hostId);
+        if (null != idleConnections && idleConnections.remove(channel)) {
+            idleConnectionCount.decrementAndGet();
+        }
+        close(channel);
+    }
+
+    protected void closeEverything() {
+        for (Exchange exchange : new ArrayList<Exchange>(inFlightExchanges)) {
+            exchange.fail(new IOException("Asynchronous HTTP client shut down"));
+        }
+        Exchange exchange;
+        while (null != (exchange = submittedExchanges.poll())) {
+            exchange.notifyFailure(new IOException("Asynchronous HTTP client shut down"));
+        }
+        for (LinkedList<SocketChannel> idleConnections : idleConnectionsByHost.values()) {
+            for (SocketChannel channel : idleConnections) {
+                close(channel);
+            }
+        }
+        idleConnectionsByHost.clear();
+        idleConnectionCount.set(0);
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close selector: " + e.getMessage());
+        }
+    }
+
+    protected static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close connection: " + e.getMessage());
+        }
+    }
+
+    protected long deadline(int timeoutInMilliseconds) {
+        if (0 == timeoutInMilliseconds) {
+            return Long.MAX_VALUE;
+        }
+        return System.currentTimeMillis() + timeoutInMilliseconds;
+    }
+
+    /**
+     * One request/response exchange. Only ever touched by the I/O thread, once submitted.
+     */
+    protected class Exchange {
+
+        private final InetSocketAddress address;
+        private final byte[] request;
+        private final int readTimeoutInMilliseconds;
+        private final ResponseCallback callback;
+        private ByteBuffer pendingRequest;
+        private HttpResponseParser parser;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private boolean reusedConnection;
+        private boolean connecting;
+        private long deadline;
+
+        public Exchange(InetSocketAddress address, byte[] request, int readTimeoutInMilliseconds, ResponseCallback callback) {
+            this.address = address;
+            this.request = request;
+            this.readTimeoutInMilliseconds = readTimeoutInMilliseconds;
+            this.callback = callback;
+            this.deadline = Long.MAX_VALUE;
+        }
+
+        public String hostId() {
+            return address.getHostName() + ":" + address.getPort();
+        }
+
+        /**
+         * Send the request on an idle keep-alive connection if there is one, on a new connection otherwise.
+         */
+        public void start() {
+            if (address.isUnresolved()) {
+                fail(new UnknownHostException("Cannot resolve " + address.getHostName()));
+                return;
+            }
+            pendingRequest = ByteBuffer.wrap(request);
+            parser = new HttpResponseParser();
+            channel = takeIdleConnection(hostId());
+            reusedConnection = (null != channel);
+            try {
+                if (reusedConnection) {
+                    key = channel.keyFor(selector);
+                    key.attach(this);
+                    send();
+                    return;
+                }
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                key = channel.register(selector, 0, this);
+                connecting = true;
+                deadline = deadline(connectTimeoutInMilliseconds);
+                if (channel.connect(address)) {
+                    connected();
+                } else {
+                    key.interestOps(SelectionKey.OP_CONNECT);
+                }
+            } catch (IOException e) {
+                fail(e);
+            } catch (RuntimeException e) {
+                fail(new IOException("Cannot connect to " + hostId() + " : " + e));
+            }
+        }
+
+        public void process(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    connected();
+                } else if (key.isWritable()) {
+                    send();
+                } else if (key.isReadable()) {
+                    receive();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        protected void connected() throws IOException {
+            connecting = false;
+            send();
+        }
+
+        protected void send() throws IOException {
+            try {
+                channel.write(pendingRequest);
+            } catch (IOException e) {
+                if (retryOnNewConnection()) {
+                    return;
+                }
+                throw e;
+            }
+            if (pendingRequest.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            deadline = deadline(readTimeoutInMilliseconds);
+        }
+
+        protected void receive() throws IOException {
+            final int count;
+
+            readBuffer.clear();
+            try {
+                count = channel.read(readBuffer);
+            } catch (IOException e) {
+                if (retryOnNewConnection()) {
+                    return;
+                }
+                throw e;
+            }
+            if (-1 == count) {
+                if (retryOnNewConnection()) {
+                    return;
+                }
+                parser.endOfStream();
+                complete();
+                return;
+            }
+            readBuffer.flip();
+            if (parser.parse(readBuffer)) {
+                complete();
+                return;
+            }
+            deadline = deadline(readTimeoutInMilliseconds);
+        }
+
+        /**
+         * A keep-alive connection may have been closed by the remote end while idle.
+         * Nothing has been received yet then, so the request can safely be sent again.
+         */
+        protected boolean retryOnNewConnection() {
+            if (!reusedConnection || parser.started()) {
+                return false;
+            }
+            logger.debug("Stale keep-alive connection to " + hostId() + ", retrying on a new connection");
+            key.cancel();
+            close(channel);
+            start();
+            return true;
+        }
+
+        protected void complete() {
+            final Response response;
+
+            response = new SpooledResponse(parser.statusCode(), parser.body());
+            inFlightExchanges.remove(this);
+            if (parser.keepAlive()) {
+                keepIdleConnection(hostId(), channel, key);
+            } else {
+                key.cancel();
+                close(channel);
+            }
+            inFlightRequestCount.decrementAndGet();
+            try {
+                callback.completed(response);
+            } catch (RuntimeException e) {
+                logger.error("Response callback failed", e);
+            }
+        }
+
+        protected void fail(IOException e) {
+            if (!inFlightExchanges.remove(this)) {
+                return;     /* Already completed or failed */
+            }
+            if (null != key) {
+                key.cancel();
+            }
+            if (null != channel) {
+                close(channel);
+            }
+            if (null != parser) {
+                parser.dispose();
+            }
+            notifyFailure(e);
+        }
+
+        protected void notifyFailure(IOException e) {
+            inFlightRequestCount.decrementAndGet();
+            try {
+                callback.failed(e);
+            } catch (RuntimeException callbackError) {
+                logger.error("Response callback failed", callbackError);
+            }
+        }
+
+    }
+
+}
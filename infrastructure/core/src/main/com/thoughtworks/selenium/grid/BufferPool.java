@@ -0,0 +1,83 @@
+package com.thoughtworks.selenium.grid;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of fixed size byte arrays, so that copying large HTTP bodies does not
+ * allocate (and later garbage collect) a fresh copy buffer for every response.
+ * <p/>
+ * Thread-safe, lock-free. Buffers acquired when the pool is empty are allocated on the
+ * spot, and buffers released when the pool is full are simply dropped.
+ */
+public class BufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+    private static final BufferPool SHARED = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+
+    private final Queue<byte[]> buffers;
+    private final AtomicInteger pooledBufferCount;
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+
+    public BufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be strictly positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+        buffers = new ConcurrentLinkedQueue<byte[]>();
+        pooledBufferCount = new AtomicInteger(0);
+    }
+
+    /**
+     * @return Pool shared by all HTTP clients of this JVM.
+     */
+    public static BufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return A buffer of {@link #bufferSize()} bytes. Never null. Content is undefined.
+     */
+    public byte[] acquire() {
+        final byte[] buffer;
+
+        buffer = buffers.poll();
+        if (null == buffer) {
+            return new byte[bufferSize];
+        }
+        pooledBufferCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool. The caller must not use it afterwards.
+     *
+     * @param buffer Buffer previously acquired from this pool. Ignored if null or of the wrong size.
+     */
+    public void release(byte[] buffer) {
+        if (null == buffer || buffer.length != bufferSize) {
+            return;
+        }
+        if (pooledBufferCount.incrementAndGet() > maxPooledBuffers) {
+            pooledBufferCount.decrementAndGet();
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return Number of buffers currently waiting in the pool.
+     */
+    public int pooledBufferCount() {
+        return pooledBufferCount.get();
+    }
+
+}
@@ -1,6 +1,10 @@
 package com.thoughtworks.selenium.grid;
 
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.logging.Log;
@@ -13,28 +17,147 @@ import java.io.IOException;
  * Invoke HTTP GET requests and gather status code and text body for the response.
  * <br/>
  * Implementation is simplistic but should cover Selenium RC limited vocabulary.
+ * <br/>
+ * Responses are either buffered in memory (<code>get</code>, <code>post</code>) or streamed
+ * (<code>stream</code>) for potentially large bodies that only need to be relayed. Streamed
+ * requests can ask for gzip compressed responses, which are kept compressed until decoded.
  */
 public class HttpClient {
 
     private static final Log logger = LogFactory.getLog(HttpClient.class);
     private final org.apache.commons.httpclient.HttpClient client;
 
+    private final BufferPool bufferPool;
+    private final HttpConnectionPool connectionPool;
+    private final boolean acceptGzip;
+
     public HttpClient(org.apache.commons.httpclient.HttpClient client) {
+        this(client, BufferPool.shared());
+    }
+
+    public HttpClient(org.apache.commons.httpclient.HttpClient client, BufferPool bufferPool) {
         this.client = client;
+        this.bufferPool = bufferPool;
+        this.connectionPool = null;
+        this.acceptGzip = false;
+    }
+
+    /**
+     * Lightweight client sending its requests through a shared connection pool.
+     */
+    public HttpClient(HttpConnectionPool connectionPool) {
+        this(connectionPool, false);
+    }
+
+    /**
+     * @param acceptGzip Whether to ask for gzip compressed responses to streamed requests.
+     * @see #HttpClient(HttpConnectionPool)
+     */
+    public HttpClient(HttpConnectionPool connectionPool, boolean acceptGzip) {
+        this.client = connectionPool.client();
+        this.bufferPool = BufferPool.shared();
+        this.connectionPool = connectionPool;
+        this.acceptGzip = acceptGzip;
     }
 
     public HttpClient() {
-        this(new org.apache.commons.httpclient.HttpClient(new org.apache.commons.httpclient.MultiThreadedHttpConnectionManager()));
+        this(new org.apache.commons.httpclient.HttpClient(new MultiThreadedHttpConnectionManager()));
+    }
+
+    /**
+     * @param connectionTimeoutInMilliseconds Maximum time to establish a connection. 0 means no time out.
+     */
+    public HttpClient(int connectionTimeoutInMilliseconds) {
+        this(new org.apache.commons.httpclient.HttpClient(connectionManager(connectionTimeoutInMilliseconds)));
     }
 
     public Response get(String url) throws IOException {
         return request(new GetMethod(url));
     }
 
+    /**
+     * @param timeoutInMilliseconds Maximum time to wait for data once connected. 0 means no time out.
+     */
+    public Response get(String url, int timeoutInMilliseconds) throws IOException {
+        final GetMethod method;
+
+        method = new GetMethod(url);
+        method.getParams().setSoTimeout(timeoutInMilliseconds);
+        return request(method);
+    }
+
     public Response post(String url, HttpParameters parameters) throws IOException {
         return request(buildPostMethod(url, parameters));
     }
 
+    /**
+     * POST parameters without buffering the response body. The caller must consume the body with
+     * {@link Response#writeTo(java.io.OutputStream)} or {@link Response#body()}, or call
+     * {@link Response#release()}, so that the connection goes back to the pool.
+     *
+     * @see StreamingResponse
+     */
+    public Response stream(String url, HttpParameters parameters) throws IOException {
+        return stream(buildPostMethod(url, parameters));
+    }
+
+    /**
+     * @param timeoutInMilliseconds Maximum time to wait for data from the remote end, for this request only.
+     *                              This is an inactivity time out (socket read time out), not a deadline
+     *                              for the whole exchange: a reply trickling in slower than that is never
+     *                              cut short. 0 or less keeps the read time out of the client. When it
+     *                              expires, a <code>SocketTimeoutException</code> is thrown, either here or
+     *                              while the body is streamed, and the connection is closed.
+     * @see #stream(String, HttpParameters)
+     */
+    public Response stream(String url, HttpParameters parameters, int timeoutInMilliseconds) throws IOException {
+        final PostMethod method;
+
+        method = buildPostMethod(url, parameters);
+        applyReadTimeout(method, timeoutInMilliseconds);
+        return stream(method);
+    }
+
+    /**
+     * POST a request body as is, without decoding or re-encoding it, and stream the response.
+     *
+     * @param body        Raw request body, sent byte for byte. Cannot be null.
+     * @param contentType Content type of the body, e.g. the one of the original client request.
+     * @see #stream(String, HttpParameters)
+     */
+    public Response stream(String url, byte[] body, String contentType) throws IOException {
+        return stream(buildPostMethod(url, body, contentType));
+    }
+
+    /**
+     * @see #stream(String, byte[], String)
+     * @see #stream(String, HttpParameters, int)
+     */
+    public Response stream(String url, byte[] body, String contentType, int timeoutInMilliseconds) throws IOException {
+        final PostMethod method;
+
+        method = buildPostMethod(url, body, contentType);
+        applyReadTimeout(method, timeoutInMilliseconds);
+        return stream(method);
+    }
+
+    /**
+     * Setting a 0 time out on the method would disable the read time out of the client altogether.
+     */
+    protected static void applyReadTimeout(HttpMethod method, int timeoutInMilliseconds) {
+        if (timeoutInMilliseconds > 0) {
+            method.getParams().setSoTimeout(timeoutInMilliseconds);
+        }
+    }
+
+    protected PostMethod buildPostMethod(String url, byte[] body, String contentType) {
+        final PostMethod postMethod;
+
+        postMethod = new PostMethod(url);
+        postMethod.setRequestEntity(new ByteArrayRequestEntity(body, contentType));
+        return postMethod;
+    }
+
     protected PostMethod buildPostMethod(String url, HttpParameters parameters) {
         final PostMethod postMethod;
 
@@ -46,18 +169,98 @@ public class HttpClient {
         return postMethod;
     }
 
+    protected static MultiThreadedHttpConnectionManager connectionManager(int connectionTimeoutInMilliseconds) {
+        final MultiThreadedHttpConnectionManager connectionManager;
+
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setConnectionTimeout(connectionTimeoutInMilliseconds);
+        return connectionManager;
+    }
+
     protected Response request(HttpMethod method) throws IOException {
+        final Response response;
         final int statusCode;
-        final String body;
 
         try {
-            statusCode = client.executeMethod(method);
-            body = new String(method.getResponseBody(), "utf-8");
-            logger.debug("Remote Control replied with '" + statusCode + " / '" + body + "'");
-            return new Response(statusCode, body);
+            statusCode = execute(method);
+            response = new Response(statusCode, method.getResponseBody());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Remote Control replied with '" + statusCode + " / '" + response.preview(128) + "'");
+            }
+            return response;
         } finally {
             method.releaseConnection();
         }
     }
 
+    protected Response stream(HttpMethod method) throws IOException {
+        final int statusCode;
+        final StreamingResponse response;
+
+        if (acceptGzip) {
+            method.setRequestHeader("Accept-Encoding", StreamingResponse.GZIP);
+        }
+        try {
+            statusCode = execute(method);
+            response = new StreamingResponse(statusCode, method, method.getResponseBodyAsStream(),
+                                             headerValue(method, "Content-Encoding"), contentLength(method), bufferPool);
+        } catch (IOException e) {
+            method.releaseConnection();
+            throw e;
+        } catch (RuntimeException e) {
+            method.releaseConnection();
+            throw e;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Remote Control replied with '" + statusCode + " / '" + response.preview(128) + "'");
+        }
+        return response;
+    }
+
+    protected static String headerValue(HttpMethod method, String name) {
+        final Header header;
+
+        header = method.getResponseHeader(name);
+        return (null == header) ? null : header.getValue();
+    }
+
+    /**
+     * @return Response content length, -1 when unknown (chunked response, no or invalid header).
+     */
+    protected static long contentLength(HttpMethod method) {
+        final String value;
+
+        value = headerValue(method, "Content-Length");
+        if (null == value) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public boolean acceptGzip() {
+        return acceptGzip;
+    }
+
+    protected int execute(HttpMethod method) throws IOException {
+        try {
+            return client.executeMethod(method);
+        } catch (ConnectionPoolTimeoutException e) {
+            if (null != connectionPool) {
+                connectionPool.recordAcquireTimeout();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return Shared connection pool requests go through. Null if this client manages its own connections.
+     */
+    public HttpConnectionPool connectionPool() {
+        return connectionPool;
+    }
+
 }
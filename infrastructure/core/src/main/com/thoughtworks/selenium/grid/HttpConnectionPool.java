@@ -0,0 +1,143 @@
+package com.thoughtworks.selenium.grid;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of persistent (keep-alive) HTTP connections shared by all the requests of a process,
+ * so that commands do not pay for a TCP handshake every time.
+ * <p/>
+ * Connect, read and pool-acquire time outs apply to every request going through the pool.
+ * The number of connections to a given host can be capped (e.g. to the session capacity of a
+ * remote control) and idle connections can be reaped in the background.
+ * <p/>
+ * Thread-safe.
+ */
+public class HttpConnectionPool {
+
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final org.apache.commons.httpclient.HttpClient client;
+    private final AtomicLong acquireTimeoutCount;
+    private IdleConnectionTimeoutThread idleConnectionReaper;
+
+    /**
+     * @param connectTimeoutInMilliseconds Maximum time to establish a connection. 0 means no time out.
+     * @param readTimeoutInMilliseconds    Default maximum time to wait for data once connected. 0 means no time out.
+     * @param acquireTimeoutInMilliseconds Maximum time to wait for a free connection in the pool. 0 means no time out.
+     * @param maxTotalConnections          Maximum number of connections, all hosts included.
+     * @param maxConnectionsPerHost        Default maximum number of connections to a single host.
+     */
+    public HttpConnectionPool(int connectTimeoutInMilliseconds, int readTimeoutInMilliseconds,
+                              long acquireTimeoutInMilliseconds, int maxTotalConnections, int maxConnectionsPerHost) {
+        final HttpConnectionManagerParams params;
+
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        params = connectionManager.getParams();
+        params.setConnectionTimeout(connectTimeoutInMilliseconds);
+        params.setSoTimeout(readTimeoutInMilliseconds);
+        params.setMaxTotalConnections(maxTotalConnections);
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setStaleCheckingEnabled(true);
+        client = new org.apache.commons.httpclient.HttpClient(connectionManager);
+        client.getParams().setConnectionManagerTimeout(acquireTimeoutInMilliseconds);
+        client.getParams().setSoTimeout(readTimeoutInMilliseconds);
+        acquireTimeoutCount = new AtomicLong(0);
+    }
+
+    public org.apache.commons.httpclient.HttpClient client() {
+        return client;
+    }
+
+    /**
+     * Cap the number of connections to a host, typically to the number of sessions it can run at once.
+     */
+    public void limitConnectionsPerHost(String host, int port, int maxConnections) {
+        connectionManager.getParams().setMaxConnectionsPerHost(hostConfiguration(host, port), maxConnections);
+    }
+
+    public int maxConnectionsPerHost(String host, int port) {
+        return connectionManager.getParams().getMaxConnectionsPerHost(hostConfiguration(host, port));
+    }
+
+    public int maxTotalConnections() {
+        return connectionManager.getParams().getMaxTotalConnections();
+    }
+
+    /**
+     * @return Number of open connections (in use or idle), all hosts included.
+     */
+    public int connectionsInPool() {
+        return connectionManager.getConnectionsInPool();
+    }
+
+    /**
+     * @return Number of open connections (in use or idle) to a host.
+     */
+    public int connectionsInPool(String host, int port) {
+        return connectionManager.getConnectionsInPool(hostConfiguration(host, port));
+    }
+
+    public void recordAcquireTimeout() {
+        acquireTimeoutCount.incrementAndGet();
+    }
+
+    /**
+     * @return Number of requests that gave up waiting for a free connection.
+     */
+    public long acquireTimeoutCount() {
+        return acquireTimeoutCount.get();
+    }
+
+    /**
+     * Close connections that have been idle for more than <code>idleTimeoutInMilliseconds</code>.
+     */
+    public void closeIdleConnections(long idleTimeoutInMilliseconds) {
+        connectionManager.closeIdleConnections(idleTimeoutInMilliseconds);
+    }
+
+    /**
+     * Periodically close connections idle for too long, e.g. before the remote end silently drops them.
+     * Does nothing if already started.
+     *
+     * @param idleTimeoutInMilliseconds Idle time after which a connection is closed. Strictly positive.
+     */
+    public synchronized void startReapingIdleConnections(long idleTimeoutInMilliseconds) {
+        if (null != idleConnectionReaper) {
+            return;
+        }
+        idleConnectionReaper = new IdleConnectionTimeoutThread();
+        idleConnectionReaper.setName("Idle Connection Reaper");
+        idleConnectionReaper.setConnectionTimeout(idleTimeoutInMilliseconds);
+        idleConnectionReaper.setTimeoutInterval(Math.max(1000, idleTimeoutInMilliseconds / 2));
+        idleConnectionReaper.addConnectionManager(connectionManager);
+        idleConnectionReaper.start();
+    }
+
+    public synchronized boolean reapingIdleConnections() {
+        return null != idleConnectionReaper;
+    }
+
+    /**
+     * Stop reaping idle connections and close all connections.
+     */
+    public synchronized void shutdown() {
+        if (null != idleConnectionReaper) {
+            idleConnectionReaper.shutdown();
+            idleConnectionReaper = null;
+        }
+        connectionManager.shutdown();
+    }
+
+    protected static HostConfiguration hostConfiguration(String host, int port) {
+        final HostConfiguration hostConfiguration;
+
+        hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost(host, port);
+        return hostConfiguration;
+    }
+
+}
@@ -14,13 +14,20 @@ import java.util.TreeSet;
 public class HttpParameters {
 
     private Map<String, String[]> parameterMap;
+    private boolean ownsParameterMap;
 
+    /**
+     * @param parameterMap Parameters, typically from the servlet container. Never modified:
+     *                     copied the first time a parameter is put.
+     */
     public HttpParameters(Map<String, String[]> parameterMap) {
         this.parameterMap = parameterMap;
+        this.ownsParameterMap = false;
     }
 
     public HttpParameters() {
         this.parameterMap = new HashMap<String, String[]>();
+        this.ownsParameterMap = true;
     }
 
     public String get(String name) {
@@ -32,10 +39,21 @@ public class HttpParameters {
     }
 
     public void put(String name, String value) {
-        parameterMap = new HashMap<String, String[]>(parameterMap);
+        if (!ownsParameterMap) {
+            parameterMap = new HashMap<String, String[]>(parameterMap);
+            ownsParameterMap = true;
+        }
         parameterMap.put(name, new String[]{value});
     }
 
+    public void remove(String name) {
+        if (!ownsParameterMap) {
+            parameterMap = new HashMap<String, String[]>(parameterMap);
+            ownsParameterMap = true;
+        }
+        parameterMap.remove(name);
+    }
+
     public Set<String> names() {
         return parameterMap.keySet();
     }
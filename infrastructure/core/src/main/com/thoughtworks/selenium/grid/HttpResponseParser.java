@@ -0,0 +1,294 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental HTTP/1.x response parser, fed with whatever bytes a non-blocking read returned.
+ * <p/>
+ * Understands what a remote control replies with: a status line, headers, and a body delimited
+ * by <code>Content-Length</code>, chunked transfer encoding or the end of the connection.
+ * The body is spooled in a {@link SpillOverBuffer}: kept in memory when small, spilled over to
+ * a temporary file when large.
+ * <p/>
+ * Not thread-safe.
+ */
+public class HttpResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int INITIAL_BODY_SIZE = 256;
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, DONE
+    }
+
+    private final StringBuilder line;
+    private final SpillOverBuffer body;
+    private State state;
+    private boolean started;
+    private int statusCode;
+    private boolean http11;
+    private String connectionHeader;
+    private boolean chunked;
+    private long remainingLength;
+    private boolean delimitedByEndOfStream;
+
+    public HttpResponseParser() {
+        this(SpillOverBuffer.DEFAULT_MEMORY_THRESHOLD_IN_BYTES);
+    }
+
+    /**
+     * @param bodyMemoryThresholdInBytes Number of body bytes kept in memory before spilling over to a file.
+     */
+    public HttpResponseParser(int bodyMemoryThresholdInBytes) {
+        line = new StringBuilder(128);
+        body = new SpillOverBuffer(INITIAL_BODY_SIZE, bodyMemoryThresholdInBytes, null);
+        state = State.STATUS_LINE;
+        remainingLength = -1;
+    }
+
+    /**
+     * Consume all the bytes available in the buffer, or only those belonging to this response
+     * if it completes.
+     *
+     * @param buffer Bytes read from the connection, ready to be read. Must be backed by an array.
+     * @return Whether the response is now complete.
+     * @throws IOException if the response is malformed.
+     */
+    public boolean parse(ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            started = true;
+        }
+        while (buffer.hasRemaining() && State.DONE != state) {
+            switch (state) {
+                case STATUS_LINE:
+                    if (readLine(buffer)) {
+                        parseStatusLine(takeLine());
+                    }
+                    break;
+                case HEADERS:
+                    if (readLine(buffer)) {
+                        parseHeader(takeLine());
+                    }
+                    break;
+                case BODY:
+                    readBody(buffer);
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(buffer)) {
+                        parseChunkSize(takeLine());
+                    }
+                    break;
+                case CHUNK_DATA:
+                    readBody(buffer);
+                    break;
+                case CHUNK_END:
+                    if (readLine(buffer)) {
+                        takeLine();
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (readLine(buffer) && 0 == takeLine().length()) {
+                        done();
+                    }
+                    break;
+            }
+        }
+        return complete();
+    }
+
+    /**
+     * The remote end closed the connection.
+     *
+     * @return Whether the response is complete, which is the case when its body is delimited by the end of the connection.
+     * @throws EOFException if the connection was closed in the middle of the response.
+     * @throws IOException   if the body cannot be spooled.
+     */
+    public boolean endOfStream() throws IOException {
+        if (State.BODY == state && delimitedByEndOfStream) {
+            done();
+        }
+        if (!complete()) {
+            throw new EOFException("Connection closed before the end of the response");
+        }
+        return true;
+    }
+
+    public boolean complete() {
+        return State.DONE == state;
+    }
+
+    /**
+     * @return Whether any byte of the response has been received.
+     */
+    public boolean started() {
+        return started;
+    }
+
+    public int statusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return UTF-8 encoded body, closed and ready to be read once the response is complete.
+     *         Up to the caller to dispose of it.
+     */
+    public SpillOverBuffer body() {
+        return body;
+    }
+
+    /**
+     * Delete whatever was spooled of an incomplete response.
+     */
+    public void dispose() {
+        body.dispose();
+    }
+
+    /**
+     * @return Whether the connection can be reused for another request once the response is complete.
+     */
+    public boolean keepAlive() {
+        if (delimitedByEndOfStream) {
+            return false;
+        }
+        if (http11) {
+            return !"close".equalsIgnoreCase(connectionHeader);
+        }
+        return "keep-alive".equalsIgnoreCase(connectionHeader);
+    }
+
+    protected boolean readLine(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            final char c = (char) (buffer.get() & 0xff);
+
+            if ('\n' == c) {
+                return true;
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Response line exceeds " + MAX_LINE_LENGTH + " characters");
+            }
+            line.append(c);
+        }
+        return false;
+    }
+
+    protected String takeLine() {
+        final String value;
+
+        if (line.length() > 0 && '\r' == line.charAt(line.length() - 1)) {
+            line.setLength(line.length() - 1);
+        }
+        value = line.toString();
+        line.setLength(0);
+        return value;
+    }
+
+    protected void parseStatusLine(String statusLine) throws IOException {
+        final String[] parts;
+
+        parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Malformed status line: '" + statusLine + "'");
+        }
+        try {
+            statusCode = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: '" + statusLine + "'");
+        }
+        http11 = !"HTTP/1.0".equals(parts[0]);
+        state = State.HEADERS;
+    }
+
+    protected void parseHeader(String header) throws IOException {
+        final int separator;
+        final String name;
+        final String value;
+
+        if (0 == header.length()) {
+            endOfHeaders();
+            return;
+        }
+        separator = header.indexOf(':');
+        if (separator < 1) {
+            throw new IOException("Malformed header: '" + header + "'");
+        }
+        name = header.substring(0, separator).trim();
+        value = header.substring(separator + 1).trim();
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            try {
+                remainingLength = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed Content-Length: '" + value + "'");
+            }
+        } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+            chunked = value.toLowerCase().contains("chunked");
+        } else if ("Connection".equalsIgnoreCase(name)) {
+            connectionHeader = value;
+        }
+    }
+
+    protected void endOfHeaders() throws IOException {
+        if (statusCode >= 100 && statusCode < 200) {
+            /* Interim response (e.g. 100 Continue): the real one follows */
+            remainingLength = -1;
+            chunked = false;
+            connectionHeader = null;
+            state = State.STATUS_LINE;
+        } else if (bodyless()) {
+            done();
+        } else if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (0 == remainingLength) {
+            done();
+        } else {
+            delimitedByEndOfStream = (-1 == remainingLength);
+            state = State.BODY;
+        }
+    }
+
+    protected boolean bodyless() {
+        return 204 == statusCode || 304 == statusCode;
+    }
+
+    protected void parseChunkSize(String chunkSizeLine) throws IOException {
+        final int extension;
+        final String size;
+
+        extension = chunkSizeLine.indexOf(';');
+        size = (extension < 0 ? chunkSizeLine : chunkSizeLine.substring(0, extension)).trim();
+        try {
+            remainingLength = Long.parseLong(size, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed chunk size: '" + chunkSizeLine + "'");
+        }
+        state = (0 == remainingLength) ? State.TRAILERS : State.CHUNK_DATA;
+    }
+
+    protected void readBody(ByteBuffer buffer) throws IOException {
+        final int length;
+
+        if (-1 == remainingLength) {
+            length = buffer.remaining();
+        } else {
+            length = (int) Math.min(remainingLength, buffer.remaining());
+            remainingLength -= length;
+        }
+        body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        if (0 == remainingLength) {
+            if (State.CHUNK_DATA == state) {
+                state = State.CHUNK_END;
+            } else {
+                done();
+            }
+        }
+    }
+
+    protected void done() throws IOException {
+        state = State.DONE;
+        body.close();
+    }
+
+}
@@ -3,6 +3,8 @@ package com.thoughtworks.selenium.grid;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -65,6 +67,67 @@ public class IOHelper {
         out.flush();
     }
 
+    /**
+     * Copy remaining stream content to another stream, up to the end of the input stream.
+     *
+     * @param in     Input stream to copy (remaining) content from. Cannot be null.
+     * @param out    Output stream to copy content to. Cannot be null.
+     * @param buffer Copy buffer, typically acquired from a {@link BufferPool}. Cannot be null or empty.
+     * @return Number of bytes copied.
+     * @throws java.io.IOException on IO error.
+     */
+    public static long copyStream(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+        long bytesCopied;
+        int bytesRead;
+
+        bytesCopied = 0;
+        while (true) {
+            bytesRead = in.read(buffer);
+            if (bytesRead < 0) {    /* End of stream */
+                break;
+            }
+            out.write(buffer, 0, bytesRead);
+            bytesCopied += bytesRead;
+        }
+        return bytesCopied;
+    }
+
+    /**
+     * Read remaining stream content in memory.
+     *
+     * @param in             Input stream to read (remaining) content from. Cannot be null.
+     * @param expectedLength Expected number of bytes (e.g. the HTTP content length), negative if unknown.
+     * @return Stream content. Never null.
+     * @throws java.io.IOException on IO error, or when the stream ends before <code>expectedLength</code> bytes.
+     */
+    public static byte[] readFully(InputStream in, int expectedLength) throws IOException {
+        final ByteArrayOutputStream content;
+        final byte[] buffer;
+        int offset;
+        int bytesRead;
+
+        if (expectedLength < 0) {
+            content = new ByteArrayOutputStream();
+            buffer = BufferPool.shared().acquire();
+            try {
+                copyStream(in, content, buffer);
+            } finally {
+                BufferPool.shared().release(buffer);
+            }
+            return content.toByteArray();
+        }
+        buffer = new byte[expectedLength];
+        offset = 0;
+        while (offset < expectedLength) {
+            bytesRead = in.read(buffer, offset, expectedLength - offset);
+            if (bytesRead < 0) {
+                throw new EOFException("Expected " + expectedLength + " bytes but only got " + offset);
+            }
+            offset += bytesRead;
+        }
+        return buffer;
+    }
+
     /**
      * Safely close an input stream  without bothering about null or IOExceptions.
      *
@@ -1,10 +1,27 @@
 package com.thoughtworks.selenium.grid;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 
+
+/**
+ * Remote control (or Hub) reply to a Selenese command.
+ * <p/>
+ * Bodies received off the wire are kept as the UTF-8 bytes the remote control sent, and only
+ * decoded, once, when someone asks for {@link #body()} (logging, session id parsing...).
+ * Relaying such a body to the client writes the very same bytes. Conversely, bodies built from
+ * a String are only encoded when written.
+ * <p/>
+ * Not thread-safe: meant to be consumed by the thread that issued the request.
+ */
 public class Response {
 
     private final int statusCode;
-    private final String body;
+    private String body;
+    private byte[] bytes;
 
 
     public Response(String errorMessage) {
@@ -16,12 +33,143 @@ public class Response {
         this.body = body;
     }
 
+    /**
+     * @param bytes UTF-8 encoded body, used as is (not copied). Cannot be null.
+     */
+    public Response(int statusCode, byte[] bytes) {
+        this.statusCode = statusCode;
+        this.bytes = bytes;
+    }
+
     public int statusCode() {
         return statusCode;
     }
 
+    /**
+     * @return Body, decoded on first call for a response built from bytes.
+     */
     public String body() {
+        if (null == body && null != bytes) {
+            try {
+                body = new String(bytes, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
         return body;
     }
 
+    /**
+     * @return Body, UTF-8 encoded and with any content coding removed, as a stream. Lets callers
+     *         go through a large body without holding it as a String. Nothing to close.
+     * @throws IOException on IO error.
+     */
+    public InputStream openBody() throws IOException {
+        return new ByteArrayInputStream(bytes());
+    }
+
+    /**
+     * Write the body, UTF-8 encoded, then release any resource held by this response.
+     *
+     * @param out Stream to write the body to. Not closed. Cannot be null.
+     * @throws IOException on IO error.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            out.write(bytes());
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Write the body with any content coding (e.g. gzip) removed, then release any resource
+     * held by this response.
+     *
+     * @param out Stream to write the decoded body to. Not closed. Cannot be null.
+     * @throws IOException on IO error.
+     */
+    public void writeDecodedTo(OutputStream out) throws IOException {
+        writeTo(out);
+    }
+
+    /**
+     * @return Content coding of the bytes written by {@link #writeTo(OutputStream)}, e.g. <code>gzip</code>.
+     *         Null when the body is not encoded.
+     */
+    public String contentEncoding() {
+        return null;
+    }
+
+    /**
+     * @return How long the client should wait before trying again, in seconds (<code>Retry-After</code>
+     *         header). -1 when there is nothing to wait for.
+     */
+    public long retryAfterInSeconds() {
+        return -1;
+    }
+
+    /**
+     * @return Length of the bytes written by {@link #writeTo(OutputStream)}, -1 if unknown.
+     */
+    public long contentLength() {
+        return bytes().length;
+    }
+
+    /**
+     * Release any resource (typically an HTTP connection) held by this response.
+     * Safe to call several times. Nothing to release for a buffered response.
+     */
+    public void release() {
+    }
+
+    /**
+     * @return UTF-8 encoded body, encoded on first call for a response built from a String.
+     *         Not a copy: must not be modified.
+     */
+    protected byte[] bytes() {
+        if (null == bytes) {
+            try {
+                bytes = body().getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param maxLength Maximum number of body characters to include.
+     * @return Beginning of the body, suitable for logging.
+     */
+    public String preview(int maxLength) {
+        final String body;
+
+        if (null == this.body && null != bytes && bytes.length > maxLength) {
+            return previewOfBytes(maxLength);
+        }
+        body = body();
+        if (body.length() <= maxLength) {
+            return body;
+        }
+        return body.substring(0, maxLength) + "...[" + (body.length() - maxLength) + " characters truncated]";
+    }
+
+    /**
+     * Decode the first <code>maxLength</code> bytes only, dropping a character they may cut in half.
+     */
+    protected String previewOfBytes(int maxLength) {
+        String beginning;
+
+        try {
+            beginning = new String(bytes, 0, maxLength, "UTF-8");
+            while (beginning.endsWith("\ufffd")) {
+                beginning = beginning.substring(0, beginning.length() - 1);
+            }
+            return beginning + "...[" + (bytes.length - beginning.getBytes("UTF-8").length) + " bytes truncated]";
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
@@ -0,0 +1,22 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.IOException;
+
+/**
+ * Gets notified of the outcome of an asynchronous HTTP request.
+ * <p/>
+ * Exactly one of the two methods is called, once. Both are invoked on the I/O thread of
+ * the client: implementations must be quick and must never block.
+ *
+ * @see AsyncHttpClient
+ */
+public interface ResponseCallback {
+
+    void completed(Response response);
+
+    /**
+     * @param e Connection failure, time out (<code>SocketTimeoutException</code>) or malformed response.
+     */
+    void failed(IOException e);
+
+}
@@ -0,0 +1,26 @@
+package com.thoughtworks.selenium.grid;
+
+/**
+ * Hub reply turning a request down for now (503 Service Unavailable), telling the client how long
+ * to wait before trying again.
+ */
+public class RetryLaterResponse extends Response {
+
+    public static final int SERVICE_UNAVAILABLE = 503;
+
+    private final long retryAfterInSeconds;
+
+    /**
+     * @param errorMessage        Why the request was turned down.
+     * @param retryAfterInSeconds How long to wait before trying again.
+     */
+    public RetryLaterResponse(String errorMessage, long retryAfterInSeconds) {
+        super(SERVICE_UNAVAILABLE, "ERROR: " + errorMessage);
+        this.retryAfterInSeconds = retryAfterInSeconds;
+    }
+
+    public long retryAfterInSeconds() {
+        return retryAfterInSeconds;
+    }
+
+}
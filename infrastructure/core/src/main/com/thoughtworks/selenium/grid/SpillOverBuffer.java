@@ -0,0 +1,241 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Output stream keeping what is written to it in memory up to a threshold, then spilling it
+ * over to a temporary file, so that holding on to a large body (a 20MB screenshot...) does not
+ * cost its size in heap.
+ * <p/>
+ * Once {@link #close() closed}, the content can be read back as many times as needed with
+ * {@link #inputStream()} or {@link #toString(String)}. A spilled file is memory-mapped for reading:
+ * its pages live in the OS page cache, not in the Java heap. {@link #dispose()} deletes it.
+ * <p/>
+ * Not thread-safe.
+ */
+public class SpillOverBuffer extends OutputStream {
+
+    public static final int DEFAULT_MEMORY_THRESHOLD_IN_BYTES = 1024 * 1024;
+
+    private final int memoryThresholdInBytes;
+    private final File directory;
+    private ExposedByteArrayOutputStream memory;
+    private File file;
+    private OutputStream fileOut;
+    private MappedByteBuffer mappedFile;
+    private long length;
+    private boolean closed;
+
+    public SpillOverBuffer() {
+        this(DEFAULT_MEMORY_THRESHOLD_IN_BYTES, null);
+    }
+
+    /**
+     * @param memoryThresholdInBytes Number of bytes kept in memory before spilling over to a file.
+     * @param directory              Where to create the temporary file. Null for the default temporary directory.
+     */
+    public SpillOverBuffer(int memoryThresholdInBytes, File directory) {
+        this(BufferPool.DEFAULT_BUFFER_SIZE, memoryThresholdInBytes, directory);
+    }
+
+    /**
+     * @param initialSizeInBytes     Memory allocated up front, grown as needed up to the threshold.
+     *                               Keep it small when many buffers are alive at once.
+     * @param memoryThresholdInBytes Number of bytes kept in memory before spilling over to a file.
+     * @param directory              Where to create the temporary file. Null for the default temporary directory.
+     */
+    public SpillOverBuffer(int initialSizeInBytes, int memoryThresholdInBytes, File directory) {
+        if (memoryThresholdInBytes < 0) {
+            throw new IllegalArgumentException("Memory threshold cannot be negative: " + memoryThresholdInBytes);
+        }
+        this.memoryThresholdInBytes = memoryThresholdInBytes;
+        this.directory = directory;
+        this.memory = new ExposedByteArrayOutputStream(Math.min(memoryThresholdInBytes, initialSizeInBytes));
+    }
+
+    public void write(int b) throws IOException {
+        prepareWrite(1);
+        if (null == file) {
+            memory.write(b);
+        } else {
+            fileOut.write(b);
+        }
+        length++;
+    }
+
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        prepareWrite(count);
+        if (null == file) {
+            memory.write(bytes, offset, count);
+        } else {
+            fileOut.write(bytes, offset, count);
+        }
+        length += count;
+    }
+
+    /**
+     * Stop writing and map the spilled file, if any, for reading.
+     */
+    public void close() throws IOException {
+        final RandomAccessFile spilledFile;
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (null == file) {
+            return;
+        }
+        fileOut.close();
+        spilledFile = new RandomAccessFile(file, "r");
+        try {
+            mappedFile = spilledFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            spilledFile.close();
+        }
+    }
+
+    /**
+     * @return A new stream over the whole content. Nothing to close.
+     * @throws IllegalStateException if the buffer is not closed yet, or was disposed of.
+     */
+    public InputStream inputStream() {
+        ensureReadable();
+        if (null == mappedFile) {
+            return memory.inputStream();
+        }
+        return new ByteBufferInputStream(mappedFile.duplicate());
+    }
+
+    /**
+     * Decode the whole content, which then takes its size in heap.
+     *
+     * @throws IllegalStateException if the buffer is not closed yet, or was disposed of.
+     */
+    public String toString(String charsetName) throws UnsupportedEncodingException {
+        ensureReadable();
+        if (null == mappedFile) {
+            return memory.toString(charsetName);
+        }
+        if (!Charset.isSupported(charsetName)) {
+            throw new UnsupportedEncodingException(charsetName);
+        }
+        return Charset.forName(charsetName).decode(mappedFile.duplicate()).toString();
+    }
+
+    /**
+     * Delete the spilled file, if any, and forget about the content. Safe to call several times.
+     */
+    public void dispose() {
+        closed = true;
+        memory = null;
+        mappedFile = null;
+        if (null != fileOut) {
+            IOHelper.close(fileOut);
+        }
+        if (null != file) {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return Number of bytes written so far.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return Whether the content went over the memory threshold and lives in a file.
+     */
+    public boolean spilled() {
+        return null != file;
+    }
+
+    protected void prepareWrite(int count) throws IOException {
+        if (closed) {
+            throw new IOException("Cannot write to a closed buffer");
+        }
+        if (null == file && length + count > memoryThresholdInBytes) {
+            spill();
+        }
+    }
+
+    protected void spill() throws IOException {
+        file = File.createTempFile("selenium-grid-", ".spool", directory);
+        file.deleteOnExit();
+        fileOut = new BufferedOutputStream(new FileOutputStream(file), BufferPool.DEFAULT_BUFFER_SIZE);
+        memory.writeTo(fileOut);
+        memory = null;
+    }
+
+    protected void ensureReadable() {
+        if (!closed) {
+            throw new IllegalStateException("Buffer must be closed before being read");
+        }
+        if (null == memory && null == mappedFile) {
+            throw new IllegalStateException("Buffer has been disposed of");
+        }
+    }
+
+    /**
+     * Gives access to the bytes written without copying them.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+
+        public ExposedByteArrayOutputStream(int initialSize) {
+            super(Math.max(initialSize, 32));
+        }
+
+        public InputStream inputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        public int read(byte[] bytes, int offset, int count) {
+            final int bytesRead;
+
+            if (0 == count) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            bytesRead = Math.min(count, buffer.remaining());
+            buffer.get(bytes, offset, bytesRead);
+            return bytesRead;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Response whose UTF-8 body has been built in a {@link SpillOverBuffer}, so that a large reply
+ * composed by the Hub itself, or received by the {@link AsyncHttpClient}, does not need to be held
+ * as a String. The body is only decoded if someone explicitly asks for {@link #body()}.
+ * <p/>
+ * Not thread-safe.
+ */
+public class SpooledResponse extends Response {
+
+    private final SpillOverBuffer spooledBody;
+    private String decodedBody;
+
+    /**
+     * @param spooledBody UTF-8 encoded body. Must be closed. Disposed of on {@link #release()}.
+     */
+    public SpooledResponse(int statusCode, SpillOverBuffer spooledBody) {
+        super(statusCode, (String) null);
+        this.spooledBody = spooledBody;
+    }
+
+    public String body() {
+        if (null == decodedBody) {
+            try {
+                decodedBody = spooledBody.toString("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return decodedBody;
+    }
+
+    public InputStream openBody() {
+        return spooledBody.inputStream();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        final byte[] buffer;
+
+        buffer = BufferPool.shared().acquire();
+        try {
+            IOHelper.copyStream(spooledBody.inputStream(), out, buffer);
+        } finally {
+            BufferPool.shared().release(buffer);
+            release();
+        }
+    }
+
+    public long contentLength() {
+        return spooledBody.length();
+    }
+
+    public void release() {
+        spooledBody.dispose();
+    }
+
+    /**
+     * Only decodes the first <code>maxLength</code> bytes of a large body.
+     */
+    public String preview(int maxLength) {
+        final byte[] beginning;
+        final InputStream in;
+        int length;
+        int bytesRead;
+
+        if (null != decodedBody || spooledBody.length() <= maxLength) {
+            return super.preview(maxLength);
+        }
+        beginning = new byte[maxLength];
+        in = spooledBody.inputStream();
+        length = 0;
+        try {
+            while (length < maxLength && (bytesRead = in.read(beginning, length, maxLength - length)) >= 0) {
+                length += bytesRead;
+            }
+            return new String(beginning, 0, length, "UTF-8") + "...["
+                   + (spooledBody.length() - length) + " bytes truncated]";
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
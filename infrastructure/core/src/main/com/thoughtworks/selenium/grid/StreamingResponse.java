@@ -0,0 +1,324 @@
+package com.thoughtworks.selenium.grid;
+
+import org.apache.commons.httpclient.HttpMethod;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response whose body is read from the remote control connection on demand instead of
+ * being buffered up-front.
+ * <p/>
+ * Only the first {@link #PEEK_SIZE} bytes are read eagerly, which is enough for logging and
+ * for parsing typical command results (session ids, "OK", ...). When the whole body fits,
+ * the connection is released right away. Larger bodies (screenshots, HTML source, ...)
+ * are copied straight to their destination by {@link #writeTo(OutputStream)} through a
+ * pooled buffer. When they must be read more than once (or as a whole, see {@link #body()}),
+ * they are spooled into a {@link SpillOverBuffer} that keeps the heap usage flat whatever their size.
+ * <p/>
+ * A gzip encoded body is relayed as is by {@link #writeTo(OutputStream)}, and decompressed on
+ * the fly by {@link #writeDecodedTo(OutputStream)} and {@link #body()}.
+ * <p/>
+ * Not thread-safe: meant to be consumed by the thread that issued the request.
+ */
+public class StreamingResponse extends Response {
+
+    public static final int PEEK_SIZE = 1024;
+    public static final String GZIP = "gzip";
+
+    private final HttpMethod method;
+    private final String contentEncoding;
+    private final long contentLength;
+    private final InputStream remainingBody;
+    private final BufferPool bufferPool;
+    private final byte[] head;
+    private final int headLength;
+    private final boolean complete;
+    private SpillOverBuffer spooledBody;
+    private String decodedBody;
+    private boolean streamed;
+    private boolean connectionReleased;
+
+    /**
+     * @param statusCode HTTP status code of the response.
+     * @param method     Executed method owning the connection. Released once the body is consumed.
+     * @param body       Response body stream. Null if the response has no body.
+     * @param bufferPool Pool of copy buffers used when streaming the body. Cannot be null.
+     * @throws IOException when peeking at the beginning of the body fails. The connection is released.
+     */
+    public StreamingResponse(int statusCode, HttpMethod method, InputStream body, BufferPool bufferPool) throws IOException {
+        this(statusCode, method, body, null, -1, bufferPool);
+    }
+
+    /**
+     * @param contentEncoding Content coding of the body, e.g. <code>gzip</code>. Null if the body is not encoded.
+     * @param contentLength   Length of the (encoded) body, -1 if unknown.
+     * @see #StreamingResponse(int, HttpMethod, InputStream, BufferPool)
+     */
+    public StreamingResponse(int statusCode, HttpMethod method, InputStream body, String contentEncoding,
+                             long contentLength, BufferPool bufferPool) throws IOException {
+        super(statusCode, (String) null);
+        this.method = method;
+        this.contentEncoding = contentEncoding;
+        this.contentLength = contentLength;
+        this.remainingBody = body;
+        this.bufferPool = bufferPool;
+        this.head = new byte[PEEK_SIZE + 1];    /* One extra byte tells whether there is more */
+        try {
+            this.headLength = peek(body, head);
+        } catch (IOException e) {
+            abortConnection();
+            throw e;
+        }
+        this.complete = headLength <= PEEK_SIZE;
+        if (complete) {
+            releaseConnection();
+        }
+    }
+
+    /**
+     * @return Whole body. Bodies that did not fit in the peek buffer are first spooled (see
+     *         {@link #openBody()}), then decoded.
+     * @throws IllegalStateException if the body has already been streamed.
+     * @throws RuntimeException      wrapping the IOException if reading the rest of the body fails.
+     */
+    public String body() {
+        if (null != decodedBody) {
+            return decodedBody;
+        }
+        ensureNotStreamed();
+        try {
+            if (complete && !gzipped()) {
+                decodedBody = new String(head, 0, headLength, "UTF-8");
+            } else if (gzipped()) {
+                decodedBody = new String(IOHelper.readFully(openBody(), -1), "UTF-8");
+            } else {
+                spool();
+                decodedBody = spooledBody.toString("UTF-8");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read remote control response", e);
+        }
+        return decodedBody;
+    }
+
+    /**
+     * Bodies that did not fit in the peek buffer are read off the connection into a
+     * {@link SpillOverBuffer} first, which releases the connection and keeps large bodies
+     * out of the heap. The body can then be opened, written or decoded again until released.
+     *
+     * @throws IllegalStateException if the body has already been streamed.
+     */
+    public InputStream openBody() throws IOException {
+        ensureNotStreamed();
+        spool();
+        return gzipped() ? new GZIPInputStream(rawBody()) : rawBody();
+    }
+
+    /**
+     * Copy the body bytes, as sent by the remote control, to <code>out</code> and release the connection.
+     * The connection is closed if reading the body fails (e.g. times out).
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ensureNotStreamed();
+        streamed = true;
+        try {
+            if (complete || null != spooledBody) {
+                copy(rawBody(), out);
+            } else {
+                out.write(head, 0, headLength);
+                copyOffConnection(remainingBody, out);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Like {@link #writeTo(OutputStream)}, decompressing a gzip encoded body as it is copied.
+     */
+    public void writeDecodedTo(OutputStream out) throws IOException {
+        if (!gzipped()) {
+            writeTo(out);
+            return;
+        }
+        ensureNotStreamed();
+        streamed = true;
+        try {
+            if (complete || null != spooledBody) {
+                copy(new GZIPInputStream(rawBody()), out);
+            } else {
+                copyOffConnection(new GZIPInputStream(rawBody()), out);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+
+    public long contentLength() {
+        return complete ? headLength : contentLength;
+    }
+
+    public void release() {
+        releaseConnection();
+        if (null != spooledBody) {
+            spooledBody.dispose();
+        }
+    }
+
+    public String preview(int maxLength) {
+        final String beginning;
+
+        if ((complete && !gzipped()) || null != decodedBody) {
+            return super.preview(maxLength);
+        }
+        if (gzipped()) {
+            return "...[streamed gzip]";
+        }
+        try {
+            beginning = new String(head, 0, headLength, "UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return beginning.substring(0, Math.min(maxLength, beginning.length())) + "...[streamed]";
+    }
+
+    /**
+     * @return Whether the whole body fitted in the peek buffer (and the connection is already released).
+     */
+    public boolean complete() {
+        return complete;
+    }
+
+    /**
+     * @return Whether the body has been read off the connection into a {@link SpillOverBuffer}.
+     */
+    public boolean spooled() {
+        return null != spooledBody;
+    }
+
+    /**
+     * Read the rest of the body off the connection, as is, into a {@link SpillOverBuffer}, and release
+     * the connection. Nothing to do when the body fits in the peek buffer or is already spooled.
+     */
+    protected void spool() throws IOException {
+        final SpillOverBuffer buffer;
+
+        if (complete || null != spooledBody) {
+            return;
+        }
+        buffer = newSpillOverBuffer();
+        try {
+            copyOffConnection(rawBody(), buffer);
+            buffer.close();
+        } catch (IOException e) {
+            buffer.dispose();
+            throw e;
+        } finally {
+            releaseConnection();
+        }
+        spooledBody = buffer;
+    }
+
+    protected SpillOverBuffer newSpillOverBuffer() {
+        return new SpillOverBuffer();
+    }
+
+    /**
+     * @return Body bytes as sent by the remote control, from the spooled copy if there is one.
+     */
+    protected InputStream rawBody() {
+        final InputStream head;
+
+        head = new ByteArrayInputStream(this.head, 0, headLength);
+        if (complete) {
+            return head;
+        }
+        if (null != spooledBody) {
+            return spooledBody.inputStream();
+        }
+        return new SequenceInputStream(head, remainingBody);
+    }
+
+    protected void copy(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer;
+
+        buffer = bufferPool.acquire();
+        try {
+            IOHelper.copyStream(in, out, buffer);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Copy bytes read off the connection, which is closed rather than released if the copy fails:
+     * releasing it would read what is left of the body first, and could block until the read time
+     * out expires again.
+     */
+    protected void copyOffConnection(InputStream in, OutputStream out) throws IOException {
+        try {
+            copy(in, out);
+        } catch (IOException e) {
+            abortConnection();
+            throw e;
+        }
+    }
+
+    protected void abortConnection() {
+        if (connectionReleased) {
+            return;
+        }
+        if (null != method) {
+            method.abort();
+        }
+        releaseConnection();
+    }
+
+    protected void releaseConnection() {
+        if (connectionReleased) {
+            return;
+        }
+        connectionReleased = true;
+        if (null != method) {
+            method.releaseConnection();
+        }
+    }
+
+    protected void ensureNotStreamed() {
+        if (streamed) {
+            throw new IllegalStateException("Response body has already been streamed");
+        }
+    }
+
+    protected boolean gzipped() {
+        return GZIP.equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding);
+    }
+
+    protected static int peek(InputStream in, byte[] buffer) throws IOException {
+        int length;
+        int bytesRead;
+
+        if (null == in) {
+            return 0;
+        }
+        length = 0;
+        while (length < buffer.length) {
+            bytesRead = in.read(buffer, length, buffer.length - length);
+            if (bytesRead < 0) {
+                break;
+            }
+            length += bytesRead;
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.thoughtworks.selenium.grid.configuration;
+
+/**
+ * Maximum time a remote control may stay silent on a family of Selenese commands (JavaBean).
+ * A read time out rather than a bound on the duration of the whole command: a reply that
+ * keeps trickling in is not cut short.
+ * <p/>
+ * The family is a command name (<code>open</code>) or a command name prefix ending with
+ * a star (<code>waitFor*</code>, <code>get*</code>).
+ */
+public class CommandDeadlineConfiguration {
+
+    private String command;
+    private double timeoutInSeconds;
+
+    public CommandDeadlineConfiguration(String command, double timeoutInSeconds) {
+        this.command = command;
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
+    public CommandDeadlineConfiguration() {
+        this(null, 0);
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    /**
+     * @return Maximum time to wait for the remote control to reply, 0 meaning forever.
+     */
+    public double getTimeoutInSeconds() {
+        return timeoutInSeconds;
+    }
+
+    public void setTimeoutInSeconds(double timeoutInSeconds) {
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
+    /**
+     * @param commandName Selenese command name, e.g. <code>waitForPageToLoad</code>. Can be null.
+     * @return Whether the command belongs to this family.
+     */
+    public boolean matches(String commandName) {
+        if (null == command || null == commandName) {
+            return false;
+        }
+        if (command.endsWith("*")) {
+            return commandName.startsWith(command.substring(0, command.length() - 1));
+        }
+        return command.equals(commandName);
+    }
+
+    public String toString() {
+        return "[CommandDeadlineConfiguration command='" + command + "', timeoutInSeconds=" + timeoutInSeconds + "]";
+    }
+
+}
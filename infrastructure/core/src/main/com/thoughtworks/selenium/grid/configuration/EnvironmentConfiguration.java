@@ -7,10 +7,17 @@ public class EnvironmentConfiguration {
 
     private String name;
     private String browser;
+    private double sessionMaxIdleTimeInSeconds;
+    private String loadBalancingStrategy;
+    private int maxPendingNewSessionRequests;
+    private int warmSessions;
+    private String warmSessionBrowserUrl;
 
     public EnvironmentConfiguration(String name, String browser) {
         this.name = name;
         this.browser = browser;
+        this.sessionMaxIdleTimeInSeconds = 0;
+        this.maxPendingNewSessionRequests = 0;
     }
 
     public EnvironmentConfiguration() {
@@ -33,6 +40,64 @@ public class EnvironmentConfiguration {
         this.browser = browser;
     }
 
+    /**
+     * @return Idle time out for sessions in this environment. 0 when the hub-wide time out applies.
+     */
+    public double getSessionMaxIdleTimeInSeconds() {
+        return sessionMaxIdleTimeInSeconds;
+    }
+
+    public void setSessionMaxIdleTimeInSeconds(double sessionMaxIdleTimeInSeconds) {
+        this.sessionMaxIdleTimeInSeconds = sessionMaxIdleTimeInSeconds;
+    }
+
+    /**
+     * @return Name of the strategy picking idle remote controls in this environment.
+     *         Null when the hub-wide strategy applies.
+     */
+    public String getLoadBalancingStrategy() {
+        return loadBalancingStrategy;
+    }
+
+    public void setLoadBalancingStrategy(String loadBalancingStrategy) {
+        this.loadBalancingStrategy = loadBalancingStrategy;
+    }
+
+    /**
+     * @return Maximum number of new session requests queued for this environment. 0 when the hub-wide limit applies.
+     */
+    public int getMaxPendingNewSessionRequests() {
+        return maxPendingNewSessionRequests;
+    }
+
+    public void setMaxPendingNewSessionRequests(int maxPendingNewSessionRequests) {
+        this.maxPendingNewSessionRequests = maxPendingNewSessionRequests;
+    }
+
+    /**
+     * @return Number of sessions the Hub starts ahead of demand on idle remote controls of this
+     *         environment, to hand them out right away. 0 (the default) for none.
+     */
+    public int getWarmSessions() {
+        return warmSessions;
+    }
+
+    public void setWarmSessions(int warmSessions) {
+        this.warmSessions = warmSessions;
+    }
+
+    /**
+     * @return Browser URL warm sessions are started with. Only requests for the same URL, or at
+     *         least the same scheme, host and port, get a warm session.
+     */
+    public String getWarmSessionBrowserUrl() {
+        return warmSessionBrowserUrl;
+    }
+
+    public void setWarmSessionBrowserUrl(String warmSessionBrowserUrl) {
+        this.warmSessionBrowserUrl = warmSessionBrowserUrl;
+    }
+
     public String toString() {
         return "[EnvironmentConfiguration name='" + name + "', browser='" + browser + "']";
     }
@@ -5,11 +5,30 @@ package com.thoughtworks.selenium.grid.configuration;
  */
 public class HubConfiguration {
 
+    /* Shared so that the YAML dump leaves out deadlines that were never configured */
+    private static final CommandDeadlineConfiguration[] NO_COMMAND_DEADLINES = new CommandDeadlineConfiguration[] {};
+    private static final TenantConfiguration[] NO_TENANTS = new TenantConfiguration[] {};
+
     private int port;
     private double remoteControlPollingIntervalInSeconds;
     private double sessionMaxIdleTimeInSeconds;
     private double newSessionMaxWaitTimeInSeconds;
+    private int maxPendingNewSessionRequests;
+    private int heartbeatThreadCount;
+    private double heartbeatTimeoutInSeconds;
+    private double heartbeatMaxJitterInSeconds;
+    private String loadBalancingStrategy;
+    private double remoteControlConnectTimeoutInSeconds;
+    private double remoteControlReadTimeoutInSeconds;
+    private double remoteControlConnectionAcquireTimeoutInSeconds;
+    private double remoteControlConnectionIdleTimeoutInSeconds;
+    private int maxRemoteControlConnections;
+    private boolean asyncCommandForwarding;
+    private boolean gzipCompression;
+    private int gzipCompressionThresholdInBytes;
+    private CommandDeadlineConfiguration[] commandDeadlines;
     private EnvironmentConfiguration[] environments;
+    private TenantConfiguration[] tenants;
 
     public HubConfiguration() {
         this.port = 4444;
@@ -17,6 +36,21 @@ public class HubConfiguration {
         this.remoteControlPollingIntervalInSeconds = 3 * 60;
         this.sessionMaxIdleTimeInSeconds = 5 * 60;
         this.newSessionMaxWaitTimeInSeconds = Double.POSITIVE_INFINITY;
+        this.maxPendingNewSessionRequests = 0;
+        this.heartbeatThreadCount = 16;
+        this.heartbeatTimeoutInSeconds = 10;
+        this.heartbeatMaxJitterInSeconds = 1;
+        this.loadBalancingStrategy = "least-recently-used";
+        this.remoteControlConnectTimeoutInSeconds = 10;
+        this.remoteControlReadTimeoutInSeconds = 0;
+        this.remoteControlConnectionAcquireTimeoutInSeconds = 10;
+        this.remoteControlConnectionIdleTimeoutInSeconds = 60;
+        this.maxRemoteControlConnections = 1000;
+        this.asyncCommandForwarding = false;
+        this.gzipCompression = false;
+        this.gzipCompressionThresholdInBytes = 4096;
+        this.commandDeadlines = NO_COMMAND_DEADLINES;
+        this.tenants = NO_TENANTS;
     }
 
     public int getPort() {
@@ -51,6 +85,51 @@ public class HubConfiguration {
         this.sessionMaxIdleTimeInSeconds = newIdleTimeInSeconds;
     }
 
+    /**
+     * @param environmentName Name of the environment the session runs in.
+     * @return Idle time out configured for the environment, or the hub-wide one if there is none.
+     */
+    public double sessionMaxIdleTimeInSecondsFor(String environmentName) {
+        final EnvironmentConfiguration environment;
+
+        environment = environmentNamed(environmentName);
+        if (null != environment && environment.getSessionMaxIdleTimeInSeconds() > 0) {
+            return environment.getSessionMaxIdleTimeInSeconds();
+        }
+        return sessionMaxIdleTimeInSeconds;
+    }
+
+    public String getLoadBalancingStrategy() {
+        return loadBalancingStrategy;
+    }
+
+    public void setLoadBalancingStrategy(String loadBalancingStrategy) {
+        this.loadBalancingStrategy = loadBalancingStrategy;
+    }
+
+    /**
+     * @param environmentName Name of the environment remote controls are picked from.
+     * @return Load balancing strategy configured for the environment, or the hub-wide one if there is none.
+     */
+    public String loadBalancingStrategyFor(String environmentName) {
+        final EnvironmentConfiguration environment;
+
+        environment = environmentNamed(environmentName);
+        if (null != environment && null != environment.getLoadBalancingStrategy()) {
+            return environment.getLoadBalancingStrategy();
+        }
+        return loadBalancingStrategy;
+    }
+
+    protected EnvironmentConfiguration environmentNamed(String environmentName) {
+        for (EnvironmentConfiguration environment : environments) {
+            if (environment.getName().equals(environmentName)) {
+                return environment;
+            }
+        }
+        return null;
+    }
+
     public double getNewSessionMaxWaitTimeInSeconds() {
         return newSessionMaxWaitTimeInSeconds;
     }
@@ -58,4 +137,218 @@ public class HubConfiguration {
     public void setNewSessionMaxWaitTimeInSeconds(final double newSessionMaxWaitTimeInSeconds) {
         this.newSessionMaxWaitTimeInSeconds = newSessionMaxWaitTimeInSeconds;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return Maximum number of new session requests queued per environment, waiting for a
+     *         remote control. Requests past this limit are turned down right away. 0 for no limit.
+     */
+    public int getMaxPendingNewSessionRequests() {
+        return maxPendingNewSessionRequests;
+    }
+
+    public void setMaxPendingNewSessionRequests(int maxPendingNewSessionRequests) {
+        this.maxPendingNewSessionRequests = maxPendingNewSessionRequests;
+    }
+
+    /**
+     * @param environmentName Name of the environment new session requests queue for.
+     * @return Queue limit configured for the environment, or the hub-wide one if there is none. 0 for no limit.
+     */
+    public int maxPendingNewSessionRequestsFor(String environmentName) {
+        final EnvironmentConfiguration environment;
+
+        environment = environmentNamed(environmentName);
+        if (null != environment && environment.getMaxPendingNewSessionRequests() > 0) {
+            return environment.getMaxPendingNewSessionRequests();
+        }
+        return maxPendingNewSessionRequests;
+    }
+
+    /**
+     * @param environmentName Name of the environment to keep warm sessions for.
+     * @return Number of warm sessions configured for the environment. 0 when there is no browser URL
+     *         to start them with.
+     */
+    public int warmSessionsFor(String environmentName) {
+        final EnvironmentConfiguration environment;
+
+        environment = environmentNamed(environmentName);
+        if (null == environment || null == environment.getWarmSessionBrowserUrl()) {
+            return 0;
+        }
+        return Math.max(0, environment.getWarmSessions());
+    }
+
+    /**
+     * @param environmentName Name of the environment to keep warm sessions for.
+     * @return Browser URL warm sessions of the environment are started with. Null if there is none.
+     */
+    public String warmSessionBrowserUrlFor(String environmentName) {
+        final EnvironmentConfiguration environment;
+
+        environment = environmentNamed(environmentName);
+        return null == environment ? null : environment.getWarmSessionBrowserUrl();
+    }
+
+    public int getHeartbeatThreadCount() {
+        return heartbeatThreadCount;
+    }
+
+    public void setHeartbeatThreadCount(int heartbeatThreadCount) {
+        this.heartbeatThreadCount = heartbeatThreadCount;
+    }
+
+    public double getHeartbeatTimeoutInSeconds() {
+        return heartbeatTimeoutInSeconds;
+    }
+
+    public void setHeartbeatTimeoutInSeconds(double heartbeatTimeoutInSeconds) {
+        this.heartbeatTimeoutInSeconds = heartbeatTimeoutInSeconds;
+    }
+
+    public double getHeartbeatMaxJitterInSeconds() {
+        return heartbeatMaxJitterInSeconds;
+    }
+
+    public void setHeartbeatMaxJitterInSeconds(double heartbeatMaxJitterInSeconds) {
+        this.heartbeatMaxJitterInSeconds = heartbeatMaxJitterInSeconds;
+    }
+
+    public double getRemoteControlConnectTimeoutInSeconds() {
+        return remoteControlConnectTimeoutInSeconds;
+    }
+
+    public void setRemoteControlConnectTimeoutInSeconds(double remoteControlConnectTimeoutInSeconds) {
+        this.remoteControlConnectTimeoutInSeconds = remoteControlConnectTimeoutInSeconds;
+    }
+
+    /**
+     * @return Maximum time to wait for a remote control to reply to a command, 0 meaning forever.
+     */
+    public double getRemoteControlReadTimeoutInSeconds() {
+        return remoteControlReadTimeoutInSeconds;
+    }
+
+    public void setRemoteControlReadTimeoutInSeconds(double remoteControlReadTimeoutInSeconds) {
+        this.remoteControlReadTimeoutInSeconds = remoteControlReadTimeoutInSeconds;
+    }
+
+    /**
+     * @return Maximum time to wait for a free connection to a remote control, 0 meaning forever.
+     */
+    public double getRemoteControlConnectionAcquireTimeoutInSeconds() {
+        return remoteControlConnectionAcquireTimeoutInSeconds;
+    }
+
+    public void setRemoteControlConnectionAcquireTimeoutInSeconds(double remoteControlConnectionAcquireTimeoutInSeconds) {
+        this.remoteControlConnectionAcquireTimeoutInSeconds = remoteControlConnectionAcquireTimeoutInSeconds;
+    }
+
+    /**
+     * @return Idle time after which a keep-alive connection to a remote control is closed.
+     */
+    public double getRemoteControlConnectionIdleTimeoutInSeconds() {
+        return remoteControlConnectionIdleTimeoutInSeconds;
+    }
+
+    public void setRemoteControlConnectionIdleTimeoutInSeconds(double remoteControlConnectionIdleTimeoutInSeconds) {
+        this.remoteControlConnectionIdleTimeoutInSeconds = remoteControlConnectionIdleTimeoutInSeconds;
+    }
+
+    public int getMaxRemoteControlConnections() {
+        return maxRemoteControlConnections;
+    }
+
+    public void setMaxRemoteControlConnections(int maxRemoteControlConnections) {
+        this.maxRemoteControlConnections = maxRemoteControlConnections;
+    }
+
+    /**
+     * @return Whether plain commands are forwarded with the non-blocking client, suspending the
+     *         client request instead of holding a Hub thread while the remote control works.
+     */
+    public boolean getAsyncCommandForwarding() {
+        return asyncCommandForwarding;
+    }
+
+    public void setAsyncCommandForwarding(boolean asyncCommandForwarding) {
+        this.asyncCommandForwarding = asyncCommandForwarding;
+    }
+
+    /**
+     * @return Whether the Hub negotiates gzip content coding with clients and remote controls
+     *         that accept it.
+     */
+    public boolean getGzipCompression() {
+        return gzipCompression;
+    }
+
+    public void setGzipCompression(boolean gzipCompression) {
+        this.gzipCompression = gzipCompression;
+    }
+
+    /**
+     * @return Size under which replies are not worth compressing.
+     */
+    public int getGzipCompressionThresholdInBytes() {
+        return gzipCompressionThresholdInBytes;
+    }
+
+    public void setGzipCompressionThresholdInBytes(int gzipCompressionThresholdInBytes) {
+        this.gzipCompressionThresholdInBytes = gzipCompressionThresholdInBytes;
+    }
+
+    public CommandDeadlineConfiguration[] getCommandDeadlines() {
+        return commandDeadlines;
+    }
+
+    public void setCommandDeadlines(CommandDeadlineConfiguration[] commandDeadlines) {
+        this.commandDeadlines = commandDeadlines;
+    }
+
+    /**
+     * @param commandName Selenese command name. Can be null.
+     * @return Deadline of the first command family the command belongs to, or the remote control
+     *         read time out if there is none. 0 means forever.
+     */
+    public double commandTimeoutInSecondsFor(String commandName) {
+        for (CommandDeadlineConfiguration deadline : commandDeadlines) {
+            if (deadline.matches(commandName)) {
+                return deadline.getTimeoutInSeconds();
+            }
+        }
+        return remoteControlReadTimeoutInSeconds;
+    }
+
+    public TenantConfiguration[] getTenants() {
+        return tenants;
+    }
+
+    public void setTenants(TenantConfiguration[] tenants) {
+        this.tenants = tenants;
+    }
+
+    /**
+     * @return Tenant with this name. Null if there is none.
+     */
+    public TenantConfiguration tenantNamed(String tenantName) {
+        for (TenantConfiguration tenant : tenants) {
+            if (tenant.getName().equals(tenantName)) {
+                return tenant;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Tenant with this API key. Null if there is none.
+     */
+    public TenantConfiguration tenantWithApiKey(String apiKey) {
+        for (TenantConfiguration tenant : tenants) {
+            if (null != tenant.getApiKey() && tenant.getApiKey().equals(apiKey)) {
+                return tenant;
+            }
+        }
+        return null;
+    }
+}
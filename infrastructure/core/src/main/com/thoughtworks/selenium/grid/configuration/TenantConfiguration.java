@@ -0,0 +1,75 @@
+package com.thoughtworks.selenium.grid.configuration;
+
+/**
+ * Team sharing the Hub with others (JavaBean).
+ * <p/>
+ * New session requests name their tenant with the <code>tenant</code> parameter or, when the
+ * tenant has an API key, with the <code>apiKey</code> parameter. Under contention remote controls
+ * are shared out between tenants in proportion to their weight, and a tenant never holds more
+ * than its maximum number of concurrent sessions.
+ */
+public class TenantConfiguration {
+
+    private String name;
+    private String apiKey;
+    private double weight;
+    private int maxConcurrentSessions;
+
+    public TenantConfiguration(String name) {
+        this.name = name;
+        this.weight = 1;
+        this.maxConcurrentSessions = 0;
+    }
+
+    public TenantConfiguration() {
+        this(null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return Secret identifying the tenant. Null when the tenant is identified by name.
+     */
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * @return Share of the remote controls this tenant gets under contention, relative to other tenants.
+     */
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * @return Maximum number of sessions the tenant can hold at the same time, across environments.
+     *         0 for no limit.
+     */
+    public int getMaxConcurrentSessions() {
+        return maxConcurrentSessions;
+    }
+
+    public void setMaxConcurrentSessions(int maxConcurrentSessions) {
+        this.maxConcurrentSessions = maxConcurrentSessions;
+    }
+
+    public String toString() {
+        return "[TenantConfiguration name='" + name + "', weight=" + weight
+               + ", maxConcurrentSessions=" + maxConcurrentSessions + "]";
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares forwarding commands to remote controls with the blocking client (one thread per
+ * command in flight, out of a fixed pool) and with the asynchronous client (one I/O thread
+ * for all commands in flight).
+ * <p/>
+ * Commands go to fake remote controls echoing the request after a fixed latency, standing for
+ * the time a browser takes to execute a command. Reports, for each client, the throughput and
+ * the average command latency as seen by the Hub (queuing included).
+ * <p/>
+ * Run with: <code>ant benchmark -Dbenchmark=com.thoughtworks.selenium.grid.AsyncForwardingBenchmark</code>
+ */
+public class AsyncForwardingBenchmark {
+
+    private static final int REMOTE_CONTROLS = 20;
+    private static final int LATENCY_IN_MILLISECONDS = 50;
+    private static final int COMMANDS = 5000;
+    private static final int BLOCKING_THREADS = 16;
+    private static final int MAX_COMMANDS_IN_FLIGHT = 1000;
+    private static final String FORM = "application/x-www-form-urlencoded; charset=UTF-8";
+    private static final byte[] COMMAND = "cmd=getTitle&sessionId=1234".getBytes();
+
+    public static void main(String[] args) throws Exception {
+        final List<EchoHttpServer> remoteControls;
+
+        remoteControls = new ArrayList<EchoHttpServer>();
+        for (int i = 0; i < REMOTE_CONTROLS; i++) {
+            remoteControls.add(new EchoHttpServer(LATENCY_IN_MILLISECONDS).start());
+        }
+        System.out.println(REMOTE_CONTROLS + " remote controls, " + LATENCY_IN_MILLISECONDS + " ms latency, "
+                           + COMMANDS + " commands");
+        runBlocking(remoteControls, COMMANDS / 10);   // Warm up
+        runAsynchronous(remoteControls, COMMANDS / 10);
+        System.out.println(runBlocking(remoteControls, COMMANDS));
+        System.out.println(runAsynchronous(remoteControls, COMMANDS));
+        for (EchoHttpServer remoteControl : remoteControls) {
+            remoteControl.stop();
+        }
+    }
+
+    protected static String runBlocking(final List<EchoHttpServer> remoteControls, int commands) throws Exception {
+        final HttpConnectionPool connectionPool;
+        final HttpClient client;
+        final ExecutorService threads;
+        final CountDownLatch done;
+        final AtomicInteger failures;
+        final AtomicLong latency;
+        final long start;
+        final long elapsed;
+
+        connectionPool = new HttpConnectionPool(10000, 10000, 10000, BLOCKING_THREADS * 2, BLOCKING_THREADS);
+        client = new HttpClient(connectionPool);
+        threads = Executors.newFixedThreadPool(BLOCKING_THREADS);
+        done = new CountDownLatch(commands);
+        failures = new AtomicInteger(0);
+        latency = new AtomicLong(0);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < commands; i++) {
+            final String url = remoteControls.get(i % remoteControls.size()).url();
+            final long submitted = System.nanoTime();
+
+            threads.execute(new Runnable() {
+                public void run() {
+                    try {
+                        client.stream(url, COMMAND, FORM).release();
+                    } catch (IOException e) {
+                        failures.incrementAndGet();
+                    }
+                    latency.addAndGet(System.nanoTime() - submitted);
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        elapsed = System.currentTimeMillis() - start;
+        threads.shutdown();
+        threads.awaitTermination(10, TimeUnit.SECONDS);
+        connectionPool.shutdown();
+        return report("blocking (" + BLOCKING_THREADS + " threads)", commands, elapsed, latency, failures);
+    }
+
+    protected static String runAsynchronous(final List<EchoHttpServer> remoteControls, int commands) throws Exception {
+        final AsyncHttpClient client;
+        final Semaphore inFlight;
+        final CountDownLatch done;
+        final AtomicInteger failures;
+        final AtomicLong latency;
+        final long start;
+        final long elapsed;
+
+        client = new AsyncHttpClient(10000, 10000, MAX_COMMANDS_IN_FLIGHT);
+        client.start();
+        inFlight = new Semaphore(MAX_COMMANDS_IN_FLIGHT);
+        done = new CountDownLatch(commands);
+        failures = new AtomicInteger(0);
+        latency = new AtomicLong(0);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < commands; i++) {
+            final long submitted = System.nanoTime();
+
+            inFlight.acquire();
+            client.post(remoteControls.get(i % remoteControls.size()).url(), COMMAND, FORM, new ResponseCallback() {
+                public void completed(Response response) {
+                    finished();
+                }
+
+                public void failed(IOException e) {
+                    failures.incrementAndGet();
+                    finished();
+                }
+
+                private void finished() {
+                    latency.addAndGet(System.nanoTime() - submitted);
+                    inFlight.release();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        elapsed = System.currentTimeMillis() - start;
+        client.shutdown();
+        return report("asynchronous (1 I/O thread)", commands, elapsed, latency, failures);
+    }
+
+    protected static String report(String name, int commands, long elapsedInMilliseconds,
+                                   AtomicLong latency, AtomicInteger failures) {
+        return String.format("%-28s %7.0f commands/s   average latency: %6.1f ms   failures: %d",
+                             name,
+                             commands * 1000.0 / Math.max(1, elapsedInMilliseconds),
+                             latency.get() / 1000000.0 / commands,
+                             failures.get());
+    }
+
+}
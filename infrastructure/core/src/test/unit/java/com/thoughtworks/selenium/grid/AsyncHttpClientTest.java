@@ -0,0 +1,234 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class AsyncHttpClientTest {
+
+    private static final String FORM = "application/x-www-form-urlencoded; charset=UTF-8";
+    private AsyncHttpClient client;
+    private EchoHttpServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (null != client) {
+            client.shutdown();
+        }
+        if (null != server) {
+            server.stop();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void postThrowsAnIllegalStateExceptionWhenTheClientIsNotStarted() {
+        new AsyncHttpClient(1000, 1000).post("http://localhost:4444/", new byte[0], FORM, new RecordingCallback());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void postRejectsNonHttpUrls() throws IOException {
+        client = new AsyncHttpClient(1000, 1000);
+        client.start();
+        client.post("https://localhost:4444/", new byte[0], FORM, new RecordingCallback());
+    }
+
+    @Test
+    public void encodedRequestHasAContentLengthAndTheBodyAsIs() throws IOException {
+        final byte[] request;
+
+        request = AsyncHttpClient.encodeRequest(new java.net.URL("http://host:5555/path?a=b"), "cmd=open".getBytes("UTF-8"), FORM);
+        assertEquals("POST /path?a=b HTTP/1.1\r\nHost: host:5555\r\nContent-Type: " + FORM
+                     + "\r\nContent-Length: 8\r\nConnection: keep-alive\r\n\r\ncmd=open",
+                     new String(request, "ISO-8859-1"));
+    }
+
+    @Test
+    public void postHandsTheResponseOverToTheCallback() throws Exception {
+        final RecordingCallback callback;
+
+        server = new EchoHttpServer(0).start();
+        client = new AsyncHttpClient(1000, 1000);
+        client.start();
+        callback = new RecordingCallback();
+        client.post(server.url(), "cmd=open&1=%2F".getBytes("UTF-8"), FORM, callback);
+
+        callback.await();
+        assertNull(callback.failure);
+        assertEquals(200, callback.response.statusCode());
+        assertEquals("cmd=open&1=%2F", callback.response.body());
+        assertEquals(0, client.inFlightRequestCount());
+    }
+
+    @Test
+    public void keepAliveConnectionsAreReused() throws Exception {
+        server = new EchoHttpServer(0).start();
+        client = new AsyncHttpClient(1000, 1000);
+        client.start();
+        for (int i = 0; i < 5; i++) {
+            final RecordingCallback callback = new RecordingCallback();
+
+            client.post(server.url(), ("cmd=" + i).getBytes("UTF-8"), FORM, callback);
+            callback.await();
+            assertEquals("cmd=" + i, callback.response.body());
+        }
+        assertEquals(1, server.connectionCount());
+        assertEquals(1, client.idleConnectionCount());
+    }
+
+    @Test
+    public void connectionsClosedByTheServerAreNotReused() throws Exception {
+        server = new EchoHttpServer(0).start();
+        server.closeAfterEachResponse();
+        client = new AsyncHttpClient(1000, 1000);
+        client.start();
+        for (int i = 0; i < 3; i++) {
+            final RecordingCallback callback = new RecordingCallback();
+
+            client.post(server.url(), "cmd=open".getBytes("UTF-8"), FORM, callback);
+            callback.await();
+            assertEquals("cmd=open", callback.response.body());
+        }
+        assertEquals(3, server.connectionCount());
+        assertEquals(0, client.idleConnectionCount());
+    }
+
+    @Test
+    public void manyRequestsCanBeInFlightAtOnce() throws Exception {
+        final int requests = 50;
+        final CountDownLatch done;
+        final long start;
+
+        server = new EchoHttpServer(200).start();
+        client = new AsyncHttpClient(1000, 5000);
+        client.start();
+        done = new CountDownLatch(requests);
+        start = System.currentTimeMillis();
+        for (int i = 0; i < requests; i++) {
+            client.post(server.url(), "cmd=open".getBytes("UTF-8"), FORM, new ResponseCallback() {
+                public void completed(Response response) {
+                    done.countDown();
+                }
+
+                public void failed(IOException e) {
+                    fail(e.getMessage());
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start < 200 * requests / 2);
+    }
+
+    @Test
+    public void reportsAConnectionFailure() throws Exception {
+        final RecordingCallback callback;
+        final ServerSocket socket;
+        final int closedPort;
+
+        socket = new ServerSocket(0);
+        closedPort = socket.getLocalPort();
+        socket.close();
+        client = new AsyncHttpClient(1000, 1000);
+        client.start();
+        callback = new RecordingCallback();
+        client.post("http://localhost:" + closedPort + "/", "cmd=open".getBytes("UTF-8"), FORM, callback);
+
+        callback.await();
+        assertNull(callback.response);
+        assertNotNull(callback.failure);
+        assertEquals(0, client.inFlightRequestCount());
+    }
+
+    @Test
+    public void reportsAnUnknownHost() throws Exception {
+        final RecordingCallback callback;
+
+        client = new AsyncHttpClient(1000, 1000);
+        client.start();
+        callback = new RecordingCallback();
+        client.post("http://no.such.host.invalid/", "cmd=open".getBytes("UTF-8"), FORM, callback);
+
+        callback.await();
+        assertTrue(callback.failure instanceof UnknownHostException);
+        assertEquals(0, client.inFlightRequestCount());
+    }
+
+    @Test
+    public void reportsAReadTimeOut() throws Exception {
+        final RecordingCallback callback;
+
+        server = new EchoHttpServer(2000).start();
+        client = new AsyncHttpClient(1000, 100);
+        client.start();
+        callback = new RecordingCallback();
+        client.post(server.url(), "cmd=open".getBytes("UTF-8"), FORM, callback);
+
+        callback.await();
+        assertTrue(callback.failure instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void aRequestTimeOutOverridesTheClientOne() throws Exception {
+        final RecordingCallback callback;
+
+        server = new EchoHttpServer(2000).start();
+        client = new AsyncHttpClient(1000, 0);
+        client.start();
+        callback = new RecordingCallback();
+        client.post(server.url(), "cmd=open".getBytes("UTF-8"), FORM, 100, callback);
+
+        callback.await();
+        assertTrue(callback.failure instanceof SocketTimeoutException);
+        assertEquals(0, client.idleConnectionCount());
+    }
+
+    @Test
+    public void shutdownFailsRequestsInFlight() throws Exception {
+        final RecordingCallback callback;
+
+        server = new EchoHttpServer(2000).start();
+        client = new AsyncHttpClient(1000, 0);
+        client.start();
+        callback = new RecordingCallback();
+        client.post(server.url(), "cmd=open".getBytes("UTF-8"), FORM, callback);
+        Thread.sleep(100);
+        client.shutdown();
+
+        callback.await();
+        assertNotNull(callback.failure);
+    }
+
+    protected static class RecordingCallback implements ResponseCallback {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Response response;
+        private volatile IOException failure;
+
+        public void completed(Response response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        public void failed(IOException e) {
+            this.failure = e;
+            done.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            assertTrue("no response within 5 seconds", done.await(5, TimeUnit.SECONDS));
+        }
+
+    }
+
+}
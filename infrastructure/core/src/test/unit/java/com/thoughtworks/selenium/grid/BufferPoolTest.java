@@ -0,0 +1,64 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertSame;
+import org.junit.Test;
+
+
+public class BufferPoolTest {
+
+    @Test
+    public void acquireAllocatesABufferOfTheConfiguredSizeWhenThePoolIsEmpty() {
+        assertEquals(512, new BufferPool(512, 2).acquire().length);
+    }
+
+    @Test
+    public void acquireReusesAReleasedBuffer() {
+        final BufferPool pool;
+        final byte[] buffer;
+
+        pool = new BufferPool(512, 2);
+        buffer = pool.acquire();
+        pool.release(buffer);
+        assertSame(buffer, pool.acquire());
+    }
+
+    @Test
+    public void releaseDropsBuffersOnceThePoolIsFull() {
+        final BufferPool pool;
+
+        pool = new BufferPool(512, 2);
+        pool.release(new byte[512]);
+        pool.release(new byte[512]);
+        pool.release(new byte[512]);
+        assertEquals(2, pool.pooledBufferCount());
+    }
+
+    @Test
+    public void releaseIgnoresBuffersOfTheWrongSize() {
+        final BufferPool pool;
+        final byte[] buffer;
+
+        pool = new BufferPool(512, 2);
+        buffer = new byte[12];
+        pool.release(buffer);
+        assertEquals(0, pool.pooledBufferCount());
+        assertNotSame(buffer, pool.acquire());
+    }
+
+    @Test
+    public void releaseIgnoresNull() {
+        final BufferPool pool;
+
+        pool = new BufferPool(512, 2);
+        pool.release(null);
+        assertEquals(0, pool.pooledBufferCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferSizeMustBeStrictlyPositive() {
+        new BufferPool(0, 2);
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fake remote control echoing the body of each request, in the spirit of the remote control
+ * module's <code>EchoRemoteControl</code>, with an optional latency injected before replying.
+ * <p/>
+ * Speaks just enough HTTP/1.1 for tests and benchmarks: keep-alive connections, requests with a
+ * <code>Content-Length</code>, one thread per connection.
+ */
+public class EchoHttpServer {
+
+    private final ServerSocket serverSocket;
+    private final long latencyInMilliseconds;
+    private final AtomicInteger connectionCount;
+    private final AtomicInteger requestCount;
+    private volatile boolean closeAfterEachResponse;
+    private volatile boolean running;
+
+    public EchoHttpServer(long latencyInMilliseconds) throws IOException {
+        this.serverSocket = new ServerSocket(0, 1024);
+        this.latencyInMilliseconds = latencyInMilliseconds;
+        this.connectionCount = new AtomicInteger(0);
+        this.requestCount = new AtomicInteger(0);
+    }
+
+    public EchoHttpServer start() {
+        final Thread acceptor;
+
+        running = true;
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        }, "Echo HTTP Server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        serverSocket.close();
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String url() {
+        return "http://localhost:" + port() + "/selenium-server/driver/";
+    }
+
+    public int connectionCount() {
+        return connectionCount.get();
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Answer with <code>Connection: close</code> and close the connection after each response.
+     */
+    public void closeAfterEachResponse() {
+        closeAfterEachResponse = true;
+    }
+
+    protected void acceptConnections() {
+        while (running) {
+            final Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            connectionCount.incrementAndGet();
+            new Thread(new Runnable() {
+                public void run() {
+                    serve(socket);
+                }
+            }).start();
+        }
+    }
+
+    protected void serve(Socket socket) {
+        try {
+            final InputStream in = socket.getInputStream();
+            final OutputStream out = socket.getOutputStream();
+
+            while (running) {
+                final int contentLength;
+                final byte[] body;
+
+                contentLength = readHeaders(in);
+                if (-1 == contentLength) {
+                    break;
+                }
+                body = IOHelper.readFully(in, contentLength);
+                requestCount.incrementAndGet();
+                if (latencyInMilliseconds > 0) {
+                    Thread.sleep(latencyInMilliseconds);
+                }
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + body.length
+                           + (closeAfterEachResponse ? "\r\nConnection: close" : "") + "\r\n\r\n").getBytes("ISO-8859-1"));
+                out.write(body);
+                out.flush();
+                if (closeAfterEachResponse) {
+                    break;
+                }
+            }
+        } catch (SocketException e) {
+            /* Client went away */
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                /* Ignore */
+            }
+        }
+    }
+
+    /**
+     * @return Content length of the request, -1 if the connection was closed before a new request.
+     */
+    protected static int readHeaders(InputStream in) throws IOException {
+        final ByteArrayOutputStream line;
+        int contentLength = 0;
+        boolean empty = true;
+        int c;
+
+        line = new ByteArrayOutputStream();
+        while (-1 != (c = in.read())) {
+            if ('\n' != c) {
+                if ('\r' != c) {
+                    line.write(c);
+                }
+                continue;
+            }
+            final String header = line.toString("ISO-8859-1");
+            line.reset();
+            if (0 == header.length()) {
+                return contentLength;
+            }
+            empty = false;
+            if (header.toLowerCase().startsWith("content-length:")) {
+                contentLength = Integer.parseInt(header.substring("content-length:".length()).trim());
+            }
+        }
+        if (!empty) {
+            throw new IOException("Connection closed in the middle of the request headers");
+        }
+        return -1;
+    }
+
+}
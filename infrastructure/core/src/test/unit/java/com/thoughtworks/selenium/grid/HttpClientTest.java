@@ -1,16 +1,24 @@
 package com.thoughtworks.selenium.grid;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
 
 
 public class HttpClientTest extends UsingClassMock {
@@ -102,7 +110,7 @@ public class HttpClientTest extends UsingClassMock {
         final Response expectedResponse;
 
         expectedResponse = new Response(null);
-        httpClient = new HttpClient(null) {
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
 
             protected Response request(HttpMethod method) throws IOException {
                 assertTrue(method instanceof GetMethod);
@@ -121,7 +129,7 @@ public class HttpClientTest extends UsingClassMock {
         final Response expectedResponse;
 
         expectedResponse = new Response(null);
-        httpClient = new HttpClient(null) {
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
 
             protected Response request(HttpMethod method) throws IOException {
                 assertTrue(method instanceof PostMethod);
@@ -140,7 +148,7 @@ public class HttpClientTest extends UsingClassMock {
         final HttpClient httpClient;
 
         expectedResponse = new Response(null);
-        httpClient = new HttpClient(null) {
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
 
             protected Response request(HttpMethod method) throws IOException {
                 final PostMethod postMethod;
@@ -164,7 +172,7 @@ public class HttpClientTest extends UsingClassMock {
         final HttpClient httpClient;
 
         expectedResponse = new Response(null);
-        httpClient = new HttpClient(null) {
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
 
             protected Response request(HttpMethod method) throws IOException {
                 assertEquals("application/x-www-form-urlencoded; ; charset=UTF-8",
@@ -176,4 +184,200 @@ public class HttpClientTest extends UsingClassMock {
         assertEquals(expectedResponse, httpClient.post("http://a.url/", new HttpParameters()));
     }
 
+    @Test
+    public void getWithATimeoutSetsTheSocketTimeoutOnTheMethod() throws IOException {
+        final Response expectedResponse;
+        final HttpClient httpClient;
+
+        expectedResponse = new Response(null);
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
+
+            protected Response request(HttpMethod method) throws IOException {
+                assertEquals("http://a.url/", method.getURI().toString());
+                assertEquals(1500, method.getParams().getSoTimeout());
+                return expectedResponse;
+            }
+
+        };
+        assertEquals(expectedResponse, httpClient.get("http://a.url/", 1500));
+    }
+
+    @Test
+    public void connectionManagerUsesTheProvidedConnectionTimeout() {
+        assertEquals(2500, HttpClient.connectionManager(2500).getParams().getConnectionTimeout());
+    }
+
+    @Test
+    public void streamReturnsAStreamingResponseOverTheBodyStream() throws IOException {
+        final Response response;
+        final Mock method;
+        final Mock httpClient;
+
+        httpClient = mock(org.apache.commons.httpclient.HttpClient.class);
+        httpClient.expects("executeMethod").will(returnValue(200));
+        method = mock(PostMethod.class);
+        method.expects("getResponseBodyAsStream").will(returnValue(new ByteArrayInputStream("OK".getBytes())));
+        method.stubs("getResponseHeader").will(returnValue(null));
+        method.expects("releaseConnection");
+        HttpClient client = new HttpClient((org.apache.commons.httpclient.HttpClient) httpClient);
+        response = client.stream((PostMethod) method);
+        assertTrue(response instanceof StreamingResponse);
+        assertEquals(200, response.statusCode());
+        assertEquals("OK", response.body());
+        verifyMocks();
+    }
+
+    @Test
+    public void streamHandsTheContentCodingAndLengthOverToTheResponse() throws IOException {
+        final Response response;
+        final Mock method;
+        final Mock httpClient;
+
+        httpClient = mock(org.apache.commons.httpclient.HttpClient.class);
+        httpClient.expects("executeMethod").will(returnValue(200));
+        method = mock(PostMethod.class);
+        method.expects("getResponseBodyAsStream").will(returnValue(new ByteArrayInputStream(new byte[5000])));
+        method.stubs("getResponseHeader").with("Content-Encoding").will(returnValue(new Header("Content-Encoding", "gzip")));
+        method.stubs("getResponseHeader").with("Content-Length").will(returnValue(new Header("Content-Length", "5000")));
+        response = new HttpClient((org.apache.commons.httpclient.HttpClient) httpClient).stream((PostMethod) method);
+        assertEquals("gzip", response.contentEncoding());
+        assertEquals(5000, response.contentLength());
+    }
+
+    @Test
+    public void streamAsksForGzipCompressedResponsesWhenAccepted() throws IOException {
+        final HttpConnectionPool connectionPool;
+        final HttpMethod method;
+
+        connectionPool = new HttpConnectionPool(1000, 1000, 1000, 10, 2);
+        method = new PostMethod("http://a.url/");
+        new HttpClient(connectionPool, true) {
+            protected int execute(HttpMethod method) {
+                return 200;
+            }
+        }.stream(method);
+        assertEquals("gzip", method.getRequestHeader("Accept-Encoding").getValue());
+        connectionPool.shutdown();
+    }
+
+    @Test
+    public void streamDoesNotAskForCompressedResponsesByDefault() throws IOException {
+        final HttpMethod method;
+
+        method = new PostMethod("http://a.url/");
+        new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
+            protected int execute(HttpMethod method) {
+                return 200;
+            }
+        }.stream(method);
+        assertNull(method.getRequestHeader("Accept-Encoding"));
+    }
+
+    @SuppressWarnings({"ThrowableInstanceNeverThrown"})
+    @Test(expected = ConnectException.class)
+    public void streamReleasesTheConnectionWhenAProblemOccurs() throws IOException {
+        final Mock method;
+        final Mock httpClient;
+
+        httpClient = mock(org.apache.commons.httpclient.HttpClient.class);
+        method = mock(PostMethod.class);
+        httpClient.expects("executeMethod").will(throwException(new ConnectException("an error")));
+        method.expects("releaseConnection");
+        HttpClient client = new HttpClient((org.apache.commons.httpclient.HttpClient) httpClient);
+        client.stream((PostMethod) method);
+        verifyMocks();
+    }
+
+    @Test
+    public void streamPostsTheParametersToTheURL() throws IOException {
+        final Response expectedResponse;
+        final HttpParameters parameters;
+        final HttpClient httpClient;
+
+        expectedResponse = new Response(null);
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
+
+            protected Response stream(HttpMethod method) throws IOException {
+                assertEquals("http://a.url/", method.getURI().toString());
+                assertEquals("aValue", ((PostMethod) method).getParameter("aParameter").getValue());
+                return expectedResponse;
+            }
+
+        };
+        parameters = new HttpParameters();
+        parameters.put("aParameter", "aValue");
+        assertEquals(expectedResponse, httpClient.stream("http://a.url/", parameters));
+    }
+
+    @Test
+    public void streamWithARawBodyPostsTheBytesAsIs() throws IOException {
+        final Response expectedResponse;
+        final HttpClient httpClient;
+        final byte[] body;
+
+        body = "cmd=type&1=%D0%B6&sessionId=1234".getBytes("UTF-8");
+        expectedResponse = new Response(null);
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
+
+            protected Response stream(HttpMethod method) throws IOException {
+                final ByteArrayOutputStream sent;
+                final RequestEntity entity;
+
+                assertEquals("http://a.url/", method.getURI().toString());
+                entity = ((PostMethod) method).getRequestEntity();
+                assertEquals("application/x-www-form-urlencoded; charset=UTF-8", entity.getContentType());
+                sent = new ByteArrayOutputStream();
+                entity.writeRequest(sent);
+                assertTrue(Arrays.equals(body, sent.toByteArray()));
+                return expectedResponse;
+            }
+
+        };
+        assertEquals(expectedResponse, httpClient.stream("http://a.url/", body, "application/x-www-form-urlencoded; charset=UTF-8"));
+    }
+
+    @Test
+    public void streamWithATimeOutSetsItOnTheMethod() throws IOException {
+        final HttpClient httpClient;
+
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
+
+            protected Response stream(HttpMethod method) throws IOException {
+                assertEquals(1234, method.getParams().getSoTimeout());
+                return null;
+            }
+
+        };
+        httpClient.stream("http://a.url/", "cmd=open".getBytes("UTF-8"), "a content type", 1234);
+        httpClient.stream("http://a.url/", new HttpParameters(), 1234);
+    }
+
+    @Test
+    public void streamWithoutATimeOutKeepsTheReadTimeOutOfTheClient() throws IOException {
+        final HttpClient httpClient;
+
+        httpClient = new HttpClient((org.apache.commons.httpclient.HttpClient) null) {
+
+            protected Response stream(HttpMethod method) throws IOException {
+                assertNull(method.getParams().getParameter(HttpMethodParams.SO_TIMEOUT));
+                return null;
+            }
+
+        };
+        httpClient.stream("http://a.url/", "cmd=open".getBytes("UTF-8"), "a content type", 0);
+        httpClient.stream("http://a.url/", new HttpParameters(), 0);
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void streamThrowsASocketTimeoutExceptionWhenTheResponseDoesNotArriveInTime() throws IOException {
+        final EchoHttpServer server;
+
+        server = new EchoHttpServer(2000).start();
+        try {
+            new HttpClient().stream(server.url(), "cmd=open".getBytes("UTF-8"), "a content type", 100);
+        } finally {
+            server.stop();
+        }
+    }
+
 }
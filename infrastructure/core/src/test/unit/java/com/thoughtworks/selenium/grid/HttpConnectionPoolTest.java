@@ -0,0 +1,98 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+
+import java.io.IOException;
+
+
+public class HttpConnectionPoolTest extends UsingClassMock {
+
+    @Test
+    public void clientUsesTheConfiguredTimeouts() {
+        final HttpConnectionPool pool;
+
+        pool = new HttpConnectionPool(1000, 2000, 3000, 10, 2);
+        assertEquals(1000, pool.client().getHttpConnectionManager().getParams().getConnectionTimeout());
+        assertEquals(2000, pool.client().getParams().getSoTimeout());
+        assertEquals(3000, pool.client().getParams().getConnectionManagerTimeout());
+        pool.shutdown();
+    }
+
+    @Test
+    public void maxConnectionsPerHostIsTheDefaultOneUnlessLimited() {
+        final HttpConnectionPool pool;
+
+        pool = new HttpConnectionPool(1000, 2000, 3000, 10, 2);
+        assertEquals(2, pool.maxConnectionsPerHost("a host", 5555));
+        pool.limitConnectionsPerHost("a host", 5555, 5);
+        assertEquals(5, pool.maxConnectionsPerHost("a host", 5555));
+        assertEquals(2, pool.maxConnectionsPerHost("a host", 5556));
+        pool.shutdown();
+    }
+
+    @Test
+    public void maxTotalConnectionsIsTheConfiguredOne() {
+        assertEquals(10, new HttpConnectionPool(1000, 2000, 3000, 10, 2).maxTotalConnections());
+    }
+
+    @Test
+    public void aNewPoolHasNoConnection() {
+        final HttpConnectionPool pool;
+
+        pool = new HttpConnectionPool(1000, 2000, 3000, 10, 2);
+        assertEquals(0, pool.connectionsInPool());
+        assertEquals(0, pool.connectionsInPool("a host", 5555));
+        assertEquals(0, pool.acquireTimeoutCount());
+    }
+
+    @Test
+    public void startReapingIdleConnectionsOnlyStartsOneReaper() {
+        final HttpConnectionPool pool;
+
+        pool = new HttpConnectionPool(1000, 2000, 3000, 10, 2);
+        assertFalse(pool.reapingIdleConnections());
+        pool.startReapingIdleConnections(60000);
+        pool.startReapingIdleConnections(60000);
+        assertTrue(pool.reapingIdleConnections());
+        pool.shutdown();
+        assertFalse(pool.reapingIdleConnections());
+    }
+
+    @Test
+    public void anHttpClientOnThePoolSharesItsConnections() {
+        final HttpConnectionPool pool;
+
+        pool = new HttpConnectionPool(1000, 2000, 3000, 10, 2);
+        assertSame(pool, new HttpClient(pool).connectionPool());
+    }
+
+    @SuppressWarnings({"ThrowableInstanceNeverThrown"})
+    @Test
+    public void anHttpClientOnThePoolRecordsAcquireTimeouts() throws IOException {
+        final HttpConnectionPool pool;
+        final Mock httpClient;
+
+        httpClient = mock(org.apache.commons.httpclient.HttpClient.class);
+        httpClient.stubs("executeMethod").will(throwException(new ConnectionPoolTimeoutException("pool exhausted")));
+        pool = new HttpConnectionPool(1000, 2000, 3000, 10, 2) {
+            public org.apache.commons.httpclient.HttpClient client() {
+                return (org.apache.commons.httpclient.HttpClient) httpClient;
+            }
+        };
+        try {
+            new HttpClient(pool).get("http://a.host:5555/");
+            fail("Expected a ConnectionPoolTimeoutException");
+        } catch (ConnectionPoolTimeoutException e) {
+            assertEquals(1, pool.acquireTimeoutCount());
+        }
+    }
+
+}
@@ -118,4 +118,20 @@ public class HttpParametersTest extends UsingClassMock {
         assertEquals("aValue", parameters.get("aParameter"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void putNeverModifiesTheMapPassedToTheConstructor() {
+        final HttpParameters parameters;
+        final Map<String, String[]> aMap;
+
+        aMap = new HashMap<String,String[]>();
+        aMap.put("aParameter", new String[] {"aValue"});
+        parameters = new HttpParameters(aMap);
+        parameters.put("aParameter", "anotherValue");
+        parameters.put("anotherParameter", "aValue");
+        assertEquals("aValue", aMap.get("aParameter")[0]);
+        assertEquals(1, aMap.size());
+        assertEquals("anotherValue", parameters.get("aParameter"));
+        assertEquals("aValue", parameters.get("anotherParameter"));
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+public class HttpResponseParserTest {
+
+    @Test
+    public void parsesAResponseWithAContentLength() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        assertTrue(parser.parse(bytes("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK")));
+        assertEquals(200, parser.statusCode());
+        assertEquals("OK", parser.body().toString("UTF-8"));
+        assertTrue(parser.keepAlive());
+    }
+
+    @Test
+    public void parsesAResponseFedOneByteAtATime() throws IOException {
+        final String response = "HTTP/1.1 200 OK\r\nContent-Length: 11\r\n\r\nOK,session!";
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        for (int i = 0; i < response.length() - 1; i++) {
+            assertFalse(parser.parse(bytes(response.substring(i, i + 1))));
+        }
+        assertTrue(parser.parse(bytes("!")));
+        assertEquals("OK,session!", parser.body().toString("UTF-8"));
+    }
+
+    @Test
+    public void leavesTheBytesFollowingTheResponseInTheBuffer() throws IOException {
+        final HttpResponseParser parser;
+        final ByteBuffer buffer;
+
+        parser = new HttpResponseParser();
+        buffer = bytes("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOKextra");
+        assertTrue(parser.parse(buffer));
+        assertEquals(5, buffer.remaining());
+    }
+
+    @Test
+    public void parsesAChunkedResponse() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        assertTrue(parser.parse(bytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                                      + "3;ext=1\r\nOK,\r\n7\r\nsession\r\n0\r\nTrailer: x\r\n\r\n")));
+        assertEquals("OK,session", parser.body().toString("UTF-8"));
+        assertTrue(parser.keepAlive());
+    }
+
+    @Test
+    public void aResponseWithoutLengthEndsWithTheConnection() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        assertFalse(parser.parse(bytes("HTTP/1.1 200 OK\r\n\r\nOK")));
+        assertTrue(parser.endOfStream());
+        assertEquals("OK", parser.body().toString("UTF-8"));
+        assertFalse(parser.keepAlive());
+    }
+
+    @Test
+    public void closingTheConnectionInTheMiddleOfTheResponseIsAnError() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        parser.parse(bytes("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nOK"));
+        try {
+            parser.endOfStream();
+            fail("did not catch EOFException");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void connectionCloseHeaderDisablesKeepAlive() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        parser.parse(bytes("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"));
+        assertTrue(parser.complete());
+        assertFalse(parser.keepAlive());
+    }
+
+    @Test
+    public void http10ConnectionsAreOnlyKeptAliveWhenAsked() throws IOException {
+        HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        parser.parse(bytes("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(parser.keepAlive());
+
+        parser = new HttpResponseParser();
+        parser.parse(bytes("HTTP/1.0 200 OK\r\nConnection: Keep-Alive\r\nContent-Length: 0\r\n\r\n"));
+        assertTrue(parser.keepAlive());
+    }
+
+    @Test
+    public void skipsInterimResponses() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        assertTrue(parser.parse(bytes("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 500 Error\r\nContent-Length: 1\r\n\r\nX")));
+        assertEquals(500, parser.statusCode());
+        assertEquals("X", parser.body().toString("UTF-8"));
+    }
+
+    @Test
+    public void spillsALargeBodyOverToAFile() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser(4);
+        assertTrue(parser.parse(bytes("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nOK,a title")));
+        assertTrue(parser.body().spilled());
+        assertEquals("OK,a title", parser.body().toString("UTF-8"));
+        parser.dispose();
+    }
+
+    @Test
+    public void noContentResponsesHaveNoBody() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        assertTrue(parser.parse(bytes("HTTP/1.1 204 No Content\r\n\r\n")));
+        assertEquals(0, parser.body().length());
+        assertTrue(parser.keepAlive());
+    }
+
+    @Test
+    public void startedOnlyOnceSomeBytesWereReceived() throws IOException {
+        final HttpResponseParser parser;
+
+        parser = new HttpResponseParser();
+        parser.parse(bytes(""));
+        assertFalse(parser.started());
+        parser.parse(bytes("H"));
+        assertTrue(parser.started());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAMalformedStatusLine() throws IOException {
+        new HttpResponseParser().parse(bytes("NOT HTTP\r\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAMalformedContentLength() throws IOException {
+        new HttpResponseParser().parse(bytes("HTTP/1.1 200 OK\r\nContent-Length: many\r\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAMalformedChunkSize() throws IOException {
+        new HttpResponseParser().parse(bytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n"));
+    }
+
+    protected static ByteBuffer bytes(String text) throws IOException {
+        return ByteBuffer.wrap(text.getBytes("ISO-8859-1"));
+    }
+
+}
@@ -6,6 +6,8 @@ import org.jbehave.core.mock.Mock;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -16,6 +18,17 @@ import java.net.Socket;
 
 public class IOHelperTest extends UsingClassMock {
 
+    @Test
+    public void copyStreamWithAByteBufferCopiesTheWholeInputStream() throws IOException {
+        final ByteArrayOutputStream out;
+        final long bytesCopied;
+
+        out = new ByteArrayOutputStream();
+        bytesCopied = IOHelper.copyStream(new ByteArrayInputStream("some content".getBytes()), out, new byte[5]);
+        assertEquals("some content", out.toString());
+        assertEquals(12, bytesCopied);
+    }
+
     @Test
     public void closeWorksFineIfInputStreamIsNull() {
         IOHelper.close((InputStream) null);
@@ -151,4 +164,20 @@ public class IOHelperTest extends UsingClassMock {
             IOHelper.close(inputStream);
         }
     }
+
+    @Test
+    public void readFullyReadsTheExpectedNumberOfBytes() throws IOException {
+        assertEquals("some", new String(IOHelper.readFully(new ByteArrayInputStream("some content".getBytes()), 4)));
+    }
+
+    @Test
+    public void readFullyReadsTheWholeStreamWhenTheLengthIsUnknown() throws IOException {
+        assertEquals("some content", new String(IOHelper.readFully(new ByteArrayInputStream("some content".getBytes()), -1)));
+    }
+
+    @Test(expected = EOFException.class)
+    public void readFullyFailsWhenTheStreamEndsBeforeTheExpectedLength() throws IOException {
+        IOHelper.readFully(new ByteArrayInputStream("some".getBytes()), 5);
+    }
+
 }
@@ -0,0 +1,123 @@
+package com.thoughtworks.selenium.grid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures what relaying a remote control reply to the client costs the Hub, per command:
+ * the former String-only response (decode the body received, re-encode it on write) against
+ * the bytes-first response (write the bytes received as is).
+ * <p/>
+ * Reports the average time and, on JVMs providing per thread allocation counters (HotSpot),
+ * the average number of bytes allocated for a typical reply and for a screenshot sized one.
+ * <p/>
+ * Run with: <code>ant benchmark -Dbenchmark=com.thoughtworks.selenium.grid.ResponseAllocationBenchmark</code>
+ */
+public class ResponseAllocationBenchmark {
+
+    private static final int COMMANDS = 200000;
+    private static final int LARGE_COMMANDS = 200;
+    private static final int WARM_UP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        final byte[] typicalReply;
+        final byte[] screenshotReply;
+
+        typicalReply = reply(64);
+        screenshotReply = reply(1024 * 1024);
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            run(new DecodingRelay(), typicalReply, COMMANDS);
+            run(new BytesFirstRelay(), typicalReply, COMMANDS);
+        }
+        System.out.println(report("String body, 64 bytes  ", new DecodingRelay(), typicalReply, COMMANDS));
+        System.out.println(report("bytes body,  64 bytes  ", new BytesFirstRelay(), typicalReply, COMMANDS));
+        System.out.println(report("String body, 1MB       ", new DecodingRelay(), screenshotReply, LARGE_COMMANDS));
+        System.out.println(report("bytes body,  1MB       ", new BytesFirstRelay(), screenshotReply, LARGE_COMMANDS));
+    }
+
+    protected static String report(String label, Relay relay, byte[] reply, int commands) throws IOException {
+        final long allocatedBefore;
+        final long allocatedAfter;
+        final long start;
+        final long elapsed;
+
+        allocatedBefore = allocatedBytes();
+        start = System.nanoTime();
+        run(relay, reply, commands);
+        elapsed = System.nanoTime() - start;
+        allocatedAfter = allocatedBytes();
+        return label + ": " + (elapsed / commands) + " ns/command, "
+               + (allocatedBefore < 0 ? "n/a" : String.valueOf((allocatedAfter - allocatedBefore) / commands))
+               + " bytes allocated/command";
+    }
+
+    protected static void run(Relay relay, byte[] reply, int commands) throws IOException {
+        final OutputStream client;
+
+        client = new DiscardingOutputStream();
+        for (int i = 0; i < commands; i++) {
+            relay.relay(reply, client);
+        }
+    }
+
+    /**
+     * @return Bytes allocated so far by the current thread, -1 if the JVM cannot tell.
+     */
+    protected static long allocatedBytes() {
+        final ThreadMXBean threads;
+
+        threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    protected static byte[] reply(int length) throws IOException {
+        final StringBuilder reply;
+
+        reply = new StringBuilder("OK,");
+        while (reply.length() < length) {
+            reply.append((char) ('a' + reply.length() % 26));
+        }
+        return reply.toString().getBytes("UTF-8");
+    }
+
+    protected interface Relay {
+
+        void relay(byte[] reply, OutputStream client) throws IOException;
+
+    }
+
+    /**
+     * What the Hub used to do: decode the reply when receiving it, encode it again when writing it.
+     */
+    protected static class DecodingRelay implements Relay {
+
+        public void relay(byte[] reply, OutputStream client) throws IOException {
+            new Response(200, new String(reply, "UTF-8")).writeTo(client);
+        }
+
+    }
+
+    protected static class BytesFirstRelay implements Relay {
+
+        public void relay(byte[] reply, OutputStream client) throws IOException {
+            new Response(200, reply).writeTo(client);
+        }
+
+    }
+
+    protected static class DiscardingOutputStream extends OutputStream {
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] bytes, int offset, int length) {
+        }
+
+    }
+
+}
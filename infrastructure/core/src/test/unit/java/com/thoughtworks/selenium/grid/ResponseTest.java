@@ -3,6 +3,10 @@ package com.thoughtworks.selenium.grid;
 import junit.framework.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
 
 public class ResponseTest {
 
@@ -16,6 +20,11 @@ public class ResponseTest {
        Assert.assertEquals("ERROR: a message", new Response("a message").body());
     }
 
+    @Test
+    public void byDefaultThereIsNoRetryAfter() {
+       Assert.assertEquals(-1, new Response(200, "OK").retryAfterInSeconds());
+    }
+
     @Test
     public void statusCodeReturnsTheOneProvidedInTheConstructor() {
        Assert.assertEquals(123, new Response(123, "").statusCode());
@@ -26,4 +35,55 @@ public class ResponseTest {
        Assert.assertEquals("some content", new Response(0, "some content").body());
     }
 
+    @Test
+    public void writeToWritesTheBodyAsUTF8() throws IOException {
+        final ByteArrayOutputStream out;
+
+        out = new ByteArrayOutputStream();
+        new Response(0, "32 d\u00e9cembre").writeTo(out);
+        Assert.assertEquals("32 d\u00e9cembre", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void previewReturnsTheWholeBodyWhenShortEnough() {
+        Assert.assertEquals("OK,1234", new Response(0, "OK,1234").preview(7));
+    }
+
+    @Test
+    public void previewTruncatesLongBodies() {
+        Assert.assertEquals("OK,1...[3 characters truncated]", new Response(0, "OK,1234").preview(4));
+    }
+
+    @Test
+    public void bodyDecodesTheUTF8BytesProvidedInTheConstructor() throws IOException {
+        final Response response;
+
+        response = new Response(200, "32 d\u00e9cembre".getBytes("UTF-8"));
+        Assert.assertEquals("32 d\u00e9cembre", response.body());
+        Assert.assertSame(response.body(), response.body());
+    }
+
+    @Test
+    public void writeToWritesTheBytesProvidedInTheConstructorAsIs() throws IOException {
+        final ByteArrayOutputStream out;
+        final byte[] bytes;
+
+        out = new ByteArrayOutputStream();
+        bytes = "32 d\u00e9cembre".getBytes("UTF-8");
+        new Response(200, bytes).writeTo(out);
+        Assert.assertTrue(Arrays.equals(bytes, out.toByteArray()));
+    }
+
+    @Test
+    public void contentLengthIsTheNumberOfUTF8Bytes() throws IOException {
+        Assert.assertEquals(12, new Response(200, "32 d\u00e9cembre".substring(0, 11)).contentLength());
+    }
+
+    @Test
+    public void previewOfLongBytesOnlyDecodesTheirBeginning() throws IOException {
+        Assert.assertEquals("OK,1...[3 bytes truncated]", new Response(0, "OK,1234".getBytes("UTF-8")).preview(4));
+        Assert.assertEquals("OK,...[3 bytes truncated]", new Response(0, "OK,\u00e9!".getBytes("UTF-8")).preview(4));
+        Assert.assertEquals("OK,1234", new Response(0, "OK,1234".getBytes("UTF-8")).preview(7));
+    }
+
 }
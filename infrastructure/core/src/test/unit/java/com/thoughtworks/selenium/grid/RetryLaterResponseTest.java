@@ -0,0 +1,24 @@
+package com.thoughtworks.selenium.grid;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+
+public class RetryLaterResponseTest {
+
+    @Test
+    public void statusCodeIsServiceUnavailable() {
+       Assert.assertEquals(503, new RetryLaterResponse("Too busy", 10).statusCode());
+    }
+
+    @Test
+    public void bodyIsAnErrorMessage() {
+       Assert.assertEquals("ERROR: Too busy", new RetryLaterResponse("Too busy", 10).body());
+    }
+
+    @Test
+    public void retryAfterInSecondsIsTheOneProvidedInTheConstructor() {
+       Assert.assertEquals(10, new RetryLaterResponse("Too busy", 10).retryAfterInSeconds());
+    }
+
+}
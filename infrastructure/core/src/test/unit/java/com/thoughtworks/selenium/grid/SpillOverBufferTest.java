@@ -0,0 +1,110 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+
+public class SpillOverBufferTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("spill-over-buffer-test", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void contentUnderTheThresholdStaysInMemory() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(10, directory);
+        buffer.write("0123456789".getBytes("UTF-8"));
+        buffer.close();
+        assertFalse(buffer.spilled());
+        assertEquals(0, directory.listFiles().length);
+        assertEquals("0123456789", buffer.toString("UTF-8"));
+    }
+
+    @Test
+    public void contentOverTheThresholdSpillsOverToATemporaryFile() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(10, directory);
+        buffer.write("0123456789".getBytes("UTF-8"));
+        buffer.write('a');
+        buffer.close();
+        assertTrue(buffer.spilled());
+        assertEquals(1, directory.listFiles().length);
+        assertEquals(11, buffer.length());
+        assertEquals("0123456789a", buffer.toString("UTF-8"));
+    }
+
+    @Test
+    public void spilledContentCanBeReadSeveralTimes() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(4, directory);
+        buffer.write("\u0436screenshot".getBytes("UTF-8"));
+        buffer.close();
+        assertEquals("\u0436screenshot", new String(IOHelper.readFully(buffer.inputStream(), -1), "UTF-8"));
+        assertEquals("\u0436screenshot", new String(IOHelper.readFully(buffer.inputStream(), -1), "UTF-8"));
+    }
+
+    @Test
+    public void disposeDeletesTheTemporaryFile() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(0, directory);
+        buffer.write('a');
+        buffer.close();
+        buffer.dispose();
+        buffer.dispose();
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cannotBeReadBeforeBeingClosed() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(10, directory);
+        buffer.write('a');
+        buffer.inputStream();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cannotBeReadOnceDisposedOf() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(10, directory);
+        buffer.close();
+        buffer.dispose();
+        buffer.toString("UTF-8");
+    }
+
+    @Test(expected = IOException.class)
+    public void cannotBeWrittenOnceClosed() throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(10, directory);
+        buffer.close();
+        buffer.write('a');
+    }
+
+}
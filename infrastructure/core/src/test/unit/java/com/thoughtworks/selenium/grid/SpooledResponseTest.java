@@ -0,0 +1,49 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+
+public class SpooledResponseTest {
+
+    @Test
+    public void bodyIsTheDecodedSpooledContent() throws IOException {
+        assertEquals("OK,\u0436screenshot", new SpooledResponse(200, spooled("OK,\u0436screenshot")).body());
+    }
+
+    @Test
+    public void writeToCopiesTheSpooledBytesAndDisposesOfThem() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SpillOverBuffer body;
+
+        body = spooled("1=OK&2=OK%2Ctrue");
+        new SpooledResponse(200, body).writeTo(out);
+        assertEquals("1=OK&2=OK%2Ctrue", out.toString("UTF-8"));
+        try {
+            body.inputStream();
+            fail("spooled body should have been disposed of");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void previewOfALargeBodyOnlyDecodesItsBeginning() throws IOException {
+        assertEquals("1=OK...[12 bytes truncated]", new SpooledResponse(200, spooled("1=OK&2=OK%2Ctrue")).preview(4));
+        assertEquals("1=OK", new SpooledResponse(200, spooled("1=OK")).preview(4));
+    }
+
+    private static SpillOverBuffer spooled(String content) throws IOException {
+        final SpillOverBuffer buffer;
+
+        buffer = new SpillOverBuffer(4, null);
+        buffer.write(content.getBytes("UTF-8"));
+        buffer.close();
+        return buffer;
+    }
+
+}
@@ -0,0 +1,312 @@
+package com.thoughtworks.selenium.grid;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import org.apache.commons.httpclient.HttpMethod;
+import org.jbehave.classmock.UsingClassMock;
+import org.jbehave.core.mock.Mock;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+
+public class StreamingResponseTest extends UsingClassMock {
+
+    @Test
+    public void statusCodeIsTheOneProvidedInTheConstructor() throws IOException {
+        assertEquals(404, new StreamingResponse(404, null, stream("OK"), BufferPool.shared()).statusCode());
+    }
+
+    @Test
+    public void aSmallBodyIsReadEagerlyAndReleasesTheConnectionRightAway() throws IOException {
+        final StreamingResponse response;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection");
+        response = new StreamingResponse(200, (HttpMethod) method, stream("OK,1234"), BufferPool.shared());
+        verifyMocks();
+        assertTrue(response.complete());
+        assertEquals("OK,1234", response.body());
+    }
+
+    @Test
+    public void aBodyOfExactlyThePeekSizeIsComplete() throws IOException {
+        final StreamingResponse response;
+
+        response = new StreamingResponse(200, null, stream(text(StreamingResponse.PEEK_SIZE)), BufferPool.shared());
+        assertTrue(response.complete());
+    }
+
+    @Test
+    public void aLargeBodyIsNotReadUntilNeeded() throws IOException {
+        final StreamingResponse response;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection").never();
+        response = new StreamingResponse(200, (HttpMethod) method, stream(text(StreamingResponse.PEEK_SIZE + 1)), BufferPool.shared());
+        verifyMocks();
+        assertFalse(response.complete());
+    }
+
+    @Test
+    public void writeToCopiesTheWholeBodyAndReleasesTheConnection() throws IOException {
+        final ByteArrayOutputStream out;
+        final StreamingResponse response;
+        final String body;
+        final Mock method;
+
+        body = text(100000);
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection");
+        response = new StreamingResponse(200, (HttpMethod) method, stream(body), new BufferPool(100, 1));
+        out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        assertEquals(body, out.toString("UTF-8"));
+        verifyMocks();
+    }
+
+    @Test
+    public void writeToKeepsMultiByteCharactersSplitAcrossBuffersIntact() throws IOException {
+        final ByteArrayOutputStream out;
+        final StreamingResponse response;
+        final StringBuilder body;
+
+        body = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            body.append("\u0436\u0443");
+        }
+        response = new StreamingResponse(200, null, stream(body.toString()), new BufferPool(7, 1));
+        out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        assertEquals(body.toString(), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void writeToClosesTheConnectionWhenCopyFails() throws IOException {
+        final StreamingResponse response;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.expects("abort");
+        method.expects("releaseConnection");
+        response = new StreamingResponse(200, (HttpMethod) method, failingAfter(text(StreamingResponse.PEEK_SIZE + 1)), BufferPool.shared());
+        try {
+            response.writeTo(new ByteArrayOutputStream());
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            verifyMocks();
+        }
+    }
+
+    @Test
+    public void bodyReadsTheRestOfALargeBodyInMemory() throws IOException {
+        final StreamingResponse response;
+        final String body;
+
+        body = text(5000);
+        response = new StreamingResponse(200, null, stream(body), BufferPool.shared());
+        assertEquals(body, response.body());
+        assertEquals(body, response.body());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void aLargeBodyCannotBeRetrievedOnceStreamed() throws IOException {
+        final StreamingResponse response;
+
+        response = new StreamingResponse(200, null, stream(text(5000)), BufferPool.shared());
+        response.writeTo(new ByteArrayOutputStream());
+        response.body();
+    }
+
+    @Test
+    public void aNullBodyIsEmpty() throws IOException {
+        assertEquals("", new StreamingResponse(200, null, null, BufferPool.shared()).body());
+    }
+
+    @Test
+    public void releaseOnlyReleasesTheConnectionOnce() throws IOException {
+        final StreamingResponse response;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection").once();
+        response = new StreamingResponse(200, (HttpMethod) method, stream(text(5000)), BufferPool.shared());
+        response.release();
+        response.release();
+        verifyMocks();
+    }
+
+    @Test
+    public void previewOfALargeBodyOnlyUsesThePeekedBytes() throws IOException {
+        final StreamingResponse response;
+
+        response = new StreamingResponse(200, null, stream(text(5000)), BufferPool.shared());
+        assertEquals(text(10) + "...[streamed]", response.preview(10));
+        assertFalse(response.complete());
+    }
+
+    @Test
+    public void previewOfASmallBodyIsTheBodyItself() throws IOException {
+        assertEquals("OK", new StreamingResponse(200, null, stream("OK"), BufferPool.shared()).preview(10));
+    }
+
+    @Test
+    public void writeToRelaysAGzipEncodedBodyAsIs() throws IOException {
+        final ByteArrayOutputStream out;
+        final StreamingResponse response;
+        final byte[] compressed;
+
+        compressed = gzip(text(100000));
+        response = new StreamingResponse(200, null, new ByteArrayInputStream(compressed), "gzip", compressed.length,
+                                         new BufferPool(100, 1));
+        out = new ByteArrayOutputStream();
+        response.writeTo(out);
+        assertTrue(Arrays.equals(compressed, out.toByteArray()));
+        assertEquals("gzip", response.contentEncoding());
+    }
+
+    @Test
+    public void writeDecodedToDecompressesAGzipEncodedBody() throws IOException {
+        final ByteArrayOutputStream out;
+        final StreamingResponse response;
+        final Mock method;
+        final String body;
+
+        body = text(100000);
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection");
+        response = new StreamingResponse(200, (HttpMethod) method, new ByteArrayInputStream(gzip(body)), "gzip", -1,
+                                         new BufferPool(100, 1));
+        out = new ByteArrayOutputStream();
+        response.writeDecodedTo(out);
+        assertEquals(body, out.toString("UTF-8"));
+        verifyMocks();
+    }
+
+    @Test
+    public void bodyDecompressesAGzipEncodedBody() throws IOException {
+        assertEquals("OK,1234", new StreamingResponse(200, null, new ByteArrayInputStream(gzip("OK,1234")), "gzip", -1,
+                                                      BufferPool.shared()).body());
+        assertEquals(text(5000), new StreamingResponse(200, null, new ByteArrayInputStream(gzip(text(5000))), "gzip", -1,
+                                                       BufferPool.shared()).body());
+    }
+
+    @Test
+    public void writeDecodedToCopiesABodyWithoutContentCodingAsIs() throws IOException {
+        final ByteArrayOutputStream out;
+
+        out = new ByteArrayOutputStream();
+        new StreamingResponse(200, null, stream(text(5000)), BufferPool.shared()).writeDecodedTo(out);
+        assertEquals(text(5000), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void contentLengthIsKnownForACompleteBody() throws IOException {
+        assertEquals(2, new StreamingResponse(200, null, stream("OK"), BufferPool.shared()).contentLength());
+        assertEquals(-1, new StreamingResponse(200, null, stream(text(5000)), BufferPool.shared()).contentLength());
+        assertEquals(5000, new StreamingResponse(200, null, stream(text(5000)), null, 5000, BufferPool.shared()).contentLength());
+    }
+
+    @Test
+    public void openBodySpoolsALargeBodyAndReleasesTheConnection() throws IOException {
+        final StreamingResponse response;
+        final Mock method;
+
+        method = mock(HttpMethod.class);
+        method.expects("releaseConnection").once();
+        response = new StreamingResponse(200, (HttpMethod) method, stream(text(5000)), BufferPool.shared());
+        assertEquals(text(5000), new String(IOHelper.readFully(response.openBody(), -1), "UTF-8"));
+        verifyMocks();
+        assertTrue(response.spooled());
+    }
+
+    @Test
+    public void aSpooledBodyCanBeOpenedAgainThenWritten() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StreamingResponse response;
+
+        response = new StreamingResponse(200, null, stream(text(5000)), BufferPool.shared());
+        response.openBody();
+        assertEquals(text(5000), new String(IOHelper.readFully(response.openBody(), -1), "UTF-8"));
+        response.writeTo(out);
+        assertEquals(text(5000), out.toString("UTF-8"));
+    }
+
+    @Test
+    public void aLargeBodyIsSpooledToDiskOverTheSpillOverThreshold() throws IOException {
+        final SpillOverBuffer[] spooledBody = new SpillOverBuffer[1];
+        final StreamingResponse response;
+
+        response = new StreamingResponse(200, null, stream(text(5000)), BufferPool.shared()) {
+            protected SpillOverBuffer newSpillOverBuffer() {
+                spooledBody[0] = new SpillOverBuffer(2000, null);
+                return spooledBody[0];
+            }
+        };
+        assertEquals(text(5000), response.body());
+        assertTrue(spooledBody[0].spilled());
+        response.release();
+        try {
+            spooledBody[0].inputStream();
+            fail("spooled body should have been disposed of");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void openBodyDecompressesAGzipEncodedBody() throws IOException {
+        final StreamingResponse response;
+        final byte[] compressed;
+
+        compressed = gzip(text(50000));
+        response = new StreamingResponse(200, null, new ByteArrayInputStream(compressed), "gzip",
+                                          compressed.length, BufferPool.shared());
+        assertEquals(text(50000), new String(IOHelper.readFully(response.openBody(), -1), "UTF-8"));
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        final ByteArrayOutputStream compressed;
+        final GZIPOutputStream out;
+
+        compressed = new ByteArrayOutputStream();
+        out = new GZIPOutputStream(compressed);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private static InputStream stream(String content) throws IOException {
+        return new ByteArrayInputStream(content.getBytes("UTF-8"));
+    }
+
+    private static InputStream failingAfter(String content) throws IOException {
+        return new ByteArrayInputStream(content.getBytes("UTF-8")) {
+
+            /* Peeking uses read(byte[], int, int), copying the rest uses read(byte[]) */
+            public int read(byte[] buffer) throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+    }
+
+    private static String text(int length) {
+        final StringBuilder text;
+
+        text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,46 @@
+package com.thoughtworks.selenium.grid.configuration;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class CommandDeadlineConfigurationTest {
+
+    @Test
+    public void getCommandAndTimeoutAreTheOnesProvidedToConstructor() {
+        final CommandDeadlineConfiguration deadline;
+
+        deadline = new CommandDeadlineConfiguration("open", 60);
+        assertEquals("open", deadline.getCommand());
+        assertEquals(60.0, deadline.getTimeoutInSeconds());
+    }
+
+    @Test
+    public void aCommandNameOnlyMatchesThatCommand() {
+        final CommandDeadlineConfiguration deadline;
+
+        deadline = new CommandDeadlineConfiguration("open", 60);
+        assertTrue(deadline.matches("open"));
+        assertFalse(deadline.matches("openWindow"));
+        assertFalse(deadline.matches("click"));
+    }
+
+    @Test
+    public void aPrefixEndingWithAStarMatchesAllCommandsStartingWithIt() {
+        final CommandDeadlineConfiguration deadline;
+
+        deadline = new CommandDeadlineConfiguration("waitFor*", 60);
+        assertTrue(deadline.matches("waitForPageToLoad"));
+        assertTrue(deadline.matches("waitForCondition"));
+        assertFalse(deadline.matches("getTitle"));
+    }
+
+    @Test
+    public void nothingMatchesANullCommand() {
+        assertFalse(new CommandDeadlineConfiguration().matches("open"));
+        assertFalse(new CommandDeadlineConfiguration("open", 60).matches(null));
+    }
+
+}
@@ -17,6 +17,16 @@ public class EnvironmentConfigurationTest {
         assertEquals("*some-browser", new EnvironmentConfiguration("an environment", "*some-browser").getBrowser());
     }
 
+    @Test
+    public void byDefaultSessionMaxIdleTimeInSecondsIsNotOverridden() {
+        assertEquals(0.0, new EnvironmentConfiguration("an environment", "a browser").getSessionMaxIdleTimeInSeconds());
+    }
+
+    @Test
+    public void byDefaultMaxPendingNewSessionRequestsIsNotOverridden() {
+        assertEquals(0, new EnvironmentConfiguration("an environment", "a browser").getMaxPendingNewSessionRequests());
+    }
+
     @Test
     public void anEnvironmentInstanceIsEqualToItself() {
         final EnvironmentConfiguration anEnvironment = new EnvironmentConfiguration("same environment", "same browser");
@@ -82,6 +82,121 @@ public class GridConfigurationTest {
         assertEquals(120.0, configuration.getHub().getNewSessionMaxWaitTimeInSeconds());
     }
 
+    @Test
+    public void parseHeartbeatSettingsAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(new StringReader(
+                "hub: \n"
+              + "  heartbeatThreadCount: 32\n"
+              + "  heartbeatTimeoutInSeconds: 5\n"
+              + "  heartbeatMaxJitterInSeconds: 2"));
+        assertEquals(32, configuration.getHub().getHeartbeatThreadCount());
+        assertEquals(5.0, configuration.getHub().getHeartbeatTimeoutInSeconds());
+        assertEquals(2.0, configuration.getHub().getHeartbeatMaxJitterInSeconds());
+    }
+
+    @Test
+    public void parseEnvironmentSessionMaxIdleTimeInSecondsAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(
+                "hub: \n"
+              + "  environments:\n"
+              + "    - name: \"Firefox on Windows\"\n"
+              + "      browser: \"*firefox\"\n"
+              + "      sessionMaxIdleTimeInSeconds: 900\n");
+        assertEquals(900.0, configuration.getHub().sessionMaxIdleTimeInSecondsFor("Firefox on Windows"));
+    }
+
+    @Test
+    public void parseEnvironmentLoadBalancingStrategyAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(
+                "hub: \n"
+              + "  loadBalancingStrategy: round-robin\n"
+              + "  environments:\n"
+              + "    - name: \"Firefox on Windows\"\n"
+              + "      browser: \"*firefox\"\n"
+              + "      loadBalancingStrategy: host-spread\n");
+        assertEquals("round-robin", configuration.getHub().getLoadBalancingStrategy());
+        assertEquals("host-spread", configuration.getHub().loadBalancingStrategyFor("Firefox on Windows"));
+    }
+
+    @Test
+    public void parseMaxPendingNewSessionRequestsAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(
+                "hub: \n"
+              + "  maxPendingNewSessionRequests: 100\n"
+              + "  environments:\n"
+              + "    - name: \"Firefox on Windows\"\n"
+              + "      browser: \"*firefox\"\n"
+              + "      maxPendingNewSessionRequests: 20\n");
+        assertEquals(100, configuration.getHub().getMaxPendingNewSessionRequests());
+        assertEquals(20, configuration.getHub().maxPendingNewSessionRequestsFor("Firefox on Windows"));
+    }
+
+    @Test
+    public void parseAsyncCommandForwardingAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(new StringReader(
+                "hub: \n"
+              + "  asyncCommandForwarding: true"));
+        Assert.assertTrue(configuration.getHub().getAsyncCommandForwarding());
+    }
+
+    @Test
+    public void parseGzipCompressionAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(new StringReader(
+                "hub: \n"
+              + "  gzipCompression: true\n"
+              + "  gzipCompressionThresholdInBytes: 1024"));
+        Assert.assertTrue(configuration.getHub().getGzipCompression());
+        Assert.assertEquals(1024, configuration.getHub().getGzipCompressionThresholdInBytes());
+    }
+
+    @Test
+    public void parseCommandDeadlinesAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(
+                "hub: \n"
+              + "  commandDeadlines:\n"
+              + "    - command: \"open\"\n"
+              + "      timeoutInSeconds: 120\n"
+              + "    - command: \"waitFor*\"\n"
+              + "      timeoutInSeconds: 300\n");
+        assertEquals(2, configuration.getHub().getCommandDeadlines().length);
+        assertEquals(120.0, configuration.getHub().commandTimeoutInSecondsFor("open"));
+        assertEquals(300.0, configuration.getHub().commandTimeoutInSecondsFor("waitForCondition"));
+    }
+
+    @Test
+    public void parseTenantsAsDefinedInYaml() {
+        final GridConfiguration configuration;
+
+        configuration = GridConfiguration.parse(
+                "hub: \n"
+              + "  tenants:\n"
+              + "    - name: \"search\"\n"
+              + "      apiKey: \"s3cr3t\"\n"
+              + "      weight: 3\n"
+              + "      maxConcurrentSessions: 10\n"
+              + "    - name: \"checkout\"\n");
+        assertEquals(2, configuration.getHub().getTenants().length);
+        assertEquals("search", configuration.getHub().tenantWithApiKey("s3cr3t").getName());
+        assertEquals(3.0, configuration.getHub().tenantNamed("search").getWeight());
+        assertEquals(10, configuration.getHub().tenantNamed("search").getMaxConcurrentSessions());
+        assertEquals(1.0, configuration.getHub().tenantNamed("checkout").getWeight());
+        assertEquals(0, configuration.getHub().tenantNamed("checkout").getMaxConcurrentSessions());
+    }
+
     @Test
     public void parseHubEnvironmentsAsDefinedInYaml() {
         final EnvironmentConfiguration[] environments;
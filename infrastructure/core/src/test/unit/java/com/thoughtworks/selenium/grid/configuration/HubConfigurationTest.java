@@ -1,6 +1,10 @@
 package com.thoughtworks.selenium.grid.configuration;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import org.junit.Test;
 
 public class HubConfigurationTest {
@@ -68,4 +72,271 @@ public class HubConfigurationTest {
         configuration.setNewSessionMaxWaitTimeInSeconds(24.0);
         assertEquals(24.0, configuration.getNewSessionMaxWaitTimeInSeconds());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void byDefaultPendingNewSessionRequestsAreNotLimited() {
+        assertEquals(0, new HubConfiguration().getMaxPendingNewSessionRequests());
+    }
+
+    @Test
+    public void maxPendingNewSessionRequestsForAnEnvironmentIsTheHubOneByDefault() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setMaxPendingNewSessionRequests(50);
+        configuration.setEnvironments(new EnvironmentConfiguration[] {
+                new EnvironmentConfiguration("an environment", "*firefox")});
+        assertEquals(50, configuration.maxPendingNewSessionRequestsFor("an environment"));
+        assertEquals(50, configuration.maxPendingNewSessionRequestsFor("an unknown environment"));
+    }
+
+    @Test
+    public void maxPendingNewSessionRequestsForAnEnvironmentCanBeOverriddenPerEnvironment() {
+        final HubConfiguration configuration = new HubConfiguration();
+        final EnvironmentConfiguration environment = new EnvironmentConfiguration("an environment", "*firefox");
+        environment.setMaxPendingNewSessionRequests(200);
+        configuration.setMaxPendingNewSessionRequests(50);
+        configuration.setEnvironments(new EnvironmentConfiguration[] {environment});
+        assertEquals(200, configuration.maxPendingNewSessionRequestsFor("an environment"));
+    }
+
+    @Test
+    public void noWarmSessionsAreKeptByDefault() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setEnvironments(new EnvironmentConfiguration[] {
+                new EnvironmentConfiguration("an environment", "*firefox")});
+        assertEquals(0, configuration.warmSessionsFor("an environment"));
+        assertEquals(0, configuration.warmSessionsFor("an unknown environment"));
+    }
+
+    @Test
+    public void warmSessionsAreOnlyKeptForAnEnvironmentWithABrowserUrl() {
+        final HubConfiguration configuration = new HubConfiguration();
+        final EnvironmentConfiguration withUrl = new EnvironmentConfiguration("with url", "*firefox");
+        final EnvironmentConfiguration withoutUrl = new EnvironmentConfiguration("without url", "*firefox");
+        withUrl.setWarmSessions(2);
+        withUrl.setWarmSessionBrowserUrl("http://www.google.com");
+        withoutUrl.setWarmSessions(2);
+        configuration.setEnvironments(new EnvironmentConfiguration[] {withUrl, withoutUrl});
+        assertEquals(2, configuration.warmSessionsFor("with url"));
+        assertEquals("http://www.google.com", configuration.warmSessionBrowserUrlFor("with url"));
+        assertEquals(0, configuration.warmSessionsFor("without url"));
+    }
+
+    @Test
+    public void defaultHeartbeatThreadCountIs16() {
+        assertEquals(16, new HubConfiguration().getHeartbeatThreadCount());
+    }
+
+    @Test
+    public void heartbeatThreadCountCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setHeartbeatThreadCount(64);
+        assertEquals(64, configuration.getHeartbeatThreadCount());
+    }
+
+    @Test
+    public void defaultHeartbeatTimeoutInSecondsIs10() {
+        assertEquals(10.0, new HubConfiguration().getHeartbeatTimeoutInSeconds());
+    }
+
+    @Test
+    public void heartbeatTimeoutInSecondsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setHeartbeatTimeoutInSeconds(2.5);
+        assertEquals(2.5, configuration.getHeartbeatTimeoutInSeconds());
+    }
+
+    @Test
+    public void defaultHeartbeatMaxJitterInSecondsIs1() {
+        assertEquals(1.0, new HubConfiguration().getHeartbeatMaxJitterInSeconds());
+    }
+
+    @Test
+    public void heartbeatMaxJitterInSecondsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setHeartbeatMaxJitterInSeconds(30);
+        assertEquals(30.0, configuration.getHeartbeatMaxJitterInSeconds());
+    }
+
+    @Test
+    public void sessionMaxIdleTimeInSecondsForAnEnvironmentIsTheHubOneByDefault() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setSessionMaxIdleTimeInSeconds(24);
+        configuration.setEnvironments(new EnvironmentConfiguration[] {
+                new EnvironmentConfiguration("an environment", "*firefox")});
+        assertEquals(24.0, configuration.sessionMaxIdleTimeInSecondsFor("an environment"));
+        assertEquals(24.0, configuration.sessionMaxIdleTimeInSecondsFor("an unknown environment"));
+    }
+
+    @Test
+    public void sessionMaxIdleTimeInSecondsForAnEnvironmentCanBeOverriddenPerEnvironment() {
+        final HubConfiguration configuration = new HubConfiguration();
+        final EnvironmentConfiguration environment = new EnvironmentConfiguration("an environment", "*firefox");
+        environment.setSessionMaxIdleTimeInSeconds(600);
+        configuration.setSessionMaxIdleTimeInSeconds(24);
+        configuration.setEnvironments(new EnvironmentConfiguration[] {environment});
+        assertEquals(600.0, configuration.sessionMaxIdleTimeInSecondsFor("an environment"));
+    }
+
+    @Test
+    public void defaultLoadBalancingStrategyIsLeastRecentlyUsed() {
+        assertEquals("least-recently-used", new HubConfiguration().getLoadBalancingStrategy());
+    }
+
+    @Test
+    public void loadBalancingStrategyForAnEnvironmentIsTheHubOneByDefault() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setLoadBalancingStrategy("round-robin");
+        configuration.setEnvironments(new EnvironmentConfiguration[] {
+                new EnvironmentConfiguration("an environment", "*firefox")});
+        assertEquals("round-robin", configuration.loadBalancingStrategyFor("an environment"));
+        assertEquals("round-robin", configuration.loadBalancingStrategyFor("an unknown environment"));
+    }
+
+    @Test
+    public void loadBalancingStrategyForAnEnvironmentCanBeOverriddenPerEnvironment() {
+        final HubConfiguration configuration = new HubConfiguration();
+        final EnvironmentConfiguration environment = new EnvironmentConfiguration("an environment", "*firefox");
+        environment.setLoadBalancingStrategy("host-spread");
+        configuration.setEnvironments(new EnvironmentConfiguration[] {environment});
+        assertEquals("host-spread", configuration.loadBalancingStrategyFor("an environment"));
+    }
+
+    @Test
+    public void defaultRemoteControlConnectTimeoutInSecondsIs10() {
+        assertEquals(10.0, new HubConfiguration().getRemoteControlConnectTimeoutInSeconds());
+    }
+
+    @Test
+    public void remoteControlConnectTimeoutInSecondsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setRemoteControlConnectTimeoutInSeconds(2.5);
+        assertEquals(2.5, configuration.getRemoteControlConnectTimeoutInSeconds());
+    }
+
+    @Test
+    public void defaultRemoteControlReadTimeoutInSecondsIs0() {
+        assertEquals(0.0, new HubConfiguration().getRemoteControlReadTimeoutInSeconds());
+    }
+
+    @Test
+    public void remoteControlReadTimeoutInSecondsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setRemoteControlReadTimeoutInSeconds(90.0);
+        assertEquals(90.0, configuration.getRemoteControlReadTimeoutInSeconds());
+    }
+
+    @Test
+    public void defaultRemoteControlConnectionAcquireTimeoutInSecondsIs10() {
+        assertEquals(10.0, new HubConfiguration().getRemoteControlConnectionAcquireTimeoutInSeconds());
+    }
+
+    @Test
+    public void remoteControlConnectionAcquireTimeoutInSecondsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setRemoteControlConnectionAcquireTimeoutInSeconds(0.5);
+        assertEquals(0.5, configuration.getRemoteControlConnectionAcquireTimeoutInSeconds());
+    }
+
+    @Test
+    public void defaultRemoteControlConnectionIdleTimeoutInSecondsIs60() {
+        assertEquals(60.0, new HubConfiguration().getRemoteControlConnectionIdleTimeoutInSeconds());
+    }
+
+    @Test
+    public void remoteControlConnectionIdleTimeoutInSecondsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setRemoteControlConnectionIdleTimeoutInSeconds(15.0);
+        assertEquals(15.0, configuration.getRemoteControlConnectionIdleTimeoutInSeconds());
+    }
+
+    @Test
+    public void defaultMaxRemoteControlConnectionsIs1000() {
+        assertEquals(1000, new HubConfiguration().getMaxRemoteControlConnections());
+    }
+
+    @Test
+    public void maxRemoteControlConnectionsCanBeSetToANonDefaultValue() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setMaxRemoteControlConnections(50);
+        assertEquals(50, configuration.getMaxRemoteControlConnections());
+    }
+
+    @Test
+    public void asyncCommandForwardingIsDisabledByDefault() {
+        assertFalse(new HubConfiguration().getAsyncCommandForwarding());
+    }
+
+    @Test
+    public void asyncCommandForwardingCanBeEnabled() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setAsyncCommandForwarding(true);
+        assertTrue(configuration.getAsyncCommandForwarding());
+    }
+
+    @Test
+    public void gzipCompressionIsDisabledByDefault() {
+        assertFalse(new HubConfiguration().getGzipCompression());
+    }
+
+    @Test
+    public void gzipCompressionThresholdIs4KBytesByDefault() {
+        assertEquals(4096, new HubConfiguration().getGzipCompressionThresholdInBytes());
+    }
+
+    @Test
+    public void gzipCompressionThresholdCanBeChanged() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setGzipCompressionThresholdInBytes(512);
+        assertEquals(512, configuration.getGzipCompressionThresholdInBytes());
+    }
+
+    @Test
+    public void noCommandDeadlineIsConfiguredByDefault() {
+        assertEquals(0, new HubConfiguration().getCommandDeadlines().length);
+    }
+
+    @Test
+    public void commandTimeoutIsTheOneOfTheFirstMatchingCommandFamily() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setCommandDeadlines(new CommandDeadlineConfiguration[] {
+                new CommandDeadlineConfiguration("open", 120),
+                new CommandDeadlineConfiguration("waitFor*", 300),
+                new CommandDeadlineConfiguration("waitForPageToLoad", 10),
+        });
+        assertEquals(120.0, configuration.commandTimeoutInSecondsFor("open"));
+        assertEquals(300.0, configuration.commandTimeoutInSecondsFor("waitForPageToLoad"));
+    }
+
+    @Test
+    public void commandTimeoutIsTheRemoteControlReadTimeOutWhenNoCommandFamilyMatches() {
+        final HubConfiguration configuration = new HubConfiguration();
+        configuration.setRemoteControlReadTimeoutInSeconds(42);
+        configuration.setCommandDeadlines(new CommandDeadlineConfiguration[] {
+                new CommandDeadlineConfiguration("open", 120),
+        });
+        assertEquals(42.0, configuration.commandTimeoutInSecondsFor("click"));
+        assertEquals(42.0, configuration.commandTimeoutInSecondsFor(null));
+    }
+
+    @Test
+    public void noTenantIsConfiguredByDefault() {
+        assertEquals(0, new HubConfiguration().getTenants().length);
+        assertNull(new HubConfiguration().tenantNamed("search"));
+        assertNull(new HubConfiguration().tenantWithApiKey("s3cr3t"));
+    }
+
+    @Test
+    public void tenantsCanBeLookedUpByNameOrByApiKey() {
+        final HubConfiguration configuration;
+        final TenantConfiguration search;
+
+        search = new TenantConfiguration("search");
+        search.setApiKey("s3cr3t");
+        configuration = new HubConfiguration();
+        configuration.setTenants(new TenantConfiguration[] {new TenantConfiguration("checkout"), search});
+        assertSame(search, configuration.tenantNamed("search"));
+        assertSame(search, configuration.tenantWithApiKey("s3cr3t"));
+        assertNull(configuration.tenantWithApiKey("guess"));
+    }
+
+}
@@ -47,7 +47,7 @@ public class HeartbeatRequest {
     }
 
     protected HttpClient httpClient() {
-        return new HttpClient();
+        return new HttpClient(HubRequest.hubConnectionPool());
     }
 
 
@@ -1,6 +1,6 @@
 package com.thoughtworks.selenium.grid.remotecontrol;
 
-import org.apache.commons.httpclient.HttpClient;
+import com.thoughtworks.selenium.grid.HttpConnectionPool;
 import org.apache.commons.httpclient.methods.PostMethod;
 
 import java.io.IOException;
@@ -10,6 +10,13 @@ import java.io.IOException;
  */
 public class HubRequest {
 
+    private static final int CONNECT_TIMEOUT_IN_MILLISECONDS = 10 * 1000;
+    private static final int READ_TIMEOUT_IN_MILLISECONDS = 30 * 1000;
+    private static final int ACQUIRE_TIMEOUT_IN_MILLISECONDS = 10 * 1000;
+    private static final int IDLE_TIMEOUT_IN_MILLISECONDS = 30 * 1000;
+    private static final int MAX_HUB_CONNECTIONS = 2;
+    private static HttpConnectionPool hubConnectionPool;
+
     private final String environment;
     private final String targetURL;
     private final String host;
@@ -23,7 +30,26 @@ public class HubRequest {
     }
 
     public int execute() throws IOException {
-        return new HttpClient().executeMethod(postMethod());
+        final PostMethod postMethod;
+
+        postMethod = postMethod();
+        try {
+            return hubConnectionPool().client().executeMethod(postMethod);
+        } finally {
+            postMethod.releaseConnection();
+        }
+    }
+
+    /**
+     * @return Keep-alive connections to the Hub, shared by registration, unregistration and heartbeat requests.
+     */
+    public static synchronized HttpConnectionPool hubConnectionPool() {
+        if (null == hubConnectionPool) {
+            hubConnectionPool = new HttpConnectionPool(CONNECT_TIMEOUT_IN_MILLISECONDS, READ_TIMEOUT_IN_MILLISECONDS,
+                                                       ACQUIRE_TIMEOUT_IN_MILLISECONDS, MAX_HUB_CONNECTIONS, MAX_HUB_CONNECTIONS);
+            hubConnectionPool.startReapingIdleConnections(IDLE_TIMEOUT_IN_MILLISECONDS);
+        }
+        return hubConnectionPool;
     }
 
     public PostMethod postMethod() {
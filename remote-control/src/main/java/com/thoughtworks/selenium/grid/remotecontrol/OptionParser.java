@@ -15,6 +15,7 @@ public class OptionParser {
         private String environment;
         private String hubURL;
         private int hubPollerIntervalInSeconds;
+        private int maxConcurrentSessions;
         private final List<String> seleniumServerOptions;
 
         protected Options() {
@@ -23,6 +24,7 @@ public class OptionParser {
             this.environment = "*firefox";
             this.hubURL = "http://localhost:4444";
             this.hubPollerIntervalInSeconds = 180;
+            this.maxConcurrentSessions = 1;
             this.seleniumServerOptions = new ArrayList<String>(10);
         }
 
@@ -46,6 +48,10 @@ public class OptionParser {
             return hubPollerIntervalInSeconds;
         }
 
+        public int maxConcurrentSessions() {
+            return maxConcurrentSessions;
+        }
+
         public List<String> seleniumServerOptions() {
             return seleniumServerOptions;
         }
@@ -73,6 +79,10 @@ public class OptionParser {
         public void setHubPollerIntervalInSeconds(String hubPollerIntervalInSeconds) {
             this.hubPollerIntervalInSeconds = Integer.parseInt(hubPollerIntervalInSeconds);
         }
+
+        public void setMaxConcurrentSessions(String maxConcurrentSessions) {
+            this.maxConcurrentSessions = Integer.parseInt(maxConcurrentSessions);
+        }
     }
 
     protected Options parseOptions(String[] args) {
@@ -92,6 +102,8 @@ public class OptionParser {
                 options.setHubURL(args[++i]);
             } else if ("-hubPollerIntervalInSeconds".equalsIgnoreCase(args[i])) {
                 options.setHubPollerIntervalInSeconds(args[++i]);
+            } else if ("-maxConcurrentSessions".equalsIgnoreCase(args[i])) {
+                options.setMaxConcurrentSessions(args[++i]);
             } else {
                 options.seleniumServerOptions.add(args[i]);
             }
@@ -112,6 +124,7 @@ public class OptionParser {
         println("-host <hostname>: hostname of the machine the selenium server is launched on (default localhost)");
         println("-env <environment>: environment offered by this selenium server (default *firefox)");
         println("-hubURL <url>: base url of the central Hub to register to (default http://localhost:4444)");
+        println("-maxConcurrentSessions <n>: number of browser sessions this selenium server can run at once (default 1)");
     }
 
     protected void println(String msg) {
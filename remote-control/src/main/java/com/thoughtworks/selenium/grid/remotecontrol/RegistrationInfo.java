@@ -8,12 +8,18 @@ public class RegistrationInfo {
     private final String environment;
     private final String host;
     private final String port;
+    private final int maxConcurrentSessions;
 
     public RegistrationInfo(String seleniumHubURL, String environment, String host, String port) {
+        this(seleniumHubURL, environment, host, port, 1);
+    }
+
+    public RegistrationInfo(String seleniumHubURL, String environment, String host, String port, int maxConcurrentSessions) {
         this.seleniumHubURL = seleniumHubURL;
         this.environment = environment;
         this.host = host;
         this.port = port;
+        this.maxConcurrentSessions = maxConcurrentSessions;
     }
 
     public String hubURL() {
@@ -32,6 +38,10 @@ public class RegistrationInfo {
         return port;
     }
 
+    public int maxConcurrentSessions() {
+        return maxConcurrentSessions;
+    }
+
     @Override
     public String toString() {
         final StringBuffer description;
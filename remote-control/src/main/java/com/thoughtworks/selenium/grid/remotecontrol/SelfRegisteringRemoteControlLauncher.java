@@ -20,7 +20,8 @@ public class SelfRegisteringRemoteControlLauncher {
 
         options = new OptionParser().parseOptions(args);
         registrationInfo = new RegistrationInfo(
-                options.hubURL(), options.environment(), options.host(), options.port());
+                options.hubURL(), options.environment(), options.host(), options.port(),
+                options.maxConcurrentSessions());
         server = new SelfRegisteringRemoteControl(registrationInfo,
                                                   options.hubPollerIntervalInSeconds());
         try {
@@ -1,6 +1,7 @@
 package com.thoughtworks.selenium.grid.remotecontrol;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import org.jbehave.classmock.UsingClassMock;
 import org.jbehave.core.mock.Mock;
@@ -108,5 +109,10 @@ public class HeartbeatRequestTest extends UsingClassMock {
         verifyMocks();
     }
 
+    @Test
+    public void httpClientGoesThroughTheSharedHubConnectionPool() {
+        final RegistrationInfo info = new RegistrationInfo("http://hub", "an environment", "localhost", "5555");
+        assertSame(HubRequest.hubConnectionPool(), new HeartbeatRequest(info).httpClient().connectionPool());
+    }
 
-}
\ No newline at end of file
+}
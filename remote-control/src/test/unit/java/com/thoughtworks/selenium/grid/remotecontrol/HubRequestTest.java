@@ -1,6 +1,8 @@
 package com.thoughtworks.selenium.grid.remotecontrol;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import org.jbehave.classmock.UsingClassMock;
 import org.junit.Test;
 
@@ -34,4 +36,14 @@ public class HubRequestTest extends UsingClassMock {
         assertEquals("The Env", new HubRequest("", "", "", "The Env").postMethod().getParameter("environment").getValue());
     }
 
+    @Test
+    public void hubConnectionPoolIsSharedByAllRequests() {
+        assertSame(HubRequest.hubConnectionPool(), HubRequest.hubConnectionPool());
+    }
+
+    @Test
+    public void hubConnectionPoolReapsIdleConnections() {
+        assertTrue(HubRequest.hubConnectionPool().reapingIdleConnections());
+    }
+
 }
@@ -0,0 +1,45 @@
+package com.thoughtworks.selenium.grid.tools;
+
+/**
+ * Selenium command processor remembering its session, so that commands can be sent to
+ * the Hub in batches:
+ * <pre>
+ *   processor = new BatchingCommandProcessor("localhost", 4444, "*firefox", "http://www.google.com");
+ *   selenium = new DefaultSelenium(processor);
+ *   selenium.start();
+ *   processor.batch().add("type", "q", "selenium grid").add("click", "btnG").execute();
+ * </pre>
+ */
+public class BatchingCommandProcessor extends HubCommandProcessor {
+
+    private final String hubHost;
+    private final int hubPort;
+    private String sessionId;
+
+    public BatchingCommandProcessor(String hubHost, int hubPort, String browserStartCommand, String browserURL) {
+        super(hubHost, hubPort, browserStartCommand, browserURL);
+        this.hubHost = hubHost;
+        this.hubPort = hubPort;
+    }
+
+    protected void setSessionInProgress(String sessionId) {
+        super.setSessionInProgress(sessionId);
+        this.sessionId = sessionId;
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return New empty batch for the current session.
+     * @throws IllegalStateException if no session was started.
+     */
+    public SeleneseBatch batch() {
+        if (null == sessionId) {
+            throw new IllegalStateException("No session in progress: start Selenium first");
+        }
+        return new SeleneseBatch(hubHost, hubPort, sessionId);
+    }
+
+}
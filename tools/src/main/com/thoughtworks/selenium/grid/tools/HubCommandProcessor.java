@@ -0,0 +1,143 @@
+package com.thoughtworks.selenium.grid.tools;
+
+import com.thoughtworks.selenium.HttpCommandProcessor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+/**
+ * Selenium command processor coping with an overloaded Hub.
+ * <p/>
+ * When too many new session requests are already waiting, the Hub turns new ones down with a
+ * 503 status and a <code>Retry-After</code> estimate instead of queuing them. Such requests are
+ * tried again after waiting at least as long as the Hub asked, backing off exponentially
+ * (with a bit of jitter so that rejected clients do not all come back at once) until the
+ * maximum wait time is spent. Other commands are not retried.
+ * <pre>
+ *   selenium = new DefaultSelenium(new HubCommandProcessor("localhost", 4444, "*firefox", "http://www.google.com"));
+ *   selenium.start();
+ * </pre>
+ */
+public class HubCommandProcessor extends HttpCommandProcessor {
+
+    private static final Log LOGGER = LogFactory.getLog(HubCommandProcessor.class);
+    public static final long DEFAULT_MAX_WAIT_TIME_IN_MILLISECONDS = 10 * 60 * 1000;
+    protected static final long INITIAL_BACKOFF_IN_MILLISECONDS = 1000;
+    protected static final long MAX_BACKOFF_IN_MILLISECONDS = 60 * 1000;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String NEW_SESSION_COMMAND = "getNewBrowserSession";
+
+    private final long maxWaitTimeInMilliseconds;
+    private final Random random;
+
+    public HubCommandProcessor(String hubHost, int hubPort, String browserStartCommand, String browserURL) {
+        this(hubHost, hubPort, browserStartCommand, browserURL, DEFAULT_MAX_WAIT_TIME_IN_MILLISECONDS);
+    }
+
+    /**
+     * @param maxWaitTimeInMilliseconds How long to keep trying to get a new session from an overloaded Hub.
+     */
+    public HubCommandProcessor(String hubHost, int hubPort, String browserStartCommand, String browserURL,
+                               long maxWaitTimeInMilliseconds) {
+        super(hubHost, hubPort, browserStartCommand, browserURL);
+        this.maxWaitTimeInMilliseconds = maxWaitTimeInMilliseconds;
+        this.random = new Random();
+    }
+
+    public String doCommand(String command, String[] args) {
+        final long start;
+        long backoffInMilliseconds;
+
+        if (!NEW_SESSION_COMMAND.equals(command)) {
+            return super.doCommand(command, args);
+        }
+        start = now();
+        backoffInMilliseconds = INITIAL_BACKOFF_IN_MILLISECONDS;
+        while (true) {
+            try {
+                return super.doCommand(command, args);
+            } catch (RetryLaterException e) {
+                final long waitInMilliseconds;
+
+                waitInMilliseconds = waitBeforeRetrying(e.retryAfterInSeconds(), backoffInMilliseconds);
+                if (now() - start + waitInMilliseconds > maxWaitTimeInMilliseconds) {
+                    throw e;
+                }
+                LOGGER.info("Hub too busy to start a new session, trying again in " + waitInMilliseconds + " ms");
+                sleep(waitInMilliseconds);
+                backoffInMilliseconds = Math.min(MAX_BACKOFF_IN_MILLISECONDS, 2 * backoffInMilliseconds);
+            }
+        }
+    }
+
+    /**
+     * Drive a session started by someone else, typically one of the sessions a
+     * <code>gridGetNewBrowserSessions</code> command started at once in several environments:
+     * <pre>
+     *   ids = groupProcessor.getStringArray("gridGetNewBrowserSessions", new String[] {"Firefox,IE", url});
+     *   firefox = new HubCommandProcessor("localhost", 4444, "*firefox", url);
+     *   firefox.attachTo(ids[0]);
+     * </pre>
+     */
+    public void attachTo(String sessionId) {
+        setSessionInProgress(sessionId);
+    }
+
+    /**
+     * @throws RetryLaterException when the Hub answers with a 503 status.
+     */
+    protected int getResponseCode(HttpURLConnection connection) throws IOException {
+        final int responseCode;
+
+        responseCode = super.getResponseCode(connection);
+        if (SERVICE_UNAVAILABLE == responseCode) {
+            throw new RetryLaterException(connection.getResponseMessage(),
+                                          parseRetryAfter(connection.getHeaderField("Retry-After")));
+        }
+        return responseCode;
+    }
+
+    /**
+     * @param retryAfterInSeconds   Wait the Hub asked for. -1 if it did not say.
+     * @param backoffInMilliseconds Current exponential backoff.
+     * @return The longest of the two, plus up to 10% of jitter.
+     */
+    protected long waitBeforeRetrying(long retryAfterInSeconds, long backoffInMilliseconds) {
+        final long waitInMilliseconds;
+
+        waitInMilliseconds = Math.max(retryAfterInSeconds * 1000, backoffInMilliseconds);
+        return waitInMilliseconds + (long) (random.nextDouble() * waitInMilliseconds / 10);
+    }
+
+    /**
+     * @param retryAfter Value of the <code>Retry-After</code> header, in seconds. Can be null.
+     * @return Number of seconds to wait, -1 if missing or not a number of seconds (e.g. a HTTP date).
+     */
+    protected static long parseRetryAfter(String retryAfter) {
+        if (null == retryAfter) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    protected void sleep(long milliseconds) {
+        try {
+            Thread.sleep(milliseconds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RetryLaterException("Interrupted while waiting to start a new session", -1);
+        }
+    }
+
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+}
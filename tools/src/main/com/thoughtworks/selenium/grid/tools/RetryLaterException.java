@@ -0,0 +1,25 @@
+package com.thoughtworks.selenium.grid.tools;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+/**
+ * Signals a request the Hub turned down for now (503 Service Unavailable), typically a new
+ * session request while too many others are already waiting for a remote control.
+ */
+public class RetryLaterException extends SeleniumException {
+
+    private final long retryAfterInSeconds;
+
+    /**
+     * @param retryAfterInSeconds How long the Hub asked to wait before trying again. -1 if it did not say.
+     */
+    public RetryLaterException(String message, long retryAfterInSeconds) {
+        super(message);
+        this.retryAfterInSeconds = retryAfterInSeconds;
+    }
+
+    public long retryAfterInSeconds() {
+        return retryAfterInSeconds;
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.thoughtworks.selenium.grid.tools;
+
+import com.thoughtworks.selenium.SeleniumException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch of independent Selenese commands sent to the Hub in a single request, instead of
+ * one round trip per command. The Hub runs them back to back and stops at the first error.
+ * <p/>
+ * <pre>
+ *   new SeleneseBatch("localhost", 4444, sessionId)
+ *       .add("type", "q", "selenium grid")
+ *       .add("click", "btnG")
+ *       .execute();
+ * </pre>
+ * Use a {@link BatchingCommandProcessor} to find out the session ID of a Selenium instance.
+ */
+public class SeleneseBatch {
+
+    private final String batchUrl;
+    private final String sessionId;
+    private final List<String[]> commands;
+
+    public SeleneseBatch(String hubHost, int hubPort, String sessionId) {
+        this.batchUrl = "http://" + hubHost + ":" + hubPort + "/selenium-server/batch";
+        this.sessionId = sessionId;
+        this.commands = new ArrayList<String[]>();
+    }
+
+    /**
+     * @param command   Selenese command, e.g. <code>type</code>.
+     * @param arguments Command arguments, e.g. the locator and the text to type.
+     * @return This batch, for chaining.
+     */
+    public SeleneseBatch add(String command, String... arguments) {
+        final String[] commandAndArguments;
+
+        commandAndArguments = new String[arguments.length + 1];
+        commandAndArguments[0] = command;
+        System.arraycopy(arguments, 0, commandAndArguments, 1, arguments.length);
+        commands.add(commandAndArguments);
+        return this;
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Run all the commands added so far, then empty the batch.
+     *
+     * @return Result of each command, e.g. <code>OK</code> or <code>OK,true</code>.
+     * @throws SeleniumException if the Hub rejects the batch or one of the commands fails.
+     */
+    public List<String> execute() {
+        final List<String> results;
+        final String reply;
+
+        if (commands.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        try {
+            reply = post(requestBody());
+        } catch (IOException e) {
+            throw new SeleniumException("Could not send batch to " + batchUrl, e);
+        }
+        commands.clear();
+        if (reply.startsWith("ERROR")) {
+            throw new SeleniumException(reply);
+        }
+        results = parseResults(reply);
+        if (!results.isEmpty() && results.get(results.size() - 1).startsWith("ERROR")) {
+            throw new SeleniumException("Command #" + results.size() + " of batch failed: "
+                                        + results.get(results.size() - 1));
+        }
+        return results;
+    }
+
+    protected String requestBody() throws UnsupportedEncodingException {
+        final StringBuilder body;
+
+        body = new StringBuilder("sessionId=").append(URLEncoder.encode(sessionId, "UTF-8"));
+        for (int i = 0; i < commands.size(); i++) {
+            final String[] command = commands.get(i);
+
+            body.append('&').append(i + 1).append(".cmd=").append(URLEncoder.encode(command[0], "UTF-8"));
+            for (int argument = 1; argument < command.length; argument++) {
+                body.append('&').append(i + 1).append('.').append(argument).append('=')
+                    .append(URLEncoder.encode(command[argument], "UTF-8"));
+            }
+        }
+        return body.toString();
+    }
+
+    protected String post(String body) throws IOException {
+        final HttpURLConnection connection;
+        final ByteArrayOutputStream reply;
+        final byte[] buffer;
+        final OutputStream out;
+        final InputStream in;
+        int read;
+
+        connection = (HttpURLConnection) new URL(batchUrl).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=utf-8");
+        out = connection.getOutputStream();
+        try {
+            out.write(body.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        reply = new ByteArrayOutputStream();
+        buffer = new byte[4096];
+        in = connection.getInputStream();
+        try {
+            while (-1 != (read = in.read(buffer))) {
+                reply.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return reply.toString("UTF-8");
+    }
+
+    /**
+     * @param reply Form encoded results, e.g. <code>1=OK&2=OK%2Ctrue</code>.
+     * @return Decoded results, in command order.
+     */
+    protected static List<String> parseResults(String reply) {
+        final List<String> results;
+
+        results = new ArrayList<String>();
+        try {
+            for (int i = 1; ; i++) {
+                final String value = value(reply, String.valueOf(i));
+                if (null == value) {
+                    return results;
+                }
+                results.add(URLDecoder.decode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected static String value(String reply, String name) {
+        for (String pair : reply.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                return pair.substring(name.length() + 1);
+            }
+        }
+        return null;
+    }
+
+}
@@ -7,6 +7,9 @@ import org.apache.commons.logging.LogFactory;
 
 /**
  * Utility class making it easy to write tests based on Selenium driver in a multi-thread context.
+ * <p/>
+ * Sessions are started through a {@link HubCommandProcessor}: when the Hub is too busy to take
+ * a new session request, it is tried again later instead of failing the test.
  *
  * @author Philippe Hanrigou
  */
@@ -22,7 +25,7 @@ public class ThreadSafeSeleniumSessionStorage {
 
     public static void startSeleniumSession(String seleniumHost, int seleniumPort, String browser, String webSite) {
         LOGGER.info("Contacting Selenium RC at " + seleniumHost + ":" + seleniumPort);
-        threadLocalSelenium.set(new DefaultSelenium(seleniumHost, seleniumPort, browser, webSite));
+        threadLocalSelenium.set(new DefaultSelenium(new HubCommandProcessor(seleniumHost, seleniumPort, browser, webSite)));
         session().start();
         LOGGER.info("Got Selenese session:" + session());
     }
@@ -0,0 +1,152 @@
+package com.thoughtworks.selenium.grid.tools;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HubCommandProcessorTest {
+
+    @Test
+    public void aNewSessionRequestTurnedDownIsTriedAgainAfterTheWaitTheHubAskedFor() {
+        final BusyHubCommandProcessor processor;
+
+        processor = new BusyHubCommandProcessor(HubCommandProcessor.DEFAULT_MAX_WAIT_TIME_IN_MILLISECONDS, 5, -1);
+        assertEquals("OK,1234", processor.doCommand("getNewBrowserSession", new String[] {"*firefox", "http://a.com"}));
+        assertEquals(2, processor.waits.size());
+        assertBetween(5000, 5500, processor.waits.get(0));
+        assertBetween(2 * HubCommandProcessor.INITIAL_BACKOFF_IN_MILLISECONDS,
+                      2 * HubCommandProcessor.INITIAL_BACKOFF_IN_MILLISECONDS * 11 / 10, processor.waits.get(1));
+    }
+
+    @Test
+    public void aNewSessionRequestIsNotTriedAgainPastTheMaximumWaitTime() {
+        final BusyHubCommandProcessor processor;
+
+        processor = new BusyHubCommandProcessor(3000, 5);
+        try {
+            processor.doCommand("getNewBrowserSession", new String[] {"*firefox", "http://a.com"});
+            fail("Expected a RetryLaterException");
+        } catch (RetryLaterException e) {
+            assertEquals(5, e.retryAfterInSeconds());
+        }
+        assertTrue(processor.waits.isEmpty());
+    }
+
+    @Test
+    public void otherCommandsAreNotTriedAgain() {
+        final BusyHubCommandProcessor processor;
+
+        processor = new BusyHubCommandProcessor(HubCommandProcessor.DEFAULT_MAX_WAIT_TIME_IN_MILLISECONDS, 5);
+        try {
+            processor.doCommand("click", new String[] {"btnG"});
+            fail("Expected a RetryLaterException");
+        } catch (RetryLaterException e) {
+            assertTrue(processor.waits.isEmpty());
+        }
+    }
+
+    @Test
+    public void getResponseCodeThrowsARetryLaterExceptionWhenTheHubIsTooBusy() throws IOException {
+        final HubCommandProcessor processor;
+
+        processor = new HubCommandProcessor("localhost", 4444, "*firefox", "http://a.com");
+        try {
+            processor.getResponseCode(new CannedConnection(503, "12"));
+            fail("Expected a RetryLaterException");
+        } catch (RetryLaterException e) {
+            assertEquals(12, e.retryAfterInSeconds());
+        }
+    }
+
+    @Test
+    public void getResponseCodeReturnsAnyOtherResponseCode() throws IOException {
+        assertEquals(200, new HubCommandProcessor("localhost", 4444, "*firefox", "http://a.com")
+                .getResponseCode(new CannedConnection(200, null)));
+    }
+
+    @Test
+    public void parseRetryAfterReturnsMinusOneWhenTheHubDidNotGiveANumberOfSeconds() {
+        assertEquals(-1, HubCommandProcessor.parseRetryAfter(null));
+        assertEquals(-1, HubCommandProcessor.parseRetryAfter("Fri, 31 Dec 1999 23:59:59 GMT"));
+        assertEquals(30, HubCommandProcessor.parseRetryAfter(" 30 "));
+    }
+
+    protected void assertBetween(long minimum, long maximum, long actual) {
+        assertTrue(actual + " not in [" + minimum + ", " + maximum + "]", actual >= minimum && actual <= maximum);
+    }
+
+    /**
+     * Turns requests down with the given Retry-After values, then accepts them.
+     */
+    protected static class BusyHubCommandProcessor extends HubCommandProcessor {
+
+        private final long[] retryAfterInSeconds;
+        private final List<Long> waits;
+        private long now;
+        private int attempts;
+
+        public BusyHubCommandProcessor(long maxWaitTimeInMilliseconds, long... retryAfterInSeconds) {
+            super("localhost", 4444, "*firefox", "http://a.com", maxWaitTimeInMilliseconds);
+            this.retryAfterInSeconds = retryAfterInSeconds;
+            this.waits = new ArrayList<Long>();
+        }
+
+        protected String getCommandResponseAsString(String command) {
+            if (attempts < retryAfterInSeconds.length) {
+                throw new RetryLaterException("Service Unavailable", retryAfterInSeconds[attempts++]);
+            }
+            return "OK,1234";
+        }
+
+        protected void sleep(long milliseconds) {
+            waits.add(milliseconds);
+            now += milliseconds;
+        }
+
+        protected long now() {
+            return now;
+        }
+    }
+
+    protected static class CannedConnection extends HttpURLConnection {
+
+        private final int responseCode;
+        private final String retryAfter;
+
+        public CannedConnection(int responseCode, String retryAfter) throws IOException {
+            super(new URL("http://localhost:4444/selenium-server/driver/"));
+            this.responseCode = responseCode;
+            this.retryAfter = retryAfter;
+        }
+
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        public String getResponseMessage() {
+            return "Service Unavailable";
+        }
+
+        public String getHeaderField(String name) {
+            return "Retry-After".equals(name) ? retryAfter : null;
+        }
+
+        public void disconnect() {
+        }
+
+        public boolean usingProxy() {
+            return false;
+        }
+
+        public void connect() {
+        }
+    }
+
+}
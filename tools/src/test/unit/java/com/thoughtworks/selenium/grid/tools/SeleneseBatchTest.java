@@ -0,0 +1,80 @@
+package com.thoughtworks.selenium.grid.tools;
+
+import com.thoughtworks.selenium.SeleniumException;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class SeleneseBatchTest {
+
+    @Test
+    public void requestBodyNumbersTheCommandsAndTheirArguments() throws IOException {
+        final SeleneseBatch batch;
+
+        batch = new SeleneseBatch("localhost", 4444, "1234");
+        batch.add("type", "q", "selenium grid").add("click", "btnG");
+        assertEquals("sessionId=1234&1.cmd=type&1.1=q&1.2=selenium+grid&2.cmd=click&2.1=btnG", batch.requestBody());
+    }
+
+    @Test
+    public void parseResultsDecodesTheResultsInCommandOrder() {
+        assertEquals(Arrays.asList("OK", "OK,a & b", "ERROR: failed"),
+                     SeleneseBatch.parseResults("2=OK%2Ca+%26+b&1=OK&3=ERROR%3A+failed"));
+    }
+
+    @Test
+    public void executeReturnsTheResultsAndEmptiesTheBatch() {
+        final CannedSeleneseBatch batch;
+        final List<String> results;
+
+        batch = new CannedSeleneseBatch("1=OK&2=OK%2Ctrue");
+        batch.add("click", "btnG").add("isTextPresent", "Results");
+        results = batch.execute();
+        assertEquals(Arrays.asList("OK", "OK,true"), results);
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void executeThrowsASeleniumExceptionWhenACommandFails() {
+        final CannedSeleneseBatch batch;
+
+        batch = new CannedSeleneseBatch("1=OK&2=ERROR%3A+Element+btnG+not+found");
+        batch.add("type", "q", "grid").add("click", "btnG").add("click", "next");
+        try {
+            batch.execute();
+            fail("Expected a SeleniumException");
+        } catch (SeleniumException e) {
+            assertEquals("Command #2 of batch failed: ERROR: Element btnG not found", e.getMessage());
+        }
+    }
+
+    @Test(expected = SeleniumException.class)
+    public void executeThrowsASeleniumExceptionWhenTheHubRejectsTheBatch() {
+        new CannedSeleneseBatch("ERROR: No command in batch").add("click", "btnG").execute();
+    }
+
+    @Test
+    public void executingAnEmptyBatchDoesNotContactTheHub() {
+        assertEquals(0, new SeleneseBatch("localhost", 0, "1234").execute().size());
+    }
+
+    protected static class CannedSeleneseBatch extends SeleneseBatch {
+
+        private final String reply;
+
+        public CannedSeleneseBatch(String reply) {
+            super("localhost", 4444, "1234");
+            this.reply = reply;
+        }
+
+        protected String post(String body) {
+            return reply;
+        }
+
+    }
+
+}